@@ -0,0 +1,151 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frame-time test for the weight log.
+ * - Fills the log with 10,000 entries and flings WTLogActivity's list up and down
+ * - Collects per-frame durations with FrameMetrics while scrolling
+ * - Logs p50/p90/p99 and the share of frames over the 16.7 ms budget under "WTFrameMetrics"
+ * Run on a device or emulator: ./gradlew connectedDebugAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class WTLogScrollFrameTest {
+
+    private static final String EMAIL = "frames@test.com";
+    private static final int ROWS = 10_000;
+    private static final int FLINGS = 10;
+    private static final int FLING_VELOCITY = 12_000; // px/s, capped by the view's maximum
+    private static final long FRAME_BUDGET_NS = 16_666_667L;
+    private static final long LOAD_TIMEOUT_MS = 30_000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase("WeightTracker.db");
+
+        WTDatabaseHelper wtDB = new WTDatabaseHelper(context);
+        wtDB.addUser("Frames", EMAIL, "password");
+        wtDB.setGoalWeight(150, EMAIL);
+
+        // One entry per day going back from today, in one transaction
+        LocalDate date = LocalDate.now();
+        wtDB.getWritableDatabase().beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                int weight = 170 + (int) Math.round(5 * Math.sin(i / 30.0)) + i % 3;
+                wtDB.addWeight(date.minusDays(i).toString(), weight, EMAIL);
+            }
+            wtDB.getWritableDatabase().setTransactionSuccessful();
+        } finally {
+            wtDB.getWritableDatabase().endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void flingThroughTenThousandRows() {
+        List<Long> durations = Collections.synchronizedList(new ArrayList<>());
+        HandlerThread metricsThread = new HandlerThread("frame-metrics");
+        metricsThread.start();
+        Window.OnFrameMetricsAvailableListener listener = (window, frameMetrics, dropped) -> {
+            // The first frame after layout includes inflation and is not a scrolling frame
+            if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 0) {
+                durations.add(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+            }
+        };
+
+        Intent intent = new Intent(context, WTLogActivity.class).putExtra("USER_EMAIL", EMAIL);
+        try (ActivityScenario<WTLogActivity> scenario = ActivityScenario.launch(intent)) {
+            assertEquals(ROWS, waitForRows(scenario));
+
+            scenario.onActivity(activity -> activity.getWindow().addOnFrameMetricsAvailableListener(
+                    listener, new Handler(metricsThread.getLooper())));
+            for (int i = 0; i < FLINGS; i++) {
+                // Mostly downwards, with every third fling back up
+                int velocity = i % 3 == 2 ? -FLING_VELOCITY : FLING_VELOCITY;
+                scenario.onActivity(activity -> activity.recyclerView.fling(0, velocity));
+                SystemClock.sleep(1_500);
+            }
+            scenario.onActivity(activity ->
+                    activity.getWindow().removeOnFrameMetricsAvailableListener(listener));
+        } finally {
+            metricsThread.quitSafely();
+        }
+
+        List<Long> frames;
+        synchronized (durations) {
+            frames = new ArrayList<>(durations);
+        }
+        assertTrue("No scrolling frames were recorded", frames.size() > 30);
+        Collections.sort(frames);
+
+        int janky = 0;
+        for (long duration : frames) {
+            if (duration > FRAME_BUDGET_NS) {
+                janky++;
+            }
+        }
+        double jankPercent = 100.0 * janky / frames.size();
+        long p90 = percentile(frames, 90);
+        Log.i("WTFrameMetrics", String.format(Locale.US,
+                "rows=%d frames=%d p50=%.1fms p90=%.1fms p99=%.1fms janky=%.1f%%",
+                ROWS, frames.size(),
+                percentile(frames, 50) / 1e6, p90 / 1e6, percentile(frames, 99) / 1e6, jankPercent));
+
+        // Generous bound so slow emulators pass; the logged numbers are the real signal
+        assertTrue("p90 frame time " + p90 / 1e6 + " ms exceeds two frame budgets",
+                p90 <= 2 * FRAME_BUDGET_NS);
+    }
+
+    // Polls until the list has loaded, returning the row count shown
+    private static int waitForRows(ActivityScenario<WTLogActivity> scenario) {
+        int[] count = new int[1];
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            scenario.onActivity(activity -> count[0] = activity.customAdapter.getItemCount());
+            if (count[0] >= ROWS) {
+                break;
+            }
+            SystemClock.sleep(100);
+        }
+        return count[0];
+    }
+
+    // Nearest-rank percentile of a sorted list
+    private static long percentile(List<Long> sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+}
@@ -0,0 +1,332 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightSegment;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds where the weight history changes behaviour, so a plateau can be told from noise.
+ * - Online: a two-sided CUSUM over residuals from the current segment's line,
+ *   O(1) per new entry, so a steady loss is not a change but a stall is
+ * - Offline: PELT segmentation of the full series into linear pieces, with pruning
+ *   keeping it near-linear in practice; segments are capped at MAX_SEGMENT entries,
+ *   which bounds the worst case (one long flat stretch, where nothing prunes) to O(n·MAX_SEGMENT)
+ */
+final class ChangePointDetector {
+
+    // A flat segment at least this long counts as a plateau
+    static final int PLATEAU_MIN_DAYS = 14;
+    // ... and flat means losing or gaining less than this per week
+    static final double PLATEAU_MAX_WEEKLY_CHANGE = 0.25;
+
+    // Shortest segment PELT may produce, in entries
+    private static final int MIN_SEGMENT = 4;
+    // Longest segment PELT may produce, in entries; a longer stretch is split into similar pieces
+    private static final int MAX_SEGMENT = 365;
+    // Penalty per change point, in multiples of the noise variance times log(n)
+    private static final double PENALTY_FACTOR = 3.0;
+    // Noise floor, in pounds, so a perfectly flat log does not split on every wobble
+    private static final double MIN_NOISE = 0.5;
+
+    private ChangePointDetector() {}
+
+    /**
+     * Two-sided CUSUM on the residuals of each entry from the least-squares line through
+     * the current segment so far, standardized by the noise level. Residuals are clipped
+     * to ±3 noise units, so a single typo cannot raise an alarm on its own.
+     */
+    static final class Cusum {
+        // Allowance (in noise units) and decision threshold
+        private static final double K = 0.5;
+        private static final double H = 5.0;
+        // Entries after a change before another alarm is allowed
+        private static final int WARM_UP = 7;
+
+        // Running regression sums for the current segment, days relative to its start
+        private LocalDate segmentStart;
+        private int segmentCount;
+        private double sumT, sumTT, sumX, sumTX;
+        private double positive;
+        private double negative;
+        private double absDiffSum;
+        private int diffCount;
+        private int last;
+        private LocalDate lastDate;
+
+        /**
+         * Adds the next entry in chronological order.
+         * @return true if it completes a detected change; a new segment then starts at it
+         */
+        boolean add(LocalDate date, int weight) {
+            if (segmentStart != null) {
+                absDiffSum += Math.abs(weight - last);
+                diffCount++;
+            }
+            last = weight;
+            lastDate = date;
+
+            if (segmentStart == null) {
+                startSegment(date);
+            } else if (segmentCount >= WARM_UP) {
+                double t = date.toEpochDay() - segmentStart.toEpochDay();
+                double z = (weight - predict(t)) / noise();
+                z = Math.max(-3, Math.min(3, z));
+                positive = Math.max(0, positive + z - K);
+                negative = Math.max(0, negative - z - K);
+                if (positive > H || negative > H) {
+                    startSegment(date);
+                    include(date, weight);
+                    return true;
+                }
+            }
+            include(date, weight);
+            return false;
+        }
+
+        // Date of the latest entry added, or null before the first
+        LocalDate getLastDate() {
+            return lastDate;
+        }
+
+        // First entry date of the current segment
+        LocalDate getSegmentStart() {
+            return segmentStart;
+        }
+
+        // Fitted slope of the current segment, in pounds per day
+        double getSegmentSlope() {
+            double n = segmentCount;
+            double tt = sumTT - sumT * sumT / n;
+            return n < 2 || tt <= 0 ? 0 : (sumTX - sumT * sumX / n) / tt;
+        }
+
+        private void startSegment(LocalDate date) {
+            segmentStart = date;
+            segmentCount = 0;
+            sumT = sumTT = sumX = sumTX = 0;
+            positive = 0;
+            negative = 0;
+        }
+
+        private void include(LocalDate date, int weight) {
+            double t = date.toEpochDay() - segmentStart.toEpochDay();
+            segmentCount++;
+            sumT += t;
+            sumTT += t * t;
+            sumX += weight;
+            sumTX += t * weight;
+        }
+
+        private double predict(double t) {
+            double n = segmentCount;
+            return sumX / n + getSegmentSlope() * (t - sumT / n);
+        }
+
+        // For Gaussian noise E|x[i] - x[i-1]| = 2σ/√π
+        private double noise() {
+            double sigma = diffCount == 0 ? 0 : 0.8862 * absDiffSum / diffCount;
+            return Math.max(MIN_NOISE, sigma);
+        }
+    }
+
+    /**
+     * Feeds a just-committed addWeight to the user's online detector. Does database reads,
+     * so it runs off the main thread (see DashboardViewModel.detectChange).
+     * - O(1) when the entry's commit is the only log write since the detector was last
+     *   updated and the entry is not dated before the entries it has seen
+     * - Otherwise the detector is rebuilt from the history (O(n), once), and the result is
+     *   the step of the new entry, wherever its date falls
+     * If a batch committed several entries at once, the first one's fast path misses the
+     * others, and the next one's rebuild picks them all up.
+     * The entry is also appended to the warm weekday effects when they are one write behind;
+     * otherwise they are left for the next dashboard or log read to rebuild.
+     * @param logVersion the log version read right after the entry was committed
+     * @return true if the new entry completes a detected change
+     */
+    static boolean onWeightAdded(WeightRepository repository, UserWarmState warmState,
+                                 String email, LocalDate date, int weight, long logVersion) {
+        synchronized (warmState) {
+            LogSeasonality seasonality = warmState.getSeasonality(logVersion - 1);
+            if (seasonality != null) {
+                LogSeasonality appended = seasonality.append(date, weight);
+                if (appended != null) {
+                    warmState.setSeasonality(appended, logVersion);
+                }
+            }
+
+            Cusum cusum = warmState.getCusum(logVersion - 1);
+            if (cusum != null && cusum.getLastDate() != null && !date.isBefore(cusum.getLastDate())) {
+                warmState.setCusum(cusum, logVersion);
+                return cusum.add(date, weight);
+            }
+
+            // Read before the history, so a write racing the query forces another rebuild
+            long version = InvalidationTracker.getInstance().getVersion(email, WTDatabaseHelper.TABLE_LOG);
+            List<WeightEntry> entries = repository.getWeightEntries(email);
+            entries.sort(Comparator.comparing(WeightEntry::getDate).thenComparingInt(WeightEntry::getId));
+            cusum = new Cusum();
+            boolean changed = false;
+            for (WeightEntry entry : entries) {
+                boolean step = cusum.add(entry.getDate(), entry.getWeight());
+                // Same-day entries are in id order, so the last match is the newest entry
+                if (entry.getDate().equals(date) && entry.getWeight() == weight) {
+                    changed = step;
+                }
+            }
+            warmState.setCusum(cusum, version);
+            return changed;
+        }
+    }
+
+    /**
+     * Splits a chronological series into linear segments with PELT
+     * (Killick, Fearnhead and Eckley, 2012), minimizing the residual sum of squares
+     * of a line per segment plus a penalty per change point.
+     */
+    static List<WeightSegment> segment(List<WeightEntry> entries) {
+        List<WeightSegment> segments = new ArrayList<>();
+        int n = entries.size();
+        if (n == 0) {
+            return segments;
+        }
+
+        // Prefix sums of t, t², x, x² and t·x give any segment's cost in O(1);
+        // t and x are taken relative to the first entry to keep the sums well conditioned
+        long firstDay = entries.get(0).getDate().toEpochDay();
+        int firstWeight = entries.get(0).getWeight();
+        double[] st = new double[n + 1];
+        double[] stt = new double[n + 1];
+        double[] sx = new double[n + 1];
+        double[] sxx = new double[n + 1];
+        double[] stx = new double[n + 1];
+        double absDiffSum = 0;
+        for (int i = 0; i < n; i++) {
+            double t = entries.get(i).getDate().toEpochDay() - firstDay;
+            double x = entries.get(i).getWeight() - firstWeight;
+            st[i + 1] = st[i] + t;
+            stt[i + 1] = stt[i] + t * t;
+            sx[i + 1] = sx[i] + x;
+            sxx[i + 1] = sxx[i] + x * x;
+            stx[i + 1] = stx[i] + t * x;
+            if (i > 0) {
+                absDiffSum += Math.abs(entries.get(i).getWeight() - entries.get(i - 1).getWeight());
+            }
+        }
+        SegmentCost cost = new SegmentCost(st, stt, sx, sxx, stx);
+
+        double sigma = Math.max(MIN_NOISE, n > 1 ? 0.8862 * absDiffSum / (n - 1) : 0);
+        double penalty = PENALTY_FACTOR * sigma * sigma * Math.log(Math.max(n, 2));
+
+        // best[t]: minimal penalized cost of entries [0, t); previous[t]: start of its last segment
+        double[] best = new double[n + 1];
+        int[] previous = new int[n + 1];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        best[0] = -penalty;
+        List<Integer> candidates = new ArrayList<>();
+        candidates.add(0);
+
+        for (int end = 1; end <= n; end++) {
+            int newest = end - MIN_SEGMENT;
+            if (newest >= MIN_SEGMENT) {
+                candidates.add(newest);
+            }
+
+            double min = Double.POSITIVE_INFINITY;
+            int argMin = -1;
+            for (int start : candidates) {
+                if (end - start < MIN_SEGMENT && !(start == 0 && end == n)) {
+                    continue;
+                }
+                double value = best[start] + cost.of(start, end) + penalty;
+                if (value < min) {
+                    min = value;
+                    argMin = start;
+                }
+            }
+            if (argMin < 0) {
+                continue;
+            }
+            best[end] = min;
+            previous[end] = argMin;
+
+            // Prune starts that can never be optimal again, or would exceed the length cap
+            List<Integer> kept = new ArrayList<>(candidates.size());
+            for (int start : candidates) {
+                if (end + 1 - start > MAX_SEGMENT) {
+                    continue;
+                }
+                if (end - start < MIN_SEGMENT || best[start] + cost.of(start, end) <= min) {
+                    kept.add(start);
+                }
+            }
+            candidates = kept;
+        }
+
+        List<int[]> bounds = new ArrayList<>();
+        for (int end = n; end > 0; end = previous[end]) {
+            bounds.add(new int[]{previous[end], end});
+        }
+        Collections.reverse(bounds);
+        for (int[] bound : bounds) {
+            segments.add(cost.summarize(entries, bound[0], bound[1], firstWeight));
+        }
+        return segments;
+    }
+
+    /**
+     * True if the latest segment is long and flat enough to be a plateau.
+     */
+    static boolean isPlateau(List<WeightSegment> segments) {
+        if (segments.isEmpty()) {
+            return false;
+        }
+        WeightSegment latest = segments.get(segments.size() - 1);
+        return latest.getDays() >= PLATEAU_MIN_DAYS
+                && Math.abs(latest.getSlopePerDay() * 7) < PLATEAU_MAX_WEEKLY_CHANGE;
+    }
+
+    // Least-squares line cost of entries [start, end) from prefix sums
+    private static final class SegmentCost {
+        private final double[] st, stt, sx, sxx, stx;
+
+        SegmentCost(double[] st, double[] stt, double[] sx, double[] sxx, double[] stx) {
+            this.st = st;
+            this.stt = stt;
+            this.sx = sx;
+            this.sxx = sxx;
+            this.stx = stx;
+        }
+
+        double of(int start, int end) {
+            double n = end - start;
+            double t = st[end] - st[start];
+            double x = sx[end] - sx[start];
+            double xx = sxx[end] - sxx[start] - x * x / n;
+            double tt = stt[end] - stt[start] - t * t / n;
+            double tx = stx[end] - stx[start] - t * x / n;
+            // All on one day: the best line is the mean
+            double residual = tt > 1e-9 ? xx - tx * tx / tt : xx;
+            return Math.max(0, residual);
+        }
+
+        WeightSegment summarize(List<WeightEntry> entries, int start, int end, int firstWeight) {
+            double n = end - start;
+            double t = st[end] - st[start];
+            double x = sx[end] - sx[start];
+            double tt = stt[end] - stt[start] - t * t / n;
+            double tx = stx[end] - stx[start] - t * x / n;
+            return new WeightSegment(
+                    entries.get(start).getDate(),
+                    entries.get(end - 1).getDate(),
+                    end - start,
+                    firstWeight + x / n,
+                    tt > 1e-9 ? tx / tt : 0);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.padgettanna.weighttracker.model.CohortReport;
+import com.padgettanna.weighttracker.model.MutableWeightEntry;
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregate statistics across every user, for shared-device and kiosk deployments.
+ * - Users are partitioned by row id range and the ranges are analyzed in parallel on a
+ *   fork/join pool; each user's series goes through the same outlier filter and
+ *   Mann-Kendall test as the main screen (see DashboardLoader)
+ * - Reads go through a fixed pool of read-only connections, one per worker, so they run
+ *   side by side instead of queueing on the helper's single connection
+ * - Each partition only holds the series of the user it is analyzing and folds the result
+ *   into running totals, which are merged up the task tree; memory is bounded by the
+ *   largest single history times the parallelism, whatever the number of users
+ * Intended to run off the main thread; it does not touch WTDatabaseHelper's own connection
+ * after the database has been opened.
+ */
+final class CohortAnalyticsJob {
+
+    private static final String TAG = "CohortAnalyticsJob";
+    // User id ranges at most this wide are analyzed by one task instead of split further
+    static final int USERS_PER_TASK = 32;
+    // Same parameters as the main screen's trend
+    private static final int OUTLIER_WINDOW = 7;
+    private static final int TREND_WINDOW_DAYS = 30;
+    private static final double TREND_ALPHA = 0.05;
+    private static final int MIN_SIGNIFICANCE_SAMPLE = 8;
+    private static final double TREND_THRESHOLD = 0.5;
+
+    private final WTDatabaseHelper wtDB;
+    private final int parallelism;
+
+    CohortAnalyticsJob(WTDatabaseHelper wtDB) {
+        this(wtDB, Runtime.getRuntime().availableProcessors());
+    }
+
+    CohortAnalyticsJob(WTDatabaseHelper wtDB, int parallelism) {
+        this.wtDB = wtDB;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Analyzes every user and returns the merged report.
+     */
+    CohortReport run() {
+        long started = System.nanoTime();
+        // Opening through the helper first runs any pending upgrade
+        String path = wtDB.getReadableDatabase().getPath();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (ConnectionPool connections = new ConnectionPool(path, parallelism)) {
+            long[] range;
+            SQLiteDatabase db = connections.acquire();
+            try {
+                range = WTDatabaseHelper.readUserIdRange(db);
+            } finally {
+                connections.release(db);
+            }
+            Totals totals = range == null
+                    ? new Totals()
+                    : pool.invoke(new PartitionTask(connections, range[0], range[1]));
+            CohortReport report = totals.toReport();
+            Log.i(TAG, "Analyzed " + report.getUserCount() + " users on " + parallelism + " threads in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Analyzes the users with row ids in [fromId, toId], splitting wide ranges in two
+    private static final class PartitionTask extends RecursiveTask<Totals> {
+        private final ConnectionPool connections;
+        private final long fromId;
+        private final long toId;
+
+        PartitionTask(ConnectionPool connections, long fromId, long toId) {
+            this.connections = connections;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (toId - fromId < USERS_PER_TASK) {
+                return analyzeRange();
+            }
+            long middle = fromId + (toId - fromId) / 2;
+            PartitionTask upper = new PartitionTask(connections, middle + 1, toId);
+            upper.fork();
+            Totals totals = new PartitionTask(connections, fromId, middle).compute();
+            totals.merge(upper.join());
+            return totals;
+        }
+
+        private Totals analyzeRange() {
+            Totals totals = new Totals();
+            SQLiteDatabase db = connections.acquire();
+            try {
+                Cursor users = WTDatabaseHelper.readUsersInRange(db, fromId, toId);
+                try {
+                    while (users.moveToNext()) {
+                        Integer goal = users.isNull(1) ? null : users.getInt(1);
+                        analyzeUser(db, users.getString(0), goal, totals);
+                    }
+                } finally {
+                    users.close();
+                }
+            } finally {
+                connections.release(db);
+            }
+            return totals;
+        }
+    }
+
+    // Folds one user's history into the totals
+    private static void analyzeUser(SQLiteDatabase db, String email, Integer goal, Totals totals) {
+        totals.users++;
+        List<WeightEntry> entries = new ArrayList<>();
+        try (WeightEntryIterator iterator = WTDatabaseHelper.iterateWeightEntries(db, email)) {
+            while (iterator.hasNext()) {
+                MutableWeightEntry entry = iterator.next();
+                entries.add(entry.toEntry());
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        if (goal != null) {
+            totals.goalUsers++;
+            if (entries.get(entries.size() - 1).getWeight() <= goal) {
+                totals.goalsReached++;
+            }
+        }
+        if (entries.size() < 2) {
+            return;
+        }
+
+        boolean[] outliers = WeightAnalysisUtil.detectOutliers(entries, OUTLIER_WINDOW);
+        List<WeightEntry> clean = WeightAnalysisUtil.withoutOutliers(entries, outliers);
+        WeightAnalysisUtil.TrendTest test =
+                WeightAnalysisUtil.mannKendall(clean, TREND_WINDOW_DAYS, TREND_ALPHA);
+        WeightAnalysisUtil.Trend trend = test.sampleSize >= MIN_SIGNIFICANCE_SAMPLE
+                ? test.trend
+                : WeightAnalysisUtil.detectTrend(WeightAnalysisUtil.rollingAverage(clean, OUTLIER_WINDOW),
+                        TREND_THRESHOLD);
+
+        totals.activeUsers++;
+        totals.weeklyChangeSum += test.slopePerDay * 7;
+        totals.trendCounts[trend.ordinal()]++;
+    }
+
+    /**
+     * Running totals for a set of users; two sets are combined with merge.
+     */
+    private static final class Totals {
+        int users;
+        int activeUsers;
+        double weeklyChangeSum;
+        int goalUsers;
+        int goalsReached;
+        final int[] trendCounts = new int[WeightAnalysisUtil.Trend.values().length];
+
+        void merge(Totals other) {
+            users += other.users;
+            activeUsers += other.activeUsers;
+            weeklyChangeSum += other.weeklyChangeSum;
+            goalUsers += other.goalUsers;
+            goalsReached += other.goalsReached;
+            for (int i = 0; i < trendCounts.length; i++) {
+                trendCounts[i] += other.trendCounts[i];
+            }
+        }
+
+        CohortReport toReport() {
+            return new CohortReport(users, activeUsers,
+                    activeUsers == 0 ? 0 : weeklyChangeSum / activeUsers,
+                    goalUsers, goalsReached,
+                    trendCounts[WeightAnalysisUtil.Trend.UPWARD.ordinal()],
+                    trendCounts[WeightAnalysisUtil.Trend.DOWNWARD.ordinal()],
+                    trendCounts[WeightAnalysisUtil.Trend.STABLE.ordinal()]);
+        }
+    }
+
+    /**
+     * Fixed set of read-only connections to the database file, handed out one at a time.
+     * A task holds a connection only while it reads and analyzes its range and never
+     * waits on another task meanwhile, so waiting for a free one cannot deadlock.
+     */
+    private static final class ConnectionPool implements AutoCloseable {
+        private final BlockingQueue<SQLiteDatabase> idle;
+        private final List<SQLiteDatabase> all = new ArrayList<>();
+
+        ConnectionPool(String path, int size) {
+            idle = new ArrayBlockingQueue<>(size);
+            try {
+                for (int i = 0; i < size; i++) {
+                    SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+                    all.add(db);
+                    idle.add(db);
+                }
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        SQLiteDatabase acquire() {
+            try {
+                return idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a connection", e);
+            }
+        }
+
+        void release(SQLiteDatabase db) {
+            idle.add(db);
+        }
+
+        @Override
+        public void close() {
+            for (SQLiteDatabase db : all) {
+                db.close();
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.padgettanna.weighttracker;
 
-import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightRow;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
@@ -11,75 +11,199 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.tracing.Trace;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Recycler view adapter for displaying weight log entries
  * - Uses structured WeightEntry objects to support algorithmic processing.
  * - Handles clicks on rows to launch Update/Delete screen
+ * - Supports multi-select (long press to start) for batch actions
+ * - Applies list changes incrementally by diffing against the current list
+ * - Marks entries flagged as likely typos
+ * - Binds from WeightRow strings formatted off the main thread; each ViewHolder gets its
+ *   listeners once, at creation, so binding allocates nothing
+ * - Row inflation and binding show as "inflateWeightRow" and "bindWeightRow" in system traces
  */
 public class CustomAdapter extends RecyclerView.Adapter<CustomAdapter.MyViewHolder> {
-    // Data list to store weightEntry objects
-    private List<WeightEntry> weightEntries;
+
+    // Notified whenever the set of selected rows changes
+    interface SelectionListener {
+        void onSelectionChanged(int selectedCount);
+    }
+
+    // Rows are the same item if they share an id; contents change with date or weight
+    private static final DiffUtil.ItemCallback<WeightRow> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<WeightRow>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull WeightRow oldItem, @NonNull WeightRow newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull WeightRow oldItem, @NonNull WeightRow newItem) {
+                    return oldItem == newItem || oldItem.matches(newItem.getEntry());
+                }
+            };
+
+    // Holds the displayed rows and computes diffs off the main thread
+    private final AsyncListDiffer<WeightRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // Ids of rows selected for a batch action
+    private final Set<Integer> selectedIds = new LinkedHashSet<>();
+    // Ids of entries flagged as outliers by WeightAnalysisUtil.detectOutliers
+    private final Set<Integer> outlierIds = new HashSet<>();
+    private boolean selectionMode;
+    private SelectionListener selectionListener;
     // Context for launching activity
     private Context context;
     private String userEmail;
     // Reference to parent activity
     Activity activity;
 
-    // Constructor - initialize context, activity, and WeightEntries
-    CustomAdapter(Activity activity, Context context, List<WeightEntry> weightEntries, String userEmail) {
+    // Constructor - initialize context, activity, and rows
+    CustomAdapter(Activity activity, Context context, List<WeightRow> rows, String userEmail) {
         this.activity = activity;
         this.context = context;
-        this.weightEntries = weightEntries;
         this.userEmail = userEmail;
+        differ.submitList(rows);
+    }
+
+    void setSelectionListener(SelectionListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+
+    // Replaces the displayed rows; only rows that actually changed are rebound
+    void submitRows(List<WeightRow> rows) {
+        differ.submitList(rows);
+    }
+
+    // Updates the flagged entries, rebinding rows only if the flags changed
+    void setOutlierIds(Set<Integer> ids) {
+        if (outlierIds.equals(ids)) {
+            return;
+        }
+        outlierIds.clear();
+        outlierIds.addAll(ids);
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    List<Integer> getSelectedIds() {
+        return new ArrayList<>(selectedIds);
+    }
+
+    boolean isSelectionMode() {
+        return selectionMode;
+    }
+
+    // Leaves selection mode and un-highlights every selected row
+    void clearSelection() {
+        selectionMode = false;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        if (selectionListener != null) {
+            selectionListener.onSelectionChanged(0);
+        }
+    }
+
+    private void toggleSelection(int id, int position) {
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        selectionMode = true;
+        notifyItemChanged(position);
+        if (selectionListener != null) {
+            selectionListener.onSelectionChanged(selectedIds.size());
+        }
     }
 
     @NonNull
     @Override
     public MyViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        // Inflate layout for each row
-        LayoutInflater inflater = LayoutInflater.from(context);
-        View view = inflater.inflate(R.layout.wt_row, parent, false);
-        return new MyViewHolder(view);
+        Trace.beginSection("inflateWeightRow");
+        try {
+            // Inflate layout for each row
+            LayoutInflater inflater = LayoutInflater.from(context);
+            View view = inflater.inflate(R.layout.wt_row, parent, false);
+            return new MyViewHolder(view);
+        } finally {
+            Trace.endSection();
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull MyViewHolder holder, final int position) {
+        Trace.beginSection("bindWeightRow");
+        try {
+            WeightRow row = differ.getCurrentList().get(position);
+            // Bind the preformatted date and weight
+            holder.textEntryDate.setText(row.getDateText());
+            holder.textEntryValue.setText(row.getWeightText());
+            holder.itemView.setActivated(selectedIds.contains(row.getId()));
+            holder.textOutlier.setVisibility(outlierIds.contains(row.getId()) ? View.VISIBLE : View.GONE);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    // Click on a row: toggle selection, or open Update/Delete screen
+    private void onRowClicked(MyViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        WeightRow row = differ.getCurrentList().get(position);
+        if (selectionMode) {
+            toggleSelection(row.getId(), position);
+            return;
+        }
+        Intent intent = new Intent(context, UpdateDeleteActivity.class);
+        intent.putExtra("id", row.getId());
+        intent.putExtra("date", row.getDateText());
+        intent.putExtra("weight", row.getEntry().getWeight());
+        intent.putExtra("USER_EMAIL", userEmail);
+        activity.startActivityForResult(intent, 1);
+    }
 
-        WeightEntry entry = weightEntries.get(position);
-        // Bind date and weight values to text fields
-        holder.textEntryDate.setText(entry.getDate().toString());
-        holder.textEntryValue.setText(String.valueOf(entry.getWeight()));
-
-        // Click listener for each row to open Update/Delete screen
-        holder.updateLayout.setOnClickListener(v -> {
-            Intent intent = new Intent(context, UpdateDeleteActivity.class);
-            intent.putExtra("id", entry.getId());
-            intent.putExtra("date", entry.getDate().toString());
-            intent.putExtra("weight", entry.getWeight());
-            intent.putExtra("USER_EMAIL", userEmail);
-            activity.startActivityForResult(intent, 1);
-        });
+    // Long press starts (or extends) a multi-row selection
+    private void onRowLongClicked(MyViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        if (position != RecyclerView.NO_POSITION) {
+            toggleSelection(differ.getCurrentList().get(position).getId(), position);
+        }
     }
 
     @Override
     public int getItemCount() {
 
-        return weightEntries == null ? 0 : weightEntries.size();
+        return differ.getCurrentList().size();
     }
 
     // Hold references to views in each row
     public class MyViewHolder extends RecyclerView.ViewHolder {
 
-        TextView textEntryDate, textEntryValue;
+        TextView textEntryDate, textEntryValue, textOutlier;
         LinearLayout updateLayout;
         public MyViewHolder(@NonNull View itemView) {
             super(itemView);
             textEntryDate = itemView.findViewById(R.id.textEntryDate);
             textEntryValue = itemView.findViewById(R.id.textEntryValue);
+            textOutlier = itemView.findViewById(R.id.textOutlier);
             updateLayout = itemView.findViewById(R.id.updateLayout);
+
+            // Set once per holder; the row is looked up by position when clicked
+            updateLayout.setOnClickListener(v -> onRowClicked(this));
+            updateLayout.setOnLongClickListener(v -> {
+                onRowLongClicked(this);
+                return true;
+            });
         }
     }
 }
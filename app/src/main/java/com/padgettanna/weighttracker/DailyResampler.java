@@ -0,0 +1,129 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns an irregular log into one value per calendar day, so windowed averages and trends
+ * weigh time rather than weigh-ins.
+ * - Several weigh-ins on one day are averaged into that day's observation
+ * - A day with no weigh-in is filled across the gap it sits in, linearly between the
+ *   observations on either side or with the last observation carried forward
+ * - Gaps longer than maxGapDays are not filled: their days read as NaN, so a month away
+ *   is not turned into a month of invented data
+ * - Lazy: only observed days are stored, and a day's value is computed when it is read,
+ *   so a consumer reading the last week of a years-long log does a week's work.
+ *   Reads in increasing order cost O(1) each; a random read costs O(log n)
+ * Remembers its read position, so one instance is read by one thread at a time.
+ */
+final class DailyResampler {
+
+    enum Fill {
+        LINEAR,
+        LAST_OBSERVATION
+    }
+
+    // Longest gap filled by default: two weeks away still reads as a continuous series
+    static final int DEFAULT_MAX_GAP_DAYS = 14;
+
+    private final Fill fill;
+    private final int maxGapDays;
+    // Distinct observed days, ascending, and the mean value on each
+    private final long[] days;
+    private final double[] values;
+    // Observation at or before the last day read, so sequential reads do not search
+    private int cursor;
+
+    private DailyResampler(long[] days, double[] values, Fill fill, int maxGapDays) {
+        this.days = days;
+        this.values = values;
+        this.fill = fill;
+        this.maxGapDays = Math.max(1, maxGapDays);
+    }
+
+    // Resamples the entries' weights; entries must be in chronological order
+    static DailyResampler of(List<WeightEntry> entries, Fill fill, int maxGapDays) {
+        double[] weights = new double[entries.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = entries.get(i).getWeight();
+        }
+        return of(entries, weights, fill, maxGapDays);
+    }
+
+    /**
+     * Resamples values parallel to the entries, e.g. a deseasonalized series.
+     * entries must be in chronological order.
+     */
+    static DailyResampler of(List<WeightEntry> entries, double[] values, Fill fill, int maxGapDays) {
+        long[] days = new long[entries.size()];
+        double[] means = new double[entries.size()];
+        int distinct = 0;
+        int sameDay = 0;
+        for (int i = 0; i < days.length; i++) {
+            long day = entries.get(i).getDate().toEpochDay();
+            if (distinct > 0 && days[distinct - 1] == day) {
+                sameDay++;
+                means[distinct - 1] += (values[i] - means[distinct - 1]) / sameDay;
+            } else {
+                days[distinct] = day;
+                means[distinct] = values[i];
+                distinct++;
+                sameDay = 1;
+            }
+        }
+        return new DailyResampler(Arrays.copyOf(days, distinct), Arrays.copyOf(means, distinct),
+                fill, maxGapDays);
+    }
+
+    // Days from the first observation to the last, both included; 0 if there are none
+    int size() {
+        return days.length == 0 ? 0 : (int) (days[days.length - 1] - days[0] + 1);
+    }
+
+    LocalDate startDate() {
+        return LocalDate.ofEpochDay(days[0]);
+    }
+
+    /**
+     * Value on the day index days after startDate().
+     * NaN if the day falls inside a gap longer than maxGapDays.
+     */
+    double get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Day " + index + " of " + size());
+        }
+        long day = days[0] + index;
+        int before = observationAtOrBefore(day);
+        if (days[before] == day) {
+            return values[before];
+        }
+
+        int after = before + 1;
+        long gap = days[after] - days[before];
+        if (gap > maxGapDays) {
+            return Double.NaN;
+        }
+        if (fill == Fill.LAST_OBSERVATION) {
+            return values[before];
+        }
+        double fraction = (double) (day - days[before]) / gap;
+        return values[before] + fraction * (values[after] - values[before]);
+    }
+
+    // Index of the last observation on or before the day, which lies within the series
+    private int observationAtOrBefore(long day) {
+        if (days[cursor] <= day && (cursor + 1 == days.length || days[cursor + 1] > day)) {
+            return cursor;
+        }
+        if (cursor + 1 < days.length && days[cursor + 1] <= day
+                && (cursor + 2 == days.length || days[cursor + 2] > day)) {
+            return ++cursor;
+        }
+        int found = Arrays.binarySearch(days, day);
+        cursor = found >= 0 ? found : -found - 2;
+        return cursor;
+    }
+}
@@ -0,0 +1,154 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+
+import androidx.tracing.Trace;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightSegment;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a user's profile and history and computes the main screen's contents.
+ * Touches no views, so it can run on a background thread.
+ * The reads and the analysis show as "loadUserData" and "updateInsights" in system traces.
+ */
+final class DashboardLoader {
+
+    private DashboardLoader() {}
+
+    /**
+     * @param warmState the user's warm state, whose weekday effects are reused when current
+     * @param logVersion the log version read just before this load
+     */
+    static DashboardState load(WTDatabaseHelper wtDB, String email, UserWarmState warmState, long logVersion) {
+        String name;
+        String goal;
+        String current;
+        List<WeightEntry> entries;
+        Trace.beginSection("loadUserData");
+        try {
+            name = readFirst(wtDB.readUserName(email));
+            goal = readFirst(wtDB.readGoalWeight(email));
+            current = readFirst(wtDB.readCurrentWeight(email));
+            entries = wtDB.getWeightEntries(email);
+        } finally {
+            Trace.endSection();
+        }
+
+        Trace.beginSection("updateInsights");
+        try {
+            return analyze(name, goal, current, entries, warmState, logVersion);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    // The dashboard for the user's entries, in any order
+    private static DashboardState analyze(String name, String goal, String current, List<WeightEntry> entries,
+                                          UserWarmState warmState, long logVersion) {
+        if (entries.isEmpty()) {
+            return new DashboardState(name, goal, current, "--", "No data", "", System.currentTimeMillis());
+        }
+
+        if (entries.size() == 1) {
+            return new DashboardState(name, goal, current, String.valueOf(entries.get(0).getWeight()),
+                    "Not enough data", "", System.currentTimeMillis());
+        }
+
+        // Ensure chronological order
+        Collections.sort(entries,
+                (a, b) -> a.getDate().compareTo(b.getDate()));
+
+        // Leave out likely typos so one bad entry cannot skew the average or flip the trend
+        boolean[] outliers = WeightAnalysisUtil.detectOutliers(entries, WeightAnalysisUtil.OUTLIER_WINDOW);
+        List<WeightEntry> clean = WeightAnalysisUtil.withoutOutliers(entries, outliers);
+
+        // Averages of the weekday-adjusted series, so weekend bumps do not flip the trend.
+        // The weekday effects come from the warm state unless the log changed other than by appends
+        double[] adjusted = warmState.seasonality(logVersion, entries, clean).deseasonalize(clean);
+
+        // Every calendar window in one pass; the week gives the average and the short-term
+        // trend, the longer ones the windows line. Calendar windows end on the latest entry,
+        // so a gap in the log does not squeeze weeks into one window
+        MultiWindowAnalysis.Result windows =
+                MultiWindowAnalysis.analyze(clean, adjusted, 0.5, 7, 30, 90, 365);
+        double latestAvg = windows.averages[0];
+
+        // Trend detection: once there is enough recent data, only report a trend the
+        // Mann-Kendall test finds significant, with its Sen's slope
+        WeightAnalysisUtil.TrendTest test =
+                WeightAnalysisUtil.mannKendall(clean, 30, 0.05);
+        boolean significanceMode = test.sampleSize >= 8;
+        WeightAnalysisUtil.Trend trend = significanceMode
+                ? test.trend
+                : windows.trends[0];
+        String rate = significanceMode && trend != WeightAnalysisUtil.Trend.STABLE
+                ? String.format(" (%+.1f lb/wk)", test.slopePerDay * 7)
+                : "";
+
+        String trendText;
+        switch (trend) {
+            case DOWNWARD:
+                trendText = "Downward ↓" + rate;
+                break;
+            case UPWARD:
+                trendText = "Upward ↑" + rate;
+                break;
+            default:
+                // Tell a real plateau (a long flat segment) apart from short-term noise
+                List<WeightSegment> segments = ChangePointDetector.segment(clean);
+                if (ChangePointDetector.isPlateau(segments)) {
+                    long days = segments.get(segments.size() - 1).getDays();
+                    trendText = "Plateau · " + days + " days";
+                } else {
+                    trendText = "Stable →";
+                }
+        }
+
+        return new DashboardState(name, goal, current, String.format("%.1f", latestAvg),
+                trendText, formatWindows(windows, 1), System.currentTimeMillis());
+    }
+
+    // e.g. "30d 163.7 ↓ · 90d 165.0 ↓ · 365d 170.2 →" for the windows from index first on;
+    // windows without entries are skipped
+    static String formatWindows(MultiWindowAnalysis.Result windows, int first) {
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < windows.windowDays.length; i++) {
+            if (windows.counts[i] == 0) {
+                continue;
+            }
+            if (text.length() > 0) {
+                text.append(" · ");
+            }
+            String arrow;
+            switch (windows.trends[i]) {
+                case DOWNWARD:
+                    arrow = "↓";
+                    break;
+                case UPWARD:
+                    arrow = "↑";
+                    break;
+                default:
+                    arrow = "→";
+            }
+            text.append(windows.windowDays[i]).append("d ")
+                    .append(String.format("%.1f", windows.averages[i])).append(' ').append(arrow);
+        }
+        return text.toString();
+    }
+
+    // First column of the first row, or "" if there is none; closes the cursor
+    private static String readFirst(Cursor cursor) {
+        try {
+            return cursor != null && cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getString(0) : "";
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Persists the last computed dashboard per user as a small JSON string in SharedPreferences,
+ * so MainActivity can render it on cold start without touching the weight history.
+ */
+final class DashboardSnapshotStore {
+
+    static final String PREFS = "DashboardSnapshot";
+
+    private DashboardSnapshotStore() {}
+
+    // Last saved state for the user, or null if there is none or it cannot be read
+    static DashboardState load(Context context, String email) {
+        if (email == null) {
+            return null;
+        }
+        String json = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getString(email, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            JSONObject object = new JSONObject(json);
+            return new DashboardState(
+                    object.getString("name"),
+                    object.getString("goal"),
+                    object.getString("current"),
+                    object.getString("average"),
+                    object.getString("trend"),
+                    object.getString("windows"),
+                    object.getLong("computedAt"));
+        } catch (JSONException e) {
+            Log.w("DashboardSnapshot", "Ignoring unreadable snapshot", e);
+            return null;
+        }
+    }
+
+    static void save(Context context, String email, DashboardState state) {
+        if (email == null) {
+            return;
+        }
+        try {
+            String json = new JSONObject()
+                    .put("name", state.getUserName())
+                    .put("goal", state.getGoalWeight())
+                    .put("current", state.getCurrentWeight())
+                    .put("average", state.getAverageText())
+                    .put("trend", state.getTrendText())
+                    .put("windows", state.getWindowsText())
+                    .put("computedAt", state.getComputedAt())
+                    .toString();
+            context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                    .putString(email, json).apply();
+        } catch (JSONException e) {
+            Log.w("DashboardSnapshot", "Could not save snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Holds MainActivity's dashboard across configuration changes.
+ * - Starts from the saved snapshot, then recomputes it on a background thread
+ * - Recomputes only when InvalidationTracker reports the log or goal changed since the
+ *   last computation, so a rotation or a return from another screen reuses the result
+ * - Keeps each result in the user's warm state (see WarmStateCache), so switching back to a
+ *   recently used account renders its dashboard without reading the database
+ * - Feeds new entries to the user's change-point detector on the same background thread
+ */
+public class DashboardViewModel extends AndroidViewModel {
+
+    private final WTDatabaseHelper wtDB;
+    private final WeightRepository repository;
+    private final WarmStateCache warmStateCache;
+    private final MutableLiveData<DashboardState> dashboard = new MutableLiveData<>();
+    // Computes the dashboard off the main thread, one refresh at a time
+    private final ExecutorService dashboardExecutor = Executors.newSingleThreadExecutor();
+    // Incremented per refresh, so only the newest result is published
+    private final AtomicInteger refreshGeneration = new AtomicInteger();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private String userEmail;
+    private UserWarmState warmState;
+    // Table versions the published dashboard was computed from
+    private long loadedLogVersion;
+    private long loadedGoalVersion;
+
+    public DashboardViewModel(@NonNull Application application) {
+        this(application, new WTDatabaseHelper(application));
+    }
+
+    // For tests that need to observe or hold up loads
+    DashboardViewModel(@NonNull Application application, WTDatabaseHelper wtDB) {
+        super(application);
+        this.wtDB = wtDB;
+        repository = new SQLiteWeightRepository(wtDB);
+        warmStateCache = ((WeightTrackerApp) application).getWarmStateCache();
+        // Holds every read until an upgrade still migrating the database has finished
+        WeightWriteQueue writeQueue = ((WeightTrackerApp) application).getWriteQueue();
+        dashboardExecutor.execute(writeQueue::awaitOpen);
+    }
+
+    LiveData<DashboardState> getDashboard() {
+        return dashboard;
+    }
+
+    // Loads the dashboard for the user; does nothing if this model already holds it
+    void start(String email) {
+        if (userEmail != null) {
+            return;
+        }
+        userEmail = email;
+        warmState = warmStateCache.get(email);
+
+        // A recently used account whose data has not changed needs no reads at all
+        UserWarmState.Dashboard warm = warmState.currentDashboard(email);
+        if (warm != null) {
+            dashboard.setValue(warm.state);
+            loadedLogVersion = warm.logVersion;
+            loadedGoalVersion = warm.goalVersion;
+            return;
+        }
+
+        // Show the last saved dashboard right away, then bring it up to date in the background
+        DashboardState snapshot = DashboardSnapshotStore.load(getApplication(), userEmail);
+        if (snapshot != null) {
+            dashboard.setValue(snapshot);
+        }
+        markLoaded();
+        revalidate();
+    }
+
+    // Recomputes the dashboard if its tables changed since it was computed
+    void refreshIfStale() {
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        if (tracker.isStale(userEmail, WTDatabaseHelper.TABLE_LOG, loadedLogVersion)
+                || tracker.isStale(userEmail, WTDatabaseHelper.TABLE_GOAL, loadedGoalVersion)) {
+            markLoaded();
+            revalidate();
+        }
+    }
+
+    /**
+     * Runs ChangePointDetector.onWeightAdded for a committed entry in the background.
+     * changed is called on the main thread with true if the entry completes a detected change.
+     * @param logVersion the log version read right after the entry was committed
+     */
+    void detectChange(LocalDate date, int weight, long logVersion, Consumer<Boolean> changed) {
+        String email = userEmail;
+        UserWarmState userState = warmState;
+        dashboardExecutor.execute(() -> {
+            boolean result = ChangePointDetector.onWeightAdded(repository, userState, email,
+                    date, weight, logVersion);
+            mainHandler.post(() -> changed.accept(result));
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        mainHandler.removeCallbacksAndMessages(null);
+        dashboardExecutor.shutdown();
+    }
+
+    // Records the versions about to be read, so a write racing the query triggers another refresh
+    private void markLoaded() {
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        loadedLogVersion = tracker.getVersion(userEmail, WTDatabaseHelper.TABLE_LOG);
+        loadedGoalVersion = tracker.getVersion(userEmail, WTDatabaseHelper.TABLE_GOAL);
+    }
+
+    // Computes the dashboard in the background, saves it as the new snapshot and warm state,
+    // and publishes it
+    private void revalidate() {
+        int generation = refreshGeneration.incrementAndGet();
+        String email = userEmail;
+        UserWarmState userState = warmState;
+        long logVersion = loadedLogVersion;
+        long goalVersion = loadedGoalVersion;
+        dashboardExecutor.execute(() -> {
+            DashboardState state = DashboardLoader.load(wtDB, email, userState, logVersion);
+            DashboardSnapshotStore.save(getApplication(), email, state);
+            if (generation == refreshGeneration.get()) {
+                userState.setDashboard(new UserWarmState.Dashboard(state, logVersion, goalVersion));
+                dashboard.postValue(state);
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.padgettanna.weighttracker;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Tracks which tables changed for which user so screens re-query only when needed.
+ * - Every committed write bumps a per-user, per-table version immediately
+ * - Observers are notified on the main thread, with bursts of writes coalesced
+ *   into a single callback per user
+ * - Screens remember the versions they rendered and compare them with isStale()
+ */
+class InvalidationTracker {
+
+    // Writes arriving within this window are delivered as one notification
+    static final long COALESCE_WINDOW_MS = 50;
+
+    interface Observer {
+        // Called on the main thread with every table changed for the user since the last call
+        void onInvalidated(String email, Set<String> tables);
+    }
+
+    private static InvalidationTracker instance;
+
+    private final Map<String, Long> versions = new HashMap<>();
+    private final Map<String, Set<String>> pending = new HashMap<>();
+    private final Set<Observer> observers = new CopyOnWriteArraySet<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean dispatchScheduled;
+
+    static synchronized InvalidationTracker getInstance() {
+        if (instance == null) {
+            instance = new InvalidationTracker();
+        }
+        return instance;
+    }
+
+    // Package-private so tests can start from a tracker with no pending dispatch
+    InvalidationTracker() {}
+
+    void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    // Current version of a user's table; 0 if it was never written in this process
+    synchronized long getVersion(String email, String table) {
+        Long version = versions.get(key(email, table));
+        return version == null ? 0 : version;
+    }
+
+    // True if the table changed after the given version was read
+    boolean isStale(String email, String table, long renderedVersion) {
+        return getVersion(email, table) != renderedVersion;
+    }
+
+    /**
+     * Records a committed write. Safe to call from any thread; the version is bumped
+     * right away and observers are notified once the coalescing window has passed.
+     */
+    void notifyWrite(String email, String... tables) {
+        if (email == null || tables.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            Set<String> changed = pending.get(email);
+            if (changed == null) {
+                changed = new HashSet<>();
+                pending.put(email, changed);
+            }
+            for (String table : tables) {
+                String key = key(email, table);
+                Long version = versions.get(key);
+                versions.put(key, version == null ? 1 : version + 1);
+                changed.add(table);
+            }
+            if (dispatchScheduled) {
+                return;
+            }
+            dispatchScheduled = true;
+        }
+        mainHandler.postDelayed(this::dispatch, COALESCE_WINDOW_MS);
+    }
+
+    private void dispatch() {
+        Map<String, Set<String>> batch;
+        synchronized (this) {
+            batch = new HashMap<>(pending);
+            pending.clear();
+            dispatchScheduled = false;
+        }
+        for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+            for (Observer observer : observers) {
+                observer.onInvalidated(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static String key(String email, String table) {
+        return email + "|" + table;
+    }
+}
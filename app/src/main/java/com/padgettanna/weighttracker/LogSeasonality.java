@@ -0,0 +1,61 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The weekday effects of a user's log, kept in UserWarmState so a refresh does not
+ * replay the whole history through WeeklySeasonality.build.
+ * - Built from a chronological log and its outlier-free entries, as the screens analyze it
+ * - append() takes a newly added entry in O(1): the log's last OUTLIER_WINDOW - 1 entries
+ *   are kept, so the entry is flagged exactly as detectOutliers would flag it, and only a
+ *   clean entry reaches the seasonality
+ * - Immutable; append() returns an updated copy
+ */
+final class LogSeasonality {
+
+    private final WeeklySeasonality seasonality;
+    // Latest entries of the log, oldest first
+    private final List<WeightEntry> tail;
+
+    // chronological is the whole log; clean is it without detectOutliers' flagged entries
+    LogSeasonality(List<WeightEntry> chronological, List<WeightEntry> clean) {
+        this(WeeklySeasonality.build(clean), chronological);
+    }
+
+    private LogSeasonality(WeeklySeasonality seasonality, List<WeightEntry> latest) {
+        this.seasonality = seasonality;
+        int keep = Math.min(WeightAnalysisUtil.OUTLIER_WINDOW - 1, latest.size());
+        this.tail = Collections.unmodifiableList(
+                new ArrayList<>(latest.subList(latest.size() - keep, latest.size())));
+    }
+
+    /**
+     * The state with a newly added entry appended.
+     * @return null if the entry is dated before the log's latest one, which needs a rebuild
+     */
+    LogSeasonality append(LocalDate date, int weight) {
+        if (!tail.isEmpty() && date.isBefore(tail.get(tail.size() - 1).getDate())) {
+            return null;
+        }
+        // Ids play no part in the flags or the effects
+        List<WeightEntry> window = new ArrayList<>(tail);
+        window.add(new WeightEntry(0, date, weight));
+        boolean[] outliers = WeightAnalysisUtil.detectOutliers(window, WeightAnalysisUtil.OUTLIER_WINDOW);
+
+        WeeklySeasonality next = seasonality.copy();
+        if (!outliers[outliers.length - 1]) {
+            next.add(window.get(window.size() - 1));
+        }
+        return new LogSeasonality(next, window);
+    }
+
+    // See WeeklySeasonality.deseasonalize
+    double[] deseasonalize(List<WeightEntry> entries) {
+        return seasonality.deseasonalize(entries);
+    }
+}
@@ -76,37 +76,8 @@ public class LoginActivity extends AppCompatActivity {
         loginButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                // Get user input
-                String email = emailEditText.getText().toString();
-                String password = passwordEditText.getText().toString();
-
-                // Search for user email in the database
-                Cursor cursor  = wtDB.authenticateUser(email);
-                String databasePassword;
-
-                // Check if account exists
-                if (cursor.getCount() == 0) {
-                    Toast.makeText(getApplicationContext(), "Account not found", Toast.LENGTH_SHORT).show();
-                }
-                else {
-                    cursor.moveToNext();
-                    databasePassword = cursor.getString(0);
-
-                    // Compare entered password matches the one in the database
-                    if (password.equals(databasePassword)) {
-                        // Save user email in SharedPreferences
-                        getSharedPreferences("UserPreferences", MODE_PRIVATE).edit()
-                                .putString("USER_EMAIL", email).apply();
-                        // Launch MainActivity
-                        Intent intent = new Intent(LoginActivity.this, MainActivity.class);
-                        intent.putExtra("USER_EMAIL", email); // pass user email to MainActivity
-                        startActivity(intent);
-                    }
-                    else {
-                        Toast.makeText(getApplicationContext(), "Incorrect password. Try again", Toast.LENGTH_SHORT).show();
-                    }
-                    cursor.close();
-                }
+                // Waits if an upgrade is still migrating the database
+                ((WeightTrackerApp) getApplication()).whenDatabaseReady(LoginActivity.this, LoginActivity.this::logIn);
             }
         });
 
@@ -123,22 +94,72 @@ public class LoginActivity extends AppCompatActivity {
         guestAccessButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                String guestEmail = "guest@guest.com";
-                // Check if guest account exists in the database
-                Cursor cursor = wtDB.authenticateUser(guestEmail);
-                // If guest account does not exist in the database, create one with default values
-                if (cursor == null || cursor.getCount() == 0) {
-                    wtDB.addUser("Guest", guestEmail, "");
-                    wtDB.setGoalWeight(100, guestEmail);
-                }
-                // Launch MainActivity when continue as guest button is pressed
-                Intent intent = new Intent(LoginActivity.this, MainActivity.class);
+                ((WeightTrackerApp) getApplication()).whenDatabaseReady(LoginActivity.this,
+                        LoginActivity.this::continueAsGuest);
+            }
+        });
+    }
+
+    // Checks the entered email and password and opens the main screen on a match
+    private void logIn() {
+        // Get user input
+        String email = emailEditText.getText().toString();
+        String password = passwordEditText.getText().toString();
+
+        // Search for user email in the database
+        Cursor cursor  = wtDB.authenticateUser(email);
+        String databasePassword;
+
+        // Check if account exists
+        if (cursor.getCount() == 0) {
+            Toast.makeText(getApplicationContext(), "Account not found", Toast.LENGTH_SHORT).show();
+        }
+        else {
+            cursor.moveToNext();
+            databasePassword = cursor.getString(0);
+
+            // Compare entered password matches the one in the database
+            if (password.equals(databasePassword)) {
                 // Save user email in SharedPreferences
                 getSharedPreferences("UserPreferences", MODE_PRIVATE).edit()
-                        .putString("USER_EMAIL", guestEmail).apply();
-                intent.putExtra("USER_EMAIL", guestEmail); // pass user email to MainActivity
+                        .putString("USER_EMAIL", email).apply();
+                // Launch MainActivity
+                Intent intent = new Intent(LoginActivity.this, MainActivity.class);
+                intent.putExtra("USER_EMAIL", email); // pass user email to MainActivity
+                ScreenTimings.markNavigation();
                 startActivity(intent);
             }
-        });
+            else {
+                Toast.makeText(getApplicationContext(), "Incorrect password. Try again", Toast.LENGTH_SHORT).show();
+            }
+            cursor.close();
+        }
+    }
+
+    // Opens the main screen for the guest account, creating it on first use
+    private void continueAsGuest() {
+        String guestEmail = "guest@guest.com";
+        // A guest dashboard still warm in this process means the account exists
+        WarmStateCache warmStateCache = ((WeightTrackerApp) getApplication()).getWarmStateCache();
+        if (!warmStateCache.hasCurrentDashboard(guestEmail)) {
+            // Check if guest account exists in the database
+            Cursor cursor = wtDB.authenticateUser(guestEmail);
+            // If guest account does not exist in the database, create one with default values
+            if (cursor == null || cursor.getCount() == 0) {
+                wtDB.addUser("Guest", guestEmail, "");
+                wtDB.setGoalWeight(100, guestEmail);
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        // Launch MainActivity when continue as guest button is pressed
+        Intent intent = new Intent(LoginActivity.this, MainActivity.class);
+        // Save user email in SharedPreferences
+        getSharedPreferences("UserPreferences", MODE_PRIVATE).edit()
+                .putString("USER_EMAIL", guestEmail).apply();
+        intent.putExtra("USER_EMAIL", guestEmail); // pass user email to MainActivity
+        ScreenTimings.markNavigation();
+        startActivity(intent);
     }
 }
\ No newline at end of file
@@ -3,12 +3,12 @@ package com.padgettanna.weighttracker;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.telephony.SmsManager;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
@@ -16,22 +16,32 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 
-import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.DashboardState;
 
+import java.io.File;
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * Main screen for the Weight Tracker app.
  * - Displays greeting, current and goal weight
  * - Allows user to add new weight, or update their goal weight
  * - Allows to navigate to the weight log activity
- * - Sends SMS notifications if the user reaches their goal weight after requesting permission
+ * - Asks for SMS permission when the user reaches their goal weight; the message itself is
+ *   queued with the entry and sent in the background by NotificationDispatcher
+ * - Re-queries only when InvalidationTracker reports that the data it rendered changed
+ * - Renders the last saved dashboard snapshot immediately, then recomputes it on a
+ *   background thread (stale-while-revalidate), so startup does not depend on history size
+ * - Keeps the dashboard in DashboardViewModel, so a rotation renders it without re-querying
+ * - Options menu toggles one-entry-per-day mode, where a second weigh-in replaces the day's entry
+ * - Options menu saves or restores the app's backup file, on the write queue's thread
+ * - New weights go through the app's WeightWriteQueue, so rapid entries share a transaction
+ * - Reports itself fully drawn (ScreenTimings) once the first dashboard is rendered
  */
 public class MainActivity extends AppCompatActivity {
     private static final int MY_PERMISSIONS_REQUEST_SEND_SMS = 1;
@@ -45,11 +55,26 @@ public class MainActivity extends AppCompatActivity {
     private TextView currentWeightValueText;
     private TextView rollingAverageText;
     private TextView trendText;
+    private TextView longerWindowsText;
 
-    // Database helper
+    // Database helper, for settings that are specific to the SQLite schema
     private WTDatabaseHelper wtDB;
+    // Weight and goal storage
+    private WeightRepository repository;
+    // Shared queue that batches new weight entries into transactions
+    private WeightWriteQueue writeQueue;
     // User email passed from login activity
     private String userEmail;
+    // Loads the dashboard in the background and keeps it across configuration changes
+    private DashboardViewModel dashboardViewModel;
+    // Set once the first dashboard has been rendered and reported as fully drawn
+    private boolean fullyDrawnReported;
+    // Refreshes the screen when another screen or a sync changes this user's data
+    private final InvalidationTracker.Observer invalidationObserver = (email, tables) -> {
+        if (email.equals(userEmail)) {
+            dashboardViewModel.refreshIfStale();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -75,9 +100,12 @@ public class MainActivity extends AppCompatActivity {
         currentWeightValueText = findViewById(R.id.textCurrentValue);
         rollingAverageText = findViewById(R.id.textRollingAverage);
         trendText = findViewById(R.id.textTrend);
+        longerWindowsText = findViewById(R.id.textLongerWindows);
 
         // Initialize database helper
         wtDB = new WTDatabaseHelper(MainActivity.this);
+        repository = new SQLiteWeightRepository(wtDB);
+        writeQueue = ((WeightTrackerApp) getApplication()).getWriteQueue();
 
         // If user email was not passed via intent, retrieve from shared preferences
         if (userEmail == null) {
@@ -86,9 +114,10 @@ public class MainActivity extends AppCompatActivity {
             Log.d("Main Activity", "Updated email: " + userEmail);
         }
 
-        // Load user's profile and weight data from the database
-        loadUserData();
-        updateInsights();
+        // Shows the saved snapshot first on a cold start, the held dashboard after a rotation
+        dashboardViewModel = new ViewModelProvider(this).get(DashboardViewModel.class);
+        dashboardViewModel.start(userEmail);
+        dashboardViewModel.getDashboard().observe(this, this::renderDashboard);
 
         // Disable save buttons
         saveButton.setEnabled(false);
@@ -135,26 +164,16 @@ public class MainActivity extends AppCompatActivity {
                     int goalWt = Integer.parseInt(goalWeight);
                     LocalDate todayDate = LocalDate.now();
 
-                    // Add new weight to database with today's date
-                    boolean success = wtDB.addWeight(todayDate.toString(), currentWt, userEmail);
-
-                    if (!success) { Toast.makeText(MainActivity.this, "Weight must be between 50 and 999.", Toast.LENGTH_LONG).show();
-                        return;
-                    }
-
-                    // Update current weight field, average, and trend
-                    refreshCurrentWeight();
-                    updateInsights();
-
-                    // Hide input field and save button
-                    newWeightEditText.setText("");
-                    newWeightEditText.setVisibility(View.GONE);
-                    saveButton.setVisibility(View.GONE);
-
-                    // Send message if goal weight achieved
-                    if (currentWt <= goalWt) {
-                        sendSMSMessage();
-                    }
+                    // Queued, so a burst of quick entries commits as a single transaction
+                    // The log version is read on the commit thread, right after the entry's batch
+                    // committed, so the change-point detector can tell whether anything else was
+                    // written since; 0 (never a version after a write) marks a rejected entry
+                    writeQueue.addWeight(todayDate.toString(), currentWt, userEmail)
+                            .thenApply(success -> success ? InvalidationTracker.getInstance()
+                                    .getVersion(userEmail, WTDatabaseHelper.TABLE_LOG) : 0L)
+                            .whenCompleteAsync((logVersion, error) ->
+                                            onWeightSaved(logVersion, error, todayDate, currentWt, goalWt),
+                                    ContextCompat.getMainExecutor(MainActivity.this));
                 }
             }
         });
@@ -198,20 +217,24 @@ public class MainActivity extends AppCompatActivity {
                         return;
                     }
 
-                    boolean success = wtDB.setGoalWeight(goalWt, userEmail);
+                    // Waits if an upgrade is still migrating the database
+                    ((WeightTrackerApp) getApplication()).whenDatabaseReady(MainActivity.this, () -> {
+                        boolean success = repository.setGoalWeight(goalWt, userEmail);
 
-                    if (!success) {
-                        Toast.makeText(MainActivity.this, "Goal weight must be between 50 and 999.", Toast.LENGTH_LONG).show();
-                        return; // stay on screen
-                    }
+                        if (!success) {
+                            Toast.makeText(MainActivity.this, "Goal weight must be between 50 and 999.", Toast.LENGTH_LONG).show();
+                            return; // stay on screen
+                        }
 
-                    // Only update UI if DB write succeeded
-                    goalWeightValueText.setText(String.valueOf(goalWt));
+                        // Only update UI if DB write succeeded
+                        goalWeightValueText.setText(String.valueOf(goalWt));
+                        dashboardViewModel.refreshIfStale();
 
-                    // Hide input field and save button
-                    newGoalWeightEditText.setText("");
-                    newGoalWeightEditText.setVisibility(View.GONE);
-                    saveGoalButton.setVisibility(View.GONE);
+                        // Hide input field and save button
+                        newGoalWeightEditText.setText("");
+                        newGoalWeightEditText.setVisibility(View.GONE);
+                        saveGoalButton.setVisibility(View.GONE);
+                    });
                 }
             }
         });
@@ -223,137 +246,186 @@ public class MainActivity extends AppCompatActivity {
                 // Launch WTLog activity
                 Intent intent = new Intent(MainActivity.this, WTLogActivity.class);
                 intent.putExtra("USER_EMAIL", userEmail); // pass user email to WTLogActivity
+                ScreenTimings.markNavigation();
                 startActivity(intent);
             }
         });
     }
 
-    // Loads user data from the database, updates TextViews on the screen
-    private void loadUserData() {
-        // Load user's name
-        Cursor cursorName  = wtDB.readUserName(userEmail);
-        if(cursorName.moveToNext()) {
-            String userName = cursorName.getString(0);
-            greetingText.setText("Hello, " + userName + "!");
-        }
-        cursorName.close();
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        // Read on the write thread, which also applies the toggle, so the check mark follows it
+        MenuItem oneEntryPerDay = menu.findItem(R.id.actionOneEntryPerDay);
+        writeQueue.submit(wtDB::isOneEntryPerDay)
+                .thenAcceptAsync(oneEntryPerDay::setChecked, ContextCompat.getMainExecutor(this));
+        return true;
+    }
 
-        // Load user's goal weight
-        Cursor cursorGoalWeight  = wtDB.readGoalWeight(userEmail);
-        if(cursorGoalWeight.moveToNext()) {
-            String goalFromDB = cursorGoalWeight.getString(0);
-            goalWeightValueText.setText(goalFromDB);
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.actionBackUp) {
+            backUp();
+            return true;
         }
-        cursorGoalWeight.close();
-
-        // Load user's current weight if available
-        Cursor cursorCurrentWeight  = wtDB.readCurrentWeight(userEmail);
-        if (cursorCurrentWeight != null && cursorCurrentWeight.getCount() > 0) {
-            cursorCurrentWeight.moveToNext();
-            String weightFromDB = cursorCurrentWeight.getString(0);
-            currentWeightValueText.setText(weightFromDB);
-            unitsText.setVisibility(View.VISIBLE);
+        if (item.getItemId() == R.id.actionRestoreBackup) {
+            confirmRestore();
+            return true;
         }
-        else {
-            Log.i("Main Activity", "No weight entries found for the user");
+        if (item.getItemId() != R.id.actionOneEntryPerDay) {
+            return super.onOptionsItemSelected(item);
         }
-        if (cursorCurrentWeight != null) {
-            cursorCurrentWeight.close();
+        if (item.isChecked()) {
+            setOneEntryPerDay(item, false);
+            return true;
         }
+        // Turning the mode on removes all but the latest entry of each day, so confirm first
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.one_entry_per_day)
+                .setMessage("Days with several entries will keep only the latest one. Continue?")
+                .setPositiveButton("Yes", (dialog, which) -> setOneEntryPerDay(item, true))
+                .setNegativeButton("No", null)
+                .show();
+        return true;
+    }
+
+    // Switches the mode on the write thread, after any entries still queued, as turning it on
+    // rewrites the whole log
+    private void setOneEntryPerDay(MenuItem item, boolean enabled) {
+        writeQueue.submit(() -> {
+            wtDB.setOneEntryPerDay(enabled);
+            return null;
+        }).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Log.w("Main Activity", "Could not change one-entry-per-day mode", error);
+                Toast.makeText(MainActivity.this, "Could not change the setting.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            item.setChecked(enabled);
+        }, ContextCompat.getMainExecutor(MainActivity.this));
     }
 
-    // Refresh current weight when returning from another activity
+    // Writes the backup file after any entries still queued
+    private void backUp() {
+        File file = new File(getFilesDir(), WTBackupFormat.FILE_NAME);
+        writeQueue.submit(() -> new WTBackupWriter(wtDB).writeReplacing(file))
+                .whenCompleteAsync((size, error) -> {
+                    if (error != null) {
+                        Log.w("Main Activity", "Backup failed", error);
+                    }
+                    Toast.makeText(MainActivity.this, error == null ? "Backup saved." : "Could not save backup.",
+                            Toast.LENGTH_SHORT).show();
+                }, ContextCompat.getMainExecutor(MainActivity.this));
+    }
+
+    // A restore replaces every backed-up user's data, so confirm first
+    private void confirmRestore() {
+        File file = new File(getFilesDir(), WTBackupFormat.FILE_NAME);
+        if (!file.isFile()) {
+            Toast.makeText(this, "No backup found.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.restore_backup)
+                .setMessage("Entries and goals saved since the backup will be replaced. Continue?")
+                .setPositiveButton("Yes", (dialog, which) ->
+                        writeQueue.submit(() -> new WTBackupRestorer(wtDB).restore(file))
+                                .whenCompleteAsync((restored, error) -> {
+                                    if (error != null) {
+                                        Log.w("Main Activity", "Restore failed", error);
+                                    }
+                                    Toast.makeText(MainActivity.this, error == null
+                                                    ? "Restored " + restored + " entries."
+                                                    : "Backup could not be restored.",
+                                            Toast.LENGTH_SHORT).show();
+                                }, ContextCompat.getMainExecutor(MainActivity.this)))
+                .setNegativeButton("No", null)
+                .show();
+    }
+
+    // Refresh when returning from another activity, but only if the data changed meanwhile
     @Override
     protected void onResume() {
         super.onResume();
-        refreshCurrentWeight();
-        updateInsights();
+        InvalidationTracker.getInstance().addObserver(invalidationObserver);
+        dashboardViewModel.refreshIfStale();
     }
 
-    // Retrieves latest weight entry from the database
-    private void refreshCurrentWeight() {
-        Cursor cursorCurrentWeight = wtDB.readCurrentWeight(userEmail);
+    @Override
+    protected void onPause() {
+        super.onPause();
+        InvalidationTracker.getInstance().removeObserver(invalidationObserver);
+    }
 
-        if (cursorCurrentWeight != null && cursorCurrentWeight.getCount() > 0) {
-            cursorCurrentWeight.moveToNext();
-            currentWeightValueText.setText(cursorCurrentWeight.getString(0));
-            unitsText.setVisibility(View.VISIBLE);
+    private void renderDashboard(DashboardState state) {
+        if (!state.getUserName().isEmpty()) {
+            greetingText.setText("Hello, " + state.getUserName() + "!");
         }
-        else {
-            currentWeightValueText.setText("");
-            unitsText.setVisibility(View.GONE);
-        }
-        if (cursorCurrentWeight != null) {
-            cursorCurrentWeight.close();
+        goalWeightValueText.setText(state.getGoalWeight());
+        currentWeightValueText.setText(state.getCurrentWeight());
+        unitsText.setVisibility(state.getCurrentWeight().isEmpty() ? View.GONE : View.VISIBLE);
+        rollingAverageText.setText(state.getAverageText());
+        trendText.setText(state.getTrendText());
+        longerWindowsText.setText(state.getWindowsText());
+        if (!fullyDrawnReported) {
+            fullyDrawnReported = true;
+            ScreenTimings.reportFullyDrawn(this);
         }
     }
 
-    private void updateInsights() {
-        List<WeightEntry> entries = wtDB.getWeightEntries(userEmail);
-        if (entries.isEmpty()) {
-            rollingAverageText.setText("--");
-            trendText.setText("No data");
+    // Runs on the main thread once the queued entry has been committed or rejected
+    private void onWeightSaved(Long logVersion, Throwable error, LocalDate date, int weight, int goalWt) {
+        if (isDestroyed()) {
             return;
         }
-
-        if (entries.size() == 1) {
-            rollingAverageText.setText(String.valueOf(entries.get(0).getWeight()));
-            trendText.setText("Not enough data");
+        if (error != null) {
+            Toast.makeText(MainActivity.this, "Could not save weight.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (logVersion == 0) {
+            Toast.makeText(MainActivity.this, "Weight must be between 50 and 999.", Toast.LENGTH_LONG).show();
             return;
         }
 
-        // Ensure chronological order
-        Collections.sort(entries,
-                (a, b) -> a.getDate().compareTo(b.getDate()));
-
-        // Rolling averages
-        List<Double> averages =
-                WeightAnalysisUtil.rollingAverage(entries, 7);
-
-        double latestAvg = averages.get(averages.size() - 1);
-        rollingAverageText.setText(String.format("%.1f", latestAvg));
-
-        // Trend detection
-        WeightAnalysisUtil.Trend trend =
-                WeightAnalysisUtil.detectTrend(averages, 0.5);
-
-        switch (trend) {
-            case DOWNWARD:
-                trendText.setText("Downward ↓");
-                break;
-            case UPWARD:
-                trendText.setText("Upward ↑");
-                break;
-            default:
-                trendText.setText("Stable →");
+        // Checks in the background whether this entry starts a new phase (a stall or a new rate).
+        // Queued before the refresh, which then finds the entry already in the warm weekday effects
+        dashboardViewModel.detectChange(date, weight, logVersion, changed -> {
+            if (changed && !isDestroyed()) {
+                Toast.makeText(MainActivity.this, "Your weight trend just changed.", Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        // Update current weight field, average, and trend
+        dashboardViewModel.refreshIfStale();
+
+        // Hide input field and save button
+        newWeightEditText.setText("");
+        newWeightEditText.setVisibility(View.GONE);
+        saveButton.setVisibility(View.GONE);
+
+        // The goal-reached message was queued with the entry; make sure it can be sent
+        if (weight <= goalWt) {
+            requestSmsPermission();
         }
     }
 
-    // Send SMS when goal weight is reached
-    private void sendSMSMessage() {
-        // SMS info
-        String phoneNumber = "11111111111";
-        String message = "Congratulations! You have reached your goal weight!";
-        try {
-            // Check if permission is granted
-            if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
-                    != PackageManager.PERMISSION_GRANTED) {
-                // Request permission
-                ActivityCompat.requestPermissions(this,
-                        new String[]{Manifest.permission.SEND_SMS},
-                        MY_PERMISSIONS_REQUEST_SEND_SMS);
-            } else {
-                // Send SMS
-                SmsManager smsManager = SmsManager.getDefault();
-                smsManager.sendTextMessage(phoneNumber, null, message, null, null);
-                // Notify user
-                Toast.makeText(getApplicationContext(), "SMS Sent!", Toast.LENGTH_LONG).show();
-                Log.i("Weight Tracker SMS", "SMS sent to " + phoneNumber + " with message: " + message);
-            }
-        } catch (Exception e) {
-            // Handle errors
-            Toast.makeText(getApplicationContext(), "SMS failed to send.", Toast.LENGTH_LONG).show();
-            Log.e("Weight Tracker SMS", "SMS failed to send to " + phoneNumber, e);
+    // Asks once for the permission SmsNotificationSender needs
+    private void requestSmsPermission() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.SEND_SMS},
+                    MY_PERMISSIONS_REQUEST_SEND_SMS);
+        }
+    }
+
+    // Sends the waiting goal notification right away instead of at its next retry
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == MY_PERMISSIONS_REQUEST_SEND_SMS && grantResults.length > 0
+                && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            ((WeightTrackerApp) getApplication()).getNotificationDispatcher().dispatch();
         }
     }
-}
\ No newline at end of file
+}
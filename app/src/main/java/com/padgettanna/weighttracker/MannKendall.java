@@ -0,0 +1,193 @@
+package com.padgettanna.weighttracker;
+
+import java.util.Arrays;
+
+/**
+ * Mann-Kendall trend test and Sen's slope in O(n log n) time.
+ * - S is derived from the number of inversions, counted with a merge sort,
+ *   instead of comparing all n² pairs
+ * - Sen's slope (median pairwise slope) is selected by bisecting on the slope value:
+ *   the pairs with slope below s are exactly the inversions of x - s·t in time order,
+ *   so each probe is another O(n log n) inversion count
+ * Inputs are parallel arrays in chronological order: t in days, x in pounds.
+ * S counts every pair while Sen's slope skips same-day pairs, so callers pass at most
+ * one value per day (WeightAnalysisUtil.mannKendall averages each day's entries).
+ */
+final class MannKendall {
+
+    // Sen's slope is resolved to this many pounds per day
+    private static final double SLOPE_PRECISION = 1e-9;
+
+    private MannKendall() {}
+
+    /**
+     * Mann-Kendall S = (pairs that increase) - (pairs that decrease), in time order.
+     */
+    static long statistic(double[] x) {
+        long n = x.length;
+        long pairs = n * (n - 1) / 2;
+        long decreasing = countInversions(x);
+        long tied = 0;
+        for (long t : tieGroupSizes(x)) {
+            tied += t * (t - 1) / 2;
+        }
+        return pairs - tied - 2 * decreasing;
+    }
+
+    /**
+     * Variance of S under the no-trend hypothesis, corrected for tied values.
+     */
+    static double variance(double[] x) {
+        double n = x.length;
+        double variance = n * (n - 1) * (2 * n + 5);
+        for (long t : tieGroupSizes(x)) {
+            variance -= (double) t * (t - 1) * (2 * t + 5);
+        }
+        return variance / 18.0;
+    }
+
+    // Normal approximation with continuity correction
+    static double zScore(long s, double variance) {
+        if (s == 0 || variance <= 0) {
+            return 0;
+        }
+        return (s > 0 ? s - 1 : s + 1) / Math.sqrt(variance);
+    }
+
+    // Two-sided p-value for a standard normal z
+    static double pValue(double z) {
+        return Math.min(1.0, erfc(Math.abs(z) / Math.sqrt(2)));
+    }
+
+    /**
+     * Median of (x[j] - x[i]) / (t[j] - t[i]) over all pairs with t[i] < t[j].
+     * Returns NaN if every point falls on the same day.
+     */
+    static double senSlope(int[] t, double[] x) {
+        int n = x.length;
+        // Order by time, then weight, so same-day pairs are never counted as inversions
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> t[a] != t[b] ? Integer.compare(t[a], t[b]) : Double.compare(x[a], x[b]));
+        int[] days = new int[n];
+        double[] weights = new double[n];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            // Relative days keep x - s·t well within double precision
+            days[i] = t[order[i]] - t[order[0]];
+            weights[i] = x[order[i]];
+            min = Math.min(min, weights[i]);
+            max = Math.max(max, weights[i]);
+        }
+
+        long pairs = (long) n * (n - 1) / 2;
+        for (long group : tieGroupSizes(toDoubles(days))) {
+            pairs -= group * (group - 1) / 2;
+        }
+        if (pairs == 0) {
+            return Double.NaN;
+        }
+
+        // Days are whole numbers, so every slope lies strictly inside the full weight range per day
+        double bound = max - min + 1;
+        if (pairs % 2 == 1) {
+            return selectSlope(days, weights, (pairs + 1) / 2, bound);
+        }
+        return (selectSlope(days, weights, pairs / 2, bound)
+                + selectSlope(days, weights, pairs / 2 + 1, bound)) / 2;
+    }
+
+    // k-th smallest pairwise slope (1-based): the largest s with fewer than k slopes below it
+    private static double selectSlope(int[] days, double[] weights, long k, double bound) {
+        double lo = -bound;
+        double hi = bound;
+        double[] y = new double[days.length];
+        while (hi - lo > SLOPE_PRECISION) {
+            double mid = (lo + hi) / 2;
+            if (countSlopesBelow(days, weights, mid, y) < k) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    // Pairs with t[i] < t[j] whose slope is below s: those with x[i] - s·t[i] > x[j] - s·t[j]
+    private static long countSlopesBelow(int[] days, double[] weights, double s, double[] y) {
+        for (int i = 0; i < days.length; i++) {
+            y[i] = weights[i] - s * days[i];
+        }
+        return countInversions(y);
+    }
+
+    // Number of pairs i < j with values[i] > values[j]; sorts a copy by merge sort
+    static long countInversions(double[] values) {
+        double[] a = values.clone();
+        double[] buffer = new double[a.length];
+        long inversions = 0;
+        for (int width = 1; width < a.length; width *= 2) {
+            for (int left = 0; left < a.length - width; left += 2 * width) {
+                int mid = left + width;
+                int right = Math.min(left + 2 * width, a.length);
+                int i = left;
+                int j = mid;
+                int k = left;
+                while (i < mid && j < right) {
+                    if (a[j] < a[i]) {
+                        // a[j] is smaller than every remaining element of the left run
+                        inversions += mid - i;
+                        buffer[k++] = a[j++];
+                    } else {
+                        buffer[k++] = a[i++];
+                    }
+                }
+                while (i < mid) {
+                    buffer[k++] = a[i++];
+                }
+                while (j < right) {
+                    buffer[k++] = a[j++];
+                }
+                System.arraycopy(buffer, left, a, left, right - left);
+            }
+        }
+        return inversions;
+    }
+
+    // Sizes of the groups of equal values (groups of one included)
+    private static long[] tieGroupSizes(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long[] groups = new long[sorted.length];
+        int count = 0;
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            groups[count++] = j - i;
+            i = j;
+        }
+        return Arrays.copyOf(groups, count);
+    }
+
+    private static double[] toDoubles(int[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    // Complementary error function (Numerical Recipes erfcc), relative error below 1.2e-7
+    private static double erfc(double z) {
+        double t = 1.0 / (1.0 + 0.5 * Math.abs(z));
+        double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return z >= 0 ? ans : 2.0 - ans;
+    }
+}
@@ -0,0 +1,409 @@
+package com.padgettanna.weighttracker;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WeightRepository storing each user's series in its own memory-mapped, append-only file.
+ * Layout (big-endian ints):
+ * - 24-byte header: magic, format version, committed record count, goal weight (0 = none),
+ *   next entry id, reserved
+ * - 16-byte records: entry id, epoch day, weight, flags
+ * Adds and updates append a record for the entry id, deletes append a tombstone; the last
+ * record for an id wins. A record counts only once the header's record count covers it, so
+ * a write cut short leaves the previous state intact: the record is forced to storage before
+ * the count is bumped, and the count right after. A file too short for its count is rejected. Once superseded records and tombstones
+ * outnumber live entries, the live records are rewritten to a new file that replaces the old
+ * one. Mapped writes survive the process being killed; close() also forces them to storage.
+ */
+final class MappedWeightRepository implements WeightRepository, Closeable {
+
+    private static final String TAG = "MappedWeightRepository";
+    private static final int MAGIC = 0x57544C47; // "WTLG"
+    private static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int RECORD_BYTES = 16;
+    private static final int FLAG_TOMBSTONE = 1;
+    private static final int INITIAL_RECORDS = 256;
+    // Smaller logs are never compacted; rewriting them would save almost nothing
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    private final File directory;
+    private final Map<String, UserLog> logs = new HashMap<>();
+
+    MappedWeightRepository(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized boolean addWeight(String date, int weight, String email) {
+        if (!WTDatabaseHelper.isValidWeight(weight) || !WTDatabaseHelper.isValidDate(date)) {
+            return false;
+        }
+        try {
+            open(email).appendNew(LocalDate.parse(date).toEpochDay(), weight);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not append entry", e);
+            return false;
+        }
+        InvalidationTracker.getInstance().notifyWrite(email, WTDatabaseHelper.TABLE_LOG);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean updateWeightEntry(int id, String date, int weight, String email) {
+        if (!WTDatabaseHelper.isValidWeight(weight) || !WTDatabaseHelper.isValidDate(date)) {
+            return false;
+        }
+        try {
+            UserLog log = open(email);
+            if (!log.live.containsKey(id)) {
+                return false;
+            }
+            log.append(id, LocalDate.parse(date).toEpochDay(), weight, 0);
+            log.compactIfWasteful();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not update entry", e);
+            return false;
+        }
+        InvalidationTracker.getInstance().notifyWrite(email, WTDatabaseHelper.TABLE_LOG);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean deleteWeightEntry(int id, String email) {
+        try {
+            UserLog log = open(email);
+            if (!log.live.containsKey(id)) {
+                return false;
+            }
+            log.append(id, 0, 0, FLAG_TOMBSTONE);
+            log.compactIfWasteful();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not delete entry", e);
+            return false;
+        }
+        InvalidationTracker.getInstance().notifyWrite(email, WTDatabaseHelper.TABLE_LOG);
+        return true;
+    }
+
+    // Entries in the order they were first added
+    @Override
+    public synchronized List<WeightEntry> getWeightEntries(String email) {
+        try {
+            UserLog log = open(email);
+            List<WeightEntry> entries = new ArrayList<>(log.live.size());
+            for (int slot : log.live.values()) {
+                entries.add(log.read(slot));
+            }
+            return entries;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read entries", e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Nullable
+    @Override
+    public synchronized WeightEntry getLatestEntry(String email) {
+        try {
+            UserLog log = open(email);
+            int slot = log.latestSlot();
+            return slot == -1 ? null : log.read(slot);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read latest entry", e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean setGoalWeight(int goalWeight, String email) {
+        if (!WTDatabaseHelper.isValidWeight(goalWeight) || email == null || email.isBlank()) {
+            return false;
+        }
+        try {
+            open(email).writeGoal(goalWeight);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save goal", e);
+            return false;
+        }
+        InvalidationTracker.getInstance().notifyWrite(email, WTDatabaseHelper.TABLE_GOAL);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public synchronized Integer getGoalWeight(String email) {
+        try {
+            int goal = open(email).goalWeight;
+            return goal == 0 ? null : goal;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read goal", e);
+            return null;
+        }
+    }
+
+    // Forces every open log to storage and releases the files
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (UserLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        logs.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Size of the user's log file in bytes, including unused capacity
+    synchronized long fileLength(String email) {
+        return fileFor(email).length();
+    }
+
+    private UserLog open(String email) throws IOException {
+        if (email == null || email.isBlank()) {
+            throw new IOException("No user");
+        }
+        UserLog log = logs.get(email);
+        if (log == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            log = new UserLog(fileFor(email));
+            logs.put(email, log);
+        }
+        return log;
+    }
+
+    // Hex of the email, so any address maps to a safe file name
+    private File fileFor(String email) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(directory, name.append(".wlog").toString());
+    }
+
+    /**
+     * One user's mapped file plus an in-memory index of where each live entry's
+     * latest record is, rebuilt by a single scan when the file is opened.
+     */
+    private static final class UserLog implements Closeable {
+        private final File file;
+        private RandomAccessFile raf;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int recordCount;
+        int goalWeight;
+        // Never reused, even after the entry with the highest id is deleted and compacted away
+        private int nextId;
+        // Slot of the latest record per live entry id, in first-added order
+        final Map<Integer, Integer> live = new LinkedHashMap<>();
+        // Cached slot of the most recent entry; -1 when it must be recomputed
+        private int latestSlot = -1;
+
+        UserLog(File file) throws IOException {
+            this.file = file;
+            load();
+        }
+
+        private void load() throws IOException {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            if (channel.size() == 0) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT_VERSION);
+                buffer.putInt(8, 0);
+                buffer.putInt(12, 0);
+                buffer.putInt(16, 1);
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                    close();
+                    throw new IOException("Not a weight log: " + file);
+                }
+            }
+            recordCount = buffer.getInt(8);
+            if (recordCount < 0 || channel.size() < HEADER_BYTES + (long) recordCount * RECORD_BYTES) {
+                close();
+                throw new IOException("Truncated weight log: " + file);
+            }
+            goalWeight = buffer.getInt(12);
+            nextId = Math.max(1, buffer.getInt(16));
+
+            live.clear();
+            for (int slot = 0; slot < recordCount; slot++) {
+                int offset = offset(slot);
+                int id = buffer.getInt(offset);
+                if ((buffer.getInt(offset + 12) & FLAG_TOMBSTONE) != 0) {
+                    live.remove(id);
+                } else {
+                    live.put(id, slot);
+                }
+                nextId = Math.max(nextId, id + 1);
+            }
+            latestSlot = -1;
+        }
+
+        // Appends a new entry under the next unused id
+        void appendNew(long epochDay, int weight) throws IOException {
+            int id = nextId++;
+            buffer.putInt(16, nextId);
+            append(id, epochDay, weight, 0);
+        }
+
+        // Writes the record, then commits it by bumping the header's count
+        void append(int id, long epochDay, int weight, int flags) throws IOException {
+            ensureCapacity(recordCount + 1);
+            int slot = recordCount;
+            int offset = offset(slot);
+            buffer.putInt(offset, id);
+            buffer.putInt(offset + 4, (int) epochDay);
+            buffer.putInt(offset + 8, weight);
+            buffer.putInt(offset + 12, flags);
+            // The record must reach storage before the count that makes it visible, or a crash
+            // could leave the count covering a record that was never written
+            buffer.force();
+            recordCount++;
+            buffer.putInt(8, recordCount);
+            buffer.force();
+
+            if ((flags & FLAG_TOMBSTONE) != 0) {
+                live.remove(id);
+                if (slotIsLatest(id)) {
+                    latestSlot = -1;
+                }
+                return;
+            }
+            boolean wasLatest = slotIsLatest(id);
+            live.put(id, slot);
+            if (wasLatest) {
+                // The latest entry changed, possibly to an earlier date
+                latestSlot = -1;
+            } else if (latestSlot != -1 && isNewer(slot, latestSlot)) {
+                latestSlot = slot;
+            }
+        }
+
+        void writeGoal(int goal) {
+            goalWeight = goal;
+            buffer.putInt(12, goal);
+        }
+
+        WeightEntry read(int slot) {
+            int offset = offset(slot);
+            return new WeightEntry(buffer.getInt(offset),
+                    LocalDate.ofEpochDay(buffer.getInt(offset + 4)),
+                    buffer.getInt(offset + 8));
+        }
+
+        int latestSlot() {
+            if (latestSlot == -1) {
+                for (int slot : live.values()) {
+                    if (latestSlot == -1 || isNewer(slot, latestSlot)) {
+                        latestSlot = slot;
+                    }
+                }
+            }
+            return latestSlot;
+        }
+
+        // Rewrites only the live records once more than half of the file is garbage
+        void compactIfWasteful() throws IOException {
+            int garbage = recordCount - live.size();
+            if (recordCount < MIN_RECORDS_TO_COMPACT || garbage <= live.size()) {
+                return;
+            }
+
+            File compacted = new File(file.getPath() + ".compact");
+            int capacity = Math.max(INITIAL_RECORDS, live.size() * 2);
+            ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + capacity * RECORD_BYTES);
+            out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(live.size()).putInt(goalWeight)
+                    .putInt(nextId).putInt(0);
+            for (int slot : live.values()) {
+                int offset = offset(slot);
+                for (int i = 0; i < RECORD_BYTES; i += 4) {
+                    out.putInt(buffer.getInt(offset + i));
+                }
+            }
+            out.rewind();
+            try (RandomAccessFile target = new RandomAccessFile(compacted, "rw")) {
+                target.setLength(0);
+                FileChannel targetChannel = target.getChannel();
+                while (out.hasRemaining()) {
+                    targetChannel.write(out);
+                }
+                targetChannel.force(true);
+            }
+
+            close();
+            if (!compacted.renameTo(file)) {
+                load();
+                throw new IOException("Could not replace " + file);
+            }
+            load();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer != null) {
+                buffer.force();
+                buffer = null;
+            }
+            channel = null;
+            raf.close();
+        }
+
+        private void ensureCapacity(int records) throws IOException {
+            long needed = HEADER_BYTES + (long) records * RECORD_BYTES;
+            if (needed > buffer.capacity()) {
+                long size = Math.max(needed, HEADER_BYTES + 2L * (buffer.capacity() - HEADER_BYTES));
+                buffer.force();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private boolean slotIsLatest(int id) {
+            return latestSlot != -1 && buffer.getInt(offset(latestSlot)) == id;
+        }
+
+        // Later date wins; on the same date the higher id, as in WTDatabaseHelper
+        private boolean isNewer(int slot, int other) {
+            int day = buffer.getInt(offset(slot) + 4);
+            int otherDay = buffer.getInt(offset(other) + 4);
+            if (day != otherDay) {
+                return day > otherDay;
+            }
+            return buffer.getInt(offset(slot)) > buffer.getInt(offset(other));
+        }
+
+        private static int offset(int slot) {
+            return HEADER_BYTES + slot * RECORD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Averages and trends over several calendar-day windows (e.g. 7/30/90/365 days)
+ * in a single chronological pass.
+ * - Entries are held once, in a ring buffer sized for the largest window
+ * - Each window keeps its own tail pointer and running regression sums, so adding
+ *   an entry costs O(windows) plus the evictions it causes, and each entry is
+ *   evicted at most once per window: O(n·windows) overall instead of O(n·w) per window
+ */
+final class MultiWindowAnalysis {
+
+    /**
+     * Compact per-window result, indexed like the requested windows.
+     * A window with no entries has count 0 and NaN average.
+     */
+    static final class Result {
+        final int[] windowDays;
+        final int[] counts;
+        final double[] averages;
+        // Least-squares slope over the window, in pounds per week
+        final double[] weeklySlopes;
+        final WeightAnalysisUtil.Trend[] trends;
+
+        Result(int[] windowDays, int[] counts, double[] averages, double[] weeklySlopes,
+               WeightAnalysisUtil.Trend[] trends) {
+            this.windowDays = windowDays;
+            this.counts = counts;
+            this.averages = averages;
+            this.weeklySlopes = weeklySlopes;
+            this.trends = trends;
+        }
+    }
+
+    private final int[] windowDays;
+    private final double threshold;
+    // Ring buffer of (day, value); absolute positions map to index position % capacity
+    private long[] days = new long[64];
+    private double[] values = new double[64];
+    private long head;
+    // Per window: first position still inside it, and sums of t, t², x, t·x over it
+    private final long[] tails;
+    private final double[] sumT, sumTT, sumX, sumTX;
+    // Days are measured from the first entry to keep the sums well conditioned
+    private long baseDay = Long.MIN_VALUE;
+
+    /**
+     * @param windowDays window lengths in calendar days, counting the latest day
+     * @param threshold change over a window that counts as a real trend (example: 0.5 lbs)
+     */
+    MultiWindowAnalysis(double threshold, int... windowDays) {
+        this.windowDays = windowDays.clone();
+        this.threshold = threshold;
+        int k = windowDays.length;
+        tails = new long[k];
+        sumT = new double[k];
+        sumTT = new double[k];
+        sumX = new double[k];
+        sumTX = new double[k];
+    }
+
+    /**
+     * One pass over chronological entries; values are the weights to average, parallel
+     * to entries (e.g. a deseasonalized series), or null to use the raw weights.
+     */
+    static Result analyze(List<WeightEntry> entries, double[] values, double threshold, int... windowDays) {
+        MultiWindowAnalysis analysis = new MultiWindowAnalysis(threshold, windowDays);
+        for (int i = 0; i < entries.size(); i++) {
+            WeightEntry entry = entries.get(i);
+            analysis.add(entry.getDate(), values == null ? entry.getWeight() : values[i]);
+        }
+        return analysis.result();
+    }
+
+    // Adds the next value in chronological order
+    void add(LocalDate date, double value) {
+        long day = date.toEpochDay();
+        if (baseDay == Long.MIN_VALUE) {
+            baseDay = day;
+        }
+        if (head - minTail() == days.length) {
+            grow();
+        }
+        int slot = (int) (head % days.length);
+        days[slot] = day;
+        values[slot] = value;
+        head++;
+
+        double t = day - baseDay;
+        for (int w = 0; w < windowDays.length; w++) {
+            sumT[w] += t;
+            sumTT[w] += t * t;
+            sumX[w] += value;
+            sumTX[w] += t * value;
+            // Evict entries that fell out of this window
+            long firstDay = day - windowDays[w] + 1;
+            while (tails[w] < head && days[(int) (tails[w] % days.length)] < firstDay) {
+                int old = (int) (tails[w] % days.length);
+                double oldT = days[old] - baseDay;
+                sumT[w] -= oldT;
+                sumTT[w] -= oldT * oldT;
+                sumX[w] -= values[old];
+                sumTX[w] -= oldT * values[old];
+                tails[w]++;
+            }
+        }
+    }
+
+    Result result() {
+        int k = windowDays.length;
+        int[] counts = new int[k];
+        double[] averages = new double[k];
+        double[] slopes = new double[k];
+        WeightAnalysisUtil.Trend[] trends = new WeightAnalysisUtil.Trend[k];
+        for (int w = 0; w < k; w++) {
+            int n = (int) (head - tails[w]);
+            counts[w] = n;
+            averages[w] = n == 0 ? Double.NaN : sumX[w] / n;
+
+            double tt = n == 0 ? 0 : sumTT[w] - sumT[w] * sumT[w] / n;
+            double slopePerDay = tt > 1e-9 ? (sumTX[w] - sumT[w] * sumX[w] / n) / tt : 0;
+            slopes[w] = slopePerDay * 7;
+
+            // Compare the fitted change across the whole window with the threshold
+            double change = slopePerDay * (windowDays[w] - 1);
+            trends[w] = change > threshold ? WeightAnalysisUtil.Trend.UPWARD
+                    : change < -threshold ? WeightAnalysisUtil.Trend.DOWNWARD
+                    : WeightAnalysisUtil.Trend.STABLE;
+        }
+        return new Result(windowDays.clone(), counts, averages, slopes, trends);
+    }
+
+    private long minTail() {
+        long min = head;
+        for (long tail : tails) {
+            min = Math.min(min, tail);
+        }
+        return min;
+    }
+
+    // Doubles the ring buffer, keeping every position's slot valid for the new capacity
+    private void grow() {
+        int capacity = days.length * 2;
+        long[] newDays = new long[capacity];
+        double[] newValues = new double[capacity];
+        for (long position = minTail(); position < head; position++) {
+            newDays[(int) (position % capacity)] = days[(int) (position % days.length)];
+            newValues[(int) (position % capacity)] = values[(int) (position % days.length)];
+        }
+        days = newDays;
+        values = newValues;
+    }
+}
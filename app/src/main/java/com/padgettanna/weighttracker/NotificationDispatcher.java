@@ -0,0 +1,158 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the notifications WTDatabaseHelper queues in its outbox, off the main thread.
+ * - Runs when the outbox is written (through InvalidationTracker) and at app start,
+ *   so notifications queued before the process was killed are still sent
+ * - Each due notification goes to the NotificationSender; it is deleted once sent, or
+ *   retried with exponential backoff (doubling from the base delay, up to MAX_BACKOFF_MS)
+ * - A notification still failing after maxAttempts is dropped
+ * - If the outbox itself cannot be read or updated, the whole run is retried after the
+ *   base delay; the outbox is left as it was, so nothing is lost
+ * - Delivery is at least once: a notification sent just before the process dies is
+ *   sent again on the next run
+ */
+final class NotificationDispatcher implements InvalidationTracker.Observer {
+
+    private static final String TAG = "NotificationDispatcher";
+    static final long DEFAULT_BASE_BACKOFF_MS = 30_000;
+    static final long MAX_BACKOFF_MS = 60 * 60_000;
+    static final int DEFAULT_MAX_ATTEMPTS = 8;
+    // Notifications read from the outbox per query
+    private static final int BATCH = 20;
+
+    private final WTDatabaseHelper wtDB;
+    private final NotificationSender sender;
+    private final long baseBackoffMs;
+    private final int maxAttempts;
+    // Sends run here one at a time, so a notification is never sent twice at once
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // Only touched on the executor
+    private ScheduledFuture<?> scheduledRun;
+
+    NotificationDispatcher(WTDatabaseHelper wtDB, NotificationSender sender) {
+        this(wtDB, sender, DEFAULT_BASE_BACKOFF_MS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    NotificationDispatcher(WTDatabaseHelper wtDB, NotificationSender sender, long baseBackoffMs, int maxAttempts) {
+        this.wtDB = wtDB;
+        this.sender = sender;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    public void onInvalidated(String email, Set<String> tables) {
+        if (tables.contains(WTDatabaseHelper.TABLE_OUTBOX)) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Sends every notification that is due now, then schedules the next retry if any remain.
+     *
+     * @return completes once this run has finished
+     */
+    CompletableFuture<Void> dispatch() {
+        return CompletableFuture.runAsync(this::sendDue, executor);
+    }
+
+    // Stops the dispatcher thread; queued notifications stay in the outbox for the next start
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Delay before the next attempt after the given number of failed attempts
+    static long backoffMs(long baseBackoffMs, int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        return Math.min(MAX_BACKOFF_MS, baseBackoffMs << doublings);
+    }
+
+    // Runs on the executor
+    private void sendDue() {
+        if (scheduledRun != null) {
+            scheduledRun.cancel(false);
+            scheduledRun = null;
+        }
+        long next;
+        try {
+            long now = System.currentTimeMillis();
+            List<Queued> due;
+            do {
+                due = readDue(now);
+                for (Queued notification : due) {
+                    send(notification, now);
+                }
+            } while (due.size() == BATCH);
+            next = wtDB.nextNotificationTime();
+        } catch (RuntimeException e) {
+            // e.g. the database is locked or the disk is full
+            Log.w(TAG, "Reading the outbox failed; retrying", e);
+            next = System.currentTimeMillis() + baseBackoffMs;
+        }
+        if (next != -1) {
+            long delay = Math.max(0, next - System.currentTimeMillis());
+            scheduledRun = executor.schedule(this::sendDue, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Read up front, so the cursor is not held open while the sender works
+    private List<Queued> readDue(long now) {
+        List<Queued> due = new ArrayList<>();
+        Cursor cursor = wtDB.readDueNotifications(now, BATCH);
+        try {
+            while (cursor.moveToNext()) {
+                due.add(new Queued(cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return due;
+    }
+
+    private void send(Queued notification, long now) {
+        boolean sent;
+        try {
+            sent = sender.send(notification.email, notification.kind);
+        } catch (Exception e) {
+            Log.w(TAG, "Sending notification " + notification.id + " failed", e);
+            sent = false;
+        }
+
+        int attempts = notification.attempts + 1;
+        if (sent) {
+            wtDB.deleteNotification(notification.id);
+        } else if (attempts >= maxAttempts) {
+            Log.w(TAG, "Giving up on notification " + notification.id + " after " + attempts + " attempts");
+            wtDB.deleteNotification(notification.id);
+        } else {
+            wtDB.rescheduleNotification(notification.id, attempts, now + backoffMs(baseBackoffMs, attempts));
+        }
+    }
+
+    private static final class Queued {
+        final long id;
+        final String email;
+        final String kind;
+        final int attempts;
+
+        Queued(long id, String email, String kind, int attempts) {
+            this.id = id;
+            this.email = email;
+            this.kind = kind;
+            this.attempts = attempts;
+        }
+    }
+}
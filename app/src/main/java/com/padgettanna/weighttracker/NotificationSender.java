@@ -0,0 +1,15 @@
+package com.padgettanna.weighttracker;
+
+/**
+ * Delivers notifications taken from the outbox by NotificationDispatcher.
+ * Called on the dispatcher's background thread, one notification at a time.
+ */
+interface NotificationSender {
+
+    /**
+     * Sends one notification of the given kind (e.g. WTDatabaseHelper.NOTIFICATION_GOAL_REACHED).
+     *
+     * @return true once delivered; false, or an exception, means it is retried later
+     */
+    boolean send(String email, String kind) throws Exception;
+}
@@ -0,0 +1,65 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.util.List;
+
+/**
+ * WeightRepository backed by the app's SQLite database.
+ * Delegates to WTDatabaseHelper, which owns the schema, transactions, change log and
+ * invalidation.
+ */
+class SQLiteWeightRepository implements WeightRepository {
+
+    private final WTDatabaseHelper wtDB;
+
+    SQLiteWeightRepository(WTDatabaseHelper wtDB) {
+        this.wtDB = wtDB;
+    }
+
+    @Override
+    public boolean addWeight(String date, int weight, String email) {
+        return wtDB.addWeight(date, weight, email);
+    }
+
+    @Override
+    public boolean updateWeightEntry(int id, String date, int weight, String email) {
+        return wtDB.updateWeightEntry(id, date, weight, email);
+    }
+
+    @Override
+    public boolean deleteWeightEntry(int id, String email) {
+        return wtDB.deleteWeightEntry(id, email);
+    }
+
+    @Override
+    public List<WeightEntry> getWeightEntries(String email) {
+        return wtDB.getWeightEntries(email);
+    }
+
+    @Nullable
+    @Override
+    public WeightEntry getLatestEntry(String email) {
+        return wtDB.getLatestEntry(email);
+    }
+
+    @Override
+    public boolean setGoalWeight(int goalWeight, String email) {
+        return wtDB.setGoalWeight(goalWeight, email);
+    }
+
+    @Nullable
+    @Override
+    public Integer getGoalWeight(String email) {
+        Cursor cursor = wtDB.readGoalWeight(email);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getInt(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import androidx.tracing.Trace;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Startup and navigation timings per screen, for debuggable builds.
+ * - markNavigation() is called right before startActivity; the time to the new screen's
+ *   onCreate, first frame and fully drawn point is measured from there (or from onCreate
+ *   when the screen was not opened through markNavigation, e.g. on a cold start)
+ * - The navigation shows as an async "navigate" section in system traces, ending at the
+ *   new screen's first frame; reportFullyDrawn also reaches the system, which logs it
+ * - In debuggable builds every frame of every screen is timed with FrameMetrics, and the
+ *   time to first frame plus the count of frames over the display's frame budget are
+ *   logged under WTDatabaseMaintenance.INSTRUMENTATION_TAG when the screen pauses
+ * Registered by WeightTrackerApp; the per-frame callbacks run on their own thread.
+ */
+final class ScreenTimings implements Application.ActivityLifecycleCallbacks {
+
+    private static final String TAG = WTDatabaseMaintenance.INSTRUMENTATION_TAG;
+    private static final int NAVIGATION_COOKIE = 1;
+
+    // System.nanoTime() of the last markNavigation() not yet claimed by a screen, or 0
+    private static volatile long pendingNavigation;
+    // Created only for debuggable builds
+    private static ScreenTimings instance;
+
+    private final Map<Activity, Screen> screens = new WeakHashMap<>();
+    private final Handler frameHandler;
+
+    private ScreenTimings() {
+        HandlerThread thread = new HandlerThread("ScreenTimings");
+        thread.start();
+        frameHandler = new Handler(thread.getLooper());
+    }
+
+    // Starts timing every screen if the app is debuggable; trace sections elsewhere do not depend on it
+    static void register(Application application) {
+        if ((application.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            return;
+        }
+        instance = new ScreenTimings();
+        application.registerActivityLifecycleCallbacks(instance);
+    }
+
+    // Call right before startActivity, so the next screen is timed from the tap
+    static void markNavigation() {
+        // The async section is ended by the new screen's first frame, which only debug builds watch
+        if (instance == null) {
+            return;
+        }
+        pendingNavigation = System.nanoTime();
+        Trace.beginAsyncSection("navigate", NAVIGATION_COOKIE);
+    }
+
+    /**
+     * Tells the system, and the debug log, that the screen now shows its real content.
+     * Only the first call per screen instance counts.
+     */
+    static void reportFullyDrawn(Activity activity) {
+        activity.reportFullyDrawn();
+        ScreenTimings timings = instance;
+        if (timings == null) {
+            return;
+        }
+        Screen screen;
+        synchronized (timings.screens) {
+            screen = timings.screens.get(activity);
+        }
+        if (screen != null && !screen.fullyDrawn) {
+            screen.fullyDrawn = true;
+            Log.i(TAG, String.format(Locale.US, "%s fully drawn +%.1f ms",
+                    screen.name, (System.nanoTime() - screen.startNanos) / 1e6));
+        }
+    }
+
+    /**
+     * Reports the screen fully drawn just before the view's next frame, e.g. once a list
+     * has been handed its first rows.
+     */
+    static void reportFullyDrawnOnNextDraw(Activity activity, View view) {
+        ViewTreeObserver observer = view.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                reportFullyDrawn(activity);
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        long now = System.nanoTime();
+        long navigation = pendingNavigation;
+        pendingNavigation = 0;
+        Screen screen = new Screen(activity.getClass().getSimpleName(),
+                navigation != 0 ? navigation : now, navigation != 0,
+                displayOf(activity).getRefreshRate());
+        Log.i(TAG, String.format(Locale.US, "%s onCreate +%.1f ms", screen.name, (now - screen.startNanos) / 1e6));
+        synchronized (screens) {
+            screens.put(activity, screen);
+        }
+        activity.getWindow().addOnFrameMetricsAvailableListener(screen, frameHandler);
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        Screen screen;
+        synchronized (screens) {
+            screen = screens.get(activity);
+        }
+        if (screen != null) {
+            screen.logFrames();
+        }
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        Screen screen;
+        synchronized (screens) {
+            screen = screens.remove(activity);
+        }
+        if (screen != null) {
+            activity.getWindow().removeOnFrameMetricsAvailableListener(screen);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {}
+
+    @Override
+    public void onActivityResumed(Activity activity) {}
+
+    @Override
+    public void onActivityStopped(Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+    // Activity.getDisplay needs API 30; older versions only have the window manager's display
+    @SuppressWarnings("deprecation")
+    private static Display displayOf(Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return activity.getDisplay();
+        }
+        return activity.getWindowManager().getDefaultDisplay();
+    }
+
+    // Frame statistics of one screen instance
+    private static final class Screen implements Window.OnFrameMetricsAvailableListener {
+        final String name;
+        final long startNanos;
+        // Whether a navigation async trace section is open until the first frame
+        private final boolean navigating;
+        private final long frameBudgetNanos;
+        volatile boolean fullyDrawn;
+        // Updated on the frame thread
+        private int frames;
+        private int jankyFrames;
+        private volatile double firstFrameMs = Double.NaN;
+
+        Screen(String name, long startNanos, boolean navigating, float refreshRate) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.navigating = navigating;
+            this.frameBudgetNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60));
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics metrics, int dropCountSinceLastInvocation) {
+            long total = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+            synchronized (this) {
+                frames += 1 + dropCountSinceLastInvocation;
+                // Dropped reports are counted as frames but not judged
+                if (total > frameBudgetNanos) {
+                    jankyFrames++;
+                }
+            }
+            if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+                long end = metrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP) + total;
+                firstFrameMs = (end - startNanos) / 1e6;
+                Log.i(TAG, String.format(Locale.US, "%s first frame +%.1f ms", name, firstFrameMs));
+                if (navigating) {
+                    Trace.endAsyncSection("navigate", NAVIGATION_COOKIE);
+                }
+            }
+        }
+
+        void logFrames() {
+            int total;
+            int janky;
+            synchronized (this) {
+                total = frames;
+                janky = jankyFrames;
+            }
+            Log.i(TAG, String.format(Locale.US, "%s frames=%d janky=%d (%.1f%%) firstFrame=%.1f ms",
+                    name, total, janky, total == 0 ? 0 : 100.0 * janky / total, firstFrameMs));
+        }
+    }
+}
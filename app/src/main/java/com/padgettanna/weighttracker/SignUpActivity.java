@@ -84,17 +84,20 @@ public class SignUpActivity extends AppCompatActivity {
                 String email = emailEditText.getText().toString();
                 String password = passwordEditText.getText().toString();
                 int goalWt = Integer.parseInt(goalWeight);
-                // Add name, email, password, goal weight to database
-                wtDB.addUser(name, email, password);
-                wtDB.setGoalWeight(goalWt, email);
+                // Waits if an upgrade is still migrating the database
+                ((WeightTrackerApp) getApplication()).whenDatabaseReady(SignUpActivity.this, () -> {
+                    // Add name, email, password, goal weight to database
+                    wtDB.addUser(name, email, password);
+                    wtDB.setGoalWeight(goalWt, email);
 
-                // Save user email in SharedPreferences
-                getSharedPreferences("UserPreferences", MODE_PRIVATE).edit()
-                        .putString("USER_EMAIL", email).apply();
-                // Launch MainActivity when login button is pressed
-                Intent intent = new Intent(SignUpActivity.this, MainActivity.class);
-                intent.putExtra("USER_EMAIL", email); // pass user email to MainActivity
-                startActivity(intent);
+                    // Save user email in SharedPreferences
+                    getSharedPreferences("UserPreferences", MODE_PRIVATE).edit()
+                            .putString("USER_EMAIL", email).apply();
+                    // Launch MainActivity when login button is pressed
+                    Intent intent = new Intent(SignUpActivity.this, MainActivity.class);
+                    intent.putExtra("USER_EMAIL", email); // pass user email to MainActivity
+                    startActivity(intent);
+                });
             }
         });
     }
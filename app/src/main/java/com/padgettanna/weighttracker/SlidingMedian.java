@@ -0,0 +1,118 @@
+package com.padgettanna.weighttracker;
+
+/**
+ * Sliding-window median and median absolute deviation (MAD) for whole-pound weights.
+ * - Keeps a count per weight in a Fenwick (binary indexed) tree over 0..1023 lb,
+ *   so add/remove are O(log D) and order statistics are found by tree descent
+ * - median() is O(log D); mad() binary-searches the deviation, O(log² D)
+ * Weights outside the domain are clamped; stored weights are 50–999 anyway.
+ */
+class SlidingMedian {
+
+    private static final int DOMAIN = 1024;
+
+    // tree[i] holds the count of the weights in its Fenwick range (1-based)
+    private final int[] tree = new int[DOMAIN + 1];
+    private int size;
+
+    void add(int weight) {
+        update(clamp(weight), 1);
+        size++;
+    }
+
+    // Removes one occurrence of a weight previously added
+    void remove(int weight) {
+        update(clamp(weight), -1);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double median() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        return doubledMedian() / 2.0;
+    }
+
+    /**
+     * Median of |x - median| over the window; for an even-sized window the
+     * mean of the two middle deviations, like the median itself.
+     */
+    double mad() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        // Deviations are computed in half-pounds so a .5 median stays exact
+        int doubledMedian = doubledMedian();
+        int lowRank = (size + 1) / 2;
+        int highRank = size / 2 + 1;
+        return (doubledDeviation(doubledMedian, lowRank)
+                + doubledDeviation(doubledMedian, highRank)) / 4.0;
+    }
+
+    // Twice the median, to keep it an integer for even-sized windows
+    private int doubledMedian() {
+        return kth((size + 1) / 2) + kth(size / 2 + 1);
+    }
+
+    // Smallest doubled deviation d such that at least rank weights satisfy |2x - m2| <= d
+    private int doubledDeviation(int doubledMedian, int rank) {
+        int lo = 0;
+        int hi = 2 * DOMAIN;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (countWithin(doubledMedian, mid) >= rank) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // Number of weights x with |2x - doubledMedian| <= doubledDeviation
+    private int countWithin(int doubledMedian, int doubledDeviation) {
+        int low = Math.floorDiv(doubledMedian - doubledDeviation + 1, 2);
+        int high = Math.floorDiv(doubledMedian + doubledDeviation, 2);
+        return prefix(high) - prefix(low - 1);
+    }
+
+    // k-th smallest weight (1-based) by descending the tree
+    private int kth(int k) {
+        int position = 0;
+        for (int step = DOMAIN; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= DOMAIN && tree[next] < k) {
+                position = next;
+                k -= tree[next];
+            }
+        }
+        // position is the count of slots before the answer, which is the 0-based weight
+        return position;
+    }
+
+    // Number of weights <= value
+    private int prefix(int value) {
+        if (value < 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = Math.min(value, DOMAIN - 1) + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void update(int value, int delta) {
+        for (int i = value + 1; i <= DOMAIN; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private static int clamp(int weight) {
+        return Math.max(0, Math.min(DOMAIN - 1, weight));
+    }
+}
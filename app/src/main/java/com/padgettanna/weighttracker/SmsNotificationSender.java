@@ -0,0 +1,41 @@
+package com.padgettanna.weighttracker;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+/**
+ * Sends outbox notifications as text messages.
+ * Without the SEND_SMS permission nothing is sent and the notification stays queued;
+ * MainActivity asks for the permission and dispatches again once it is granted.
+ */
+class SmsNotificationSender implements NotificationSender {
+
+    private static final String TAG = "Weight Tracker SMS";
+    private static final String PHONE_NUMBER = "11111111111";
+    private static final String GOAL_REACHED_MESSAGE = "Congratulations! You have reached your goal weight!";
+
+    private final Context context;
+
+    SmsNotificationSender(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public boolean send(String email, String kind) {
+        if (!WTDatabaseHelper.NOTIFICATION_GOAL_REACHED.equals(kind)) {
+            // Nothing to say for it; drop it rather than retry forever
+            Log.w(TAG, "No message for notification kind " + kind);
+            return true;
+        }
+        if (context.checkSelfPermission(Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        SmsManager smsManager = SmsManager.getDefault();
+        smsManager.sendTextMessage(PHONE_NUMBER, null, GOAL_REACHED_MESSAGE, null, null);
+        Log.i(TAG, "SMS sent to " + PHONE_NUMBER + " with message: " + GOAL_REACHED_MESSAGE);
+        return true;
+    }
+}
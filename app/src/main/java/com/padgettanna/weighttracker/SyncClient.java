@@ -0,0 +1,296 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.SyncChange;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Incremental sync between the local database and a sync server.
+ * - Push: sends the user's change-log entries after the last acknowledged sequence,
+ *   in batches, with repeated edits to the same row collapsed to its latest state;
+ *   acknowledged entries are pruned from the change log
+ * - Pull: fetches other devices' changes after the last pull cursor and applies them
+ *   last-writer-wins through WTDatabaseHelper.applyRemoteChanges; the cursor only moves
+ *   once a batch has been applied in full
+ * Requests and responses are gzip-compressed JSON, and only changed rows are transferred.
+ * Runs network I/O on the calling thread, so it must not be called from the main thread.
+ *
+ * Protocol:
+ * - POST {base}/push  {device, email, lastSeq, changes: [...]}  ->  {ack: lastSeq}
+ * - GET  {base}/pull?email=&device=&since=&limit=  ->  {changes: [...], cursor, more}
+ */
+class SyncClient {
+
+    static final int BATCH_SIZE = 200;
+    private static final int TIMEOUT_MS = 15000;
+    private static final String PREFS = "SyncPreferences";
+
+    private final WTDatabaseHelper wtDB;
+    private final String baseUrl;
+    private final String deviceId;
+
+    // Number of changes sent and applied by one sync
+    static class Result {
+        final int pushed;
+        final int pulled;
+
+        Result(int pushed, int pulled) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+        }
+    }
+
+    SyncClient(WTDatabaseHelper wtDB, String baseUrl, String deviceId) {
+        this.wtDB = wtDB;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.deviceId = deviceId;
+    }
+
+    // Stable id for this install, used to build global keys for locally created rows
+    static String deviceId(Context context) {
+        String id = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getString("DEVICE_ID", null);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                    .putString("DEVICE_ID", id).apply();
+        }
+        return id;
+    }
+
+    /**
+     * Pushes local changes, then pulls remote ones, for the given user.
+     * Progress is saved after every batch, so an interrupted sync resumes where it stopped.
+     */
+    Result sync(String email) throws IOException {
+        int pushed = push(email);
+        int pulled = pull(email);
+        return new Result(pushed, pulled);
+    }
+
+    private int push(String email) throws IOException {
+        long pushedSeq = wtDB.readSyncState(email)[0];
+        int pushed = 0;
+
+        while (true) {
+            Map<String, SyncChange> batch = new LinkedHashMap<>();
+            long lastSeq = pushedSeq;
+            int rows = 0;
+
+            Cursor cursor = wtDB.readChangesSince(email, pushedSeq, BATCH_SIZE);
+            try {
+                while (cursor.moveToNext()) {
+                    rows++;
+                    lastSeq = cursor.getLong(0);
+                    SyncChange change = toChange(cursor);
+                    if (change != null) {
+                        // Keep only the latest state of each row, in the order it was last changed
+                        batch.remove(change.getKey());
+                        batch.put(change.getKey(), change);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (rows == 0) {
+                return pushed;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    JSONArray changes = new JSONArray();
+                    for (SyncChange change : batch.values()) {
+                        changes.put(toJson(change));
+                    }
+                    JSONObject body = new JSONObject()
+                            .put("device", deviceId)
+                            .put("email", email)
+                            .put("lastSeq", lastSeq)
+                            .put("changes", changes);
+
+                    JSONObject response = request("POST", "/push", body);
+                    if (response.getLong("ack") != lastSeq) {
+                        throw new IOException("Server did not acknowledge sequence " + lastSeq);
+                    }
+                } catch (JSONException e) {
+                    throw new IOException("Malformed push response", e);
+                }
+                pushed += batch.size();
+            }
+
+            pushedSeq = lastSeq;
+            wtDB.saveSyncState(email, pushedSeq, wtDB.readSyncState(email)[1]);
+            // The server has these now, so the change log does not grow with every write
+            wtDB.pruneChangeLog(email, pushedSeq, deviceId + ":");
+
+            if (rows < BATCH_SIZE) {
+                return pushed;
+            }
+        }
+    }
+
+    private int pull(String email) throws IOException {
+        long cursor = wtDB.readSyncState(email)[1];
+        int pulled = 0;
+        boolean more = true;
+
+        while (more) {
+            try {
+                JSONObject response = request("GET", "/pull?email=" + encode(email)
+                        + "&device=" + encode(deviceId)
+                        + "&since=" + cursor
+                        + "&limit=" + BATCH_SIZE, null);
+
+                JSONArray array = response.getJSONArray("changes");
+                List<SyncChange> changes = new ArrayList<>(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    changes.add(fromJson(array.getJSONObject(i)));
+                }
+
+                int applied = wtDB.applyRemoteChanges(email, changes, deviceId + ":");
+                if (applied < 0) {
+                    // Nothing was applied; the cursor stays put so the batch is fetched again
+                    throw new IOException("Could not apply remote changes after cursor " + cursor);
+                }
+                pulled += applied;
+                cursor = response.getLong("cursor");
+                more = response.optBoolean("more", false) && !changes.isEmpty();
+            } catch (JSONException e) {
+                throw new IOException("Malformed pull response", e);
+            }
+            wtDB.saveSyncState(email, wtDB.readSyncState(email)[0], cursor);
+        }
+        return pulled;
+    }
+
+    // Builds the outgoing change for a change-log row, or null if there is nothing to send
+    private SyncChange toChange(Cursor cursor) {
+        String table = cursor.getString(1);
+        String op = cursor.getString(2);
+        long changedAt = cursor.getLong(4);
+
+        if (WTDatabaseHelper.TABLE_GOAL.equals(table)) {
+            if (cursor.isNull(8)) {
+                return null;
+            }
+            return new SyncChange("goal", table, SyncChange.OP_UPSERT, null, 0, cursor.getInt(8), changedAt);
+        }
+
+        String key = cursor.isNull(7) ? deviceId + ":" + cursor.getLong(3) : cursor.getString(7);
+        boolean rowExists = !cursor.isNull(5);
+        if (!rowExists) {
+            // The row is gone (this is its delete, or it was deleted later), so send a delete
+            return new SyncChange(key, table, SyncChange.OP_DELETE, null, 0, 0, changedAt);
+        }
+        return new SyncChange(key, table, op, cursor.getString(5), cursor.getInt(6), 0, changedAt);
+    }
+
+    private static JSONObject toJson(SyncChange change) throws JSONException {
+        JSONObject json = new JSONObject()
+                .put("key", change.getKey())
+                .put("table", change.getTable())
+                .put("op", change.getOp())
+                .put("changedAt", change.getChangedAt());
+        if (change.getDate() != null) {
+            json.put("date", change.getDate()).put("weight", change.getWeight());
+        }
+        if (change.getGoal() != 0) {
+            json.put("goal", change.getGoal());
+        }
+        return json;
+    }
+
+    private static SyncChange fromJson(JSONObject json) throws JSONException {
+        return new SyncChange(
+                json.getString("key"),
+                json.getString("table"),
+                json.getString("op"),
+                json.optString("date", null),
+                json.optInt("weight", 0),
+                json.optInt("goal", 0),
+                json.getLong("changedAt"));
+    }
+
+    // Sends a gzip-compressed JSON request and decodes the (possibly gzip-compressed) response
+    private JSONObject request(String method, String path, JSONObject body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            if (body != null) {
+                byte[] compressed = gzip(body.toString().getBytes(StandardCharsets.UTF_8));
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setRequestProperty("Content-Encoding", "gzip");
+                connection.setFixedLengthStreamingMode(compressed.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(compressed);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new IOException("Sync server returned HTTP " + status);
+            }
+
+            InputStream in = connection.getInputStream();
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            try (InputStream stream = in) {
+                return new JSONObject(new String(readAll(stream), StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                throw new IOException("Malformed sync response", e);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
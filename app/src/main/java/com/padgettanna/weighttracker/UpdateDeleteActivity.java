@@ -1,6 +1,7 @@
 package com.padgettanna.weighttracker;
 
 import android.app.DatePickerDialog;
+import android.content.Intent;
 import android.os.Bundle;
 import android.widget.Button;
 import android.widget.EditText;
@@ -17,15 +18,19 @@ import java.time.LocalDate;
  * - Displays an existing weight entry
  * - Allows the user to update the entry with validated input
  * - Allows deletion with confirmation
- * This activity relies on WTDatabaseHelper for validation
+ * This activity relies on the WeightRepository for validation
  * and reacts to boolean success/failure results to control UI flow.
+ * On success the result carries the saved entry ("id", "date", "weight", or
+ * EXTRA_DELETED) so the log can patch its list without re-reading it.
  */
 public class UpdateDeleteActivity extends AppCompatActivity {
+    // Result extra set to true when the entry was deleted
+    static final String EXTRA_DELETED = "deleted";
     // UI elements
     EditText dateEditText, weightEditText;
     Button updateButton, deleteButton;
-    // Database helper
-    private WTDatabaseHelper wtDB;
+    // Weight storage
+    private WeightRepository repository;
     // Variables to store data from the log activity
     int id;
     String userEmail;
@@ -40,14 +45,16 @@ public class UpdateDeleteActivity extends AppCompatActivity {
         weightEditText = findViewById(R.id.editTextWeight);
         updateButton = findViewById(R.id.buttonUpdate);
         deleteButton = findViewById(R.id.buttonDelete);
-        // Initialize database helper
-        wtDB = new WTDatabaseHelper(UpdateDeleteActivity.this);
+        // Initialize weight storage
+        repository = new SQLiteWeightRepository(new WTDatabaseHelper(UpdateDeleteActivity.this));
 
         getAndSetIntentData();
 
         dateEditText.setOnClickListener(v -> showDatePicker());
-        updateButton.setOnClickListener(view -> handleUpdate());
-        deleteButton.setOnClickListener(view -> confirmDeleteDialog());
+        // Both wait if an upgrade is still migrating the database
+        WeightTrackerApp app = (WeightTrackerApp) getApplication();
+        updateButton.setOnClickListener(view -> app.whenDatabaseReady(this, this::handleUpdate));
+        deleteButton.setOnClickListener(view -> app.whenDatabaseReady(this, this::confirmDeleteDialog));
 
     }
 
@@ -74,7 +81,7 @@ public class UpdateDeleteActivity extends AppCompatActivity {
             return;
         }
 
-        boolean success = wtDB.updateWeightEntry(id, newDate, newWeight, userEmail);
+        boolean success = repository.updateWeightEntry(id, newDate, newWeight, userEmail);
 
         if (!success) {
             Toast.makeText(
@@ -86,7 +93,11 @@ public class UpdateDeleteActivity extends AppCompatActivity {
         }
 
         // Success
-        setResult(RESULT_OK);
+        Intent result = new Intent()
+                .putExtra("id", id)
+                .putExtra("date", newDate)
+                .putExtra("weight", newWeight);
+        setResult(RESULT_OK, result);
         finish();
     }
 
@@ -129,14 +140,17 @@ public class UpdateDeleteActivity extends AppCompatActivity {
             .setTitle("Delete this entry?")
             .setMessage("Are you sure you want to delete " + currentDate + " (" + currentWeight + ")?")
             .setPositiveButton("Yes", (dialog, which) -> {
-                boolean success = wtDB.deleteWeightEntry(id, userEmail);
+                boolean success = repository.deleteWeightEntry(id, userEmail);
 
             if (!success) {
                 Toast.makeText(this, "Failed to delete entry.", Toast.LENGTH_SHORT).show();
                 return;
             }
             // Return to WTLog activity
-            setResult(RESULT_OK);
+            Intent result = new Intent()
+                    .putExtra("id", id)
+                    .putExtra(EXTRA_DELETED, true);
+            setResult(RESULT_OK, result);
             finish();
             })
             .setNegativeButton("No", null)
@@ -0,0 +1,140 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What has already been computed for one user in this process, kept in WarmStateCache
+ * so switching back to the account does not start from the database again.
+ * - The dashboard, with the table versions it was computed from; it is current for as long
+ *   as InvalidationTracker reports neither table changed
+ * - The newest entries of the log with their outlier flags, so the log screen can show
+ *   them before its full read finishes; current while the log is unchanged
+ * - The online change-point detector (see ChangePointDetector.onWeightAdded)
+ * - The log's weekday effects (see LogSeasonality); onWeightAdded appends each new entry,
+ *   and a screen rebuilds them only when the log changed in some other way
+ * Each part is replaced whole, so readers on other threads never see half an update.
+ */
+final class UserWarmState {
+
+    // About a screen's worth of rows
+    static final int RECENT_ENTRIES = 30;
+
+    /**
+     * A computed dashboard and the log and goal versions it reflects.
+     */
+    static final class Dashboard {
+        final DashboardState state;
+        final long logVersion;
+        final long goalVersion;
+
+        Dashboard(DashboardState state, long logVersion, long goalVersion) {
+            this.state = state;
+            this.logVersion = logVersion;
+            this.goalVersion = goalVersion;
+        }
+    }
+
+    /**
+     * The newest entries, newest first, and the ids among them flagged as outliers.
+     */
+    static final class RecentEntries {
+        final List<WeightEntry> entries;
+        final Set<Integer> outlierIds;
+        final long logVersion;
+
+        // Keeps the first RECENT_ENTRIES of newestFirst and the outlier ids among them
+        RecentEntries(List<WeightEntry> newestFirst, Set<Integer> outlierIds, long logVersion) {
+            List<WeightEntry> recent = new ArrayList<>(
+                    newestFirst.subList(0, Math.min(RECENT_ENTRIES, newestFirst.size())));
+            Set<Integer> recentOutliers = new HashSet<>();
+            for (WeightEntry entry : recent) {
+                if (outlierIds.contains(entry.getId())) {
+                    recentOutliers.add(entry.getId());
+                }
+            }
+            this.entries = Collections.unmodifiableList(recent);
+            this.outlierIds = Collections.unmodifiableSet(recentOutliers);
+            this.logVersion = logVersion;
+        }
+    }
+
+    private volatile Dashboard dashboard;
+    private volatile RecentEntries recentEntries;
+    // Guarded by this
+    private ChangePointDetector.Cusum cusum;
+    private long cusumVersion;
+    private LogSeasonality seasonality;
+    private long seasonalityVersion;
+
+    void setDashboard(Dashboard dashboard) {
+        this.dashboard = dashboard;
+    }
+
+    // The dashboard if nothing it was computed from has changed since, else null
+    Dashboard currentDashboard(String email) {
+        Dashboard current = dashboard;
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        if (current == null
+                || tracker.isStale(email, WTDatabaseHelper.TABLE_LOG, current.logVersion)
+                || tracker.isStale(email, WTDatabaseHelper.TABLE_GOAL, current.goalVersion)) {
+            return null;
+        }
+        return current;
+    }
+
+    void setRecentEntries(RecentEntries recentEntries) {
+        this.recentEntries = recentEntries;
+    }
+
+    // The newest entries if the log has not changed since they were read, else null
+    RecentEntries currentRecentEntries(String email) {
+        RecentEntries current = recentEntries;
+        if (current == null || InvalidationTracker.getInstance()
+                .isStale(email, WTDatabaseHelper.TABLE_LOG, current.logVersion)) {
+            return null;
+        }
+        return current;
+    }
+
+    // Detector state if it was last updated at the given log version, else null
+    synchronized ChangePointDetector.Cusum getCusum(long logVersion) {
+        return cusum != null && cusumVersion == logVersion ? cusum : null;
+    }
+
+    synchronized void setCusum(ChangePointDetector.Cusum cusum, long logVersion) {
+        this.cusum = cusum;
+        this.cusumVersion = logVersion;
+    }
+
+    // Weekday effects if they reflect the given log version, else null
+    synchronized LogSeasonality getSeasonality(long logVersion) {
+        return seasonality != null && seasonalityVersion == logVersion ? seasonality : null;
+    }
+
+    synchronized void setSeasonality(LogSeasonality seasonality, long logVersion) {
+        this.seasonality = seasonality;
+        this.seasonalityVersion = logVersion;
+    }
+
+    /**
+     * The warm weekday effects if they reflect the given log version; otherwise builds
+     * them from the log and keeps them at that version.
+     * @param chronological the log as read at logVersion
+     * @param clean chronological without detectOutliers' flagged entries
+     */
+    LogSeasonality seasonality(long logVersion, List<WeightEntry> chronological, List<WeightEntry> clean) {
+        LogSeasonality current = getSeasonality(logVersion);
+        if (current == null) {
+            current = new LogSeasonality(chronological, clean);
+            setSeasonality(current, logVersion);
+        }
+        return current;
+    }
+}
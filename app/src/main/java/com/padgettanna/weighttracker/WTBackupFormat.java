@@ -0,0 +1,85 @@
+package com.padgettanna.weighttracker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of the app-level backup file shared by WTBackupWriter and WTBackupRestorer.
+ *
+ * Header (20 bytes, big-endian):
+ * - magic "WTBK", format version (short), reserved (short)
+ * - payload length (int), CRC32 of the payload (int), CRC32 of the previous 16 header bytes (int)
+ *
+ * Payload:
+ * - varint user count, then per user: name, email, password (varint length + UTF-8),
+ *   zigzag varint goal weight (0 when none) and varint entry count
+ * - per entry, oldest first: zigzag varint epoch-day delta and zigzag varint weight delta
+ *   from the previous entry (the first entry is relative to 0)
+ */
+final class WTBackupFormat {
+
+    static final int MAGIC = 0x5754424B; // "WTBK"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    // Size of the channel buffers used by the writer and restorer
+    static final int BUFFER_SIZE = 8192;
+    // The app's own backup in its files directory, which Android auto-backup also copies
+    static final String FILE_NAME = "WeightTracker.wtbk";
+
+    private WTBackupFormat() {}
+
+    // Maps signed values to unsigned so small negative deltas stay small
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Builds the header for a payload of the given length and checksum
+    static ByteBuffer header(int payloadLength, int payloadCrc) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putInt(payloadLength);
+        header.putInt(payloadCrc);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE - 4);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Validates a header read from disk.
+     *
+     * @return the payload length and payload CRC, in that order
+     * @throws IOException if the magic, version or header checksum do not match
+     */
+    static int[] readHeader(ByteBuffer header) throws IOException {
+        if (header.remaining() < HEADER_SIZE) {
+            throw new IOException("Backup header is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), header.arrayOffset() + header.position(), HEADER_SIZE - 4);
+
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a Weight Tracker backup");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported backup version " + version);
+        }
+        header.getShort(); // reserved
+        int payloadLength = header.getInt();
+        int payloadCrc = header.getInt();
+        if (header.getInt() != (int) crc.getValue() || payloadLength < 0) {
+            throw new IOException("Backup header checksum mismatch");
+        }
+        return new int[]{payloadLength, payloadCrc};
+    }
+}
@@ -0,0 +1,164 @@
+package com.padgettanna.weighttracker;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Restores a backup produced by WTBackupWriter.
+ * - Streams the payload through a fixed-size buffer, decoding users and entries as it goes
+ * - Bulk-loads everything inside one transaction with a compiled insert statement
+ * - Commits only if the payload checksum matches; a corrupt file leaves the database untouched
+ * - Replaced and restored rows go to the change log, so sync carries the restore to other
+ *   devices; goal state is set from the restored entries without sending notifications
+ */
+class WTBackupRestorer {
+
+    private final WTDatabaseHelper wtDB;
+    private final ByteBuffer buffer = ByteBuffer.allocate(WTBackupFormat.BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    // Payload bytes not yet read from the channel
+    private long unread;
+
+    WTBackupRestorer(WTDatabaseHelper wtDB) {
+        this.wtDB = wtDB;
+    }
+
+    /**
+     * Restores every user in the backup, replacing their existing data.
+     *
+     * @return number of weight entries restored
+     * @throws IOException if the file is not a valid backup or fails its checksum
+     */
+    int restore(File file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel = fileChannel;
+
+            ByteBuffer header = ByteBuffer.allocate(WTBackupFormat.HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new EOFException("Backup header is truncated");
+                }
+            }
+            header.flip();
+            int[] payloadInfo = WTBackupFormat.readHeader(header);
+            unread = payloadInfo[0];
+            int expectedCrc = payloadInfo[1];
+
+            buffer.clear();
+            buffer.flip();
+            crc.reset();
+
+            SQLiteDatabase db = wtDB.getWritableDatabase();
+            SQLiteStatement insert = wtDB.compileWeightInsert(db);
+            int restored = 0;
+            List<String> restoredEmails = new ArrayList<>();
+            db.beginTransaction();
+            try {
+                int users = readVarint();
+                for (int u = 0; u < users; u++) {
+                    String name = readString();
+                    String email = readString();
+                    String password = readString();
+                    int goalWeight = WTBackupFormat.unzigzag(readVarint());
+                    wtDB.replaceUserForRestore(db, name, email, password, goalWeight);
+                    restoredEmails.add(email);
+
+                    int count = readVarint();
+                    int day = 0;
+                    int weight = 0;
+                    for (int i = 0; i < count; i++) {
+                        day += WTBackupFormat.unzigzag(readVarint());
+                        weight += WTBackupFormat.unzigzag(readVarint());
+                        if (!WTDatabaseHelper.isValidWeight(weight)) {
+                            continue;
+                        }
+                        wtDB.insertRestoredWeight(db, insert, LocalDate.ofEpochDay(day).toString(), weight, email);
+                        restored++;
+                    }
+                    wtDB.finishUserRestore(db, email);
+                }
+
+                if (unread != 0 || buffer.hasRemaining()) {
+                    throw new IOException("Unexpected trailing data in backup");
+                }
+                if ((int) crc.getValue() != expectedCrc) {
+                    throw new IOException("Backup payload checksum mismatch");
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+            // Only reached once the restore committed
+            for (String email : restoredEmails) {
+                InvalidationTracker.getInstance().notifyWrite(email, WTDatabaseHelper.TABLE_USER,
+                        WTDatabaseHelper.TABLE_GOAL, WTDatabaseHelper.TABLE_LOG);
+            }
+            return restored;
+        } finally {
+            channel = null;
+        }
+    }
+
+    private String readString() throws IOException {
+        int length = readVarint();
+        if (length < 0 || length > unread + buffer.remaining()) {
+            throw new IOException("Corrupt string length in backup");
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = readByte();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Unsigned LEB128 varint
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in backup");
+    }
+
+    private byte readByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            refill();
+        }
+        return buffer.get();
+    }
+
+    // Reads the next chunk of payload (never past its end) and folds it into the checksum
+    private void refill() throws IOException {
+        if (unread == 0) {
+            throw new EOFException("Backup payload is truncated");
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), unread));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Backup payload is truncated");
+            }
+        }
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        unread -= buffer.limit();
+    }
+}
@@ -0,0 +1,175 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.padgettanna.weighttracker.model.MutableWeightEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a compact app-level snapshot of every user's profile, goal and weight history.
+ * - Entries are stored as epoch-day and weight deltas in zigzag varints (see WTBackupFormat)
+ * - The payload is streamed through a fixed-size buffer into a FileChannel,
+ *   and the checksummed header is written last once the payload CRC is known
+ * - Everything is read inside one transaction, so the users and both passes over each log
+ *   see the same snapshot even while other threads write
+ */
+class WTBackupWriter {
+
+    private final WTDatabaseHelper wtDB;
+    private final ByteBuffer buffer = ByteBuffer.allocate(WTBackupFormat.BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long payloadLength;
+
+    WTBackupWriter(WTDatabaseHelper wtDB) {
+        this.wtDB = wtDB;
+    }
+
+    /**
+     * Writes the backup to a temporary file next to the given one, then renames it into
+     * place, so an interrupted write never replaces a good backup.
+     *
+     * @return total size of the backup in bytes
+     */
+    long writeReplacing(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        long size = write(temp);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the backup to the given file, replacing any existing content.
+     *
+     * @return total size of the backup in bytes
+     */
+    long write(File file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = fileChannel;
+            buffer.clear();
+            crc.reset();
+            payloadLength = 0;
+
+            // Payload goes after the header, which is filled in at the end
+            channel.position(WTBackupFormat.HEADER_SIZE);
+
+            // The helper's reads run on this connection, so they all happen inside the
+            // transaction; nothing is written, so it is never marked successful.
+            // Non-exclusive (BEGIN IMMEDIATE), so other connections can still read meanwhile
+            SQLiteDatabase db = wtDB.getReadableDatabase();
+            db.beginTransactionNonExclusive();
+            try {
+                Cursor users = wtDB.readAllUsersForBackup();
+                try {
+                    writeVarint(users.getCount());
+                    while (users.moveToNext()) {
+                        writeUser(users.getString(0), users.getString(1), users.getString(2),
+                                users.isNull(3) ? 0 : users.getInt(3));
+                    }
+                } finally {
+                    users.close();
+                }
+            } finally {
+                db.endTransaction();
+            }
+            flush();
+
+            if (payloadLength > Integer.MAX_VALUE) {
+                throw new IOException("Backup payload too large");
+            }
+            ByteBuffer header = WTBackupFormat.header((int) payloadLength, (int) crc.getValue());
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.force(false);
+            return WTBackupFormat.HEADER_SIZE + payloadLength;
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void writeUser(String name, String email, String password, int goalWeight) throws IOException {
+        writeString(name);
+        writeString(email);
+        writeString(password);
+        writeVarint(WTBackupFormat.zigzag(goalWeight));
+
+        // The log is streamed twice, once to count the valid entries so the count can
+        // precede them and once to write them, so memory stays flat however long it is;
+        // the enclosing transaction keeps both passes on the same rows
+        int count = 0;
+        try (WeightEntryIterator entries = wtDB.iterateWeightEntries(email)) {
+            while (entries.hasNext()) {
+                entries.next();
+                count++;
+            }
+        }
+
+        writeVarint(count);
+        int written = 0;
+        long previousDay = 0;
+        int previousWeight = 0;
+        try (WeightEntryIterator entries = wtDB.iterateWeightEntries(email)) {
+            while (written < count && entries.hasNext()) {
+                MutableWeightEntry entry = entries.next();
+                writeVarint(WTBackupFormat.zigzag((int) (entry.getEpochDay() - previousDay)));
+                writeVarint(WTBackupFormat.zigzag(entry.getWeight() - previousWeight));
+                previousDay = entry.getEpochDay();
+                previousWeight = entry.getWeight();
+                written++;
+            }
+        }
+        if (written < count) {
+            throw new IOException("Weight log changed during backup");
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    // Unsigned LEB128 varint
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((byte) value);
+    }
+
+    private void writeByte(byte value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(value);
+    }
+
+    // Drains the buffer into the channel and folds it into the payload checksum
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        payloadLength += buffer.limit();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
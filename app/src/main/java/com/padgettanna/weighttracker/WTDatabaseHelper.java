@@ -1,14 +1,23 @@
 package com.padgettanna.weighttracker;
 
+import com.padgettanna.weighttracker.model.SyncChange;
 import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightLogFilter;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -16,9 +25,18 @@ import androidx.annotation.Nullable;
 /**
  * Database helper class for the Weight Tracker app.
  * Responsibilities:
- * - Manages SQLite schema creation and upgrades
+ * - Manages SQLite schema creation and upgrades; upgrades keep every row, moving large
+ *   data in resumable chunks (see WTMigrations)
  * - Performs CRUD operations for users, goals, and weight entries
  * - Enforces basic validation rules for weight and date values
+ * - Records every weight and goal write in a change log, in the same transaction,
+ *   so SyncClient can push only what changed
+ * - Reports every committed write to InvalidationTracker so screens refresh only when needed
+ * - Saves goals (and, in one-entry-per-day mode, daily weights) as single-statement upserts
+ *   against unique indexes, so overlapping writers cannot create duplicate rows
+ * - Queues a goal-reached notification in the outbox, in the same transaction, when a new
+ *   entry first reaches the user's goal (see NotificationDispatcher); edits and deletes
+ *   re-evaluate the goal state from the latest entry, and may queue one too
  * This class intentionally returns boolean results for write operations
  * to allow calling activities to handle validation feedback and UI flow.
  */
@@ -26,40 +44,104 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
 
     private Context context;
     // Validation constraints for weight entries (used by add/update operations)
-    private static final int MIN_WEIGHT = 50;
-    private static final int MAX_WEIGHT = 999;
+    static final int MIN_WEIGHT = 50;
+    static final int MAX_WEIGHT = 999;
 
     // Database configuration
     private static final String DATABASE_NAME = "WeightTracker.db";
-    private static final int DATABASE_VERSION = 7;
+    private static final int DATABASE_VERSION = 12;
 
     // Weight log table
-    private static final String TABLE_LOG = "weight_log";
+    static final String TABLE_LOG = "weight_log";
     private static final String COLUMN_ID = "_id";
     private static final String COLUMN_DATE = "date";
     private static final String COLUMN_WEIGHT = "weight";
+    // Serves per-user lookups ordered or filtered by date
+    private static final String INDEX_LOG_EMAIL_DATE = "idx_weight_log_email_date";
+    // Exists only in one-entry-per-day mode: at most one entry per user and date
+    private static final String INDEX_LOG_EMAIL_DATE_UNIQUE = "idx_weight_log_email_date_unique";
 
     // User info table
-    private static final String TABLE_USER = "user_table";
+    static final String TABLE_USER = "user_table";
     private static final String COLUMN_USER_ID = "_id";
     private static final String COLUMN_USER_EMAIL = "email";
     private static final String COLUMN_USER_PASSWORD = "password";
     private static final String COLUMN_USER_NAME = "name";
 
     // Goal weight table
-    private static final String TABLE_GOAL = "goal_table";
+    static final String TABLE_GOAL = "goal_table";
     private static final String COLUMN_GOAL_ID = "_id";
     private static final String COLUMN_GOAL_WEIGHT = "goal_weight";
+    // One goal row per user
+    private static final String INDEX_GOAL_EMAIL = "idx_goal_email";
+
+    // Change log table: one row per local write, in commit order
+    private static final String TABLE_CHANGE_LOG = "change_log";
+    private static final String COLUMN_CHANGE_SEQ = "seq";
+    private static final String COLUMN_CHANGE_TABLE = "table_name";
+    private static final String COLUMN_CHANGE_OP = "op";
+    private static final String COLUMN_CHANGE_ROW_ID = "row_id";
+    private static final String COLUMN_CHANGE_TIME = "changed_at";
+
+    // Sync key table: global key and last change time of entries received from other devices,
+    // and of this device's entries once their acknowledged changes are pruned
+    private static final String TABLE_SYNC_KEY = "sync_key";
+    private static final String COLUMN_SYNC_KEY = "sync_key";
+    private static final String COLUMN_SYNC_TIME = "changed_at";
+
+    // Sync state table: per-user push/pull progress, and the latest goal change time
+    // (applied from another device, or pushed and pruned from the change log)
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_PUSHED_SEQ = "pushed_seq";
+    private static final String COLUMN_PULL_CURSOR = "pull_cursor";
+    private static final String COLUMN_GOAL_SYNC_TIME = "goal_changed_at";
+
+    // Goal state table: whether the user's latest entry is at or below the current goal
+    private static final String TABLE_GOAL_STATE = "goal_state";
+    private static final String COLUMN_GOAL_REACHED = "reached";
+
+    // Notification outbox: notifications waiting to be sent, in the order they were queued
+    static final String TABLE_OUTBOX = "notification_outbox";
+    private static final String COLUMN_OUTBOX_ID = "_id";
+    private static final String COLUMN_OUTBOX_KIND = "kind";
+    private static final String COLUMN_OUTBOX_CREATED = "created_at";
+    private static final String COLUMN_OUTBOX_ATTEMPTS = "attempts";
+    private static final String COLUMN_OUTBOX_NEXT_ATTEMPT = "next_attempt_at";
+    static final String NOTIFICATION_GOAL_REACHED = "goal_reached";
+
+    // Whether this SQLite build has INSERT ... ON CONFLICT DO UPDATE (3.24+, Android 11+)
+    private Boolean upsertSupported;
+    // One-entry-per-day mode, shared by every helper instance in the process since they all
+    // open the same file; null until read from the schema, and reset whenever a helper opens it
+    private static volatile Boolean oneEntryPerDay;
 
     WTDatabaseHelper(@Nullable Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context;
     }
 
+    // Runs before onCreate, so a new database is created with incremental vacuum enabled;
+    // existing databases are converted by WTDatabaseMaintenance
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
     // Create weight_log, user, and goal tables
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String queryLog = "CREATE TABLE " + TABLE_LOG +
+        createBaseTables(db);
+        createLogIndex(db);
+        createGoalIndex(db);
+        createSyncTables(db);
+        WTMigrations.createStateTable(db);
+        createNotificationTables(db);
+    }
+
+    // weight_log, user and goal tables as laid out since version 7
+    private void createBaseTables(SQLiteDatabase db) {
+        String queryLog = "CREATE TABLE IF NOT EXISTS " + TABLE_LOG +
                 " (" + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_DATE + " TEXT, " +
                 COLUMN_WEIGHT + " INTEGER, " +
@@ -67,14 +149,14 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
                 "FOREIGN KEY(" + COLUMN_USER_EMAIL + ") REFERENCES " + TABLE_USER + "(" + COLUMN_USER_EMAIL + "));";
         db.execSQL(queryLog);
 
-        String queryUser = "CREATE TABLE " + TABLE_USER +
+        String queryUser = "CREATE TABLE IF NOT EXISTS " + TABLE_USER +
                 " (" + COLUMN_USER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_USER_NAME + " TEXT, " +
                 COLUMN_USER_EMAIL + " TEXT UNIQUE, " +
                 COLUMN_USER_PASSWORD + " TEXT);";
         db.execSQL(queryUser);
 
-        String queryGoal = "CREATE TABLE " + TABLE_GOAL +
+        String queryGoal = "CREATE TABLE IF NOT EXISTS " + TABLE_GOAL +
                 " (" + COLUMN_GOAL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_GOAL_WEIGHT + " INTEGER, " +
                 COLUMN_USER_EMAIL + " TEXT, " +
@@ -82,17 +164,133 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(queryGoal);
     }
 
-    // Drop and recreate existing tables when upgrading schema
+    private void createLogIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_LOG_EMAIL_DATE + " ON " + TABLE_LOG +
+                " (" + COLUMN_USER_EMAIL + ", " + COLUMN_DATE + ");");
+    }
+
+    // Keeps the newest goal row per user, then makes email unique in goal_table
+    private void createGoalIndex(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_GOAL + " WHERE " + COLUMN_GOAL_ID + " NOT IN (SELECT MAX("
+                + COLUMN_GOAL_ID + ") FROM " + TABLE_GOAL + " GROUP BY " + COLUMN_USER_EMAIL + ");");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_GOAL_EMAIL + " ON " + TABLE_GOAL +
+                " (" + COLUMN_USER_EMAIL + ");");
+    }
+
+    // Change log plus the bookkeeping SyncClient needs to resume and resolve conflicts
+    private void createSyncTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CHANGE_LOG +
+                " (" + COLUMN_CHANGE_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_USER_EMAIL + " TEXT, " +
+                COLUMN_CHANGE_TABLE + " TEXT, " +
+                COLUMN_CHANGE_OP + " TEXT, " +
+                COLUMN_CHANGE_ROW_ID + " INTEGER, " +
+                COLUMN_CHANGE_TIME + " INTEGER);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_change_log_email_seq ON " + TABLE_CHANGE_LOG +
+                " (" + COLUMN_USER_EMAIL + ", " + COLUMN_CHANGE_SEQ + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_change_log_row ON " + TABLE_CHANGE_LOG +
+                " (" + COLUMN_CHANGE_TABLE + ", " + COLUMN_CHANGE_ROW_ID + ");");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_KEY +
+                " (" + COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_SYNC_KEY + " TEXT UNIQUE, " +
+                COLUMN_SYNC_TIME + " INTEGER);");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_STATE +
+                " (" + COLUMN_USER_EMAIL + " TEXT PRIMARY KEY, " +
+                COLUMN_PUSHED_SEQ + " INTEGER DEFAULT 0, " +
+                COLUMN_PULL_CURSOR + " INTEGER DEFAULT 0, " +
+                COLUMN_GOAL_SYNC_TIME + " INTEGER DEFAULT 0);");
+    }
+
+    // Goal state plus the outbox NotificationDispatcher sends from
+    private void createNotificationTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_GOAL_STATE +
+                " (" + COLUMN_USER_EMAIL + " TEXT PRIMARY KEY, " +
+                COLUMN_GOAL_REACHED + " INTEGER DEFAULT 0);");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_OUTBOX +
+                " (" + COLUMN_OUTBOX_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_USER_EMAIL + " TEXT, " +
+                COLUMN_OUTBOX_KIND + " TEXT, " +
+                COLUMN_OUTBOX_CREATED + " INTEGER, " +
+                COLUMN_OUTBOX_ATTEMPTS + " INTEGER DEFAULT 0, " +
+                COLUMN_OUTBOX_NEXT_ATTEMPT + " INTEGER DEFAULT 0);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_notification_outbox_next ON " + TABLE_OUTBOX +
+                " (" + COLUMN_OUTBOX_NEXT_ATTEMPT + ");");
+    }
+
+    /**
+     * Every schema version after the first, in order; each step upgrades from the version
+     * before it. Steps only change the schema or queue chunked data work (see WTMigrations),
+     * so the upgrade transaction stays short whatever the size of the database.
+     */
+    private List<WTMigrations.Migration> migrations() {
+        return Arrays.asList(
+                new WTMigrations.Migration(7, this::rebuildLegacyTables),
+                new WTMigrations.Migration(8, this::createLogIndex),
+                new WTMigrations.Migration(9, this::createSyncTables),
+                new WTMigrations.Migration(10, this::createGoalIndex),
+                // migration_state itself, created by WTMigrations.upgrade
+                new WTMigrations.Migration(11, db -> { }),
+                new WTMigrations.Migration(12, this::createNotificationTables));
+    }
+
+    // Chunked data work a migration may queue, in the order it must run
+    private static List<WTMigrations.ChunkedStep> chunkedSteps() {
+        return Arrays.asList(
+                // Users first, so copied entries and goals always have their user
+                WTMigrations.tableCopy(TABLE_USER, "OR IGNORE"),
+                WTMigrations.tableCopy(TABLE_LOG, "OR IGNORE"),
+                // Only each user's newest legacy goal, and never over a goal set since the upgrade
+                WTMigrations.tableCopy(TABLE_GOAL, "OR IGNORE", "rowid IN (SELECT MAX(rowid) FROM "
+                        + WTMigrations.legacyName(TABLE_GOAL) + " GROUP BY " + COLUMN_USER_EMAIL + ")"));
+    }
+
+    /**
+     * Versions before 7 kept the same three tables in older layouts. They are moved aside
+     * and recreated in the current layout; their rows are copied back in chunks after the
+     * upgrade commits, instead of being dropped. New rows get ids above every legacy id, so
+     * copying the legacy rows back with their ids never collides with them.
+     */
+    private void rebuildLegacyTables(SQLiteDatabase db) {
+        String[] tables = {TABLE_USER, TABLE_LOG, TABLE_GOAL};
+        for (String table : tables) {
+            WTMigrations.moveAsideForCopy(db, table);
+        }
+        createBaseTables(db);
+        for (String table : tables) {
+            WTMigrations.reserveLegacyIds(db, table);
+        }
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LOG);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USER);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_GOAL);
-        onCreate(db);
+        WTMigrations.upgrade(db, migrations(), oldVersion, newVersion);
+    }
+
+    // Finishes chunked migration work outside the upgrade transaction, resuming if interrupted
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // The file may have been replaced or recreated since the mode was cached
+        oneEntryPerDay = null;
+        if (!db.isReadOnly()) {
+            WTMigrations.runPending(db, chunkedSteps());
+        }
+    }
+
+    /**
+     * Opens the database and runs its chunked migration work to completion, waiting for
+     * another thread already running it. Never call it on the main thread.
+     */
+    void finishMigrations() {
+        WTMigrations.finishPending(getWritableDatabase(), chunkedSteps());
     }
 
     /**
      * Inserts a new weight entry for the given user.
+     * In one-entry-per-day mode an existing entry for the same date is overwritten instead.
      *
      * @return true if the entry was successfully inserted; false if validation fails
      *         or the database insert does not succeed.
@@ -102,14 +300,251 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
             return false;
         }
 
-        SQLiteDatabase db = getWritableDatabase();
         ContentValues cv = new ContentValues();
 
         cv.put(COLUMN_DATE, date);
         cv.put(COLUMN_WEIGHT, weight);
         cv.put(COLUMN_USER_EMAIL, email);
 
-        return db.insert(TABLE_LOG, null, cv) != -1;
+        boolean[] goalReached = new boolean[1];
+        boolean written = runWrite(email, db -> {
+            long id = isOneEntryPerDay(db)
+                    ? upsertDailyWeight(db, date, weight, email)
+                    : db.insert(TABLE_LOG, null, cv);
+            if (id == -1) {
+                return false;
+            }
+            logChange(db, email, TABLE_LOG, SyncChange.OP_UPSERT, id);
+            goalReached[0] = recordGoalProgress(db, email, weight);
+            return true;
+        }, TABLE_LOG);
+        if (written && goalReached[0]) {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_OUTBOX);
+        }
+        return written;
+    }
+
+    /**
+     * A weight entry waiting to be written by addWeights.
+     */
+    static final class NewWeight {
+        final String date;
+        final int weight;
+        final String email;
+
+        NewWeight(String date, int weight, String email) {
+            this.date = date;
+            this.weight = weight;
+            this.email = email;
+        }
+    }
+
+    /**
+     * Inserts several weight entries in one transaction, each as addWeight would.
+     * An entry that fails validation or is rejected by a constraint is skipped and the
+     * rest still commit. Observers are notified once per user after the commit.
+     * Entries are checked against the goal in list order, so a burst that crosses it
+     * queues one notification.
+     *
+     * @return whether each entry was written, parallel to the list
+     */
+    boolean[] addWeights(List<NewWeight> weights) {
+        boolean[] written = new boolean[weights.size()];
+        Set<String> emails = new LinkedHashSet<>();
+        Set<String> goalsReached = new LinkedHashSet<>();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean daily = isOneEntryPerDay(db);
+            SQLiteStatement insert = daily ? null : db.compileStatement("INSERT INTO " + TABLE_LOG
+                    + " (" + COLUMN_DATE + ", " + COLUMN_WEIGHT + ", " + COLUMN_USER_EMAIL
+                    + ") VALUES (?, ?, ?)");
+            try {
+                for (int i = 0; i < written.length; i++) {
+                    NewWeight entry = weights.get(i);
+                    if (!isValidWeight(entry.weight) || !isValidDate(entry.date) || entry.email == null) {
+                        continue;
+                    }
+                    long id;
+                    try {
+                        if (daily) {
+                            id = upsertDailyWeight(db, entry.date, entry.weight, entry.email);
+                        } else {
+                            insert.bindString(1, entry.date);
+                            insert.bindLong(2, entry.weight);
+                            insert.bindString(3, entry.email);
+                            id = insert.executeInsert();
+                        }
+                    } catch (SQLiteConstraintException e) {
+                        // Only this statement is rolled back; the batch carries on
+                        Log.w("WTDatabaseHelper", "Write rejected by a constraint", e);
+                        continue;
+                    }
+                    if (id == -1) {
+                        continue;
+                    }
+                    logChange(db, entry.email, TABLE_LOG, SyncChange.OP_UPSERT, id);
+                    if (recordGoalProgress(db, entry.email, entry.weight)) {
+                        goalsReached.add(entry.email);
+                    }
+                    written[i] = true;
+                    emails.add(entry.email);
+                }
+            } finally {
+                if (insert != null) {
+                    insert.close();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (String email : emails) {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_LOG);
+        }
+        for (String email : goalsReached) {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_OUTBOX);
+        }
+        return written;
+    }
+
+    // Writes the user's only entry for the date and returns its row id, or -1
+    private long upsertDailyWeight(SQLiteDatabase db, String date, int weight, String email) {
+        if (supportsUpsert(db)) {
+            SQLiteStatement upsert = db.compileStatement("INSERT INTO " + TABLE_LOG + " (" + COLUMN_DATE
+                    + ", " + COLUMN_WEIGHT + ", " + COLUMN_USER_EMAIL + ") VALUES (?, ?, ?) ON CONFLICT("
+                    + COLUMN_USER_EMAIL + ", " + COLUMN_DATE + ") DO UPDATE SET " + COLUMN_WEIGHT
+                    + " = excluded." + COLUMN_WEIGHT);
+            try {
+                upsert.bindString(1, date);
+                upsert.bindLong(2, weight);
+                upsert.bindString(3, email);
+                if (upsert.executeUpdateDelete() == 0) {
+                    return -1;
+                }
+            } finally {
+                upsert.close();
+            }
+        } else {
+            // Older SQLite: insert unless the day exists, else overwrite it. REPLACE is not used
+            // because it would give the entry a new id and orphan its change log and sync key.
+            ContentValues cv = new ContentValues();
+            cv.put(COLUMN_DATE, date);
+            cv.put(COLUMN_WEIGHT, weight);
+            cv.put(COLUMN_USER_EMAIL, email);
+            long id = db.insertWithOnConflict(TABLE_LOG, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id != -1) {
+                return id;
+            }
+            cv.clear();
+            cv.put(COLUMN_WEIGHT, weight);
+            if (db.update(TABLE_LOG, cv, COLUMN_USER_EMAIL + "=? AND " + COLUMN_DATE + "=?",
+                    new String[]{email, date}) == 0) {
+                return -1;
+            }
+        }
+
+        // The update branch does not report the row id, which the change log needs
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_LOG + " WHERE "
+                + COLUMN_USER_EMAIL + "=? AND " + COLUMN_DATE + "=?", new String[]{email, date});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Turns one-entry-per-day mode on or off for every user on this device.
+     * Turning it on keeps only the newest entry for each user and date, recording the removed
+     * ones in the change log so sync deletes them elsewhere, then adds a unique (email, date)
+     * index. From then on addWeight overwrites the day's entry in a single upsert.
+     * Turning it on rewrites the whole log, so call it off the main thread (MainActivity
+     * runs it on the WeightWriteQueue thread).
+     */
+    void setOneEntryPerDay(boolean enabled) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (!enabled) {
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_LOG_EMAIL_DATE_UNIQUE);
+            oneEntryPerDay = false;
+            return;
+        }
+
+        List<Long> removedIds = new ArrayList<>();
+        List<String> removedEmails = new ArrayList<>();
+        Set<String> affected = new LinkedHashSet<>();
+        db.beginTransaction();
+        try {
+            // Every entry that has a newer entry for the same user and date
+            Cursor cursor = db.rawQuery("SELECT l." + COLUMN_ID + ", l." + COLUMN_USER_EMAIL + " FROM "
+                    + TABLE_LOG + " l WHERE EXISTS (SELECT 1 FROM " + TABLE_LOG + " n WHERE n."
+                    + COLUMN_USER_EMAIL + " = l." + COLUMN_USER_EMAIL + " AND n." + COLUMN_DATE + " = l."
+                    + COLUMN_DATE + " AND n." + COLUMN_ID + " > l." + COLUMN_ID + ")", null);
+            try {
+                while (cursor.moveToNext()) {
+                    removedIds.add(cursor.getLong(0));
+                    removedEmails.add(cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+            for (int i = 0; i < removedIds.size(); i++) {
+                long id = removedIds.get(i);
+                db.delete(TABLE_LOG, COLUMN_ID + "=?", new String[]{String.valueOf(id)});
+                logChange(db, removedEmails.get(i), TABLE_LOG, SyncChange.OP_DELETE, id);
+                affected.add(removedEmails.get(i));
+            }
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_LOG_EMAIL_DATE_UNIQUE + " ON "
+                    + TABLE_LOG + " (" + COLUMN_USER_EMAIL + ", " + COLUMN_DATE + ");");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        oneEntryPerDay = true;
+        for (String email : affected) {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_LOG);
+        }
+    }
+
+    // True if one-entry-per-day mode is on
+    boolean isOneEntryPerDay() {
+        return isOneEntryPerDay(getReadableDatabase());
+    }
+
+    // The mode is stored as the presence of its unique index, so every helper instance agrees;
+    // the schema is only queried when the cached value was reset
+    private boolean isOneEntryPerDay(SQLiteDatabase db) {
+        Boolean cached = oneEntryPerDay;
+        if (cached != null) {
+            return cached;
+        }
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{INDEX_LOG_EMAIL_DATE_UNIQUE});
+        try {
+            cached = cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+        oneEntryPerDay = cached;
+        return cached;
+    }
+
+    // Upsert syntax arrived in SQLite 3.24; the platform's version depends on the Android release
+    private boolean supportsUpsert(SQLiteDatabase db) {
+        if (upsertSupported == null) {
+            Cursor cursor = db.rawQuery("SELECT sqlite_version()", null);
+            try {
+                String[] parts = cursor.moveToFirst() ? cursor.getString(0).split("\\.") : new String[0];
+                int major = parts.length > 0 ? Integer.parseInt(parts[0]) : 0;
+                int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+                upsertSupported = major > 3 || (major == 3 && minor >= 24);
+            } catch (NumberFormatException e) {
+                upsertSupported = false;
+            } finally {
+                cursor.close();
+            }
+        }
+        return upsertSupported;
     }
 
     /**
@@ -146,6 +581,82 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
         return entries;
     }
 
+    /**
+     * Streams a user's weight entries oldest first (by date, then id) for one forward pass.
+     * Nothing is materialized: the iterator reuses one entry per step and reads the cursor
+     * as it goes, so export and single-pass analyses run in constant memory.
+     * The caller must close the iterator unless it is read to the end.
+     */
+    WeightEntryIterator iterateWeightEntries(String userEmail) {
+        return iterateWeightEntries(getReadableDatabase(), userEmail);
+    }
+
+    // Same as above on a given connection, e.g. one of CohortAnalyticsJob's read-only ones
+    static WeightEntryIterator iterateWeightEntries(SQLiteDatabase db, String userEmail) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DATE + ", " + COLUMN_WEIGHT
+                + " FROM " + TABLE_LOG + " WHERE " + COLUMN_USER_EMAIL + " = ? ORDER BY "
+                + COLUMN_DATE + ", " + COLUMN_ID, new String[]{userEmail == null ? "" : userEmail});
+        return new WeightEntryIterator(cursor);
+    }
+
+
+    /**
+     * Retrieves the user's weight entries matching the filter, most recent first.
+     * Runs against the (email, date) index; intended to be called off the main thread.
+     *
+     * @param signal cancels the query when a newer filter supersedes it; may be null
+     * @throws android.os.OperationCanceledException if the signal is cancelled mid-query
+     */
+    List<WeightEntry> queryWeightEntries(String userEmail, WeightLogFilter filter,
+                                         @Nullable CancellationSignal signal) {
+        List<WeightEntry> entries = new ArrayList<>();
+
+        if (userEmail == null || userEmail.isBlank()) {
+            return entries;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMN_ID + ", " + COLUMN_DATE + ", "
+                + COLUMN_WEIGHT + " FROM " + TABLE_LOG + " WHERE " + COLUMN_USER_EMAIL + " = ?");
+        List<String> args = new ArrayList<>();
+        args.add(userEmail);
+
+        // Dates are stored as ISO-8601 text, so string comparison orders them correctly
+        if (filter.getFromDate() != null) {
+            sql.append(" AND ").append(COLUMN_DATE).append(" >= ?");
+            args.add(filter.getFromDate().toString());
+        }
+        if (filter.getToDate() != null) {
+            sql.append(" AND ").append(COLUMN_DATE).append(" <= ?");
+            args.add(filter.getToDate().toString());
+        }
+        if (filter.getMinWeight() != null) {
+            sql.append(" AND ").append(COLUMN_WEIGHT).append(" >= ?");
+            args.add(String.valueOf(filter.getMinWeight()));
+        }
+        if (filter.getMaxWeight() != null) {
+            sql.append(" AND ").append(COLUMN_WEIGHT).append(" <= ?");
+            args.add(String.valueOf(filter.getMaxWeight()));
+        }
+        sql.append(" ORDER BY ").append(COLUMN_DATE).append(" DESC, ").append(COLUMN_ID).append(" DESC");
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(sql.toString(), args.toArray(new String[0]), signal);
+
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    entries.add(new WeightEntry(
+                            cursor.getInt(0),
+                            LocalDate.parse(cursor.getString(1)),
+                            cursor.getInt(2)
+                    ));
+                } catch (Exception ignored) {}
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
 
     // Add new user to the user_table
     void addUser(String name, String email, String password) {
@@ -162,6 +673,7 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
             Toast.makeText(context, "User already exists!", Toast.LENGTH_SHORT).show();
         }
         else {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_USER);
             Toast.makeText(context, "User info saved!", Toast.LENGTH_SHORT).show();
         }
     }
@@ -185,34 +697,38 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
         if (!isValidWeight(goal_weight) || email == null || email.isBlank()) {
             return false;
         }
-        SQLiteDatabase db = getWritableDatabase();
-        ContentValues cv = new ContentValues();
-
-        cv.put(COLUMN_GOAL_WEIGHT, goal_weight);
-        cv.put(COLUMN_USER_EMAIL, email);
-
-        Cursor cursor = db.rawQuery(
-                "SELECT 1 FROM " + TABLE_GOAL + " WHERE " + COLUMN_USER_EMAIL + "=?",
-                new String[]{email}
-        );
-
-        boolean success;
+        return runWrite(email, db -> {
+            if (!upsertGoal(db, email, goal_weight)) {
+                return false;
+            }
+            // A new goal can be reached again, so its first crossing notifies too
+            db.delete(TABLE_GOAL_STATE, COLUMN_USER_EMAIL + "=?", new String[]{email});
+            // Goals are synced per user, so the row id is not needed
+            logChange(db, email, TABLE_GOAL, SyncChange.OP_UPSERT, 0);
+            return true;
+        }, TABLE_GOAL);
+    }
 
-        if (cursor.moveToFirst()) {
-            // Update existing goal
-            success = db.update(
-                    TABLE_GOAL,
-                    cv,
-                    COLUMN_USER_EMAIL + "=?",
-                    new String[]{email}
-            ) > 0;
-        } else {
-            // Insert new goal
-            success = db.insert(TABLE_GOAL, null, cv) != -1;
+    // Inserts or overwrites the user's goal in one statement, relying on the unique email index
+    private boolean upsertGoal(SQLiteDatabase db, String email, int goalWeight) {
+        if (supportsUpsert(db)) {
+            SQLiteStatement upsert = db.compileStatement("INSERT INTO " + TABLE_GOAL + " ("
+                    + COLUMN_GOAL_WEIGHT + ", " + COLUMN_USER_EMAIL + ") VALUES (?, ?) ON CONFLICT("
+                    + COLUMN_USER_EMAIL + ") DO UPDATE SET " + COLUMN_GOAL_WEIGHT + " = excluded."
+                    + COLUMN_GOAL_WEIGHT);
+            try {
+                upsert.bindLong(1, goalWeight);
+                upsert.bindString(2, email);
+                return upsert.executeUpdateDelete() > 0;
+            } finally {
+                upsert.close();
+            }
         }
-
-        cursor.close();
-        return success;
+        // Older SQLite: REPLACE is safe here because nothing refers to goal row ids
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_GOAL_WEIGHT, goalWeight);
+        cv.put(COLUMN_USER_EMAIL, email);
+        return db.insertWithOnConflict(TABLE_GOAL, null, cv, SQLiteDatabase.CONFLICT_REPLACE) != -1;
     }
 
     // Read the goal weight from goal_table
@@ -232,6 +748,22 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
         return cursor;
     }
 
+    // Most recent entry by date, then by id; null if the user has none
+    @Nullable
+    WeightEntry getLatestEntry(String email) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DATE + ", " + COLUMN_WEIGHT
+                + " FROM " + TABLE_LOG + " WHERE " + COLUMN_USER_EMAIL + "=? ORDER BY " + COLUMN_DATE
+                + " DESC, " + COLUMN_ID + " DESC LIMIT 1", new String[]{email});
+        try {
+            return cursor.moveToFirst()
+                    ? new WeightEntry(cursor.getInt(0), LocalDate.parse(cursor.getString(1)), cursor.getInt(2))
+                    : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // Read the name from user table
     Cursor readUserName(String email) {
         SQLiteDatabase db = getReadableDatabase();
@@ -242,9 +774,14 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
 
     // Remove weight entry from database
     boolean deleteWeightEntry(int id, String email) {
-        SQLiteDatabase db = getWritableDatabase();
-        return db.delete(TABLE_LOG,  COLUMN_USER_EMAIL + "=? AND " +
-                COLUMN_ID + "=?", new String[]{email, String.valueOf(id)}) > 0;
+        return runLogEdit(email, db -> {
+            if (db.delete(TABLE_LOG,  COLUMN_USER_EMAIL + "=? AND " +
+                    COLUMN_ID + "=?", new String[]{email, String.valueOf(id)}) == 0) {
+                return false;
+            }
+            logChange(db, email, TABLE_LOG, SyncChange.OP_DELETE, id);
+            return true;
+        });
     }
 
     /**
@@ -258,28 +795,664 @@ public class WTDatabaseHelper extends SQLiteOpenHelper {
             return false;
         }
 
-        SQLiteDatabase db = getWritableDatabase();
         ContentValues cv = new ContentValues();
         cv.put(COLUMN_DATE, date);
         cv.put(COLUMN_WEIGHT, weight);
 
-        int rows = db.update(
-                TABLE_LOG,
-                cv,
-                COLUMN_USER_EMAIL + "=? AND " + COLUMN_ID + "=?",
-                new String[]{email, String.valueOf(id)}
-        );
+        return runLogEdit(email, db -> {
+            int rows = db.update(
+                    TABLE_LOG,
+                    cv,
+                    COLUMN_USER_EMAIL + "=? AND " + COLUMN_ID + "=?",
+                    new String[]{email, String.valueOf(id)}
+            );
+            if (rows == 0) {
+                return false;
+            }
+            logChange(db, email, TABLE_LOG, SyncChange.OP_UPSERT, id);
+            return true;
+        });
+    }
+
+    /**
+     * Deletes several weight entries in a single transaction.
+     *
+     * @return true if every entry was deleted; otherwise the whole batch is rolled back
+     */
+    boolean deleteWeightEntries(List<Integer> ids, String email) {
+        if (ids == null || ids.isEmpty() || email == null) {
+            return false;
+        }
+
+        return runLogEdit(email, db -> {
+            for (int id : ids) {
+                int rows = db.delete(TABLE_LOG, COLUMN_USER_EMAIL + "=? AND " + COLUMN_ID + "=?",
+                        new String[]{email, String.valueOf(id)});
+                if (rows == 0) {
+                    return false;
+                }
+                logChange(db, email, TABLE_LOG, SyncChange.OP_DELETE, id);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Shifts the date and/or adjusts the weight of several entries in a single transaction.
+     * Every edited entry must still pass validation (no future dates, weight in range);
+     * if any entry fails or is missing, the whole batch is rolled back.
+     *
+     * @param dayShift days to add to each entry's date (negative moves it back)
+     * @param weightDelta amount to add to each entry's weight
+     * @return true if every entry was updated; false otherwise
+     */
+    boolean updateWeightEntries(List<Integer> ids, int dayShift, int weightDelta, String email) {
+        if (ids == null || ids.isEmpty() || email == null) {
+            return false;
+        }
+
+        return runLogEdit(email, db -> {
+            ContentValues cv = new ContentValues();
+            for (int id : ids) {
+                String[] args = new String[]{email, String.valueOf(id)};
+                Cursor cursor = db.rawQuery("SELECT " + COLUMN_DATE + ", " + COLUMN_WEIGHT
+                        + " FROM " + TABLE_LOG + " WHERE " + COLUMN_USER_EMAIL + "=? AND "
+                        + COLUMN_ID + "=?", args);
+                String newDate;
+                int newWeight;
+                try {
+                    if (!cursor.moveToFirst()) {
+                        return false;
+                    }
+                    newDate = LocalDate.parse(cursor.getString(0)).plusDays(dayShift).toString();
+                    newWeight = cursor.getInt(1) + weightDelta;
+                } catch (Exception e) {
+                    return false;
+                } finally {
+                    cursor.close();
+                }
+
+                if (!isValidWeight(newWeight) || !isValidDate(newDate)) {
+                    return false;
+                }
+
+                cv.clear();
+                cv.put(COLUMN_DATE, newDate);
+                cv.put(COLUMN_WEIGHT, newWeight);
+                if (db.update(TABLE_LOG, cv, COLUMN_USER_EMAIL + "=? AND " + COLUMN_ID + "=?", args) == 0) {
+                    return false;
+                }
+                logChange(db, email, TABLE_LOG, SyncChange.OP_UPSERT, id);
+            }
+            return true;
+        });
+    }
+
+    // Read every user with their goal weight (if any) for backup
+    Cursor readAllUsersForBackup() {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT u." + COLUMN_USER_NAME + ", u." + COLUMN_USER_EMAIL + ", u."
+                + COLUMN_USER_PASSWORD + ", (SELECT g." + COLUMN_GOAL_WEIGHT + " FROM " + TABLE_GOAL
+                + " g WHERE g." + COLUMN_USER_EMAIL + " = u." + COLUMN_USER_EMAIL
+                + " ORDER BY g." + COLUMN_GOAL_ID + " DESC LIMIT 1)"
+                + " FROM " + TABLE_USER + " u ORDER BY u." + COLUMN_USER_ID, null);
+    }
+
+    /**
+     * Replaces a user's profile, goal and weight log ahead of a bulk restore.
+     * The removed entries and the restored goal are written to the change log, so sync
+     * replaces them on other devices too.
+     * Must be called inside a transaction started by the restorer.
+     */
+    void replaceUserForRestore(SQLiteDatabase db, String name, String email, String password, int goalWeight) {
+        ContentValues user = new ContentValues();
+        user.put(COLUMN_USER_NAME, name);
+        user.put(COLUMN_USER_EMAIL, email);
+        user.put(COLUMN_USER_PASSWORD, password);
+        db.insertWithOnConflict(TABLE_USER, null, user, SQLiteDatabase.CONFLICT_REPLACE);
+
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_LOG + " WHERE "
+                + COLUMN_USER_EMAIL + "=?", new String[]{email});
+        try {
+            while (cursor.moveToNext()) {
+                logChange(db, email, TABLE_LOG, SyncChange.OP_DELETE, cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        db.delete(TABLE_LOG, COLUMN_USER_EMAIL + "=?", new String[]{email});
+        db.delete(TABLE_GOAL, COLUMN_USER_EMAIL + "=?", new String[]{email});
+
+        if (isValidWeight(goalWeight)) {
+            ContentValues goal = new ContentValues();
+            goal.put(COLUMN_GOAL_WEIGHT, goalWeight);
+            goal.put(COLUMN_USER_EMAIL, email);
+            db.insert(TABLE_GOAL, null, goal);
+            logChange(db, email, TABLE_GOAL, SyncChange.OP_UPSERT, 0);
+        }
+    }
+
+    // Compiled insert used by bulk loads: binds date, weight, email
+    SQLiteStatement compileWeightInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE_LOG + " (" + COLUMN_DATE + ", "
+                + COLUMN_WEIGHT + ", " + COLUMN_USER_EMAIL + ") VALUES (?, ?, ?)");
+    }
+
+    /**
+     * Writes a restored entry with the compiled insert and records it in the change log.
+     * In one-entry-per-day mode a later entry for the same date overwrites the earlier one
+     * in place (see upsertDailyWeight), so the id its change log row points at stays valid.
+     */
+    void insertRestoredWeight(SQLiteDatabase db, SQLiteStatement insert, String date, int weight, String email) {
+        long id;
+        if (isOneEntryPerDay(db)) {
+            id = upsertDailyWeight(db, date, weight, email);
+        } else {
+            insert.bindString(1, date);
+            insert.bindLong(2, weight);
+            insert.bindString(3, email);
+            id = insert.executeInsert();
+        }
+        if (id != -1) {
+            logChange(db, email, TABLE_LOG, SyncChange.OP_UPSERT, id);
+        }
+    }
+
+    /**
+     * Sets the goal state from a restored user's latest entry, without queuing a notification:
+     * the goal was announced, if at all, when the backed-up entries were first saved.
+     * Must be called inside the restorer's transaction, after the user's entries.
+     */
+    void finishUserRestore(SQLiteDatabase db, String email) {
+        refreshGoalState(db, email, false);
+    }
+
+    // A unit of work run inside a write transaction; return true to commit
+    private interface WriteBlock {
+        boolean run(SQLiteDatabase db);
+    }
+
+    /**
+     * Runs a write in one transaction. If the block returns true the transaction is
+     * committed and, only after the commit, the user's versions of the given tables are
+     * bumped so observers re-query; otherwise, or if a constraint rejects a statement,
+     * everything is rolled back.
+     */
+    private boolean runWrite(String email, WriteBlock block, String... tables) {
+        SQLiteDatabase db = getWritableDatabase();
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            if (block.run(db)) {
+                db.setTransactionSuccessful();
+                committed = true;
+            }
+        } catch (SQLiteConstraintException e) {
+            // e.g. an edit moving an entry onto a taken date in one-entry-per-day mode
+            Log.w("WTDatabaseHelper", "Write rejected by a constraint", e);
+        } finally {
+            db.endTransaction();
+        }
+        if (committed) {
+            InvalidationTracker.getInstance().notifyWrite(email, tables);
+        }
+        return committed;
+    }
+
+    /**
+     * Runs an edit or delete of existing entries like runWrite, then re-evaluates the goal
+     * state from the entries left, in the same transaction. Observers of the outbox are
+     * notified too if that queued a notification.
+     */
+    private boolean runLogEdit(String email, WriteBlock block) {
+        boolean[] queued = new boolean[1];
+        boolean written = runWrite(email, db -> {
+            if (!block.run(db)) {
+                return false;
+            }
+            queued[0] = refreshGoalState(db, email, true);
+            return true;
+        }, TABLE_LOG);
+        if (written && queued[0]) {
+            InvalidationTracker.getInstance().notifyWrite(email, TABLE_OUTBOX);
+        }
+        return written;
+    }
+
+    // ----- Change log and sync -----
+
+    // Records a local write; must be called inside the write's transaction
+    private void logChange(SQLiteDatabase db, String email, String table, String op, long rowId) {
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_USER_EMAIL, email);
+        cv.put(COLUMN_CHANGE_TABLE, table);
+        cv.put(COLUMN_CHANGE_OP, op);
+        cv.put(COLUMN_CHANGE_ROW_ID, rowId);
+        cv.put(COLUMN_CHANGE_TIME, System.currentTimeMillis());
+        db.insertOrThrow(TABLE_CHANGE_LOG, null, cv);
+    }
+
+    /**
+     * Reads up to {@code limit} of the user's local changes after the given sequence,
+     * joined with the row's current values (null if the row has since been deleted).
+     * Columns: seq, table_name, op, row_id, changed_at, date, weight, sync_key, goal_weight
+     */
+    Cursor readChangesSince(String email, long afterSeq, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT c." + COLUMN_CHANGE_SEQ + ", c." + COLUMN_CHANGE_TABLE
+                + ", c." + COLUMN_CHANGE_OP + ", c." + COLUMN_CHANGE_ROW_ID + ", c." + COLUMN_CHANGE_TIME
+                + ", l." + COLUMN_DATE + ", l." + COLUMN_WEIGHT + ", k." + COLUMN_SYNC_KEY
+                + ", (SELECT g." + COLUMN_GOAL_WEIGHT + " FROM " + TABLE_GOAL + " g WHERE g."
+                + COLUMN_USER_EMAIL + " = c." + COLUMN_USER_EMAIL + " ORDER BY g." + COLUMN_GOAL_ID
+                + " DESC LIMIT 1)"
+                + " FROM " + TABLE_CHANGE_LOG + " c"
+                + " LEFT JOIN " + TABLE_LOG + " l ON c." + COLUMN_CHANGE_TABLE + " = '" + TABLE_LOG
+                + "' AND l." + COLUMN_ID + " = c." + COLUMN_CHANGE_ROW_ID
+                + " LEFT JOIN " + TABLE_SYNC_KEY + " k ON c." + COLUMN_CHANGE_TABLE + " = '" + TABLE_LOG
+                + "' AND k." + COLUMN_ID + " = c." + COLUMN_CHANGE_ROW_ID
+                + " WHERE c." + COLUMN_USER_EMAIL + " = ? AND c." + COLUMN_CHANGE_SEQ + " > ?"
+                + " ORDER BY c." + COLUMN_CHANGE_SEQ + " LIMIT ?",
+                new String[]{email, String.valueOf(afterSeq), String.valueOf(limit)});
+    }
+
+    /**
+     * Reads the user's sync progress.
+     *
+     * @return last acknowledged push sequence and last pull cursor, in that order
+     */
+    long[] readSyncState(String email) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PUSHED_SEQ + ", " + COLUMN_PULL_CURSOR
+                + " FROM " + TABLE_SYNC_STATE + " WHERE " + COLUMN_USER_EMAIL + "=?", new String[]{email});
+        try {
+            if (cursor.moveToFirst()) {
+                return new long[]{cursor.getLong(0), cursor.getLong(1)};
+            }
+            return new long[]{0, 0};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Saves the user's sync progress after a batch is acknowledged or applied
+    void saveSyncState(String email, long pushedSeq, long pullCursor) {
+        SQLiteDatabase db = getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_PUSHED_SEQ, pushedSeq);
+        cv.put(COLUMN_PULL_CURSOR, pullCursor);
+        if (db.update(TABLE_SYNC_STATE, cv, COLUMN_USER_EMAIL + "=?", new String[]{email}) == 0) {
+            cv.put(COLUMN_USER_EMAIL, email);
+            db.insert(TABLE_SYNC_STATE, null, cv);
+        }
+    }
+
+    /**
+     * Drops the user's change-log rows up to the sequence the server acknowledged.
+     * Their change times are kept where last-writer-wins looks them up: per entry in the
+     * sync key table (under this device's key unless the entry already has one), and for
+     * the goal in the sync state.
+     *
+     * @param ownKeyPrefix key prefix of rows that originated on this device
+     */
+    void pruneChangeLog(String email, long ackedSeq, String ownKeyPrefix) {
+        SQLiteDatabase db = getWritableDatabase();
+        String[] args = new String[]{email, String.valueOf(ackedSeq)};
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_SYNC_KEY + " (" + COLUMN_ID + ", " + COLUMN_SYNC_KEY
+                    + ", " + COLUMN_SYNC_TIME + ") SELECT c." + COLUMN_CHANGE_ROW_ID + ", COALESCE(k."
+                    + COLUMN_SYNC_KEY + ", ? || c." + COLUMN_CHANGE_ROW_ID + "), MAX(MAX(c." + COLUMN_CHANGE_TIME
+                    + "), COALESCE(k." + COLUMN_SYNC_TIME + ", 0)) FROM " + TABLE_CHANGE_LOG + " c LEFT JOIN "
+                    + TABLE_SYNC_KEY + " k ON k." + COLUMN_ID + " = c." + COLUMN_CHANGE_ROW_ID + " WHERE c."
+                    + COLUMN_USER_EMAIL + " = ? AND c." + COLUMN_CHANGE_SEQ + " <= ? AND c." + COLUMN_CHANGE_TABLE
+                    + " = '" + TABLE_LOG + "' GROUP BY c." + COLUMN_CHANGE_ROW_ID,
+                    new Object[]{ownKeyPrefix, email, ackedSeq});
+            db.execSQL("UPDATE " + TABLE_SYNC_STATE + " SET " + COLUMN_GOAL_SYNC_TIME + " = MAX("
+                    + COLUMN_GOAL_SYNC_TIME + ", COALESCE((SELECT MAX(" + COLUMN_CHANGE_TIME + ") FROM "
+                    + TABLE_CHANGE_LOG + " WHERE " + COLUMN_USER_EMAIL + " = ? AND " + COLUMN_CHANGE_SEQ
+                    + " <= ? AND " + COLUMN_CHANGE_TABLE + " = '" + TABLE_GOAL + "'), 0)) WHERE "
+                    + COLUMN_USER_EMAIL + " = ?", new Object[]{email, ackedSeq, email});
+            db.delete(TABLE_CHANGE_LOG, COLUMN_USER_EMAIL + " = ? AND " + COLUMN_CHANGE_SEQ + " <= ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Outcomes of applying one remote change
+    private static final int REMOTE_APPLIED = 0;
+    // Lost its last-writer-wins conflict, or deletes a row this device never had
+    private static final int REMOTE_SKIPPED = 1;
+    // Invalid values, or the database refused the row
+    private static final int REMOTE_REJECTED = 2;
+
+    /**
+     * Applies changes pulled from other devices in one transaction, without writing
+     * them to the change log (so they are never pushed back).
+     * Conflicts are resolved last-writer-wins: a remote change is skipped if the local
+     * row was changed at the same time or later.
+     * If any change is rejected, or a constraint fails, the whole batch is rolled back so
+     * the caller can fetch it again instead of moving past it.
+     *
+     * @param ownKeyPrefix key prefix of rows that originated on this device
+     * @return number of changes that modified the local database, or -1 if the batch
+     *         was rolled back
+     */
+    int applyRemoteChanges(String email, List<SyncChange> changes, String ownKeyPrefix) {
+        int[] applied = new int[1];
+        boolean[] rejected = new boolean[1];
+        boolean committed = runWrite(email, db -> {
+            for (SyncChange change : changes) {
+                int outcome = TABLE_GOAL.equals(change.getTable())
+                        ? applyRemoteGoal(db, email, change)
+                        : applyRemoteWeight(db, email, change, ownKeyPrefix);
+                if (outcome == REMOTE_REJECTED) {
+                    Log.w("WTDatabaseHelper", "Remote change " + change.getKey() + " rejected");
+                    rejected[0] = true;
+                    return false;
+                }
+                if (outcome == REMOTE_APPLIED) {
+                    applied[0]++;
+                }
+            }
+            if (applied[0] == 0) {
+                // Nothing to commit or announce if every change lost its conflict
+                return false;
+            }
+            // The device the entries came from announces the goal; here it is only tracked
+            refreshGoalState(db, email, false);
+            return true;
+        }, TABLE_LOG, TABLE_GOAL);
+        if (rejected[0] || (!committed && applied[0] > 0)) {
+            return -1;
+        }
+        return applied[0];
+    }
+
+    private int applyRemoteWeight(SQLiteDatabase db, String email, SyncChange change, String ownKeyPrefix) {
+        // Resolve the local row: our own rows carry their id in the key, others are mapped
+        long localId = -1;
+        if (change.getKey().startsWith(ownKeyPrefix)) {
+            try {
+                localId = Long.parseLong(change.getKey().substring(ownKeyPrefix.length()));
+            } catch (NumberFormatException ignored) {}
+        } else {
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_SYNC_KEY
+                    + " WHERE " + COLUMN_SYNC_KEY + "=?", new String[]{change.getKey()});
+            if (cursor.moveToFirst()) {
+                localId = cursor.getLong(0);
+            }
+            cursor.close();
+        }
+
+        if (localId != -1 && lastLocalChange(db, TABLE_LOG, localId) >= change.getChangedAt()) {
+            return REMOTE_SKIPPED;
+        }
+
+        if (SyncChange.OP_DELETE.equals(change.getOp())) {
+            if (localId == -1) {
+                return REMOTE_SKIPPED;
+            }
+            touchSyncKey(db, localId, change.getKey(), change.getChangedAt());
+            return db.delete(TABLE_LOG, COLUMN_USER_EMAIL + "=? AND " + COLUMN_ID + "=?",
+                    new String[]{email, String.valueOf(localId)}) > 0 ? REMOTE_APPLIED : REMOTE_SKIPPED;
+        }
 
-        return rows > 0;
+        if (!isValidWeight(change.getWeight()) || !isValidDate(change.getDate())) {
+            return REMOTE_REJECTED;
+        }
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_DATE, change.getDate());
+        cv.put(COLUMN_WEIGHT, change.getWeight());
+        // Ignored rather than thrown if it would give the user two entries on one date
+        if (localId != -1 && db.updateWithOnConflict(TABLE_LOG, cv, COLUMN_USER_EMAIL + "=? AND "
+                + COLUMN_ID + "=?", new String[]{email, String.valueOf(localId)},
+                SQLiteDatabase.CONFLICT_IGNORE) > 0) {
+            touchSyncKey(db, localId, change.getKey(), change.getChangedAt());
+            return REMOTE_APPLIED;
+        }
+        cv.put(COLUMN_USER_EMAIL, email);
+        localId = isOneEntryPerDay(db)
+                ? upsertDailyWeight(db, change.getDate(), change.getWeight(), email)
+                : db.insert(TABLE_LOG, null, cv);
+        if (localId == -1) {
+            return REMOTE_REJECTED;
+        }
+        touchSyncKey(db, localId, change.getKey(), change.getChangedAt());
+        return REMOTE_APPLIED;
+    }
+
+    private int applyRemoteGoal(SQLiteDatabase db, String email, SyncChange change) {
+        if (!isValidWeight(change.getGoal())) {
+            return REMOTE_REJECTED;
+        }
+        long localTime = lastLocalGoalChange(db, email);
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_GOAL_SYNC_TIME + " FROM " + TABLE_SYNC_STATE
+                + " WHERE " + COLUMN_USER_EMAIL + "=?", new String[]{email});
+        if (cursor.moveToFirst()) {
+            localTime = Math.max(localTime, cursor.getLong(0));
+        }
+        cursor.close();
+        if (localTime >= change.getChangedAt()) {
+            return REMOTE_SKIPPED;
+        }
+
+        if (!upsertGoal(db, email, change.getGoal())) {
+            return REMOTE_REJECTED;
+        }
+
+        ContentValues state = new ContentValues();
+        state.put(COLUMN_GOAL_SYNC_TIME, change.getChangedAt());
+        if (db.update(TABLE_SYNC_STATE, state, COLUMN_USER_EMAIL + "=?", new String[]{email}) == 0) {
+            state.put(COLUMN_USER_EMAIL, email);
+            db.insert(TABLE_SYNC_STATE, null, state);
+        }
+        return REMOTE_APPLIED;
+    }
+
+    // Latest time the row was changed locally or by an applied remote change
+    private long lastLocalChange(SQLiteDatabase db, String table, long rowId) {
+        Cursor cursor = db.rawQuery("SELECT MAX(t) FROM (SELECT MAX(" + COLUMN_CHANGE_TIME + ") AS t FROM "
+                + TABLE_CHANGE_LOG + " WHERE " + COLUMN_CHANGE_TABLE + "=? AND " + COLUMN_CHANGE_ROW_ID
+                + "=? UNION ALL SELECT " + COLUMN_SYNC_TIME + " FROM " + TABLE_SYNC_KEY + " WHERE "
+                + COLUMN_ID + "=?)", new String[]{table, String.valueOf(rowId), String.valueOf(rowId)});
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Latest local goal change for the user
+    private long lastLocalGoalChange(SQLiteDatabase db, String email) {
+        Cursor cursor = db.rawQuery("SELECT MAX(" + COLUMN_CHANGE_TIME + ") FROM " + TABLE_CHANGE_LOG
+                + " WHERE " + COLUMN_CHANGE_TABLE + "=? AND " + COLUMN_USER_EMAIL + "=?",
+                new String[]{TABLE_GOAL, email});
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Remembers a remote row's global key and when it was last applied
+    private void touchSyncKey(SQLiteDatabase db, long localId, String key, long changedAt) {
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_ID, localId);
+        cv.put(COLUMN_SYNC_KEY, key);
+        cv.put(COLUMN_SYNC_TIME, changedAt);
+        db.insertWithOnConflict(TABLE_SYNC_KEY, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // ----- Cohort analytics -----
+
+    // Lowest and highest user row id, or null if there are no users
+    static long[] readUserIdRange(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT MIN(" + COLUMN_USER_ID + "), MAX(" + COLUMN_USER_ID
+                + ") FROM " + TABLE_USER, null);
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return null;
+            }
+            return new long[]{cursor.getLong(0), cursor.getLong(1)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the users whose row ids fall in [fromId, toId].
+     * Columns: email, goal_weight (null if the user has no goal)
+     */
+    static Cursor readUsersInRange(SQLiteDatabase db, long fromId, long toId) {
+        return db.rawQuery("SELECT u." + COLUMN_USER_EMAIL + ", g." + COLUMN_GOAL_WEIGHT
+                + " FROM " + TABLE_USER + " u LEFT JOIN " + TABLE_GOAL + " g ON g." + COLUMN_USER_EMAIL
+                + " = u." + COLUMN_USER_EMAIL + " WHERE u." + COLUMN_USER_ID + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(fromId), String.valueOf(toId)});
+    }
+
+    // ----- Notification outbox -----
+
+    /**
+     * Records whether a new entry puts the user at or below their goal, and queues a
+     * goal-reached notification when it crosses the goal from above (or is the first entry
+     * since the goal was set). Must be called inside the entry's transaction.
+     *
+     * @return true if a notification was queued
+     */
+    private boolean recordGoalProgress(SQLiteDatabase db, String email, int weight) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_GOAL_WEIGHT + " FROM " + TABLE_GOAL
+                + " WHERE " + COLUMN_USER_EMAIL + "=?", new String[]{email});
+        int goal;
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return false;
+            }
+            goal = cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues state = new ContentValues();
+        if (weight > goal) {
+            state.put(COLUMN_GOAL_REACHED, 0);
+            db.update(TABLE_GOAL_STATE, state, COLUMN_USER_EMAIL + "=?", new String[]{email});
+            return false;
+        }
+        state.put(COLUMN_GOAL_REACHED, 1);
+        boolean crossed = db.update(TABLE_GOAL_STATE, state, COLUMN_USER_EMAIL + "=? AND "
+                + COLUMN_GOAL_REACHED + "=0", new String[]{email}) > 0;
+        if (!crossed) {
+            state.put(COLUMN_USER_EMAIL, email);
+            crossed = db.insertWithOnConflict(TABLE_GOAL_STATE, null, state,
+                    SQLiteDatabase.CONFLICT_IGNORE) != -1;
+        }
+        if (!crossed) {
+            // Already at or below the goal; it was announced when first reached
+            return false;
+        }
+        queueGoalNotification(db, email);
+        return true;
+    }
+
+    /**
+     * Re-evaluates the goal state from the user's latest entry (by date, then id) after
+     * entries were edited, deleted, synced or restored. Must be called inside that write's
+     * transaction.
+     *
+     * @param announce queue a notification if the latest entry now reaches a goal that was
+     *                 not reached before
+     * @return true if a notification was queued
+     */
+    private boolean refreshGoalState(SQLiteDatabase db, String email, boolean announce) {
+        Cursor cursor = db.rawQuery("SELECT g." + COLUMN_GOAL_WEIGHT
+                + ", (SELECT l." + COLUMN_WEIGHT + " FROM " + TABLE_LOG + " l WHERE l." + COLUMN_USER_EMAIL
+                + " = g." + COLUMN_USER_EMAIL + " ORDER BY l." + COLUMN_DATE + " DESC, l." + COLUMN_ID
+                + " DESC LIMIT 1), (SELECT s." + COLUMN_GOAL_REACHED + " FROM " + TABLE_GOAL_STATE
+                + " s WHERE s." + COLUMN_USER_EMAIL + " = g." + COLUMN_USER_EMAIL + ") FROM " + TABLE_GOAL
+                + " g WHERE g." + COLUMN_USER_EMAIL + "=?", new String[]{email});
+        boolean reached;
+        boolean wasReached;
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                // No goal, so nothing to reach
+                return false;
+            }
+            reached = !cursor.isNull(1) && cursor.getInt(1) <= cursor.getInt(0);
+            wasReached = !cursor.isNull(2) && cursor.getInt(2) == 1;
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues state = new ContentValues();
+        state.put(COLUMN_USER_EMAIL, email);
+        state.put(COLUMN_GOAL_REACHED, reached ? 1 : 0);
+        db.insertWithOnConflict(TABLE_GOAL_STATE, null, state, SQLiteDatabase.CONFLICT_REPLACE);
+        if (!announce || !reached || wasReached) {
+            return false;
+        }
+        queueGoalNotification(db, email);
+        return true;
+    }
+
+    private void queueGoalNotification(SQLiteDatabase db, String email) {
+        long now = System.currentTimeMillis();
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_USER_EMAIL, email);
+        cv.put(COLUMN_OUTBOX_KIND, NOTIFICATION_GOAL_REACHED);
+        cv.put(COLUMN_OUTBOX_CREATED, now);
+        cv.put(COLUMN_OUTBOX_NEXT_ATTEMPT, now);
+        db.insertOrThrow(TABLE_OUTBOX, null, cv);
+    }
+
+    /**
+     * Reads up to {@code limit} queued notifications due at or before the given time,
+     * oldest first.
+     * Columns: _id, email, kind, attempts
+     */
+    Cursor readDueNotifications(long now, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        return db.rawQuery("SELECT " + COLUMN_OUTBOX_ID + ", " + COLUMN_USER_EMAIL + ", "
+                + COLUMN_OUTBOX_KIND + ", " + COLUMN_OUTBOX_ATTEMPTS + " FROM " + TABLE_OUTBOX
+                + " WHERE " + COLUMN_OUTBOX_NEXT_ATTEMPT + " <= ? ORDER BY " + COLUMN_OUTBOX_NEXT_ATTEMPT
+                + ", " + COLUMN_OUTBOX_ID + " LIMIT ?",
+                new String[]{String.valueOf(now), String.valueOf(limit)});
+    }
+
+    // Earliest time a queued notification is due, or -1 if the outbox is empty
+    long nextNotificationTime() {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT MIN(" + COLUMN_OUTBOX_NEXT_ATTEMPT + ") FROM "
+                + TABLE_OUTBOX, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Removes a notification once it is sent, or given up on
+    boolean deleteNotification(long id) {
+        SQLiteDatabase db = getWritableDatabase();
+        return db.delete(TABLE_OUTBOX, COLUMN_OUTBOX_ID + "=?", new String[]{String.valueOf(id)}) > 0;
+    }
+
+    // Records a failed attempt and when to try again
+    boolean rescheduleNotification(long id, int attempts, long nextAttemptAt) {
+        SQLiteDatabase db = getWritableDatabase();
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_OUTBOX_ATTEMPTS, attempts);
+        cv.put(COLUMN_OUTBOX_NEXT_ATTEMPT, nextAttemptAt);
+        return db.update(TABLE_OUTBOX, cv, COLUMN_OUTBOX_ID + "=?", new String[]{String.valueOf(id)}) > 0;
     }
 
     // Ensures weight values remain within realistic human bounds
-    private boolean isValidWeight(int weight) {
+    static boolean isValidWeight(int weight) {
         return weight >= MIN_WEIGHT && weight <= MAX_WEIGHT;
     }
 
     // Prevents invalid or future-dated entries from being stored
-    private boolean isValidDate(String dateString) {
+    static boolean isValidDate(String dateString) {
         try {
             LocalDate date = LocalDate.parse(dateString);
             return !date.isAfter(LocalDate.now());
@@ -0,0 +1,154 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Housekeeping for WeightTracker.db, run by WTMaintenanceJobService while the device
+ * is idle and charging.
+ * - quick_check first; a database that fails it is reported and left alone
+ * - ANALYZE the first time, PRAGMA optimize afterwards, so the planner has statistics
+ * - incremental_vacuum returns the pages freed by deletes and rewrites to the file system;
+ *   a database created before auto_vacuum was enabled is converted with one full VACUUM
+ * - Page counts, free pages, the time of each step and the latency of a representative
+ *   query before and after are logged under INSTRUMENTATION_TAG
+ */
+final class WTDatabaseMaintenance {
+
+    static final String INSTRUMENTATION_TAG = "WTInstrumentation";
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private WTDatabaseMaintenance() {}
+
+    /**
+     * Runs every step; stop is polled between steps so the job can be interrupted.
+     *
+     * @return false if quick_check found a problem, true otherwise
+     */
+    static boolean run(WTDatabaseHelper wtDB, StopSignal stop) {
+        SQLiteDatabase db = wtDB.getWritableDatabase();
+        long pagesBefore = pragmaLong(db, "page_count");
+        long freeBefore = pragmaLong(db, "freelist_count");
+        double probeBefore = timeProbeQuery(db);
+
+        long start = SystemClock.elapsedRealtime();
+        String check = quickCheck(db);
+        long checkMs = SystemClock.elapsedRealtime() - start;
+        if (!"ok".equals(check)) {
+            Log.w(INSTRUMENTATION_TAG, "maintenance quick_check failed: " + check);
+            return false;
+        }
+        if (stop.isStopped()) {
+            return true;
+        }
+
+        start = SystemClock.elapsedRealtime();
+        String analyze;
+        if (hasStatistics(db)) {
+            analyze = "optimize";
+            drain(db, "PRAGMA optimize");
+        } else {
+            analyze = "full";
+            db.execSQL("ANALYZE");
+        }
+        long analyzeMs = SystemClock.elapsedRealtime() - start;
+        if (stop.isStopped()) {
+            return true;
+        }
+
+        start = SystemClock.elapsedRealtime();
+        String vacuum;
+        if (pragmaLong(db, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            vacuum = "incremental";
+            drain(db, "PRAGMA incremental_vacuum");
+        } else {
+            // The mode only takes effect once VACUUM rebuilds the file, which is needed once
+            vacuum = "full";
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+        long vacuumMs = SystemClock.elapsedRealtime() - start;
+
+        long pagesAfter = pragmaLong(db, "page_count");
+        long freeAfter = pragmaLong(db, "freelist_count");
+        double probeAfter = timeProbeQuery(db);
+        Log.i(INSTRUMENTATION_TAG, String.format(Locale.US,
+                "maintenance pages=%d->%d free=%d->%d pageSize=%d quickCheck=%dms analyze(%s)=%dms"
+                        + " vacuum(%s)=%dms probeQuery=%.2f->%.2fms",
+                pagesBefore, pagesAfter, freeBefore, freeAfter, pragmaLong(db, "page_size"),
+                checkMs, analyze, analyzeMs, vacuum, vacuumMs, probeBefore, probeAfter));
+        return true;
+    }
+
+    /**
+     * Lets a caller interrupt maintenance between steps.
+     */
+    interface StopSignal {
+        boolean isStopped();
+    }
+
+    // "ok", or the first problem quick_check reported
+    private static String quickCheck(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA quick_check", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : "no result";
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Whether ANALYZE has run before
+    private static boolean hasStatistics(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'", null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Milliseconds to read the whole log of the most recently active user in date order,
+     * the shape of query the dashboard and log screen run.
+     */
+    private static double timeProbeQuery(SQLiteDatabase db) {
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery("SELECT _id, date, weight FROM " + WTDatabaseHelper.TABLE_LOG
+                + " WHERE email = (SELECT email FROM " + WTDatabaseHelper.TABLE_LOG
+                + " ORDER BY _id DESC LIMIT 1) ORDER BY date", null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getInt(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    private static long pragmaLong(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Steps a statement to completion; some pragmas only do their work as rows are read
+    private static void drain(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                // Nothing to read; stepping runs the statement
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
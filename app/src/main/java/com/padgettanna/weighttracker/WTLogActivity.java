@@ -1,32 +1,72 @@
 package com.padgettanna.weighttracker;
 
+import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
+import android.text.Editable;
+import android.text.InputType;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Button;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightLogFilter;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Weight log for the Weight Tracker app.
  * - Displays weight entries using structured WeightEntry objects.
+ * - Long press selects rows for batch delete, date shift or weight adjustment,
+ *   each applied in one database transaction, off the main thread, and one
+ *   incremental list update.
+ * - Filter bar narrows the log by date range, weight range or month. Input is debounced,
+ *   each filter runs as an indexed query on a background thread, and a newer filter
+ *   cancels the query still in flight.
+ * - Entries far from the rolling median are flagged as likely typos in the list
+ *   and left out of the average and trend.
+ * - Entries, flags and filter results live in WeightLogViewModel, so a rotation or a
+ *   return from UpdateDeleteActivity reuses them instead of re-reading the log.
+ * - Reloads only when InvalidationTracker reports the log changed since it was read;
+ *   bursts of writes (edits, sync) arrive as one coalesced notification.
+ * - Reports itself fully drawn (ScreenTimings) when the first rows reach the screen.
  */
 public class WTLogActivity extends AppCompatActivity {
 
     RecyclerView recyclerView;
-    private WTDatabaseHelper wtDB;
     CustomAdapter customAdapter;
+    // Survives configuration changes, so the log is not re-read on rotation
+    private WeightLogViewModel viewModel;
     // User email from main activity
     private String userEmail;
+    // Contextual action bar shown while rows are selected
+    private ActionMode actionMode;
+    // Set once the first rows have been handed to the list
+    private boolean fullyDrawnReported;
+
+    private EditText filterFromEditText, filterToEditText, filterMonthEditText;
+    private EditText filterMinEditText, filterMaxEditText;
+
+    private final InvalidationTracker.Observer invalidationObserver = (email, tables) -> {
+        if (email.equals(userEmail) && tables.contains(WTDatabaseHelper.TABLE_LOG)) {
+            viewModel.refreshIfStale();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,7 +76,6 @@ public class WTLogActivity extends AppCompatActivity {
 
         // Initialize variables
         recyclerView = findViewById(R.id.recyclerViewLog);
-        wtDB = new WTDatabaseHelper(WTLogActivity.this);
 
         // Get user email from main activity
         userEmail = getIntent().getStringExtra("USER_EMAIL");
@@ -46,43 +85,283 @@ public class WTLogActivity extends AppCompatActivity {
                     .getString("USER_EMAIL", null);
         }
 
-        // Read data from database into list
-        loadWeightEntries();
+        customAdapter = new CustomAdapter(this, this, new ArrayList<>(), userEmail);
+        customAdapter.setSelectionListener(this::onSelectionChanged);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(customAdapter);
+
+        // Reads the log in the background the first time; after a rotation the loaded
+        // entries are delivered again as they are
+        viewModel = new ViewModelProvider(this).get(WeightLogViewModel.class);
+        viewModel.start(userEmail);
+        viewModel.getOutlierIds().observe(this, customAdapter::setOutlierIds);
+        viewModel.getRows().observe(this, rows -> {
+            if (rows.isEmpty() && viewModel.consumeEmptyNotice()) {
+                Toast.makeText(this, "No weight entries found.", Toast.LENGTH_SHORT).show();
+            }
+            customAdapter.submitRows(rows);
+            if (!fullyDrawnReported) {
+                fullyDrawnReported = true;
+                ScreenTimings.reportFullyDrawnOnNextDraw(this, recyclerView);
+            }
+        });
+
+        setUpFilterBar();
     }
 
-    // Reset activity
+    @Override
+    protected void onResume() {
+        super.onResume();
+        InvalidationTracker.getInstance().addObserver(invalidationObserver);
+        viewModel.refreshIfStale();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        InvalidationTracker.getInstance().removeObserver(invalidationObserver);
+    }
+
+    // Apply the edit made in UpdateDeleteActivity to the loaded list
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if(requestCode == 1 && resultCode == RESULT_OK) {
-            loadWeightEntries(); // refresh list after update/delete
+        if (requestCode != 1 || resultCode != RESULT_OK) {
+            return;
+        }
+        if (data == null || !data.hasExtra("id")) {
+            viewModel.refreshIfStale();
+            return;
+        }
+        int id = data.getIntExtra("id", -1);
+        if (data.getBooleanExtra(UpdateDeleteActivity.EXTRA_DELETED, false)) {
+            viewModel.entriesDeleted(Collections.singletonList(id));
+        } else {
+            viewModel.entryUpdated(id,
+                    LocalDate.parse(data.getStringExtra("date")),
+                    data.getIntExtra("weight", 0));
         }
     }
 
-    void loadWeightEntries() {
-        List<WeightEntry> entries = wtDB.getWeightEntries(userEmail);
-
-        if (entries.isEmpty()) {
-            Toast.makeText(this, "No weight entries found.", Toast.LENGTH_SHORT).show();
+    // Show, update or dismiss the contextual action bar as rows are (de)selected
+    private void onSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (actionMode != null) {
+                actionMode.finish();
+            }
             return;
         }
+        if (actionMode == null) {
+            actionMode = startSupportActionMode(selectionCallback);
+        }
+        if (actionMode != null) {
+            actionMode.setTitle(String.valueOf(selectedCount));
+        }
+    }
 
-        // ANALYSIS (chronological order: oldest -> newest)
-        List<WeightEntry> chronological = new java.util.ArrayList<>(entries);
-        java.util.Collections.sort(chronological); // assumes WeightEntry sorts by date asc
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_log_selection, menu);
+            return true;
+        }
 
-        List<Double> avgs = WeightAnalysisUtil.rollingAverage(chronological, 7); // 7-entry window
-        WeightAnalysisUtil.Trend trend = WeightAnalysisUtil.detectTrend(avgs, 0.5); // threshold
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
 
-        Log.d("WeightAnalysis", "Rolling avg (last): " +
-                (avgs.isEmpty() ? "n/a" : avgs.get(avgs.size() - 1)));
-        Log.d("WeightAnalysis", "Trend: " + trend);
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            int itemId = item.getItemId();
+            if (itemId == R.id.actionDelete) {
+                confirmBatchDelete();
+                return true;
+            }
+            if (itemId == R.id.actionShiftDate) {
+                promptForAmount(R.string.shift_date, R.string.shift_date_hint,
+                        days -> applyBatchEdit(days, 0));
+                return true;
+            }
+            if (itemId == R.id.actionAdjustWeight) {
+                promptForAmount(R.string.adjust_weight, R.string.adjust_weight_hint,
+                        delta -> applyBatchEdit(0, delta));
+                return true;
+            }
+            return false;
+        }
 
-        // Sort by date (most recent first)
-        Collections.sort(entries, Collections.reverseOrder());
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            actionMode = null;
+            if (customAdapter != null && customAdapter.isSelectionMode()) {
+                customAdapter.clearSelection();
+            }
+        }
+    };
 
-        customAdapter = new CustomAdapter(this, this, entries, userEmail);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        recyclerView.setAdapter(customAdapter);
+    // Receives the signed amount entered in the batch edit dialog
+    private interface AmountCallback {
+        void onAmount(int amount);
+    }
+
+    // Asks for a signed whole number used by a batch edit
+    private void promptForAmount(int titleRes, int hintRes, AmountCallback callback) {
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_SIGNED);
+        input.setHint(hintRes);
+
+        new AlertDialog.Builder(this)
+                .setTitle(titleRes)
+                .setView(input)
+                .setPositiveButton(R.string.update, (dialog, which) -> {
+                    int amount;
+                    try {
+                        amount = Integer.parseInt(input.getText().toString().trim());
+                    } catch (NumberFormatException e) {
+                        Toast.makeText(this, "Please enter a whole number.", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    callback.onAmount(amount);
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void confirmBatchDelete() {
+        List<Integer> ids = customAdapter.getSelectedIds();
+
+        new AlertDialog.Builder(this)
+                .setTitle("Delete " + ids.size() + " entries?")
+                .setMessage("Are you sure you want to delete the selected entries?")
+                .setPositiveButton("Yes", (dialog, which) ->
+                        viewModel.deleteEntries(ids, deleted -> {
+                            if (isDestroyed()) {
+                                return;
+                            }
+                            if (!deleted) {
+                                Toast.makeText(this, "Failed to delete entries.", Toast.LENGTH_SHORT).show();
+                                return;
+                            }
+                            finishBatch();
+                        }))
+                .setNegativeButton("No", null)
+                .show();
+    }
+
+    // Applies a date shift and/or weight adjustment to every selected entry
+    private void applyBatchEdit(int dayShift, int weightDelta) {
+        List<Integer> ids = customAdapter.getSelectedIds();
+
+        // The committed edit is mirrored in memory instead of re-reading the whole log
+        viewModel.editEntries(ids, dayShift, weightDelta, edited -> {
+            if (isDestroyed()) {
+                return;
+            }
+            if (!edited) {
+                Toast.makeText(this,
+                        "Invalid input. Edited entries must stay between 50 and 999 and not be in the future.",
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+            finishBatch();
+        });
+    }
+
+    private void finishBatch() {
+        if (actionMode != null) {
+            actionMode.finish();
+        }
+    }
+
+    // ----- Filter bar -----
+
+    private void setUpFilterBar() {
+        filterFromEditText = findViewById(R.id.editTextFilterFrom);
+        filterToEditText = findViewById(R.id.editTextFilterTo);
+        filterMonthEditText = findViewById(R.id.editTextFilterMonth);
+        filterMinEditText = findViewById(R.id.editTextFilterMin);
+        filterMaxEditText = findViewById(R.id.editTextFilterMax);
+        Button clearButton = findViewById(R.id.buttonClearFilter);
+
+        filterFromEditText.setOnClickListener(v -> showFilterDatePicker(filterFromEditText));
+        filterToEditText.setOnClickListener(v -> showFilterDatePicker(filterToEditText));
+
+        // Any edit restarts the view model's debounce timer
+        TextWatcher filterWatcher = new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setFilterDebounced(currentFilter());
+            }
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+        };
+        filterFromEditText.addTextChangedListener(filterWatcher);
+        filterToEditText.addTextChangedListener(filterWatcher);
+        filterMonthEditText.addTextChangedListener(filterWatcher);
+        filterMinEditText.addTextChangedListener(filterWatcher);
+        filterMaxEditText.addTextChangedListener(filterWatcher);
+
+        clearButton.setOnClickListener(v -> {
+            filterFromEditText.setText("");
+            filterToEditText.setText("");
+            filterMonthEditText.setText("");
+            filterMinEditText.setText("");
+            filterMaxEditText.setText("");
+        });
+    }
+
+    // Builds the filter from the bar; fields that are empty or unparsable are ignored
+    private WeightLogFilter currentFilter() {
+        if (filterFromEditText == null) {
+            return new WeightLogFilter(null, null, null, null);
+        }
+        WeightLogFilter filter = new WeightLogFilter(
+                parseDate(filterFromEditText.getText().toString()),
+                parseDate(filterToEditText.getText().toString()),
+                parseWeight(filterMinEditText.getText().toString()),
+                parseWeight(filterMaxEditText.getText().toString()));
+
+        // A month narrows the date range to that month
+        try {
+            filter = filter.inMonth(YearMonth.parse(filterMonthEditText.getText().toString().trim()));
+        } catch (Exception ignored) {}
+        return filter;
+    }
+
+    private void showFilterDatePicker(EditText target) {
+        LocalDate initial = parseDate(target.getText().toString());
+        if (initial == null) {
+            initial = LocalDate.now();
+        }
+
+        DatePickerDialog dialog = new DatePickerDialog(
+                this,
+                (view, year, month, dayOfMonth) ->
+                        target.setText(LocalDate.of(year, month + 1, dayOfMonth).toString()),
+                initial.getYear(),
+                initial.getMonthValue() - 1,
+                initial.getDayOfMonth()
+        );
+        dialog.getDatePicker().setMaxDate(System.currentTimeMillis());
+        dialog.show();
+    }
+
+    private static LocalDate parseDate(String text) {
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Integer parseWeight(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package com.padgettanna.weighttracker;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs WTDatabaseMaintenance about once a day, only while the device is idle and charging,
+ * then refreshes the app's backup file (see WTBackupWriter).
+ * Scheduled by WeightTrackerApp on startup; the system keeps the schedule until the app
+ * is updated or its data is cleared.
+ */
+public class WTMaintenanceJobService extends JobService {
+
+    private static final int JOB_ID = 1001;
+    private static final long INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopped;
+
+    // Schedules the job unless it is already scheduled
+    static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, WTMaintenanceJobService.class))
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(INTERVAL_MS)
+                .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(WTDatabaseMaintenance.INSTRUMENTATION_TAG, "Could not schedule database maintenance");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        executor.execute(() -> {
+            WTDatabaseHelper wtDB = new WTDatabaseHelper(getApplicationContext());
+            try {
+                WTDatabaseMaintenance.run(wtDB, () -> stopped);
+                if (!stopped) {
+                    new WTBackupWriter(wtDB).writeReplacing(new File(getFilesDir(), WTBackupFormat.FILE_NAME));
+                }
+            } catch (RuntimeException | IOException e) {
+                Log.w(WTDatabaseMaintenance.INSTRUMENTATION_TAG, "Database maintenance failed", e);
+            } finally {
+                wtDB.close();
+            }
+            // A periodic job runs again next interval either way
+            jobFinished(params, false);
+        });
+        return true;
+    }
+
+    // The device stopped being idle or charging; remaining steps are skipped
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdown();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,360 @@
+package com.padgettanna.weighttracker;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schema migration framework for WTDatabaseHelper.
+ * - A Migration upgrades the schema to one version. It runs inside SQLiteOpenHelper's
+ *   upgrade transaction, so it must only change the schema or queue data work, never
+ *   touch every row
+ * - Row-by-row work is a ChunkedStep queued in migration_state. After the upgrade commits,
+ *   runPending copies a bounded chunk of rows per transaction and saves the step's
+ *   checkpoint in the same transaction, so a process killed mid-way resumes where it
+ *   stopped instead of starting over or losing rows
+ * - Only one thread in the process runs pending steps; other openers carry on without
+ *   waiting, so a main-thread open never blocks on a large copy. Screens instead wait for
+ *   WeightWriteQueue.open, which runs finishPending, before they read or write user data
+ * - Recreated tables continue their AUTOINCREMENT ids above the legacy table's, so a row
+ *   written before the copy finishes never takes an id a legacy row is copied back to
+ */
+final class WTMigrations {
+
+    private static final String TAG = "WTMigrations";
+    static final String TABLE_STATE = "migration_state";
+    private static final String COLUMN_STEP = "step";
+    private static final String COLUMN_CHECKPOINT = "checkpoint";
+    private static final String COLUMN_DONE = "done";
+    // Rows per transaction: small enough that writers from the UI are never held up for long
+    static final int CHUNK_ROWS = 2000;
+    private static final String LEGACY_PREFIX = "legacy_";
+
+    // Lowered by tests to stop after a few chunks, as if the process had been killed
+    static int maxChunksPerRun = Integer.MAX_VALUE;
+
+    private static final ReentrantLock runLock = new ReentrantLock();
+
+    private WTMigrations() {}
+
+    /**
+     * Schema change from version - 1 to version.
+     */
+    static final class Migration {
+        final int version;
+        final SchemaChange change;
+
+        Migration(int version, SchemaChange change) {
+            this.version = version;
+            this.change = change;
+        }
+    }
+
+    interface SchemaChange {
+        void apply(SQLiteDatabase db);
+    }
+
+    /**
+     * Data work split into chunks of rows ordered by an increasing integer key.
+     */
+    abstract static class ChunkedStep {
+        final String name;
+
+        ChunkedStep(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Processes up to limit rows with keys above afterKey.
+         *
+         * @return the highest key processed, or -1 once no rows remain
+         */
+        abstract long runChunk(SQLiteDatabase db, long afterKey, int limit);
+
+        // Runs in the transaction of the last chunk, e.g. to drop a copied table
+        abstract void finish(SQLiteDatabase db);
+    }
+
+    static void createStateTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_STATE +
+                " (" + COLUMN_STEP + " TEXT PRIMARY KEY, " +
+                COLUMN_CHECKPOINT + " INTEGER DEFAULT 0, " +
+                COLUMN_DONE + " INTEGER DEFAULT 0);");
+    }
+
+    // Applies every migration after oldVersion up to newVersion, in version order
+    static void upgrade(SQLiteDatabase db, List<Migration> migrations, int oldVersion, int newVersion) {
+        createStateTable(db);
+        for (Migration migration : migrations) {
+            if (migration.version > oldVersion && migration.version <= newVersion) {
+                migration.change.apply(db);
+            }
+        }
+    }
+
+    // Queues a step to run after the upgrade commits; queuing it again has no effect
+    private static void enqueue(SQLiteDatabase db, String step) {
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_STEP, step);
+        db.insertWithOnConflict(TABLE_STATE, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * Runs queued steps to completion, one chunk per transaction, in the order given.
+     * Returns at once if another thread is already running them.
+     */
+    static void runPending(SQLiteDatabase db, List<ChunkedStep> steps) {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            run(db, steps);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Like runPending, but waits for another thread already running the steps and then
+     * finishes whatever it left, so no step is pending once this returns.
+     * Never call it on the main thread.
+     */
+    static void finishPending(SQLiteDatabase db, List<ChunkedStep> steps) {
+        runLock.lock();
+        try {
+            run(db, steps);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    // Caller holds runLock
+    private static void run(SQLiteDatabase db, List<ChunkedStep> steps) {
+        List<String> pending = pendingSteps(db);
+        int chunks = 0;
+        for (ChunkedStep step : steps) {
+            if (!pending.contains(step.name)) {
+                continue;
+            }
+            long started = System.nanoTime();
+            boolean done = false;
+            while (!done) {
+                if (chunks++ >= maxChunksPerRun) {
+                    return;
+                }
+                done = runChunk(db, step);
+            }
+            Log.i(TAG, "Migration step " + step.name + " finished in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms");
+        }
+    }
+
+    // One transaction: read the checkpoint, process a chunk, save the new checkpoint
+    private static boolean runChunk(SQLiteDatabase db, ChunkedStep step) {
+        db.beginTransaction();
+        try {
+            long checkpoint = checkpoint(db, step.name);
+            if (checkpoint == Long.MIN_VALUE) {
+                // Another opener finished this step first
+                db.setTransactionSuccessful();
+                return true;
+            }
+            long last = step.runChunk(db, checkpoint, CHUNK_ROWS);
+            ContentValues cv = new ContentValues();
+            if (last == -1) {
+                step.finish(db);
+                cv.put(COLUMN_DONE, 1);
+            } else {
+                cv.put(COLUMN_CHECKPOINT, last);
+            }
+            db.update(TABLE_STATE, cv, COLUMN_STEP + " = ?", new String[]{step.name});
+            db.setTransactionSuccessful();
+            return last == -1;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Saved checkpoint of a pending step, or Long.MIN_VALUE if it is done or unknown
+    private static long checkpoint(SQLiteDatabase db, String step) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_CHECKPOINT + " FROM " + TABLE_STATE
+                + " WHERE " + COLUMN_STEP + " = ? AND " + COLUMN_DONE + " = 0", new String[]{step});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : Long.MIN_VALUE;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<String> pendingSteps(SQLiteDatabase db) {
+        List<String> steps = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_STEP + " FROM " + TABLE_STATE
+                + " WHERE " + COLUMN_DONE + " = 0", null);
+        try {
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return steps;
+    }
+
+    // ----- Table rebuilds -----
+
+    static String legacyName(String table) {
+        return LEGACY_PREFIX + table;
+    }
+
+    static String copyStepName(String table) {
+        return "copy " + table;
+    }
+
+    /**
+     * Moves a table aside as legacy_<table>, so a new layout can be created under its name,
+     * and queues the copy of its rows back (see tableCopy). The table's indexes are dropped
+     * rather than moved, so the new table can recreate them under the same names.
+     * Does nothing if the table does not exist or a legacy copy is already waiting.
+     *
+     * @return true if the table was moved
+     */
+    static boolean moveAsideForCopy(SQLiteDatabase db, String table) {
+        if (!tableExists(db, table) || tableExists(db, legacyName(table))) {
+            return false;
+        }
+        List<String> indexes = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index'"
+                + " AND tbl_name = ? AND sql IS NOT NULL", new String[]{table});
+        try {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String index : indexes) {
+            db.execSQL("DROP INDEX IF EXISTS " + index);
+        }
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + legacyName(table));
+        enqueue(db, copyStepName(table));
+        return true;
+    }
+
+    /**
+     * Starts table's AUTOINCREMENT ids after the highest id legacy_<table> has used, rows
+     * deleted since included. Call it once the new table has been created in the upgrade.
+     * Does nothing if there is no legacy table.
+     */
+    static void reserveLegacyIds(SQLiteDatabase db, String table) {
+        String legacy = legacyName(table);
+        // sqlite_sequence exists once any AUTOINCREMENT table has been created
+        if (!tableExists(db, legacy) || !tableExists(db, "sqlite_sequence")) {
+            return;
+        }
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{table});
+        // Renaming the table carried its own sequence row over to the legacy name
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, MAX("
+                + "IFNULL((SELECT MAX(rowid) FROM " + legacy + "), 0), "
+                + "IFNULL((SELECT seq FROM sqlite_sequence WHERE name = ?), 0))",
+                new Object[]{table, legacy});
+    }
+
+    static boolean tableExists(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{table});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Copies legacy_<table> into table in rowid order, carrying over every column the two
+     * layouts share (row ids included), then drops the legacy table.
+     * conflict is the INSERT conflict clause, e.g. "OR IGNORE" for rows a unique index rejects.
+     */
+    static ChunkedStep tableCopy(String table, String conflict) {
+        return tableCopy(table, conflict, null);
+    }
+
+    /**
+     * Like tableCopy(table, conflict), but only copies legacy rows matching filter, an SQL
+     * condition on legacy_<table>'s columns, or every row if it is null.
+     */
+    static ChunkedStep tableCopy(String table, String conflict, String filter) {
+        return new ChunkedStep(copyStepName(table)) {
+            private String columns;
+
+            @Override
+            long runChunk(SQLiteDatabase db, long afterKey, int limit) {
+                String legacy = legacyName(table);
+                if (!tableExists(db, legacy)) {
+                    return -1;
+                }
+                Cursor cursor = db.rawQuery("SELECT MAX(rowid) FROM (SELECT rowid FROM " + legacy
+                        + " WHERE rowid > ? ORDER BY rowid LIMIT " + limit + ")",
+                        new String[]{String.valueOf(afterKey)});
+                long last;
+                try {
+                    last = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+                } finally {
+                    cursor.close();
+                }
+                if (last == -1) {
+                    return -1;
+                }
+                if (columns == null) {
+                    columns = sharedColumns(db, legacy, table);
+                }
+                if (columns.isEmpty()) {
+                    return -1;
+                }
+                db.execSQL("INSERT " + conflict + " INTO " + table + " (" + columns + ") SELECT "
+                        + columns + " FROM " + legacy + " WHERE rowid > ? AND rowid <= ?"
+                        + (filter == null ? "" : " AND (" + filter + ")") + " ORDER BY rowid",
+                        new Object[]{afterKey, last});
+                return last;
+            }
+
+            @Override
+            void finish(SQLiteDatabase db) {
+                db.execSQL("DROP TABLE IF EXISTS " + legacyName(table));
+            }
+        };
+    }
+
+    // Comma-separated columns present in both tables, in the new table's order
+    private static String sharedColumns(SQLiteDatabase db, String from, String to) {
+        List<String> fromColumns = columns(db, from);
+        StringBuilder shared = new StringBuilder();
+        for (String column : columns(db, to)) {
+            if (fromColumns.contains(column)) {
+                if (shared.length() > 0) {
+                    shared.append(", ");
+                }
+                shared.append(column);
+            }
+        }
+        return shared.toString();
+    }
+
+    private static List<String> columns(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int name = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(name));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,62 @@
+package com.padgettanna.weighttracker;
+
+import android.content.ComponentCallbacks2;
+import android.os.Build;
+import android.util.LruCache;
+
+/**
+ * Least-recently-used cache of UserWarmState by email, owned by WeightTrackerApp.
+ * - Holds the few accounts most recently used on this device (MAX_USERS), so switching
+ *   between them on a shared device renders without reading the database
+ * - Shrinks under memory pressure, going by the two trim levels every API level delivers:
+ *   TRIM_MEMORY_UI_HIDDEN keeps only the current account, and TRIM_MEMORY_BACKGROUND
+ *   (or higher) drops everything, as the process may now be killed at any time
+ * - Below API 34 the deprecated RUNNING_LOW and RUNNING_CRITICAL levels also keep only the
+ *   current account; API 34 and up no longer delivers them
+ * Safe to use from any thread.
+ */
+final class WarmStateCache {
+
+    static final int MAX_USERS = 4;
+
+    private final LruCache<String, UserWarmState> states = new LruCache<String, UserWarmState>(MAX_USERS) {
+        @Override
+        protected UserWarmState create(String email) {
+            return new UserWarmState();
+        }
+    };
+
+    // The user's warm state, created empty if it was not cached; marks the user most recent
+    UserWarmState get(String email) {
+        return states.get(email);
+    }
+
+    // True if the user's dashboard is cached and still current; caches nothing for a new user
+    boolean hasCurrentDashboard(String email) {
+        UserWarmState state = states.snapshot().get(email);
+        return state != null && state.currentDashboard(email) != null;
+    }
+
+    /**
+     * Releases memory according to a ComponentCallbacks2 trim level.
+     */
+    @SuppressWarnings("deprecation")
+    void trim(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            states.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // Keep only the most recently used account
+            states.trimToSize(1);
+        }
+    }
+
+    void clear() {
+        states.evictAll();
+    }
+
+    int size() {
+        return states.size();
+    }
+}
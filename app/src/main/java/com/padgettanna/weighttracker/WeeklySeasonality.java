@@ -0,0 +1,99 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.time.DayOfWeek;
+import java.util.List;
+
+/**
+ * Day-of-week seasonal adjustment for weigh-ins (e.g. weekend bumps).
+ * - Tracks a level as an exponentially weighted moving average of adjusted weights
+ * - Keeps a running mean, per weekday, of each weigh-in's residual from that level
+ * - A weekday's effect is its residual mean minus the average over all weekdays,
+ *   so the effects sum to zero and a steady loss or gain is not mistaken for seasonality
+ * add() is O(1); build() replays a whole history in O(n).
+ */
+final class WeeklySeasonality {
+
+    // Smoothing factor of the level
+    private static final double LEVEL_ALPHA = 0.1;
+    // Observations a weekday needs before its effect is applied
+    static final int MIN_OBSERVATIONS_PER_DAY = 3;
+
+    private final double[] residualSum = new double[7];
+    private final int[] residualCount = new int[7];
+    private double level = Double.NaN;
+
+    // Replays a chronological history
+    static WeeklySeasonality build(List<WeightEntry> entries) {
+        WeeklySeasonality seasonality = new WeeklySeasonality();
+        for (WeightEntry entry : entries) {
+            seasonality.add(entry);
+        }
+        return seasonality;
+    }
+
+    // An independent copy, so an append never changes a state other threads may be reading
+    WeeklySeasonality copy() {
+        WeeklySeasonality copy = new WeeklySeasonality();
+        System.arraycopy(residualSum, 0, copy.residualSum, 0, 7);
+        System.arraycopy(residualCount, 0, copy.residualCount, 0, 7);
+        copy.level = level;
+        return copy;
+    }
+
+    /**
+     * Adds the next entry in chronological order.
+     * @return its weight adjusted with the effects known so far
+     */
+    double add(WeightEntry entry) {
+        int day = index(entry.getDate().getDayOfWeek());
+        int weight = entry.getWeight();
+        if (Double.isNaN(level)) {
+            level = weight;
+        }
+        residualSum[day] += weight - level;
+        residualCount[day]++;
+
+        double adjusted = weight - effect(entry.getDate().getDayOfWeek());
+        level += LEVEL_ALPHA * (adjusted - level);
+        return adjusted;
+    }
+
+    /**
+     * Typical offset of a weekday's weigh-ins from the level, in pounds.
+     * 0 until every weekday has MIN_OBSERVATIONS_PER_DAY weigh-ins.
+     */
+    double effect(DayOfWeek dayOfWeek) {
+        double meanOfMeans = 0;
+        for (int day = 0; day < 7; day++) {
+            if (residualCount[day] < MIN_OBSERVATIONS_PER_DAY) {
+                return 0;
+            }
+            meanOfMeans += residualSum[day] / residualCount[day];
+        }
+        int day = index(dayOfWeek);
+        return residualSum[day] / residualCount[day] - meanOfMeans / 7;
+    }
+
+    /**
+     * Entries' weights with the current weekday effects removed, parallel to entries,
+     * for rollingAverage and detectTrend.
+     */
+    double[] deseasonalize(List<WeightEntry> entries) {
+        double[] effects = new double[7];
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            effects[index(dayOfWeek)] = effect(dayOfWeek);
+        }
+        double[] adjusted = new double[entries.size()];
+        for (int i = 0; i < adjusted.length; i++) {
+            WeightEntry entry = entries.get(i);
+            adjusted[i] = entry.getWeight() - effects[index(entry.getDate().getDayOfWeek())];
+        }
+        return adjusted;
+    }
+
+    private static int index(DayOfWeek dayOfWeek) {
+        return dayOfWeek.getValue() - 1;
+    }
+}
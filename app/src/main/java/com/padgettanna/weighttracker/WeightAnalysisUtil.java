@@ -1,12 +1,27 @@
 package com.padgettanna.weighttracker;
 
+import com.padgettanna.weighttracker.model.MutableWeightEntry;
 import com.padgettanna.weighttracker.model.WeightEntry;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 public final class WeightAnalysisUtil {
 
+    // Modified z-score above which an entry is treated as an outlier
+    static final double OUTLIER_THRESHOLD = 3.5;
+    // Scales MAD to a standard deviation for normally distributed noise
+    private static final double MAD_SCALE = 1.4826;
+    // Never flag entries closer than this to the window median, however flat the log is
+    static final double MIN_OUTLIER_DEVIATION = 10.0;
+    // Fewer entries than this are not enough to call anything an outlier
+    private static final int MIN_OUTLIER_WINDOW = 3;
+    // Trailing window the screens flag outliers over, in entries
+    static final int OUTLIER_WINDOW = 7;
+
     private WeightAnalysisUtil() {}
 
     public enum Trend {
@@ -15,27 +30,101 @@ public final class WeightAnalysisUtil {
         STABLE
     }
 
+    /**
+     * Result of a Mann-Kendall trend test with Sen's slope estimate.
+     * trend is only UPWARD or DOWNWARD when the test is significant.
+     */
+    public static final class TrendTest {
+        public final Trend trend;
+        // Concordant minus discordant pairs
+        public final long s;
+        public final double z;
+        // Two-sided p-value for "no monotonic trend"
+        public final double pValue;
+        // Sen's slope: median of pairwise slopes, in pounds per day
+        public final double slopePerDay;
+        // Number of days tested, after averaging same-day entries
+        public final int sampleSize;
+
+        TrendTest(Trend trend, long s, double z, double pValue, double slopePerDay, int sampleSize) {
+            this.trend = trend;
+            this.s = s;
+            this.z = z;
+            this.pValue = pValue;
+            this.slopePerDay = slopePerDay;
+            this.sampleSize = sampleSize;
+        }
+    }
+
     /**
      * Calculates a rolling average (simple moving average) over the entries.
      */
     public static List<Double> rollingAverage(List<WeightEntry> entries, int windowSize) {
-        List<Double> result = new ArrayList<>();
-        if (entries == null || entries.isEmpty() || windowSize <= 0) return result;
+        if (entries == null) return new ArrayList<>();
 
-        for (int i = 0; i < entries.size(); i++) {
-            int start = Math.max(0, i - windowSize + 1);
+        double[] values = new double[entries.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = entries.get(i).getWeight();
+        }
+        return rollingAverage(values, windowSize);
+    }
 
-            double sum = 0;
-            for (int j = start; j <= i; j++) {
-                sum += entries.get(j).getWeight();
-            }
+    /**
+     * Calculates a rolling average over plain values, such as a deseasonalized series.
+     * O(n) with a running window sum.
+     */
+    public static List<Double> rollingAverage(double[] values, int windowSize) {
+        List<Double> result = new ArrayList<>();
+        if (values == null || values.length == 0 || windowSize <= 0) return result;
 
-            result.add(sum / (i - start + 1));
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            if (i >= windowSize) {
+                sum -= values[i - windowSize];
+            }
+            result.add(sum / Math.min(i + 1, windowSize));
         }
 
         return result;
     }
 
+    /**
+     * Rolling averages over calendar days rather than entries, for the last {@code days}
+     * days of a daily series. Each average covers the windowSize days ending on its day;
+     * days in unfilled gaps are left out, and a window with nothing left averages to NaN.
+     * Reads only the last days + windowSize - 1 days of the series.
+     */
+    static List<Double> rollingAverage(DailyResampler daily, int windowSize, int days) {
+        List<Double> result = new ArrayList<>();
+        int size = daily.size();
+        if (size == 0 || windowSize <= 0 || days <= 0) return result;
+
+        int first = Math.max(0, size - days);
+        int start = Math.max(0, first - windowSize + 1);
+        // Values currently in the window, so leaving ones are not read twice
+        double[] window = new double[windowSize];
+        double sum = 0;
+        int count = 0;
+        for (int i = start; i < size; i++) {
+            int slot = (i - start) % windowSize;
+            if (i - start >= windowSize && !Double.isNaN(window[slot])) {
+                sum -= window[slot];
+                count--;
+            }
+            double value = daily.get(i);
+            window[slot] = value;
+            if (!Double.isNaN(value)) {
+                sum += value;
+                count++;
+            }
+            if (i >= first) {
+                result.add(count == 0 ? Double.NaN : sum / count);
+            }
+        }
+        return result;
+    }
+
     /**
      * Detects overall trend based on the change between the first and last rolling average.
      * threshold: how much change counts as "real" (example: 0.5 lbs)
@@ -45,11 +134,167 @@ public final class WeightAnalysisUtil {
 
         double recent = rollingAverages.get(rollingAverages.size() - 1);
         double previous = rollingAverages.get(rollingAverages.size() - 2);
-        double delta = recent - previous;
+        return classify(recent - previous, threshold);
+    }
+
+    /**
+     * Streaming form of rollingAverage followed by detectTrend, fed one weight at a time.
+     * Keeps only the last windowSize weights and the last two averages, so a whole
+     * history passes through in O(windowSize) memory.
+     */
+    public static final class RollingTrend {
+        private final double[] window;
+        private int count;
+        private double sum;
+        private double latest = Double.NaN;
+        private double previous = Double.NaN;
+
+        public RollingTrend(int windowSize) {
+            window = new double[Math.max(1, windowSize)];
+        }
+
+        public void add(double weight) {
+            int slot = count % window.length;
+            sum += weight;
+            if (count >= window.length) {
+                sum -= window[slot];
+            }
+            window[slot] = weight;
+            count++;
+            previous = latest;
+            latest = sum / Math.min(count, window.length);
+        }
+
+        public int count() {
+            return count;
+        }
+
+        // Rolling average ending at the last weight added; NaN before any weight
+        public double latestAverage() {
+            return latest;
+        }
+
+        // Same rule as detectTrend on the full list of rolling averages
+        public Trend trend(double threshold) {
+            return count < 2 ? Trend.STABLE : classify(latest - previous, threshold);
+        }
+    }
 
+    /**
+     * Runs every entry through a RollingTrend in one forward pass.
+     * entries must be in chronological order, e.g. WTDatabaseHelper.iterateWeightEntries;
+     * the flyweight entries are read and never kept.
+     */
+    public static RollingTrend rollingTrend(Iterator<MutableWeightEntry> entries, int windowSize) {
+        RollingTrend trend = new RollingTrend(windowSize);
+        while (entries.hasNext()) {
+            trend.add(entries.next().getWeight());
+        }
+        return trend;
+    }
+
+    private static Trend classify(double delta, double threshold) {
         if (delta > threshold) return Trend.UPWARD;
         if (delta < -threshold) return Trend.DOWNWARD;
         return Trend.STABLE;
     }
-}
 
+    /**
+     * Flags entries that sit far from the median of the trailing window ending at them.
+     * An entry is an outlier when its distance to the window median exceeds both
+     * OUTLIER_THRESHOLD scaled MADs and MIN_OUTLIER_DEVIATION pounds.
+     * entries must be in chronological order; the result is parallel to it.
+     */
+    public static boolean[] detectOutliers(List<WeightEntry> entries, int windowSize) {
+        boolean[] outliers = new boolean[entries == null ? 0 : entries.size()];
+        if (outliers.length == 0 || windowSize <= 0) return outliers;
+
+        SlidingMedian window = new SlidingMedian();
+        for (int i = 0; i < entries.size(); i++) {
+            int weight = entries.get(i).getWeight();
+            window.add(weight);
+            if (i >= windowSize) {
+                window.remove(entries.get(i - windowSize).getWeight());
+            }
+            if (window.size() < MIN_OUTLIER_WINDOW) {
+                continue;
+            }
+
+            double deviation = Math.abs(weight - window.median());
+            double limit = Math.max(OUTLIER_THRESHOLD * MAD_SCALE * window.mad(), MIN_OUTLIER_DEVIATION);
+            outliers[i] = deviation > limit;
+        }
+        return outliers;
+    }
+
+    /**
+     * Returns the entries not flagged by detectOutliers, in their original order,
+     * so averages and trend can be computed on clean data.
+     */
+    public static List<WeightEntry> withoutOutliers(List<WeightEntry> entries, boolean[] outliers) {
+        List<WeightEntry> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            if (!outliers[i]) {
+                result.add(entries.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mann-Kendall trend test with Sen's slope over the entries within windowDays
+     * of the latest one (all entries if windowDays <= 0). O(n log n).
+     * Entries on the same day are averaged first, so S and Sen's slope see the same pairs
+     * and the reported count is the number of days.
+     * entries must be in chronological order.
+     * alpha: significance level (example: 0.05)
+     */
+    public static TrendTest mannKendall(List<WeightEntry> entries, int windowDays, double alpha) {
+        if (entries == null || entries.isEmpty()) {
+            return new TrendTest(Trend.STABLE, 0, 0, 1, 0, 0);
+        }
+
+        int start = 0;
+        if (windowDays > 0) {
+            LocalDate first = entries.get(entries.size() - 1).getDate().minusDays(windowDays - 1);
+            while (entries.get(start).getDate().isBefore(first)) {
+                start++;
+            }
+        }
+
+        int[] days = new int[entries.size() - start];
+        double[] weights = new double[days.length];
+        int n = 0;
+        int sameDay = 0;
+        for (int i = start; i < entries.size(); i++) {
+            WeightEntry entry = entries.get(i);
+            int day = (int) entry.getDate().toEpochDay();
+            if (n > 0 && days[n - 1] == day) {
+                // Running mean of the day's entries
+                sameDay++;
+                weights[n - 1] += (entry.getWeight() - weights[n - 1]) / (sameDay + 1);
+                continue;
+            }
+            days[n] = day;
+            weights[n] = entry.getWeight();
+            sameDay = 0;
+            n++;
+        }
+        days = Arrays.copyOf(days, n);
+        weights = Arrays.copyOf(weights, n);
+
+        long s = MannKendall.statistic(weights);
+        double z = MannKendall.zScore(s, MannKendall.variance(weights));
+        double pValue = MannKendall.pValue(z);
+        double slope = n < 2 ? 0 : MannKendall.senSlope(days, weights);
+        if (Double.isNaN(slope)) {
+            slope = 0;
+        }
+
+        Trend trend = Trend.STABLE;
+        if (pValue < alpha) {
+            trend = s > 0 ? Trend.UPWARD : Trend.DOWNWARD;
+        }
+        return new TrendTest(trend, s, z, pValue, slope, n);
+    }
+}
@@ -0,0 +1,128 @@
+package com.padgettanna.weighttracker;
+
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.MutableWeightEntry;
+
+import java.io.Closeable;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Forward-only pass over a cursor of (id, date, weight) rows.
+ * - Every step refills one MutableWeightEntry, so a pass allocates nothing per entry
+ *   that outlives the step and memory stays flat however long the log is
+ * - Rows with an unparseable date are skipped, as in WTDatabaseHelper.getWeightEntries
+ * - Closing the iterator (or a stream from it) closes the cursor; it also closes itself
+ *   once the last row has been read
+ */
+final class WeightEntryIterator implements Iterator<MutableWeightEntry>, Closeable {
+
+    private static final long INVALID_DAY = Long.MIN_VALUE;
+
+    private final Cursor cursor;
+    private final MutableWeightEntry entry = new MutableWeightEntry();
+    // Whether the cursor has already been moved onto the row next() will return
+    private boolean positioned;
+    private boolean hasRow;
+
+    WeightEntryIterator(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!positioned) {
+            hasRow = advance();
+            positioned = true;
+        }
+        return hasRow;
+    }
+
+    // The returned entry is overwritten by the following call
+    @Override
+    public MutableWeightEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        positioned = false;
+        return entry;
+    }
+
+    Spliterator<MutableWeightEntry> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    // Sequential stream over the remaining entries; closing it closes the cursor
+    Stream<MutableWeightEntry> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    private boolean advance() {
+        if (cursor.isClosed()) {
+            return false;
+        }
+        while (cursor.moveToNext()) {
+            long day = parseEpochDay(cursor.getString(1));
+            if (day != INVALID_DAY) {
+                entry.set(cursor.getInt(0), day, cursor.getInt(2));
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    // Epoch day of a yyyy-MM-dd date without going through DateTimeFormatter
+    static long parseEpochDay(String date) {
+        if (date == null) {
+            return INVALID_DAY;
+        }
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            // Not the stored shape; let the ISO parser decide
+            try {
+                return LocalDate.parse(date).toEpochDay();
+            } catch (DateTimeException e) {
+                return INVALID_DAY;
+            }
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return INVALID_DAY;
+        }
+        try {
+            return LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return INVALID_DAY;
+        }
+    }
+
+    // Value of the decimal digits in [start, end), or -1 if any is not a digit
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,405 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Application;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.tracing.Trace;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightLogFilter;
+import com.padgettanna.weighttracker.model.WeightRow;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds WTLogActivity's entries, outlier flags and filter across configuration changes.
+ * - The whole log is read and analysed on a background thread, and again only when
+ *   InvalidationTracker reports the log changed since it was read
+ * - Edits made on this screen or in UpdateDeleteActivity are applied to the loaded list
+ *   in memory instead of re-reading the log
+ * - Batch deletes and edits run their transaction on the log thread, in order with loads
+ * - A filter runs as an indexed query on its own thread; a newer filter cancels the
+ *   query still in flight, and filter edits are debounced (setFilterDebounced)
+ * - Rows are published as WeightRows formatted on those background threads; an entry
+ *   that has not changed keeps its formatted row
+ * - The newest entries are kept in the user's warm state (see WarmStateCache), so a
+ *   return to the log shows them at once while the full read runs
+ * - A full read shows as "loadWeightEntries" in system traces
+ * Setters and LiveData updates happen on the main thread.
+ */
+public class WeightLogViewModel extends AndroidViewModel {
+
+    private static final WeightLogFilter NO_FILTER = new WeightLogFilter(null, null, null, null);
+    // Wait this long after the last filter edit before querying
+    static final long FILTER_DEBOUNCE_MS = 250;
+
+    private final WTDatabaseHelper wtDB;
+    private final WarmStateCache warmStateCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Loads and in-memory edits run here in order, each starting from the previous result
+    private final ExecutorService logExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<List<WeightRow>> visibleRows = new MutableLiveData<>();
+    private final MutableLiveData<Set<Integer>> outlierIds = new MutableLiveData<>();
+    private String userEmail;
+    private UserWarmState warmState;
+    // Whole log, newest first; only touched on logExecutor
+    private List<WeightEntry> loadedEntries = new ArrayList<>();
+    // Last published rows of the whole log, for clearing the filter without a query
+    private List<WeightRow> allRows = new ArrayList<>();
+    // Formatted row per entry id, shared by the log and filter threads
+    private final Map<Integer, WeightRow> rowCache = new ConcurrentHashMap<>();
+    // Weight log version the loaded list reflects
+    private long loadedLogVersion = -1;
+    private WeightLogFilter filter = NO_FILTER;
+    // Query currently running for the filter, cancelled when a newer one starts
+    private Future<?> filterQuery;
+    private CancellationSignal filterSignal;
+    // Latest edit waiting out the debounce
+    private WeightLogFilter pendingFilter;
+    private final Runnable applyPendingFilter = () -> setFilter(pendingFilter);
+    // Set when a fresh read finds no entries, cleared once the screen has said so
+    private boolean emptyNoticePending;
+
+    public WeightLogViewModel(@NonNull Application application) {
+        this(application, new WTDatabaseHelper(application));
+    }
+
+    // For tests that need to observe or hold up queries
+    WeightLogViewModel(@NonNull Application application, WTDatabaseHelper wtDB) {
+        super(application);
+        this.wtDB = wtDB;
+        warmStateCache = ((WeightTrackerApp) application).getWarmStateCache();
+        // Holds every read and edit until an upgrade still migrating the database has finished
+        WeightWriteQueue writeQueue = ((WeightTrackerApp) application).getWriteQueue();
+        logExecutor.execute(writeQueue::awaitOpen);
+        queryExecutor.execute(writeQueue::awaitOpen);
+    }
+
+    // Rows to display, newest first: the whole log, or the filter's matches
+    LiveData<List<WeightRow>> getRows() {
+        return visibleRows;
+    }
+
+    // Ids of entries flagged by WeightAnalysisUtil.detectOutliers
+    LiveData<Set<Integer>> getOutlierIds() {
+        return outlierIds;
+    }
+
+    // Loads the log for the user; does nothing if this model already holds it
+    void start(String email) {
+        if (userEmail != null) {
+            return;
+        }
+        userEmail = email;
+        warmState = warmStateCache.get(email);
+
+        // Show the warm newest entries first; the full read below replaces them
+        UserWarmState.RecentEntries recent = warmState.currentRecentEntries(email);
+        if (recent != null) {
+            logExecutor.execute(() -> {
+                List<WeightRow> rows = toRows(recent.entries);
+                mainHandler.post(() -> publish(rows, recent.outlierIds));
+            });
+        }
+        reload();
+    }
+
+    // Reloads the log only if it changed since it was read
+    void refreshIfStale() {
+        if (InvalidationTracker.getInstance()
+                .isStale(userEmail, WTDatabaseHelper.TABLE_LOG, loadedLogVersion)) {
+            reload();
+        }
+    }
+
+    // True once after a reload that found no entries
+    boolean consumeEmptyNotice() {
+        boolean pending = emptyNoticePending;
+        emptyNoticePending = false;
+        return pending;
+    }
+
+    // ----- Batch writes, run on the log thread -----
+
+    /**
+     * Deletes the entries in one transaction on the log thread, then mirrors the delete
+     * in memory. done receives whether it committed, on the main thread.
+     */
+    void deleteEntries(List<Integer> ids, Consumer<Boolean> done) {
+        String email = userEmail;
+        logExecutor.execute(() -> {
+            boolean deleted = wtDB.deleteWeightEntries(ids, email);
+            mainHandler.post(() -> {
+                if (deleted) {
+                    entriesDeleted(ids);
+                }
+                done.accept(deleted);
+            });
+        });
+    }
+
+    /**
+     * Shifts and adjusts the entries in one transaction on the log thread, then mirrors
+     * the edit in memory. done receives whether it committed, on the main thread.
+     */
+    void editEntries(List<Integer> ids, int dayShift, int weightDelta, Consumer<Boolean> done) {
+        String email = userEmail;
+        logExecutor.execute(() -> {
+            boolean edited = wtDB.updateWeightEntries(ids, dayShift, weightDelta, email);
+            mainHandler.post(() -> {
+                if (edited) {
+                    entriesEdited(ids, dayShift, weightDelta);
+                }
+                done.accept(edited);
+            });
+        });
+    }
+
+    // ----- Committed writes, mirrored in memory -----
+
+    void entryUpdated(int id, LocalDate date, int weight) {
+        patch(entries -> {
+            List<WeightEntry> updated = new ArrayList<>(entries.size());
+            for (WeightEntry entry : entries) {
+                updated.add(entry.getId() == id ? new WeightEntry(id, date, weight) : entry);
+            }
+            return updated;
+        });
+    }
+
+    void entriesDeleted(Collection<Integer> ids) {
+        Set<Integer> deleted = new HashSet<>(ids);
+        patch(entries -> {
+            List<WeightEntry> remaining = new ArrayList<>(entries.size());
+            for (WeightEntry entry : entries) {
+                if (!deleted.contains(entry.getId())) {
+                    remaining.add(entry);
+                }
+            }
+            return remaining;
+        });
+    }
+
+    // Same date shift and weight adjustment as WTDatabaseHelper.updateWeightEntries
+    void entriesEdited(Collection<Integer> ids, int dayShift, int weightDelta) {
+        Set<Integer> edited = new HashSet<>(ids);
+        patch(entries -> {
+            List<WeightEntry> updated = new ArrayList<>(entries.size());
+            for (WeightEntry entry : entries) {
+                if (edited.contains(entry.getId())) {
+                    updated.add(new WeightEntry(entry.getId(),
+                            entry.getDate().plusDays(dayShift),
+                            entry.getWeight() + weightDelta));
+                } else {
+                    updated.add(entry);
+                }
+            }
+            return updated;
+        });
+    }
+
+    // ----- Filter -----
+
+    // Applies the filter once FILTER_DEBOUNCE_MS pass without another edit
+    void setFilterDebounced(WeightLogFilter newFilter) {
+        pendingFilter = newFilter;
+        mainHandler.removeCallbacks(applyPendingFilter);
+        mainHandler.postDelayed(applyPendingFilter, FILTER_DEBOUNCE_MS);
+    }
+
+    // Applies the filter right away, dropping any edit still waiting out the debounce
+    void setFilter(WeightLogFilter newFilter) {
+        mainHandler.removeCallbacks(applyPendingFilter);
+        // Restored filter fields re-send the same filter after a rotation
+        if (newFilter.equals(filter)) {
+            return;
+        }
+        filter = newFilter;
+        cancelFilterQuery();
+        if (filter.isEmpty()) {
+            visibleRows.setValue(allRows);
+        } else {
+            runFilter();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        mainHandler.removeCallbacksAndMessages(null);
+        cancelFilterQuery();
+        logExecutor.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    private void reload() {
+        // Recorded before querying, so a write racing the query triggers another refresh
+        markLoaded();
+        String email = userEmail;
+        UserWarmState userState = warmState;
+        long logVersion = loadedLogVersion;
+        logExecutor.execute(() -> {
+            List<WeightEntry> entries;
+            Trace.beginSection("loadWeightEntries");
+            try {
+                entries = wtDB.getWeightEntries(email);
+                // Sort by date (most recent first)
+                Collections.sort(entries, Collections.reverseOrder());
+            } finally {
+                Trace.endSection();
+            }
+            loadedEntries = entries;
+            Set<Integer> outliers = analyze(entries, userState, logVersion);
+            userState.setRecentEntries(new UserWarmState.RecentEntries(entries, outliers, logVersion));
+            // A fresh read drops rows of entries deleted elsewhere
+            rowCache.clear();
+            List<WeightRow> rows = toRows(entries);
+            mainHandler.post(() -> {
+                emptyNoticePending = entries.isEmpty();
+                publish(rows, outliers);
+            });
+        });
+    }
+
+    // Records the log version the loaded list is about to reflect
+    private void markLoaded() {
+        loadedLogVersion = InvalidationTracker.getInstance()
+                .getVersion(userEmail, WTDatabaseHelper.TABLE_LOG);
+    }
+
+    // Applies a committed edit to the loaded list and republishes it with fresh outlier flags
+    private void patch(UnaryOperator<List<WeightEntry>> change) {
+        markLoaded();
+        UserWarmState userState = warmState;
+        long logVersion = loadedLogVersion;
+        logExecutor.execute(() -> {
+            List<WeightEntry> entries = change.apply(loadedEntries);
+            Collections.sort(entries, Collections.reverseOrder());
+            loadedEntries = entries;
+            List<WeightEntry> chronological = new ArrayList<>(entries);
+            Collections.reverse(chronological);
+            Set<Integer> outliers = outlierIds(chronological,
+                    WeightAnalysisUtil.detectOutliers(chronological, WeightAnalysisUtil.OUTLIER_WINDOW));
+            userState.setRecentEntries(new UserWarmState.RecentEntries(entries, outliers, logVersion));
+            List<WeightRow> rows = toRows(entries);
+            mainHandler.post(() -> publish(rows, outliers));
+        });
+    }
+
+    private void publish(List<WeightRow> rows, Set<Integer> outliers) {
+        allRows = rows;
+        outlierIds.setValue(outliers);
+        // Edited rows may no longer match an active filter, so re-query in that case
+        if (filter.isEmpty()) {
+            visibleRows.setValue(rows);
+        } else {
+            cancelFilterQuery();
+            runFilter();
+        }
+    }
+
+    // Runs the log analysis and returns the ids of the flagged entries
+    private static Set<Integer> analyze(List<WeightEntry> newestFirst, UserWarmState userState, long logVersion) {
+        if (newestFirst.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        // ANALYSIS (chronological order: oldest -> newest)
+        List<WeightEntry> chronological = new ArrayList<>(newestFirst);
+        Collections.reverse(chronological);
+
+        // Likely typos are flagged in the list and left out of the analysis
+        boolean[] outliers = WeightAnalysisUtil.detectOutliers(chronological, WeightAnalysisUtil.OUTLIER_WINDOW);
+        List<WeightEntry> clean = WeightAnalysisUtil.withoutOutliers(chronological, outliers);
+
+        // Weekday effects removed first so weekend bumps do not drive the trend; the warm
+        // ones are reused unless the log changed other than by appends
+        double[] adjusted = userState.seasonality(logVersion, chronological, clean).deseasonalize(clean);
+        List<Double> avgs = WeightAnalysisUtil.rollingAverage(adjusted, 7); // 7-entry window
+        WeightAnalysisUtil.Trend trend = WeightAnalysisUtil.detectTrend(avgs, 0.5); // threshold
+
+        Log.d("WeightAnalysis", "Rolling avg (last): " +
+                (avgs.isEmpty() ? "n/a" : avgs.get(avgs.size() - 1)));
+        Log.d("WeightAnalysis", "Trend: " + trend);
+        Log.d("WeightAnalysis", "Outliers: " + (chronological.size() - clean.size()));
+
+        return outlierIds(chronological, outliers);
+    }
+
+    // Ids of the entries flagged by WeightAnalysisUtil.detectOutliers
+    private static Set<Integer> outlierIds(List<WeightEntry> chronological, boolean[] outliers) {
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < outliers.length; i++) {
+            if (outliers[i]) {
+                ids.add(chronological.get(i).getId());
+            }
+        }
+        return ids;
+    }
+
+    // Display rows for the entries, reusing the formatted row of any entry that has not changed
+    private List<WeightRow> toRows(List<WeightEntry> entries) {
+        List<WeightRow> rows = new ArrayList<>(entries.size());
+        for (WeightEntry entry : entries) {
+            WeightRow row = rowCache.get(entry.getId());
+            if (row == null || !row.matches(entry)) {
+                row = new WeightRow(entry);
+                rowCache.put(entry.getId(), row);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // Runs the current filter on the query thread; results from a replaced filter are dropped
+    private void runFilter() {
+        WeightLogFilter query = filter;
+        String email = userEmail;
+        CancellationSignal signal = new CancellationSignal();
+        filterSignal = signal;
+        filterQuery = queryExecutor.submit(() -> {
+            try {
+                List<WeightRow> result = toRows(wtDB.queryWeightEntries(email, query, signal));
+                mainHandler.post(() -> {
+                    if (signal == filterSignal && !signal.isCanceled()) {
+                        visibleRows.setValue(result);
+                    }
+                });
+            } catch (OperationCanceledException ignored) {
+                // Superseded by a newer filter
+            }
+        });
+    }
+
+    private void cancelFilterQuery() {
+        if (filterSignal != null) {
+            filterSignal.cancel();
+            filterSignal = null;
+        }
+        if (filterQuery != null) {
+            filterQuery.cancel(true);
+            filterQuery = null;
+        }
+    }
+}
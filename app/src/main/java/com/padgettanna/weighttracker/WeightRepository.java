@@ -0,0 +1,38 @@
+package com.padgettanna.weighttracker;
+
+import androidx.annotation.Nullable;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import java.util.List;
+
+/**
+ * Storage for users' weight entries and goals, independent of how they are persisted.
+ * - SQLiteWeightRepository: the app database, through WTDatabaseHelper
+ * - MappedWeightRepository: fixed-width records in a memory-mapped append-only file per user
+ * Every implementation validates like WTDatabaseHelper (weight 50-999, no future dates),
+ * returns false for rejected writes, and reports committed writes to InvalidationTracker.
+ */
+interface WeightRepository {
+
+    boolean addWeight(String date, int weight, String email);
+
+    // False if the entry does not exist for the user or the new values are invalid
+    boolean updateWeightEntry(int id, String date, int weight, String email);
+
+    // False if the entry does not exist for the user
+    boolean deleteWeightEntry(int id, String email);
+
+    // Every entry of the user, in no particular order
+    List<WeightEntry> getWeightEntries(String email);
+
+    // Most recent entry by date, then by id; null if the user has none
+    @Nullable
+    WeightEntry getLatestEntry(String email);
+
+    boolean setGoalWeight(int goalWeight, String email);
+
+    // The user's goal weight, or null if none is set
+    @Nullable
+    Integer getGoalWeight(String email);
+}
@@ -0,0 +1,98 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Application class holding state shared by every screen in the process.
+ * - Owns the WeightWriteQueue, so quick entries from any screen coalesce into one queue
+ * - Flushes the queue as soon as the app's UI is hidden
+ * - Schedules the idle-time database maintenance job
+ * - Opens the database in the background, so upgrades finish before screens need them;
+ *   screens touch the database through whenDatabaseReady, so they wait if one is still running
+ * - Owns the NotificationDispatcher that sends queued goal notifications in the background
+ * - Owns the WarmStateCache of recently used accounts, trimmed under memory pressure
+ * - Registers ScreenTimings, which logs per-screen frame timings in debuggable builds
+ */
+public class WeightTrackerApp extends Application {
+
+    private static final String TAG = "WeightTrackerApp";
+
+    private WeightWriteQueue writeQueue;
+    private NotificationDispatcher notificationDispatcher;
+    private final WarmStateCache warmStateCache = new WarmStateCache();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ScreenTimings.register(this);
+        WTDatabaseHelper wtDB = new WTDatabaseHelper(this);
+        writeQueue = new WeightWriteQueue(wtDB);
+        // The first open runs any schema upgrade and its chunked data copy; starting it here
+        // keeps that work off the main thread
+        writeQueue.open();
+        WTMaintenanceJobService.schedule(this);
+
+        notificationDispatcher = new NotificationDispatcher(wtDB, new SmsNotificationSender(this));
+        InvalidationTracker.getInstance().addObserver(notificationDispatcher);
+        // Anything left in the outbox by an earlier process
+        notificationDispatcher.dispatch();
+    }
+
+    WeightWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * Runs action on the main thread once the database is open and fully migrated (see
+     * WeightWriteQueue.open), unless the activity has been destroyed by then.
+     * If the database cannot be opened the action is dropped; the next call tries again.
+     */
+    void whenDatabaseReady(Activity activity, Runnable action) {
+        writeQueue.open().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Log.w(TAG, "Database could not be opened", error);
+                Toast.makeText(this, "Could not open your data. Try again.", Toast.LENGTH_SHORT).show();
+            } else if (!activity.isDestroyed()) {
+                action.run();
+            }
+        }, ContextCompat.getMainExecutor(activity));
+    }
+
+    NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
+    WarmStateCache getWarmStateCache() {
+        return warmStateCache;
+    }
+
+    // Only called in emulated processes, e.g. between Robolectric tests
+    @Override
+    public void onTerminate() {
+        InvalidationTracker.getInstance().removeObserver(notificationDispatcher);
+        notificationDispatcher.shutdown();
+        super.onTerminate();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Backgrounded processes are the first to be killed, so commit queued entries now
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            writeQueue.flush();
+        }
+        warmStateCache.trim(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        warmStateCache.clear();
+    }
+}
@@ -0,0 +1,196 @@
+package com.padgettanna.weighttracker;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue in front of WTDatabaseHelper for bursts of new weight entries.
+ * - Entries arriving within the window after the first queued one are committed together
+ *   by WTDatabaseHelper.addWeights, one transaction (and one sync to disk) per batch
+ * - A batch is committed early once it holds the maximum number of entries
+ * - Each entry gets a future completed with the same result addWeight would return,
+ *   once its batch has committed
+ * - flush() commits whatever is queued right away; WeightTrackerApp calls it when the
+ *   app's UI is hidden, so queued entries are not lost if the process is then killed
+ * - submit() runs other database work on the same thread, after the entries queued before it
+ * - open() finishes any schema migration before anything else runs here; screens and
+ *   background readers wait for it too (see awaitOpen and WeightTrackerApp.whenDatabaseReady)
+ */
+final class WeightWriteQueue {
+
+    private static final String TAG = "WeightWriteQueue";
+    // Long enough to catch a burst, short enough that a single entry still feels instant
+    static final long DEFAULT_WINDOW_MS = 25;
+    static final int DEFAULT_MAX_BATCH = 256;
+
+    private final WTDatabaseHelper wtDB;
+    private final long windowMs;
+    private final int maxBatch;
+    // Commits run here one at a time, in the order entries were queued
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    // Guarded by lock
+    private List<PendingWeight> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledCommit;
+    // Shared by every caller of open() until it fails, so a later call can retry
+    private CompletableFuture<Void> opened;
+
+    WeightWriteQueue(WTDatabaseHelper wtDB) {
+        this(wtDB, DEFAULT_WINDOW_MS, DEFAULT_MAX_BATCH);
+    }
+
+    WeightWriteQueue(WTDatabaseHelper wtDB, long windowMs, int maxBatch) {
+        this.wtDB = wtDB;
+        this.windowMs = windowMs;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Queues a new weight entry.
+     * Invalid entries complete with false at once and never reach the queue.
+     *
+     * @return completes with true once the entry is committed, false if it was rejected
+     */
+    CompletableFuture<Boolean> addWeight(String date, int weight, String email) {
+        if (!WTDatabaseHelper.isValidWeight(weight) || !WTDatabaseHelper.isValidDate(date)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        PendingWeight entry = new PendingWeight(new WTDatabaseHelper.NewWeight(date, weight, email));
+        synchronized (lock) {
+            pending.add(entry);
+            if (pending.size() >= maxBatch) {
+                cancelScheduledCommit();
+                executor.execute(this::commitPending);
+            } else if (scheduledCommit == null) {
+                scheduledCommit = executor.schedule(this::commitPending, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return entry.result;
+    }
+
+    /**
+     * Opens the database on the commit thread, running any pending upgrade and its chunked
+     * data copy there to completion.
+     *
+     * @return completes once the database is open and no migration work is pending
+     */
+    CompletableFuture<Void> open() {
+        synchronized (lock) {
+            if (opened == null || opened.isCompletedExceptionally()) {
+                opened = CompletableFuture.runAsync(wtDB::finishMigrations, executor);
+            }
+            return opened;
+        }
+    }
+
+    /**
+     * Blocks until open() completes, for background threads about to read user data.
+     * Never call it on the main thread or the commit thread.
+     *
+     * @return false if the database could not be opened
+     */
+    boolean awaitOpen() {
+        try {
+            open().join();
+            return true;
+        } catch (CompletionException e) {
+            Log.w(TAG, "Database could not be opened", e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Commits everything queued so far without waiting for the window.
+     *
+     * @return completes once those entries (and any queued before them) are committed
+     */
+    CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(this::commitPending, executor);
+    }
+
+    /**
+     * Runs a task on the commit thread once the entries queued so far are committed, so
+     * bulk work such as a restore never interleaves with a batch.
+     *
+     * @return completes with the task's result, or exceptionally with what it threw
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            commitPending();
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Commits what is queued, then stops the commit thread; later entries are rejected
+    void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    // Runs on the executor: takes the whole queue and commits it in batches of maxBatch
+    private void commitPending() {
+        List<PendingWeight> batch;
+        synchronized (lock) {
+            cancelScheduledCommit();
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        for (int start = 0; start < batch.size(); start += maxBatch) {
+            commit(batch.subList(start, Math.min(batch.size(), start + maxBatch)));
+        }
+    }
+
+    private void commit(List<PendingWeight> batch) {
+        List<WTDatabaseHelper.NewWeight> weights = new ArrayList<>(batch.size());
+        for (PendingWeight entry : batch) {
+            weights.add(entry.weight);
+        }
+        try {
+            boolean[] written = wtDB.addWeights(weights);
+            for (int i = 0; i < written.length; i++) {
+                batch.get(i).result.complete(written[i]);
+            }
+        } catch (RuntimeException e) {
+            // The whole transaction rolled back, so none of the batch was written
+            Log.w(TAG, "Batch of " + batch.size() + " entries failed", e);
+            for (PendingWeight entry : batch) {
+                entry.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Caller holds lock
+    private void cancelScheduledCommit() {
+        if (scheduledCommit != null) {
+            scheduledCommit.cancel(false);
+            scheduledCommit = null;
+        }
+    }
+
+    private static final class PendingWeight {
+        final WTDatabaseHelper.NewWeight weight;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        PendingWeight(WTDatabaseHelper.NewWeight weight) {
+            this.weight = weight;
+        }
+    }
+}
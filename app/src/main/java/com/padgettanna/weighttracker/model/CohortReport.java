@@ -0,0 +1,70 @@
+package com.padgettanna.weighttracker.model;
+
+/**
+ * Aggregate statistics over every user in the database, built by CohortAnalyticsJob.
+ * Holds only totals, so its size does not depend on the number of users.
+ */
+public class CohortReport {
+    private final int userCount;
+    private final int activeUserCount;
+    private final double averageWeeklyChange;
+    private final int goalUserCount;
+    private final int goalReachedCount;
+    private final int upwardCount;
+    private final int downwardCount;
+    private final int stableCount;
+
+    public CohortReport(int userCount, int activeUserCount, double averageWeeklyChange,
+                        int goalUserCount, int goalReachedCount,
+                        int upwardCount, int downwardCount, int stableCount) {
+        this.userCount = userCount;
+        this.activeUserCount = activeUserCount;
+        this.averageWeeklyChange = averageWeeklyChange;
+        this.goalUserCount = goalUserCount;
+        this.goalReachedCount = goalReachedCount;
+        this.upwardCount = upwardCount;
+        this.downwardCount = downwardCount;
+        this.stableCount = stableCount;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    // Users with at least two entries, the ones a change and trend can be computed for
+    public int getActiveUserCount() {
+        return activeUserCount;
+    }
+
+    // Mean over active users of their recent rate, in pounds per week (negative is a loss)
+    public double getAverageWeeklyChange() {
+        return averageWeeklyChange;
+    }
+
+    // Users with a goal and at least one entry
+    public int getGoalUserCount() {
+        return goalUserCount;
+    }
+
+    // ... whose latest entry is at or below the goal
+    public int getGoalReachedCount() {
+        return goalReachedCount;
+    }
+
+    // Share of goal users who reached it; 0 if no user has a goal
+    public double getGoalAttainmentRate() {
+        return goalUserCount == 0 ? 0 : (double) goalReachedCount / goalUserCount;
+    }
+
+    public int getUpwardCount() {
+        return upwardCount;
+    }
+
+    public int getDownwardCount() {
+        return downwardCount;
+    }
+
+    public int getStableCount() {
+        return stableCount;
+    }
+}
@@ -0,0 +1,57 @@
+package com.padgettanna.weighttracker.model;
+
+/**
+ * Everything the main screen shows, already formatted for display.
+ * Persisted as a snapshot so the screen can render before the database is read.
+ * Empty strings mean "no value yet".
+ */
+public class DashboardState {
+    private final String userName;
+    private final String goalWeight;
+    private final String currentWeight;
+    private final String averageText;
+    private final String trendText;
+    private final String windowsText;
+    private final long computedAt;
+
+    public DashboardState(String userName, String goalWeight, String currentWeight,
+                          String averageText, String trendText, String windowsText, long computedAt) {
+        this.userName = userName;
+        this.goalWeight = goalWeight;
+        this.currentWeight = currentWeight;
+        this.averageText = averageText;
+        this.trendText = trendText;
+        this.windowsText = windowsText;
+        this.computedAt = computedAt;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getGoalWeight() {
+        return goalWeight;
+    }
+
+    public String getCurrentWeight() {
+        return currentWeight;
+    }
+
+    public String getAverageText() {
+        return averageText;
+    }
+
+    public String getTrendText() {
+        return trendText;
+    }
+
+    // 30/90/365-day summary line
+    public String getWindowsText() {
+        return windowsText;
+    }
+
+    // When the state was computed from the database, in epoch milliseconds
+    public long getComputedAt() {
+        return computedAt;
+    }
+}
@@ -0,0 +1,40 @@
+package com.padgettanna.weighttracker.model;
+
+import java.time.LocalDate;
+
+/**
+ * Reusable weight entry for one forward pass over a user's log.
+ * A WeightEntryIterator refills the same instance on every step, so it is only valid
+ * until the next call to next(); use toEntry() to keep a copy.
+ */
+public final class MutableWeightEntry {
+    private int id;
+    private long epochDay;
+    private int weight;
+
+    public void set(int id, long epochDay, int weight) {
+        this.id = id;
+        this.epochDay = epochDay;
+        this.weight = weight;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public WeightEntry toEntry() {
+        return new WeightEntry(id, getDate(), weight);
+    }
+}
@@ -0,0 +1,57 @@
+package com.padgettanna.weighttracker.model;
+
+/**
+ * A single weight entry or goal change exchanged with the sync server.
+ * Weight entries are identified across devices by a global key ("device:rowId");
+ * goal changes are per user and carry the new goal weight instead.
+ */
+public class SyncChange {
+    public static final String OP_UPSERT = "upsert";
+    public static final String OP_DELETE = "delete";
+
+    private final String key;
+    private final String table;
+    private final String op;
+    private final String date;
+    private final int weight;
+    private final int goal;
+    private final long changedAt;
+
+    public SyncChange(String key, String table, String op, String date, int weight, int goal, long changedAt) {
+        this.key = key;
+        this.table = table;
+        this.op = op;
+        this.date = date;
+        this.weight = weight;
+        this.goal = goal;
+        this.changedAt = changedAt;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    public long getChangedAt() {
+        return changedAt;
+    }
+}
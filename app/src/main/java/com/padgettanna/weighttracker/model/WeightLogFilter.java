@@ -0,0 +1,75 @@
+package com.padgettanna.weighttracker.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Objects;
+
+/**
+ * Criteria for narrowing the weight log.
+ * Any bound left null is not applied; all bounds are inclusive.
+ */
+public class WeightLogFilter {
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private final Integer minWeight;
+    private final Integer maxWeight;
+
+    public WeightLogFilter(LocalDate fromDate, LocalDate toDate, Integer minWeight, Integer maxWeight) {
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+    }
+
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+
+    public LocalDate getToDate() {
+        return toDate;
+    }
+
+    public Integer getMinWeight() {
+        return minWeight;
+    }
+
+    public Integer getMaxWeight() {
+        return maxWeight;
+    }
+
+    // The same filter with its date range narrowed to the month
+    public WeightLogFilter inMonth(YearMonth month) {
+        LocalDate monthStart = month.atDay(1);
+        LocalDate monthEnd = month.atEndOfMonth();
+        return new WeightLogFilter(
+                fromDate == null || fromDate.isBefore(monthStart) ? monthStart : fromDate,
+                toDate == null || toDate.isAfter(monthEnd) ? monthEnd : toDate,
+                minWeight, maxWeight);
+    }
+
+    // True if no bound is set, i.e. the filter matches every entry
+    public boolean isEmpty() {
+        return fromDate == null && toDate == null && minWeight == null && maxWeight == null;
+    }
+
+    // Two filters with the same bounds match the same entries
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeightLogFilter)) {
+            return false;
+        }
+        WeightLogFilter other = (WeightLogFilter) o;
+        return Objects.equals(fromDate, other.fromDate)
+                && Objects.equals(toDate, other.toDate)
+                && Objects.equals(minWeight, other.minWeight)
+                && Objects.equals(maxWeight, other.maxWeight);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromDate, toDate, minWeight, maxWeight);
+    }
+}
@@ -0,0 +1,39 @@
+package com.padgettanna.weighttracker.model;
+
+/**
+ * A weight entry as the log displays it.
+ * The date and weight strings are formatted once, off the main thread,
+ * so binding a row only sets text.
+ */
+public class WeightRow {
+    private final WeightEntry entry;
+    private final String dateText;
+    private final String weightText;
+
+    public WeightRow(WeightEntry entry) {
+        this.entry = entry;
+        this.dateText = entry.getDate().toString();
+        this.weightText = String.valueOf(entry.getWeight());
+    }
+
+    public WeightEntry getEntry() {
+        return entry;
+    }
+
+    public int getId() {
+        return entry.getId();
+    }
+
+    public String getDateText() {
+        return dateText;
+    }
+
+    public String getWeightText() {
+        return weightText;
+    }
+
+    // True if this row already shows the given entry's date and weight
+    public boolean matches(WeightEntry other) {
+        return entry.getWeight() == other.getWeight() && entry.getDate().equals(other.getDate());
+    }
+}
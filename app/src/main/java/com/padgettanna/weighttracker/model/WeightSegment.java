@@ -0,0 +1,51 @@
+package com.padgettanna.weighttracker.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A stretch of the weight history between two change points,
+ * summarized by its mean weight and fitted slope.
+ */
+public class WeightSegment {
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int count;
+    private final double mean;
+    private final double slopePerDay;
+
+    public WeightSegment(LocalDate startDate, LocalDate endDate, int count, double mean, double slopePerDay) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.count = count;
+        this.mean = mean;
+        this.slopePerDay = slopePerDay;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    // Number of entries in the segment
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    // Least-squares slope in pounds per day
+    public double getSlopePerDay() {
+        return slopePerDay;
+    }
+
+    // Calendar days covered, counting both ends
+    public long getDays() {
+        return ChronoUnit.DAYS.between(startDate, endDate) + 1;
+    }
+}
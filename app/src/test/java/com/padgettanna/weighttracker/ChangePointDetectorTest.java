@@ -0,0 +1,244 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightSegment;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs ChangePointDetector's CUSUM and PELT on synthetic step and slope series, and checks
+ * that onWeightAdded reports the new entry's own step on both its fast and rebuild paths
+ * and appends it to the warm weekday effects only when they are one write behind.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ChangePointDetectorTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    public void cusumFollowsASteadyLoss() {
+        ChangePointDetector.Cusum cusum = new ChangePointDetector.Cusum();
+        for (WeightEntry entry : series(120, day -> 200 - 0.3 * day)) {
+            assertFalse("alarm on " + entry.getDate(), cusum.add(entry.getDate(), entry.getWeight()));
+        }
+        assertEquals(START, cusum.getSegmentStart());
+        assertEquals(-0.3, cusum.getSegmentSlope(), 0.05);
+    }
+
+    @Test
+    public void cusumDetectsAStep() {
+        LocalDate alarm = firstAlarm(series(120, day -> day < 60 ? 200 : 190));
+        assertTrue("alarm on " + alarm, !alarm.isBefore(START.plusDays(60)) && alarm.isBefore(START.plusDays(66)));
+    }
+
+    @Test
+    public void cusumDetectsAStall() {
+        // Losing 0.3 lb a day, then flat from day 60
+        LocalDate alarm = firstAlarm(series(120, day -> 200 - 0.3 * Math.min(day, 60)));
+        assertTrue("alarm on " + alarm, alarm.isAfter(START.plusDays(60)) && alarm.isBefore(START.plusDays(90)));
+    }
+
+    @Test
+    public void peltSplitsAStep() {
+        List<WeightSegment> segments = ChangePointDetector.segment(series(120, day -> day < 60 ? 200 : 190));
+        assertEquals(2, segments.size());
+        assertEquals(START.plusDays(60).toEpochDay(), segments.get(1).getStartDate().toEpochDay(), 1);
+        assertEquals(200, segments.get(0).getMean(), 0.5);
+        assertEquals(190, segments.get(1).getMean(), 0.5);
+    }
+
+    @Test
+    public void peltKeepsALineWhole() {
+        List<WeightSegment> segments = ChangePointDetector.segment(series(120, day -> 200 - 0.3 * day));
+        assertEquals(1, segments.size());
+        assertEquals(-0.3, segments.get(0).getSlopePerDay(), 0.02);
+        assertFalse(ChangePointDetector.isPlateau(segments));
+    }
+
+    @Test
+    public void peltFindsAPlateau() {
+        List<WeightSegment> segments = ChangePointDetector.segment(
+                series(120, day -> 200 - 0.3 * Math.min(day, 60)));
+        assertEquals(2, segments.size());
+        // A bend is harder to place than a step
+        assertEquals(START.plusDays(60).toEpochDay(), segments.get(1).getStartDate().toEpochDay(), 7);
+        assertTrue(ChangePointDetector.isPlateau(segments));
+    }
+
+    @Test
+    public void rebuildReportsTheNewEntryEvenIfBackdated() {
+        FakeRepository repository = new FakeRepository(series(120, day -> day < 60 ? 200 : 190));
+        // Every entry's step when the history is read in order
+        List<Boolean> steps = new ArrayList<>();
+        ChangePointDetector.Cusum reference = new ChangePointDetector.Cusum();
+        for (WeightEntry entry : repository.entries) {
+            steps.add(reference.add(entry.getDate(), entry.getWeight()));
+        }
+        int alarmAt = steps.indexOf(true);
+        assertTrue(alarmAt > 0);
+
+        // Whichever entry was just added, a cold detector reports that entry's step, not the latest one's
+        for (int i : new int[]{alarmAt, alarmAt - 1, repository.entries.size() - 1}) {
+            WeightEntry entry = repository.entries.get(i);
+            assertEquals("entry " + i, steps.get(i), ChangePointDetector.onWeightAdded(repository,
+                    new UserWarmState(), "rebuild@test.com", entry.getDate(), entry.getWeight(), 1));
+        }
+    }
+
+    @Test
+    public void fastPathOnlyForTheSingleNewestWrite() {
+        String email = "fastpath@test.com";
+        List<WeightEntry> history = series(120, day -> day < 100 ? 200 : 190);
+        FakeRepository repository = new FakeRepository(history.subList(0, 90));
+        UserWarmState warmState = new UserWarmState();
+        long version = InvalidationTracker.getInstance().getVersion(email, WTDatabaseHelper.TABLE_LOG);
+
+        // Cold: rebuilt, and stamped with the version read before the history
+        WeightEntry last = history.get(89);
+        ChangePointDetector.onWeightAdded(repository, warmState, email, last.getDate(), last.getWeight(), version);
+        ChangePointDetector.Cusum rebuilt = warmState.getCusum(version);
+        assertTrue(rebuilt != null);
+
+        // Each later entry is the one write since the last update, so the detector is reused
+        for (int i = 90; i < 120; i++) {
+            WeightEntry entry = history.get(i);
+            repository.entries.add(entry);
+            version++;
+            boolean expected = new FakeRepository(history.subList(0, i + 1)).stepOf(i);
+            assertEquals("entry " + i, expected, ChangePointDetector.onWeightAdded(repository, warmState, email,
+                    entry.getDate(), entry.getWeight(), version));
+            assertTrue(warmState.getCusum(version) == rebuilt);
+        }
+
+        // A backdated entry cannot be appended, even as the one new write
+        WeightEntry backdated = new WeightEntry(1000, START.plusDays(50), 170);
+        repository.entries.add(backdated);
+        version++;
+        ChangePointDetector.onWeightAdded(repository, warmState, email, backdated.getDate(),
+                backdated.getWeight(), version);
+        assertFalse(warmState.getCusum(InvalidationTracker.getInstance()
+                .getVersion(email, WTDatabaseHelper.TABLE_LOG)) == rebuilt);
+    }
+
+    @Test
+    public void weekdayEffectsFollowAppendsOnly() {
+        String email = "seasonality@test.com";
+        List<WeightEntry> history = series(60, day -> 200 - 0.3 * day);
+        FakeRepository repository = new FakeRepository(history);
+        UserWarmState warmState = new UserWarmState();
+        long version = 10;
+        LogSeasonality built = new LogSeasonality(history, history);
+        warmState.setSeasonality(built, version);
+
+        // The next write is appended and moves the effects to its version
+        LocalDate next = START.plusDays(60);
+        ChangePointDetector.onWeightAdded(repository, warmState, email, next, 182, version + 1);
+        LogSeasonality appended = warmState.getSeasonality(version + 1);
+        assertTrue(appended != null && appended != built);
+
+        // A write that skipped one in between leaves them to be rebuilt
+        ChangePointDetector.onWeightAdded(repository, warmState, email, next.plusDays(1), 182, version + 3);
+        assertTrue(warmState.getSeasonality(version + 3) == null);
+
+        // So does a backdated entry
+        warmState.setSeasonality(built, version);
+        ChangePointDetector.onWeightAdded(repository, warmState, email, START.plusDays(5), 199, version + 1);
+        assertTrue(warmState.getSeasonality(version + 1) == null);
+    }
+
+    interface Shape {
+        double at(int day);
+    }
+
+    // One entry a day following the shape, with seeded noise of about half a pound
+    private static List<WeightEntry> series(int days, Shape shape) {
+        Random random = new Random(11);
+        List<WeightEntry> entries = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            int weight = (int) Math.round(shape.at(day) + 0.5 * random.nextGaussian());
+            entries.add(new WeightEntry(day + 1, START.plusDays(day), weight));
+        }
+        return entries;
+    }
+
+    private static LocalDate firstAlarm(List<WeightEntry> entries) {
+        ChangePointDetector.Cusum cusum = new ChangePointDetector.Cusum();
+        for (WeightEntry entry : entries) {
+            if (cusum.add(entry.getDate(), entry.getWeight())) {
+                return entry.getDate();
+            }
+        }
+        return LocalDate.MAX;
+    }
+
+    // In-memory history; only reads are used by the detector
+    private static final class FakeRepository implements WeightRepository {
+        final List<WeightEntry> entries;
+
+        FakeRepository(List<WeightEntry> entries) {
+            this.entries = new ArrayList<>(entries);
+        }
+
+        // Step of the entry at index i when the whole history is read in date order
+        boolean stepOf(int i) {
+            List<WeightEntry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparing(WeightEntry::getDate).thenComparingInt(WeightEntry::getId));
+            ChangePointDetector.Cusum cusum = new ChangePointDetector.Cusum();
+            boolean step = false;
+            for (WeightEntry entry : sorted) {
+                boolean result = cusum.add(entry.getDate(), entry.getWeight());
+                if (entry == entries.get(i)) {
+                    step = result;
+                }
+            }
+            return step;
+        }
+
+        @Override
+        public List<WeightEntry> getWeightEntries(String email) {
+            return new ArrayList<>(entries);
+        }
+
+        @Override
+        public boolean addWeight(String date, int weight, String email) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean updateWeightEntry(int id, String date, int weight, String email) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean deleteWeightEntry(int id, String email) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WeightEntry getLatestEntry(String email) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean setGoalWeight(int goalWeight, String email) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer getGoalWeight(String email) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
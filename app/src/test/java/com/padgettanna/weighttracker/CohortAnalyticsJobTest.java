@@ -0,0 +1,113 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+
+import com.padgettanna.weighttracker.model.CohortReport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks CohortAnalyticsJob against hand-built users, and that splitting the work across
+ * threads gives the same report as a single thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CohortAnalyticsJobTest {
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void summarizesEachKindOfUser() {
+        LocalDate today = LocalDate.now();
+        // Losing a pound a day, and already at the goal
+        addUser("losing@test.com", 190);
+        for (int day = 0; day < 20; day++) {
+            wtDB.addWeight(today.minusDays(19 - day).toString(), 200 - day, "losing@test.com");
+        }
+        // Gaining a pound a day, far from the goal
+        addUser("gaining@test.com", 150);
+        for (int day = 0; day < 20; day++) {
+            wtDB.addWeight(today.minusDays(19 - day).toString(), 180 + day, "gaining@test.com");
+        }
+        // Flat, with no goal
+        addUser("flat@test.com", 0);
+        for (int day = 0; day < 20; day++) {
+            wtDB.addWeight(today.minusDays(19 - day).toString(), 170, "flat@test.com");
+        }
+        // One entry: counts toward goals but not toward change or trend
+        addUser("single@test.com", 140);
+        wtDB.addWeight(today.toString(), 160, "single@test.com");
+        // No entries at all
+        addUser("empty@test.com", 140);
+
+        CohortReport report = new CohortAnalyticsJob(wtDB, 2).run();
+
+        assertEquals(5, report.getUserCount());
+        assertEquals(3, report.getActiveUserCount());
+        assertEquals(0.0, report.getAverageWeeklyChange(), 1e-9);
+        assertEquals(3, report.getGoalUserCount());
+        assertEquals(1, report.getGoalReachedCount());
+        assertEquals(1.0 / 3, report.getGoalAttainmentRate(), 1e-9);
+        assertEquals(1, report.getUpwardCount());
+        assertEquals(1, report.getDownwardCount());
+        assertEquals(1, report.getStableCount());
+    }
+
+    @Test
+    public void parallelRunMatchesSingleThread() {
+        // Enough users for several partitions
+        new SyntheticDataGenerator()
+                .users(CohortAnalyticsJob.USERS_PER_TASK * 3 + 5)
+                .entriesPerUser(60)
+                .generate(wtDB);
+
+        CohortReport single = new CohortAnalyticsJob(wtDB, 1).run();
+        CohortReport parallel = new CohortAnalyticsJob(wtDB, 4).run();
+
+        assertEquals(CohortAnalyticsJob.USERS_PER_TASK * 3 + 5, parallel.getUserCount());
+        assertEquals(single.getActiveUserCount(), parallel.getActiveUserCount());
+        assertEquals(single.getAverageWeeklyChange(), parallel.getAverageWeeklyChange(), 1e-9);
+        assertEquals(single.getGoalUserCount(), parallel.getGoalUserCount());
+        assertEquals(single.getGoalReachedCount(), parallel.getGoalReachedCount());
+        assertEquals(single.getUpwardCount(), parallel.getUpwardCount());
+        assertEquals(single.getDownwardCount(), parallel.getDownwardCount());
+        assertEquals(single.getStableCount(), parallel.getStableCount());
+    }
+
+    @Test
+    public void emptyDatabaseGivesEmptyReport() {
+        CohortReport report = new CohortAnalyticsJob(wtDB, 2).run();
+
+        assertEquals(0, report.getUserCount());
+        assertEquals(0.0, report.getGoalAttainmentRate(), 0);
+    }
+
+    // goal 0 means no goal
+    private void addUser(String email, int goal) {
+        wtDB.addUser(email, email, "password");
+        if (goal > 0) {
+            wtDB.setGoalWeight(goal, email);
+        }
+    }
+}
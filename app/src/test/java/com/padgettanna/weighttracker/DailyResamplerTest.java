@@ -0,0 +1,169 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks DailyResampler's same-day averaging, gap filling and NaN cut-off, that reads in
+ * any order agree, and rollingAverage over the resampled days against a direct computation.
+ */
+public class DailyResamplerTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    public void sameDayWeighInsAreAveraged() {
+        DailyResampler daily = DailyResampler.of(entries(0, 180, 0, 182, 0, 187, 1, 170),
+                DailyResampler.Fill.LINEAR, DailyResampler.DEFAULT_MAX_GAP_DAYS);
+        assertEquals(2, daily.size());
+        assertEquals(START, daily.startDate());
+        assertEquals(183, daily.get(0), 1e-9);
+        assertEquals(170, daily.get(1), 0.0);
+    }
+
+    @Test
+    public void gapsAreFilledLinearlyOrWithTheLastObservation() {
+        List<WeightEntry> entries = entries(0, 180, 4, 176, 5, 178);
+
+        DailyResampler linear = DailyResampler.of(entries, DailyResampler.Fill.LINEAR, 14);
+        assertEquals(6, linear.size());
+        double[] expected = {180, 179, 178, 177, 176, 178};
+        for (int day = 0; day < expected.length; day++) {
+            assertEquals("day " + day, expected[day], linear.get(day), 1e-9);
+        }
+
+        DailyResampler carried = DailyResampler.of(entries, DailyResampler.Fill.LAST_OBSERVATION, 14);
+        expected = new double[]{180, 180, 180, 180, 176, 178};
+        for (int day = 0; day < expected.length; day++) {
+            assertEquals("day " + day, expected[day], carried.get(day), 0.0);
+        }
+    }
+
+    @Test
+    public void gapsLongerThanMaxGapDaysAreNaN() {
+        // A gap of exactly maxGapDays is filled, one a day longer is not
+        List<WeightEntry> entries = entries(0, 180, 3, 177, 7, 170);
+        for (DailyResampler.Fill fill : DailyResampler.Fill.values()) {
+            DailyResampler daily = DailyResampler.of(entries, fill, 3);
+            assertEquals(8, daily.size());
+            for (int day = 1; day < 3; day++) {
+                assertTrue(fill + " day " + day, !Double.isNaN(daily.get(day)));
+            }
+            for (int day = 4; day < 7; day++) {
+                assertTrue(fill + " day " + day, Double.isNaN(daily.get(day)));
+            }
+            // Observed days are never cut off
+            assertEquals(177, daily.get(3), 0.0);
+            assertEquals(170, daily.get(7), 0.0);
+        }
+    }
+
+    @Test
+    public void readsInAnyOrderAgreeWithSequentialReads() {
+        List<WeightEntry> entries = irregularLog(new Random(5), 300);
+        DailyResampler sequential = DailyResampler.of(entries, DailyResampler.Fill.LINEAR, 10);
+        double[] expected = new double[sequential.size()];
+        for (int day = 0; day < expected.length; day++) {
+            expected[day] = sequential.get(day);
+        }
+
+        DailyResampler shuffled = DailyResampler.of(entries, DailyResampler.Fill.LINEAR, 10);
+        List<Integer> order = new ArrayList<>();
+        for (int day = 0; day < expected.length; day++) {
+            order.add(day);
+        }
+        Collections.shuffle(order, new Random(7));
+        for (int day : order) {
+            assertEquals("day " + day, expected[day], shuffled.get(day), 0.0);
+        }
+    }
+
+    @Test
+    public void readsOutsideTheSeriesAreRejected() {
+        DailyResampler daily = DailyResampler.of(entries(0, 180, 2, 178),
+                DailyResampler.Fill.LINEAR, DailyResampler.DEFAULT_MAX_GAP_DAYS);
+        for (int day : new int[]{-1, 3}) {
+            try {
+                daily.get(day);
+                fail("Read day " + day + " of " + daily.size());
+            } catch (IndexOutOfBoundsException expected) {
+                // Expected
+            }
+        }
+        assertEquals(0, DailyResampler.of(new ArrayList<>(), DailyResampler.Fill.LINEAR, 14).size());
+    }
+
+    @Test
+    public void rollingAverageMatchesADirectComputation() {
+        List<WeightEntry> entries = irregularLog(new Random(9), 200);
+        DailyResampler daily = DailyResampler.of(entries, DailyResampler.Fill.LINEAR, 10);
+        int window = 7;
+
+        List<Double> all = WeightAnalysisUtil.rollingAverage(daily, window, daily.size());
+        assertEquals(daily.size(), all.size());
+        boolean sawNaN = false;
+        for (int day = 0; day < all.size(); day++) {
+            double expected = windowMean(daily, day, window);
+            sawNaN |= Double.isNaN(expected);
+            assertEquals("day " + day, expected, all.get(day), 1e-9);
+        }
+        // The log's long gaps leave whole windows unfilled
+        assertTrue(sawNaN);
+
+        // Asking for the last few days gives the tail of the same series
+        List<Double> last = WeightAnalysisUtil.rollingAverage(daily, window, 3);
+        assertEquals(all.subList(all.size() - 3, all.size()), last);
+    }
+
+    @Test
+    public void rollingAverageOfAnEmptySeriesIsEmpty() {
+        DailyResampler daily = DailyResampler.of(new ArrayList<>(), DailyResampler.Fill.LINEAR, 14);
+        assertTrue(WeightAnalysisUtil.rollingAverage(daily, 7, 2).isEmpty());
+    }
+
+    // Mean of the filled days in the window ending on day, NaN if there are none
+    private static double windowMean(DailyResampler daily, int day, int window) {
+        double sum = 0;
+        int count = 0;
+        for (int i = Math.max(0, day - window + 1); i <= day; i++) {
+            double value = daily.get(i);
+            if (!Double.isNaN(value)) {
+                sum += value;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    // Pairs of (day after START, weight), in chronological order
+    private static List<WeightEntry> entries(int... dayWeightPairs) {
+        List<WeightEntry> entries = new ArrayList<>();
+        for (int i = 0; i < dayWeightPairs.length; i += 2) {
+            entries.add(new WeightEntry(i / 2 + 1, START.plusDays(dayWeightPairs[i]), dayWeightPairs[i + 1]));
+        }
+        return entries;
+    }
+
+    // Mostly daily, sometimes twice a day, occasionally a gap of weeks
+    private static List<WeightEntry> irregularLog(Random random, int count) {
+        List<WeightEntry> entries = new ArrayList<>();
+        LocalDate date = START;
+        for (int i = 0; i < count; i++) {
+            int step = random.nextInt(20);
+            date = date.plusDays(step < 2 ? 0 : step < 19 ? 1 : 12 + random.nextInt(20));
+            entries.add(new WeightEntry(i + 1, date, 170 + random.nextInt(10)));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,82 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks DashboardSnapshotStore: a saved dashboard loads back field for field, an unreadable
+ * snapshot loads as null, and a null email neither saves nor loads anything.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DashboardSnapshotStoreTest {
+
+    private static final String EMAIL = "snapshot@test.com";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @After
+    public void tearDown() {
+        prefs().edit().clear().commit();
+    }
+
+    @Test
+    public void savedDashboardLoadsBack() {
+        DashboardState saved = new DashboardState("Sam", "150", "171", "170.4",
+                "Downward ↓ (-1.2 lb/wk)", "30d 172.0 ↓ · 90d 175.5 ↓", 1_700_000_000_000L);
+        DashboardSnapshotStore.save(context, EMAIL, saved);
+
+        DashboardState loaded = DashboardSnapshotStore.load(context, EMAIL);
+        assertNotNull(loaded);
+        assertEquals(saved.getUserName(), loaded.getUserName());
+        assertEquals(saved.getGoalWeight(), loaded.getGoalWeight());
+        assertEquals(saved.getCurrentWeight(), loaded.getCurrentWeight());
+        assertEquals(saved.getAverageText(), loaded.getAverageText());
+        assertEquals(saved.getTrendText(), loaded.getTrendText());
+        assertEquals(saved.getWindowsText(), loaded.getWindowsText());
+        assertEquals(saved.getComputedAt(), loaded.getComputedAt());
+
+        // Another user has no snapshot
+        assertNull(DashboardSnapshotStore.load(context, "other@test.com"));
+    }
+
+    @Test
+    public void unreadableSnapshotLoadsAsNull() {
+        prefs().edit().putString(EMAIL, "{not json").commit();
+        assertNull(DashboardSnapshotStore.load(context, EMAIL));
+
+        // Valid JSON missing fields, e.g. from an older version, is just as unusable
+        prefs().edit().putString(EMAIL, "{\"name\":\"Sam\"}").commit();
+        assertNull(DashboardSnapshotStore.load(context, EMAIL));
+    }
+
+    @Test
+    public void nullEmailIsANoOp() {
+        DashboardSnapshotStore.save(context, null,
+                new DashboardState("Sam", "", "", "--", "No data", "", 1L));
+        assertTrue(prefs().getAll().isEmpty());
+        assertNull(DashboardSnapshotStore.load(context, null));
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(DashboardSnapshotStore.PREFS, Context.MODE_PRIVATE);
+    }
+}
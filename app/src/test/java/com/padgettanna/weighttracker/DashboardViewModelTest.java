@@ -0,0 +1,156 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Looper;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks DashboardViewModel.start: the saved snapshot is published right away, and the
+ * background recompute replaces it and becomes the new snapshot. Also checks that a repeated
+ * start (as after a rotation) or a refresh with unchanged table versions runs no
+ * DashboardLoader.load, and that a log or goal write runs exactly one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DashboardViewModelTest {
+
+    private static final String EMAIL = "dashboard@test.com";
+
+    private Application application;
+    private CountingHelper wtDB;
+    private DashboardViewModel viewModel;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        wtDB = new CountingHelper(application);
+        wtDB.addUser("Dana", EMAIL, "pw");
+        assertTrue(wtDB.setGoalWeight(150, EMAIL));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(wtDB.addWeight(LocalDate.now().minusDays(9 - i).toString(), 180 - i, EMAIL));
+        }
+        viewModel = new DashboardViewModel(application, wtDB);
+    }
+
+    @After
+    public void tearDown() {
+        viewModel.onCleared();
+        wtDB.close();
+        application.deleteDatabase("WeightTracker.db");
+        application.getSharedPreferences(DashboardSnapshotStore.PREFS, Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    @Test
+    public void startPublishesTheSnapshotBeforeTheRecompute() throws InterruptedException {
+        DashboardState snapshot = new DashboardState("Saved", "150", "175", "176.0", "Stable →", "", 1L);
+        DashboardSnapshotStore.save(application, EMAIL, snapshot);
+        wtDB.release = new CountDownLatch(1);
+
+        viewModel.start(EMAIL);
+        // The snapshot is on screen while the recompute is still held up reading the database
+        assertTrue(wtDB.loading.await(5, TimeUnit.SECONDS));
+        shadowOf(Looper.getMainLooper()).idle();
+        DashboardState shown = viewModel.getDashboard().getValue();
+        assertNotNull(shown);
+        assertEquals("Saved", shown.getUserName());
+        assertEquals(1L, shown.getComputedAt());
+
+        wtDB.release.countDown();
+        awaitMain(() -> viewModel.getDashboard().getValue().getComputedAt() != 1L);
+        DashboardState computed = viewModel.getDashboard().getValue();
+        assertEquals("Dana", computed.getUserName());
+        assertEquals("171", computed.getCurrentWeight());
+        assertEquals(1, wtDB.loads);
+
+        // The recompute is the snapshot the next cold start shows
+        assertEquals(computed.getComputedAt(), DashboardSnapshotStore.load(application, EMAIL).getComputedAt());
+    }
+
+    @Test
+    public void onlyAWriteRunsAnotherLoad() {
+        viewModel.start(EMAIL);
+        awaitMain(() -> viewModel.getDashboard().getValue() != null);
+        assertEquals(1, wtDB.loads);
+
+        // A rotation re-sends start, and returning to the screen refreshes; nothing changed
+        viewModel.start(EMAIL);
+        viewModel.refreshIfStale();
+        // A new model for the same account starts from the warm state
+        DashboardViewModel reopened = new DashboardViewModel(application, wtDB);
+        reopened.start(EMAIL);
+        assertNotNull(reopened.getDashboard().getValue());
+        reopened.refreshIfStale();
+        reopened.onCleared();
+
+        // The loads run in order on one thread, so a skipped load shows up in the count here
+        assertTrue(wtDB.addWeight(LocalDate.now().toString(), 160, EMAIL));
+        viewModel.refreshIfStale();
+        awaitMain(() -> "160".equals(viewModel.getDashboard().getValue().getCurrentWeight()));
+        assertEquals(2, wtDB.loads);
+
+        assertTrue(wtDB.setGoalWeight(140, EMAIL));
+        viewModel.refreshIfStale();
+        viewModel.refreshIfStale();
+        awaitMain(() -> "140".equals(viewModel.getDashboard().getValue().getGoalWeight()));
+        assertEquals(3, wtDB.loads);
+    }
+
+    // Runs the main looper until the condition holds; the recompute posts back to it
+    private static void awaitMain(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting on the main looper", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    // Counts DashboardLoader.load calls by their first read, and can hold that read up
+    static class CountingHelper extends WTDatabaseHelper {
+        final CountDownLatch loading = new CountDownLatch(1);
+        volatile CountDownLatch release;
+        volatile int loads;
+
+        CountingHelper(Application application) {
+            super(application);
+        }
+
+        @Override
+        Cursor readUserName(String email) {
+            loads++;
+            loading.countDown();
+            CountDownLatch held = release;
+            if (held != null) {
+                try {
+                    held.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.readUserName(email);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.padgettanna.weighttracker;
+
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks InvalidationTracker's per-table versions and that bursts of writes reach
+ * observers as one callback per user once the coalescing window has passed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class InvalidationTrackerTest {
+
+    private final InvalidationTracker tracker = new InvalidationTracker();
+    private final List<String> calls = new ArrayList<>();
+    private final InvalidationTracker.Observer observer =
+            (email, tables) -> calls.add(email + " " + new TreeSet<>(tables));
+
+    @Test
+    public void versionsAreBumpedImmediately() {
+        String email = "versions@test.com";
+        assertEquals(0, tracker.getVersion(email, WTDatabaseHelper.TABLE_LOG));
+
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_LOG);
+        long rendered = tracker.getVersion(email, WTDatabaseHelper.TABLE_LOG);
+        assertEquals(1, rendered);
+        assertFalse(tracker.isStale(email, WTDatabaseHelper.TABLE_LOG, rendered));
+
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_LOG, WTDatabaseHelper.TABLE_GOAL);
+        assertEquals(2, tracker.getVersion(email, WTDatabaseHelper.TABLE_LOG));
+        assertEquals(1, tracker.getVersion(email, WTDatabaseHelper.TABLE_GOAL));
+        assertTrue(tracker.isStale(email, WTDatabaseHelper.TABLE_LOG, rendered));
+        // Other users' tables are untouched
+        assertEquals(0, tracker.getVersion("other@test.com", WTDatabaseHelper.TABLE_LOG));
+    }
+
+    @Test
+    public void burstIsDeliveredAsOneCallbackPerUser() {
+        tracker.addObserver(observer);
+        tracker.notifyWrite("burst-a@test.com", WTDatabaseHelper.TABLE_LOG);
+        tracker.notifyWrite("burst-a@test.com", WTDatabaseHelper.TABLE_LOG);
+        tracker.notifyWrite("burst-a@test.com", WTDatabaseHelper.TABLE_GOAL);
+        tracker.notifyWrite("burst-b@test.com", WTDatabaseHelper.TABLE_LOG);
+
+        // Nothing is delivered inside the window
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(InvalidationTracker.COALESCE_WINDOW_MS - 1));
+        assertTrue(calls.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+        assertEquals(new HashSet<>(Arrays.asList(
+                "burst-a@test.com [goal_table, weight_log]",
+                "burst-b@test.com [weight_log]")), new HashSet<>(calls));
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void writesAfterADispatchAreDeliveredAgain() {
+        tracker.addObserver(observer);
+        tracker.notifyWrite("again@test.com", WTDatabaseHelper.TABLE_LOG);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(InvalidationTracker.COALESCE_WINDOW_MS));
+        assertEquals(1, calls.size());
+
+        // Only the tables changed since the last callback are reported
+        tracker.notifyWrite("again@test.com", WTDatabaseHelper.TABLE_GOAL);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(InvalidationTracker.COALESCE_WINDOW_MS));
+        assertEquals(Arrays.asList("again@test.com [weight_log]", "again@test.com [goal_table]"), calls);
+    }
+
+    @Test
+    public void removedObserverIsNotCalled() {
+        tracker.addObserver(observer);
+        tracker.removeObserver(observer);
+        tracker.notifyWrite("removed@test.com", WTDatabaseHelper.TABLE_LOG);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(InvalidationTracker.COALESCE_WINDOW_MS));
+        assertTrue(calls.isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares MannKendall's O(n log n) statistic, variance and Sen's slope with the
+ * textbook O(n²) definitions, and checks how same-day entries are handled.
+ */
+public class MannKendallTest {
+
+    @Test
+    public void matchesPairwiseReference() {
+        Random random = new Random(7);
+        for (int n : new int[]{2, 3, 10, 57, 200}) {
+            int[] days = new int[n];
+            double[] weights = new double[n];
+            int day = 0;
+            double weight = 180;
+            for (int i = 0; i < n; i++) {
+                day += 1 + random.nextInt(3);
+                // A slow downward drift with whole-pound ties
+                weight = Math.round(weight - 0.2 + random.nextGaussian());
+                days[i] = day;
+                weights[i] = weight;
+            }
+
+            assertEquals("S, n=" + n, naiveStatistic(weights), MannKendall.statistic(weights));
+            assertEquals("variance, n=" + n, naiveVariance(weights), MannKendall.variance(weights), 1e-6);
+            assertEquals("Sen's slope, n=" + n, naiveSenSlope(days, weights), MannKendall.senSlope(days, weights), 1e-6);
+        }
+    }
+
+    @Test
+    public void pValueMatchesNormalTable() {
+        assertEquals(1.0, MannKendall.pValue(0), 1e-6);
+        assertEquals(0.05, MannKendall.pValue(1.959964), 1e-5);
+        assertEquals(0.01, MannKendall.pValue(-2.575829), 1e-5);
+        assertEquals(0.3173105, MannKendall.pValue(1.0), 1e-6);
+    }
+
+    @Test
+    public void zScoreAppliesContinuityCorrection() {
+        assertEquals(0.0, MannKendall.zScore(0, 10), 0.0);
+        assertEquals(4 / Math.sqrt(25), MannKendall.zScore(5, 25), 1e-12);
+        assertEquals(-4 / Math.sqrt(25), MannKendall.zScore(-5, 25), 1e-12);
+    }
+
+    @Test
+    public void sameDaySlopeIsNaN() {
+        assertTrue(Double.isNaN(MannKendall.senSlope(new int[]{3, 3}, new double[]{170, 172})));
+    }
+
+    @Test
+    public void sameDayEntriesAreAveragedBeforeTheTest() {
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        List<WeightEntry> entries = new ArrayList<>();
+        List<WeightEntry> averaged = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int weight = 200 - i;
+            // Morning and evening weigh-ins two pounds either side of the day's mean
+            entries.add(new WeightEntry(2 * i, start.plusDays(i), weight - 2));
+            entries.add(new WeightEntry(2 * i + 1, start.plusDays(i), weight + 2));
+            averaged.add(new WeightEntry(i, start.plusDays(i), weight));
+        }
+
+        WeightAnalysisUtil.TrendTest twice = WeightAnalysisUtil.mannKendall(entries, 0, 0.05);
+        WeightAnalysisUtil.TrendTest once = WeightAnalysisUtil.mannKendall(averaged, 0, 0.05);
+        assertEquals(20, twice.sampleSize);
+        assertEquals(once.s, twice.s);
+        assertEquals(once.pValue, twice.pValue, 0.0);
+        assertEquals(-1.0, twice.slopePerDay, 1e-6);
+        assertEquals(WeightAnalysisUtil.Trend.DOWNWARD, twice.trend);
+    }
+
+    private static long naiveStatistic(double[] x) {
+        long s = 0;
+        for (int i = 0; i < x.length; i++) {
+            for (int j = i + 1; j < x.length; j++) {
+                s += (long) Math.signum(x[j] - x[i]);
+            }
+        }
+        return s;
+    }
+
+    private static double naiveVariance(double[] x) {
+        double n = x.length;
+        double variance = n * (n - 1) * (2 * n + 5);
+        double[] sorted = x.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            double t = j - i;
+            variance -= t * (t - 1) * (2 * t + 5);
+            i = j;
+        }
+        return variance / 18.0;
+    }
+
+    private static double naiveSenSlope(int[] t, double[] x) {
+        List<Double> slopes = new ArrayList<>();
+        for (int i = 0; i < x.length; i++) {
+            for (int j = 0; j < x.length; j++) {
+                if (t[i] < t[j]) {
+                    slopes.add((x[j] - x[i]) / (t[j] - t[i]));
+                }
+            }
+        }
+        slopes.sort(null);
+        int m = slopes.size();
+        return m % 2 == 1 ? slopes.get(m / 2) : (slopes.get(m / 2 - 1) + slopes.get(m / 2)) / 2;
+    }
+}
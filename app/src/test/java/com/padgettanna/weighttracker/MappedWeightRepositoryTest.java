@@ -0,0 +1,115 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the WeightRepository contract against the memory-mapped backend,
+ * plus checks for reopening, compaction and truncated files.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MappedWeightRepositoryTest extends WeightRepositoryContractTest {
+
+    private static final String EMAIL = "mapped@test.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Override
+    protected WeightRepository createRepository() throws Exception {
+        directory = folder.newFolder("logs");
+        return new MappedWeightRepository(directory);
+    }
+
+    @Override
+    protected void destroyRepository() throws Exception {
+        ((MappedWeightRepository) repository).close();
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws Exception {
+        LocalDate today = LocalDate.now();
+        repository.addWeight(today.minusDays(1).toString(), 171, EMAIL);
+        repository.addWeight(today.toString(), 170, EMAIL);
+        int deletedId = repository.getLatestEntry(EMAIL).getId();
+        repository.deleteWeightEntry(deletedId, EMAIL);
+        repository.setGoalWeight(150, EMAIL);
+        ((MappedWeightRepository) repository).close();
+
+        repository = new MappedWeightRepository(directory);
+        List<WeightEntry> entries = repository.getWeightEntries(EMAIL);
+        assertEquals(1, entries.size());
+        assertEquals(171, entries.get(0).getWeight());
+        assertEquals(Integer.valueOf(150), repository.getGoalWeight(EMAIL));
+
+        // Ids are never handed out twice, even after the newest entry was deleted
+        repository.addWeight(today.toString(), 169, EMAIL);
+        assertTrue(repository.getLatestEntry(EMAIL).getId() > deletedId);
+    }
+
+    @Test
+    public void compactionDropsSupersededRecords() throws Exception {
+        MappedWeightRepository mapped = (MappedWeightRepository) repository;
+        LocalDate today = LocalDate.now();
+        int entries = 500;
+        for (int i = 0; i < entries; i++) {
+            mapped.addWeight(today.minusDays(i).toString(), 150, EMAIL);
+        }
+        List<WeightEntry> added = mapped.getWeightEntries(EMAIL);
+
+        // Enough rewrites that garbage outnumbers live records several times over
+        for (int round = 0; round < 10; round++) {
+            for (WeightEntry entry : added) {
+                mapped.updateWeightEntry(entry.getId(), entry.getDate().toString(), 151 + round, EMAIL);
+            }
+        }
+
+        long maxCompactedLength = MappedWeightRepository.HEADER_BYTES
+                + 4L * entries * MappedWeightRepository.RECORD_BYTES;
+        assertTrue(mapped.fileLength(EMAIL) <= maxCompactedLength);
+        List<WeightEntry> after = mapped.getWeightEntries(EMAIL);
+        assertEquals(entries, after.size());
+        for (WeightEntry entry : after) {
+            assertEquals(160, entry.getWeight());
+        }
+
+        mapped.close();
+        repository = new MappedWeightRepository(directory);
+        assertEquals(entries, repository.getWeightEntries(EMAIL).size());
+    }
+
+    @Test
+    public void fileShorterThanItsRecordCountIsRejected() throws Exception {
+        repository.addWeight(LocalDate.now().toString(), 170, EMAIL);
+        ((MappedWeightRepository) repository).close();
+
+        // A count covering records past the end of the file, as a torn write could leave it
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            long records = (file.length() - MappedWeightRepository.HEADER_BYTES) / MappedWeightRepository.RECORD_BYTES;
+            file.seek(8);
+            file.writeInt((int) records + 1);
+        }
+
+        repository = new MappedWeightRepository(directory);
+        assertTrue(repository.getWeightEntries(EMAIL).isEmpty());
+        assertFalse(repository.addWeight(LocalDate.now().toString(), 169, EMAIL));
+    }
+}
@@ -0,0 +1,180 @@
+package com.padgettanna.weighttracker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the sync server, speaking the protocol SyncClient expects.
+ * - Keeps an ordered log of accepted changes; each key keeps the newest changedAt (last writer wins)
+ * - Pull returns other devices' changes after the caller's cursor
+ * - Records every push batch so tests can assert only deltas were transferred
+ */
+class MockSyncServer implements Closeable {
+
+    private static class Stored {
+        final long seq;
+        final String device;
+        final String email;
+        final JSONObject change;
+
+        Stored(long seq, String device, String email, JSONObject change) {
+            this.seq = seq;
+            this.device = device;
+            this.email = email;
+            this.change = change;
+        }
+    }
+
+    private final HttpServer server;
+    private final List<Stored> log = new ArrayList<>();
+    private final Map<String, Long> latestByKey = new HashMap<>();
+    // Number of changes in each push request received
+    final List<Integer> pushedBatchSizes = new ArrayList<>();
+
+    MockSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/push", this::handlePush);
+        server.createContext("/pull", this::handlePull);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // Simulates another device pushing a change
+    synchronized void inject(String device, String email, JSONObject change) throws JSONException {
+        accept(device, email, change);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private synchronized boolean accept(String device, String email, JSONObject change) throws JSONException {
+        String key = email + "|" + change.getString("key");
+        long changedAt = change.getLong("changedAt");
+        Long latest = latestByKey.get(key);
+        if (latest != null && latest >= changedAt) {
+            return false;
+        }
+        latestByKey.put(key, changedAt);
+        log.add(new Stored(log.size() + 1, device, email, change));
+        return true;
+    }
+
+    private void handlePush(HttpExchange exchange) throws IOException {
+        try {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            JSONObject body = new JSONObject(new String(readAll(in), StandardCharsets.UTF_8));
+            JSONArray changes = body.getJSONArray("changes");
+            synchronized (this) {
+                pushedBatchSizes.add(changes.length());
+                for (int i = 0; i < changes.length(); i++) {
+                    accept(body.getString("device"), body.getString("email"), changes.getJSONObject(i));
+                }
+            }
+            respond(exchange, new JSONObject().put("ack", body.getLong("lastSeq")));
+        } catch (JSONException e) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+        }
+    }
+
+    private void handlePull(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String email = query.get("email");
+        String device = query.get("device");
+        long since = Long.parseLong(query.get("since"));
+        int limit = Integer.parseInt(query.get("limit"));
+
+        try {
+            JSONArray changes = new JSONArray();
+            long cursor = since;
+            boolean more = false;
+            synchronized (this) {
+                for (Stored stored : log) {
+                    if (stored.seq <= since || !stored.email.equals(email)) {
+                        continue;
+                    }
+                    if (changes.length() == limit) {
+                        more = true;
+                        break;
+                    }
+                    cursor = stored.seq;
+                    if (!stored.device.equals(device)) {
+                        changes.put(stored.change);
+                    }
+                }
+            }
+            respond(exchange, new JSONObject()
+                    .put("changes", changes)
+                    .put("cursor", cursor)
+                    .put("more", more));
+        } catch (JSONException e) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, JSONObject body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, bytes.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            bytes.writeTo(out);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return result;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,120 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares MultiWindowAnalysis's single pass with a brute-force rescan of every window
+ * after each entry, on an irregular history with gaps and same-day weigh-ins.
+ */
+public class MultiWindowAnalysisTest {
+
+    private static final int[] WINDOWS = {7, 30, 90, 365};
+    private static final double THRESHOLD = 0.5;
+
+    @Test
+    public void matchesBruteForceAfterEveryEntry() {
+        List<LocalDate> dates = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        Random random = new Random(3);
+        LocalDate date = LocalDate.of(2023, 1, 1);
+        double weight = 200;
+        // Long enough for the ring buffer to grow several times
+        for (int i = 0; i < 900; i++) {
+            int step = random.nextInt(10);
+            // Mostly daily, sometimes twice a day, occasionally a gap of weeks
+            date = date.plusDays(step < 1 ? 0 : step < 9 ? 1 : 10 + random.nextInt(30));
+            weight += random.nextGaussian() - 0.05;
+            dates.add(date);
+            values.add(weight);
+        }
+
+        MultiWindowAnalysis analysis = new MultiWindowAnalysis(THRESHOLD, WINDOWS);
+        for (int i = 0; i < dates.size(); i++) {
+            analysis.add(dates.get(i), values.get(i));
+            MultiWindowAnalysis.Result result = analysis.result();
+            assertArrayEquals(WINDOWS, result.windowDays);
+            for (int w = 0; w < WINDOWS.length; w++) {
+                String at = "entry " + i + ", " + WINDOWS[w] + " days";
+                double[] expected = bruteForce(dates.subList(0, i + 1), values.subList(0, i + 1), WINDOWS[w]);
+                assertEquals(at, (int) expected[0], result.counts[w]);
+                assertEquals(at, expected[1], result.averages[w], 1e-6);
+                assertEquals(at, expected[2], result.weeklySlopes[w], 1e-6);
+                double change = expected[2] / 7 * (WINDOWS[w] - 1);
+                // Skip trends that sit on the threshold within rounding
+                if (Math.abs(Math.abs(change) - THRESHOLD) > 1e-6) {
+                    assertEquals(at, change > THRESHOLD ? WeightAnalysisUtil.Trend.UPWARD
+                            : change < -THRESHOLD ? WeightAnalysisUtil.Trend.DOWNWARD
+                            : WeightAnalysisUtil.Trend.STABLE, result.trends[w]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void analyzeUsesTheGivenValues() {
+        List<WeightEntry> entries = new ArrayList<>();
+        double[] values = new double[10];
+        for (int i = 0; i < 10; i++) {
+            entries.add(new WeightEntry(i, LocalDate.of(2024, 3, 1).plusDays(i), 180));
+            values[i] = 180 - i;
+        }
+
+        MultiWindowAnalysis.Result raw = MultiWindowAnalysis.analyze(entries, null, THRESHOLD, 7);
+        assertEquals(7, raw.counts[0]);
+        assertEquals(180, raw.averages[0], 0.0);
+        assertEquals(WeightAnalysisUtil.Trend.STABLE, raw.trends[0]);
+
+        MultiWindowAnalysis.Result adjusted = MultiWindowAnalysis.analyze(entries, values, THRESHOLD, 7);
+        assertEquals(174, adjusted.averages[0], 1e-9);
+        assertEquals(-7, adjusted.weeklySlopes[0], 1e-9);
+        assertEquals(WeightAnalysisUtil.Trend.DOWNWARD, adjusted.trends[0]);
+    }
+
+    @Test
+    public void emptyWindowIsNaN() {
+        MultiWindowAnalysis.Result result = new MultiWindowAnalysis(THRESHOLD, WINDOWS).result();
+        for (int w = 0; w < WINDOWS.length; w++) {
+            assertEquals(0, result.counts[w]);
+            assertTrue(Double.isNaN(result.averages[w]));
+            assertEquals(WeightAnalysisUtil.Trend.STABLE, result.trends[w]);
+        }
+    }
+
+    // {count, average, least-squares slope per week} over the window ending at the last date
+    private static double[] bruteForce(List<LocalDate> dates, List<Double> values, int windowDays) {
+        LocalDate first = dates.get(dates.size() - 1).minusDays(windowDays - 1);
+        List<Double> ts = new ArrayList<>();
+        List<Double> xs = new ArrayList<>();
+        for (int i = 0; i < dates.size(); i++) {
+            if (!dates.get(i).isBefore(first)) {
+                ts.add((double) (dates.get(i).toEpochDay() - first.toEpochDay()));
+                xs.add(values.get(i));
+            }
+        }
+        int n = ts.size();
+        double meanT = 0;
+        double meanX = 0;
+        for (int i = 0; i < n; i++) {
+            meanT += ts.get(i) / n;
+            meanX += xs.get(i) / n;
+        }
+        double tt = 0;
+        double tx = 0;
+        for (int i = 0; i < n; i++) {
+            tt += (ts.get(i) - meanT) * (ts.get(i) - meanT);
+            tx += (ts.get(i) - meanT) * (xs.get(i) - meanX);
+        }
+        return new double[]{n, meanX, tt > 1e-9 ? tx / tt * 7 : 0};
+    }
+}
@@ -0,0 +1,223 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the goal notification outbox: one notification per goal crossing, queued with the
+ * entry or the edit that crosses it, and sent by NotificationDispatcher with retries through
+ * a fake sender.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NotificationDispatcherTest {
+
+    private static final String EMAIL = "outbox@test.com";
+    private static final long BACKOFF_MS = 5;
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+    private NotificationDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        // Let the app's own startup run finish, so only the dispatchers under test send
+        ((WeightTrackerApp) context).getNotificationDispatcher().dispatch().join();
+        wtDB = new WTDatabaseHelper(context);
+        assertTrue(wtDB.setGoalWeight(150, EMAIL));
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void queuesOnePerCrossing() {
+        String today = LocalDate.now().toString();
+        wtDB.addWeight(today, 155, EMAIL);
+        assertEquals(0, outboxSize());
+        wtDB.addWeight(today, 150, EMAIL);
+        wtDB.addWeight(today, 149, EMAIL);
+        assertEquals(1, outboxSize());
+
+        // Back above the goal and down again is a new crossing
+        wtDB.addWeight(today, 152, EMAIL);
+        wtDB.addWeight(today, 148, EMAIL);
+        assertEquals(2, outboxSize());
+
+        // So is reaching a new goal
+        assertTrue(wtDB.setGoalWeight(140, EMAIL));
+        wtDB.addWeight(today, 145, EMAIL);
+        wtDB.addWeight(today, 140, EMAIL);
+        assertEquals(3, outboxSize());
+    }
+
+    @Test
+    public void batchCrossingQueuesOnce() {
+        String today = LocalDate.now().toString();
+        wtDB.addWeights(Arrays.asList(
+                new WTDatabaseHelper.NewWeight(today, 151, EMAIL),
+                new WTDatabaseHelper.NewWeight(today, 149, EMAIL),
+                new WTDatabaseHelper.NewWeight(today, 148, EMAIL)));
+        assertEquals(1, outboxSize());
+    }
+
+    @Test
+    public void editCrossingGoalQueues() {
+        String today = LocalDate.now().toString();
+        wtDB.addWeight(today, 155, EMAIL);
+        assertEquals(0, outboxSize());
+
+        assertTrue(wtDB.updateWeightEntry(wtDB.getLatestEntry(EMAIL).getId(), today, 149, EMAIL));
+        assertEquals(1, outboxSize());
+    }
+
+    @Test
+    public void deletingCrossingResetsGoalState() {
+        String today = LocalDate.now().toString();
+        wtDB.addWeight(today, 155, EMAIL);
+        wtDB.addWeight(today, 149, EMAIL);
+        assertEquals(1, outboxSize());
+
+        // The latest entry is above the goal again, so the next one below it is a new crossing
+        assertTrue(wtDB.deleteWeightEntry(wtDB.getLatestEntry(EMAIL).getId(), EMAIL));
+        assertEquals(1, outboxSize());
+        wtDB.addWeight(today, 148, EMAIL);
+        assertEquals(2, outboxSize());
+    }
+
+    @Test
+    public void sendsAndEmptiesOutbox() {
+        wtDB.addWeight(LocalDate.now().toString(), 149, EMAIL);
+        FakeSender sender = new FakeSender(0, 1);
+        dispatcher = new NotificationDispatcher(wtDB, sender, BACKOFF_MS, 3);
+
+        dispatcher.dispatch().join();
+
+        assertEquals(Collections.singletonList(EMAIL + " " + WTDatabaseHelper.NOTIFICATION_GOAL_REACHED),
+                sender.sent);
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    public void retriesWithBackoffUntilSent() throws Exception {
+        wtDB.addWeight(LocalDate.now().toString(), 149, EMAIL);
+        FakeSender sender = new FakeSender(2, 3);
+        dispatcher = new NotificationDispatcher(wtDB, sender, BACKOFF_MS, 5);
+
+        dispatcher.dispatch();
+        assertTrue(sender.attempted.await(5, TimeUnit.SECONDS));
+        // Runs after the attempt in progress, so its result is saved by then
+        dispatcher.dispatch().join();
+
+        assertEquals(1, sender.sent.size());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    public void dropsAfterMaxAttempts() throws Exception {
+        wtDB.addWeight(LocalDate.now().toString(), 149, EMAIL);
+        FakeSender sender = new FakeSender(Integer.MAX_VALUE, 3);
+        dispatcher = new NotificationDispatcher(wtDB, sender, BACKOFF_MS, 3);
+
+        dispatcher.dispatch();
+        assertTrue(sender.attempted.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch().join();
+
+        assertTrue(sender.sent.isEmpty());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    public void retriesAfterOutboxReadFails() throws Exception {
+        wtDB.addWeight(LocalDate.now().toString(), 149, EMAIL);
+        WTDatabaseHelper failingOnce = new WTDatabaseHelper(context) {
+            private boolean failed;
+
+            @Override
+            Cursor readDueNotifications(long now, int limit) {
+                if (!failed) {
+                    failed = true;
+                    throw new SQLiteException("Simulated outbox failure");
+                }
+                return super.readDueNotifications(now, limit);
+            }
+        };
+        FakeSender sender = new FakeSender(0, 1);
+        dispatcher = new NotificationDispatcher(failingOnce, sender, BACKOFF_MS, 3);
+
+        dispatcher.dispatch().join();
+        assertTrue(sender.attempted.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch().join();
+
+        assertEquals(1, sender.sent.size());
+        assertEquals(0, outboxSize());
+        failingOnce.close();
+    }
+
+    @Test
+    public void backoffDoublesUpToCap() {
+        assertEquals(1000, NotificationDispatcher.backoffMs(1000, 1));
+        assertEquals(2000, NotificationDispatcher.backoffMs(1000, 2));
+        assertEquals(8000, NotificationDispatcher.backoffMs(1000, 4));
+        assertEquals(NotificationDispatcher.MAX_BACKOFF_MS, NotificationDispatcher.backoffMs(1000, 40));
+    }
+
+    private int outboxSize() {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM " + WTDatabaseHelper.TABLE_OUTBOX, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Fails the first failures attempts, then delivers; counts down once per attempt
+    private static final class FakeSender implements NotificationSender {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch attempted;
+        private int failures;
+
+        FakeSender(int failures, int expectedAttempts) {
+            this.failures = failures;
+            this.attempted = new CountDownLatch(expectedAttempts);
+        }
+
+        @Override
+        public boolean send(String email, String kind) throws Exception {
+            attempted.countDown();
+            if (failures > 0) {
+                failures--;
+                throw new Exception("Simulated send failure");
+            }
+            sent.add(email + " " + kind);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Runs the WeightRepository contract against the SQLite backend.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SQLiteWeightRepositoryTest extends WeightRepositoryContractTest {
+
+    private WTDatabaseHelper wtDB;
+
+    @Override
+    protected WeightRepository createRepository() {
+        wtDB = new WTDatabaseHelper(RuntimeEnvironment.getApplication());
+        return new SQLiteWeightRepository(wtDB);
+    }
+
+    @Override
+    protected void destroyRepository() {
+        Context context = RuntimeEnvironment.getApplication();
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+}
@@ -0,0 +1,98 @@
+package com.padgettanna.weighttracker;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares SlidingMedian with a sort-based median and MAD over sliding windows.
+ */
+public class SlidingMedianTest {
+
+    @Test
+    public void emptyWindowIsNaN() {
+        SlidingMedian window = new SlidingMedian();
+        assertTrue(Double.isNaN(window.median()));
+        assertTrue(Double.isNaN(window.mad()));
+    }
+
+    @Test
+    public void oddAndEvenWindows() {
+        SlidingMedian window = new SlidingMedian();
+        for (int weight : new int[]{170, 175, 171}) {
+            window.add(weight);
+        }
+        assertEquals(171.0, window.median(), 0.0);
+        // Deviations 1, 4, 0
+        assertEquals(1.0, window.mad(), 0.0);
+
+        window.add(180);
+        // 170 171 175 180; deviations from 173 are 3, 2, 2, 7
+        assertEquals(173.0, window.median(), 0.0);
+        assertEquals(2.5, window.mad(), 0.0);
+
+        window.remove(170);
+        assertEquals(175.0, window.median(), 0.0);
+        assertEquals(3, window.size());
+    }
+
+    @Test
+    public void matchesNaiveMedianAndMad() {
+        Random random = new Random(42);
+        for (int windowSize : new int[]{1, 2, 5, 7, 30}) {
+            SlidingMedian window = new SlidingMedian();
+            Deque<Integer> naive = new ArrayDeque<>();
+            int weight = 180;
+            for (int i = 0; i < 500; i++) {
+                // A slow walk with the occasional mistyped value
+                weight = Math.max(50, Math.min(999, weight + random.nextInt(5) - 2));
+                int value = random.nextInt(40) == 0 ? weight + 100 : weight;
+                window.add(value);
+                naive.addLast(value);
+                if (naive.size() > windowSize) {
+                    window.remove(naive.removeFirst());
+                }
+
+                int[] values = naive.stream().mapToInt(Integer::intValue).toArray();
+                double median = median(values);
+                assertEquals("median at " + i + ", window " + windowSize, median, window.median(), 0.0);
+                assertEquals("mad at " + i + ", window " + windowSize, mad(values, median), window.mad(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void weightsOutsideTheDomainAreClamped() {
+        SlidingMedian window = new SlidingMedian();
+        window.add(-5);
+        window.add(5000);
+        window.add(1023);
+        assertEquals(1023.0, window.median(), 0.0);
+        window.remove(-5);
+        window.remove(5000);
+        assertEquals(1023.0, window.median(), 0.0);
+        assertEquals(0.0, window.mad(), 0.0);
+    }
+
+    private static double median(int[] values) {
+        double[] sorted = Arrays.stream(values).asDoubleStream().sorted().toArray();
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+    }
+
+    private static double mad(int[] values, double median) {
+        double[] deviations = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+        Arrays.sort(deviations);
+        int n = deviations.length;
+        return n % 2 == 1 ? deviations[n / 2] : (deviations[n / 2 - 1] + deviations[n / 2]) / 2.0;
+    }
+}
@@ -0,0 +1,179 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Exercises SyncClient against MockSyncServer.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncClientTest {
+
+    private static final String EMAIL = "sync@test.com";
+    private static final String DEVICE = "device-a";
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+    private MockSyncServer server;
+    private SyncClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+        server = new MockSyncServer();
+        client = new SyncClient(wtDB, server.baseUrl(), DEVICE);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void pushesOnlyChangesSinceLastSync() throws Exception {
+        LocalDate today = LocalDate.now();
+        wtDB.setGoalWeight(150, EMAIL);
+        wtDB.addWeight(today.minusDays(2).toString(), 170, EMAIL);
+        wtDB.addWeight(today.minusDays(1).toString(), 169, EMAIL);
+        wtDB.addWeight(today.toString(), 168, EMAIL);
+
+        assertEquals(4, client.sync(EMAIL).pushed);
+
+        wtDB.addWeight(today.toString(), 167, EMAIL);
+        assertEquals(1, client.sync(EMAIL).pushed);
+        assertEquals(Integer.valueOf(1), server.pushedBatchSizes.get(server.pushedBatchSizes.size() - 1));
+
+        // Nothing changed, so nothing is sent
+        int requests = server.pushedBatchSizes.size();
+        assertEquals(0, client.sync(EMAIL).pushed);
+        assertEquals(requests, server.pushedBatchSizes.size());
+    }
+
+    @Test
+    public void appliesRemoteChangesWithoutPushingThemBack() throws Exception {
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", "device-b:1")
+                .put("table", WTDatabaseHelper.TABLE_LOG)
+                .put("op", "upsert")
+                .put("date", LocalDate.now().toString())
+                .put("weight", 180)
+                .put("changedAt", System.currentTimeMillis()));
+
+        assertEquals(1, client.sync(EMAIL).pulled);
+        List<WeightEntry> entries = wtDB.getWeightEntries(EMAIL);
+        assertEquals(1, entries.size());
+        assertEquals(180, entries.get(0).getWeight());
+
+        assertEquals(0, client.sync(EMAIL).pushed);
+    }
+
+    @Test
+    public void newerLocalEditWinsOverOlderRemoteEdit() throws Exception {
+        wtDB.addWeight(LocalDate.now().toString(), 175, EMAIL);
+        int id = wtDB.getWeightEntries(EMAIL).get(0).getId();
+
+        // Another device's edit of the same row reached the server first, but is older
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", DEVICE + ":" + id)
+                .put("table", WTDatabaseHelper.TABLE_LOG)
+                .put("op", "upsert")
+                .put("date", LocalDate.now().toString())
+                .put("weight", 190)
+                .put("changedAt", 1L));
+
+        SyncClient.Result result = client.sync(EMAIL);
+        assertEquals(0, result.pulled);
+        assertEquals(1, result.pushed);
+        assertEquals(175, wtDB.getWeightEntries(EMAIL).get(0).getWeight());
+    }
+
+    @Test
+    public void rejectedRemoteChangeKeepsTheCursor() throws Exception {
+        long cursor = wtDB.readSyncState(EMAIL)[1];
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", "device-b:1")
+                .put("table", WTDatabaseHelper.TABLE_LOG)
+                .put("op", "upsert")
+                .put("date", LocalDate.now().minusDays(1).toString())
+                .put("weight", 180)
+                .put("changedAt", System.currentTimeMillis()));
+        // Out of range, so the batch is rolled back, including the valid change before it
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", "device-b:2")
+                .put("table", WTDatabaseHelper.TABLE_LOG)
+                .put("op", "upsert")
+                .put("date", LocalDate.now().toString())
+                .put("weight", 20)
+                .put("changedAt", System.currentTimeMillis()));
+
+        try {
+            client.sync(EMAIL);
+            fail("A rejected change was skipped");
+        } catch (IOException expected) {
+            // Retried on the next sync
+        }
+        assertEquals(cursor, wtDB.readSyncState(EMAIL)[1]);
+        assertTrue(wtDB.getWeightEntries(EMAIL).isEmpty());
+    }
+
+    @Test
+    public void pushPrunesTheChangeLogButKeepsChangeTimes() throws Exception {
+        wtDB.setGoalWeight(150, EMAIL);
+        wtDB.addWeight(LocalDate.now().toString(), 175, EMAIL);
+        int id = wtDB.getWeightEntries(EMAIL).get(0).getId();
+
+        assertEquals(2, client.sync(EMAIL).pushed);
+        Cursor changes = wtDB.readChangesSince(EMAIL, 0, Integer.MAX_VALUE);
+        try {
+            assertEquals(0, changes.getCount());
+        } finally {
+            changes.close();
+        }
+
+        // Older than the pruned local changes, so both still lose
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", DEVICE + ":" + id)
+                .put("table", WTDatabaseHelper.TABLE_LOG)
+                .put("op", "upsert")
+                .put("date", LocalDate.now().toString())
+                .put("weight", 190)
+                .put("changedAt", 1L));
+        server.inject("device-b", EMAIL, new JSONObject()
+                .put("key", "goal")
+                .put("table", WTDatabaseHelper.TABLE_GOAL)
+                .put("op", "upsert")
+                .put("goal", 140)
+                .put("changedAt", 1L));
+
+        assertEquals(0, client.sync(EMAIL).pulled);
+        assertEquals(175, wtDB.getWeightEntries(EMAIL).get(0).getWeight());
+        Cursor goal = wtDB.readGoalWeight(EMAIL);
+        try {
+            assertTrue(goal.moveToFirst());
+            assertEquals(150, goal.getInt(0));
+        } finally {
+            goal.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.padgettanna.weighttracker;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test-side generator that fills WeightTracker.db with realistic weight histories.
+ * - Writes through WTDatabaseHelper so validation and schema match production
+ * - Each user gets a slow drift plus daily noise, random gaps and extra same-day weigh-ins
+ * - Histories end today and run backwards, so no entry is future-dated
+ * Inserts for one user are wrapped in a single transaction to keep large fills fast.
+ */
+class SyntheticDataGenerator {
+
+    private int users = 5;
+    private int entriesPerUser = 365;
+    private double noise = 1.5;              // standard deviation of daily noise (lb)
+    private double driftPerDay = -0.05;      // mean change per day (lb)
+    private double gapProbability = 0.05;    // chance that a gap starts on a given day
+    private int maxGapDays = 14;
+    private double multiPerDayProbability = 0.1;
+    private long seed = 42L;
+
+    SyntheticDataGenerator users(int users) {
+        this.users = users;
+        return this;
+    }
+
+    SyntheticDataGenerator entriesPerUser(int entriesPerUser) {
+        this.entriesPerUser = entriesPerUser;
+        return this;
+    }
+
+    SyntheticDataGenerator noise(double noise) {
+        this.noise = noise;
+        return this;
+    }
+
+    SyntheticDataGenerator driftPerDay(double driftPerDay) {
+        this.driftPerDay = driftPerDay;
+        return this;
+    }
+
+    SyntheticDataGenerator gaps(double gapProbability, int maxGapDays) {
+        this.gapProbability = gapProbability;
+        this.maxGapDays = maxGapDays;
+        return this;
+    }
+
+    SyntheticDataGenerator multiPerDayProbability(double multiPerDayProbability) {
+        this.multiPerDayProbability = multiPerDayProbability;
+        return this;
+    }
+
+    SyntheticDataGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // Email used for the user at the given index
+    static String emailFor(int userIndex) {
+        return "load" + userIndex + "@test.com";
+    }
+
+    /**
+     * Creates the configured users with goal weights and fills their weight logs.
+     *
+     * @return the emails of the generated users
+     */
+    List<String> generate(WTDatabaseHelper wtDB) {
+        Random random = new Random(seed);
+        List<String> emails = new ArrayList<>();
+
+        for (int u = 0; u < users; u++) {
+            String email = emailFor(u);
+            emails.add(email);
+
+            wtDB.addUser("Load" + u, email, "password");
+            double startWeight = 140 + random.nextInt(120);
+            wtDB.setGoalWeight((int) Math.round(startWeight - 20), email);
+
+            SQLiteDatabase db = wtDB.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                fillUser(wtDB, email, startWeight, random);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return emails;
+    }
+
+    // Walks backwards from today so every generated date passes isValidDate
+    private void fillUser(WTDatabaseHelper wtDB, String email, double startWeight, Random random) {
+        // Start from the most recent weight; drift is undone while stepping back in time
+        LocalDate date = LocalDate.now();
+        double weight = startWeight + driftPerDay * entriesPerUser;
+        int written = 0;
+
+        while (written < entriesPerUser) {
+            if (random.nextDouble() < gapProbability) {
+                int gap = 1 + random.nextInt(Math.max(1, maxGapDays));
+                date = date.minusDays(gap);
+                weight -= driftPerDay * gap;
+                continue;
+            }
+
+            int perDay = random.nextDouble() < multiPerDayProbability ? 2 + random.nextInt(2) : 1;
+            for (int i = 0; i < perDay && written < entriesPerUser; i++) {
+                int value = (int) Math.round(weight + random.nextGaussian() * noise);
+                value = Math.max(50, Math.min(999, value));
+                wtDB.addWeight(date.toString(), value, email);
+                written++;
+            }
+
+            date = date.minusDays(1);
+            weight -= driftPerDay;
+        }
+    }
+}
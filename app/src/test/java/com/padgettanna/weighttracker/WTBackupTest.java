@@ -0,0 +1,182 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.SyncChange;
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round-trips a multi-year history through WTBackupWriter and WTBackupRestorer, and checks
+ * that a corrupt backup leaves the database untouched and that a restore is synced, also
+ * in one-entry-per-day mode.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTBackupTest {
+
+    private static final String EMAIL = "backup@test.com";
+    // Three years of daily weigh-ins
+    private static final int DAYS = 3 * 365;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+    private File backup;
+
+    @Before
+    public void setUp() throws IOException {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+        wtDB.addUser("Backup", EMAIL, "secret");
+        assertTrue(wtDB.setGoalWeight(150, EMAIL));
+        LocalDate first = LocalDate.now().minusDays(DAYS - 1);
+        List<WTDatabaseHelper.NewWeight> weights = new ArrayList<>();
+        for (int i = 0; i < DAYS; i++) {
+            weights.add(new WTDatabaseHelper.NewWeight(first.plusDays(i).toString(), 170 + (i * 7) % 5, EMAIL));
+        }
+        wtDB.addWeights(weights);
+        backup = new File(folder.getRoot(), WTBackupFormat.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void restoresEveryEntryAndTheGoal() throws IOException {
+        List<String> before = entries();
+        new WTBackupWriter(wtDB).writeReplacing(backup);
+
+        // Changes made after the backup are replaced by it
+        wtDB.deleteWeightEntry(wtDB.getLatestEntry(EMAIL).getId(), EMAIL);
+        assertTrue(wtDB.setGoalWeight(140, EMAIL));
+
+        assertEquals(DAYS, new WTBackupRestorer(wtDB).restore(backup));
+        assertEquals(before, entries());
+        assertEquals(150, queryInt("SELECT goal_weight FROM " + WTDatabaseHelper.TABLE_GOAL + " WHERE email = ?"));
+    }
+
+    @Test
+    public void multiYearHistoryIsCompactAndRestoresQuickly() throws IOException {
+        long size = new WTBackupWriter(wtDB).writeReplacing(backup);
+        assertEquals(size, backup.length());
+        // About two bytes per entry: one for the day delta, one for the weight delta
+        assertTrue("backup is " + size + " bytes", size < 4096);
+
+        long start = System.nanoTime();
+        new WTBackupRestorer(wtDB).restore(backup);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("restore took " + elapsedMs + " ms", elapsedMs < 1000);
+    }
+
+    @Test
+    public void checksumMismatchLeavesDatabaseUntouched() throws IOException {
+        new WTBackupWriter(wtDB).writeReplacing(backup);
+        wtDB.addWeight(LocalDate.now().toString(), 160, EMAIL);
+        List<String> before = entries();
+
+        try (RandomAccessFile file = new RandomAccessFile(backup, "rw")) {
+            long position = WTBackupFormat.HEADER_SIZE + 40;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+        try {
+            new WTBackupRestorer(wtDB).restore(backup);
+            fail("A corrupt backup was restored");
+        } catch (IOException expected) {
+            // Rolled back
+        }
+        assertEquals(before, entries());
+    }
+
+    @Test
+    public void restoreIsWrittenToTheChangeLog() throws IOException {
+        new WTBackupWriter(wtDB).writeReplacing(backup);
+        long lastSeq = queryInt("SELECT MAX(seq) FROM change_log WHERE email = ?");
+
+        new WTBackupRestorer(wtDB).restore(backup);
+
+        // A delete for every replaced entry, an upsert for every restored one, and the goal
+        Cursor changes = wtDB.readChangesSince(EMAIL, lastSeq, Integer.MAX_VALUE);
+        try {
+            assertEquals(DAYS + DAYS + 1, changes.getCount());
+        } finally {
+            changes.close();
+        }
+    }
+
+    @Test
+    public void sameDayEntriesRestoreInPlaceInOneEntryPerDayMode() throws IOException {
+        // A backup taken before the mode was on, with three weigh-ins today
+        String today = LocalDate.now().toString();
+        assertTrue(wtDB.addWeight(today, 165, EMAIL));
+        assertTrue(wtDB.addWeight(today, 166, EMAIL));
+        new WTBackupWriter(wtDB).writeReplacing(backup);
+        wtDB.setOneEntryPerDay(true);
+        long lastSeq = queryInt("SELECT MAX(seq) FROM change_log WHERE email = ?");
+
+        assertEquals(DAYS + 2, new WTBackupRestorer(wtDB).restore(backup));
+
+        // The latest of the day's entries is the one kept
+        assertEquals(DAYS, wtDB.getWeightEntries(EMAIL).size());
+        assertEquals(166, wtDB.getLatestEntry(EMAIL).getWeight());
+        // Every restored entry's change points at an entry that exists, so none is synced as a delete
+        Cursor orphans = wtDB.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM change_log"
+                + " WHERE email = ? AND seq > ? AND table_name = ? AND op = ? AND row_id NOT IN"
+                + " (SELECT _id FROM " + WTDatabaseHelper.TABLE_LOG + ")",
+                new String[]{EMAIL, String.valueOf(lastSeq), WTDatabaseHelper.TABLE_LOG, SyncChange.OP_UPSERT});
+        try {
+            orphans.moveToFirst();
+            assertEquals(0, orphans.getInt(0));
+        } finally {
+            orphans.close();
+        }
+    }
+
+    // Every entry as "date weight", oldest first
+    private List<String> entries() {
+        List<String> result = new ArrayList<>();
+        for (WeightEntry entry : wtDB.getWeightEntries(EMAIL)) {
+            result.add(entry.getDate() + " " + entry.getWeight());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private int queryInt(String sql) {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery(sql, new String[]{EMAIL});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.SyncChange;
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that deleteWeightEntries and updateWeightEntries are all-or-nothing: one bad id or
+ * edit rolls back the whole batch, and a committed batch logs every entry and re-evaluates
+ * the goal state.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTBatchEditTest {
+
+    private static final String EMAIL = "batch@test.com";
+    private static final int GOAL = 150;
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+    // Oldest first: 170, 168, 166, 164, 162 over the last five days
+    private List<WeightEntry> entries;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+        wtDB.addUser("Batch", EMAIL, "pw");
+        assertTrue(wtDB.setGoalWeight(GOAL, EMAIL));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(wtDB.addWeight(LocalDate.now().minusDays(4 - i).toString(), 170 - 2 * i, EMAIL));
+        }
+        entries = sortedEntries();
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void missingIdRollsBackTheDelete() {
+        long changes = changeCount();
+        assertFalse(wtDB.deleteWeightEntries(Arrays.asList(id(0), 9999, id(2)), EMAIL));
+        assertUnchanged(changes);
+    }
+
+    @Test
+    public void shiftIntoTheFutureRollsBackTheEdit() {
+        long changes = changeCount();
+        // The oldest entry could move a day, but today's cannot
+        assertFalse(wtDB.updateWeightEntries(Arrays.asList(id(0), id(4)), 1, 0, EMAIL));
+        assertUnchanged(changes);
+    }
+
+    @Test
+    public void weightOutOfRangeRollsBackTheEdit() {
+        long changes = changeCount();
+        // 170 - 115 is still valid, 162 - 115 is not
+        assertFalse(wtDB.updateWeightEntries(Arrays.asList(id(0), id(4)), 0, -115, EMAIL));
+        // 170 + 830 is over the maximum
+        assertFalse(wtDB.updateWeightEntries(Arrays.asList(id(4), id(0)), 0, 830, EMAIL));
+        assertUnchanged(changes);
+    }
+
+    @Test
+    public void dateCollisionRollsBackTheEditInOneEntryPerDayMode() {
+        wtDB.setOneEntryPerDay(true);
+        long changes = changeCount();
+        // The oldest entry moves onto the next one's date, which is not part of the batch
+        assertFalse(wtDB.updateWeightEntries(Arrays.asList(id(0), id(3)), 1, 0, EMAIL));
+        assertUnchanged(changes);
+        wtDB.setOneEntryPerDay(false);
+    }
+
+    @Test
+    public void committedBatchLogsEveryEntryAndReevaluatesTheGoal() {
+        long changes = changeCount();
+        assertFalse(goalReached());
+
+        // The latest entry drops to 147, under the goal
+        assertTrue(wtDB.updateWeightEntries(Arrays.asList(id(3), id(4)), 0, -15, EMAIL));
+        assertChanges(changes, SyncChange.OP_UPSERT, id(3), id(4));
+        assertTrue(goalReached());
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM " + WTDatabaseHelper.TABLE_OUTBOX
+                + " WHERE email = ? AND kind = '" + WTDatabaseHelper.NOTIFICATION_GOAL_REACHED + "'"));
+
+        // Deleting both leaves 166 as the latest, so the goal is no longer reached
+        changes = changeCount();
+        assertTrue(wtDB.deleteWeightEntries(Arrays.asList(id(4), id(3)), EMAIL));
+        assertChanges(changes, SyncChange.OP_DELETE, id(3), id(4));
+        assertEquals(3, wtDB.getWeightEntries(EMAIL).size());
+        assertFalse(goalReached());
+    }
+
+    private int id(int index) {
+        return entries.get(index).getId();
+    }
+
+    // The log and change log are exactly as they were before the rejected batch
+    private void assertUnchanged(long changesBefore) {
+        List<WeightEntry> now = sortedEntries();
+        assertEquals(entries.size(), now.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getId(), now.get(i).getId());
+            assertEquals(entries.get(i).getDate(), now.get(i).getDate());
+            assertEquals(entries.get(i).getWeight(), now.get(i).getWeight());
+        }
+        assertEquals(changesBefore, changeCount());
+    }
+
+    // One change log row per id since the given count, all with the given op
+    private void assertChanges(long changesBefore, String op, int... ids) {
+        List<Integer> logged = new ArrayList<>();
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery("SELECT op, row_id FROM change_log"
+                + " WHERE email = ? ORDER BY seq LIMIT -1 OFFSET " + changesBefore, new String[]{EMAIL});
+        try {
+            while (cursor.moveToNext()) {
+                assertEquals(op, cursor.getString(0));
+                logged.add(cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(logged);
+        List<Integer> expected = new ArrayList<>();
+        for (int id : ids) {
+            expected.add(id);
+        }
+        Collections.sort(expected);
+        assertEquals(expected, logged);
+    }
+
+    private boolean goalReached() {
+        return queryLong("SELECT IFNULL(MAX(reached), 0) FROM goal_state WHERE email = ?") == 1;
+    }
+
+    private long changeCount() {
+        return queryLong("SELECT COUNT(*) FROM change_log WHERE email = ?");
+    }
+
+    private long queryLong(String sql) {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery(sql, new String[]{EMAIL});
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<WeightEntry> sortedEntries() {
+        List<WeightEntry> sorted = new ArrayList<>(wtDB.getWeightEntries(EMAIL));
+        sorted.sort(Comparator.comparing(WeightEntry::getDate));
+        return sorted;
+    }
+}
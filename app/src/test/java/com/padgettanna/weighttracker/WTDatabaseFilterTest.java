@@ -0,0 +1,131 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightLogFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks queryWeightEntries: every bound is inclusive, unset bounds match everything,
+ * a month narrows the date range, and matches come back by date DESC, then id DESC.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTDatabaseFilterTest {
+
+    private static final String EMAIL = "filter@test.com";
+    private static final String OTHER_EMAIL = "other@test.com";
+    private static final LocalDate START = LocalDate.of(2024, 1, 29);
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+        wtDB.addUser("Filter", EMAIL, "pw");
+        wtDB.addUser("Other", OTHER_EMAIL, "pw");
+        // Jan 29 .. Feb 2 at 160, 162 .. 168, a second weigh-in on Jan 31, and Mar 1
+        for (int day = 0; day < 5; day++) {
+            add(START.plusDays(day), 160 + 2 * day);
+        }
+        add(START.plusDays(2), 164);
+        add(LocalDate.of(2024, 3, 1), 170);
+        // Another user's entries never match
+        add(OTHER_EMAIL, START.plusDays(2), 164);
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void boundsAreInclusive() {
+        List<WeightEntry> matches = query(new WeightLogFilter(
+                START.plusDays(1), START.plusDays(3), 162, 166));
+        assertEquals(4, matches.size());
+        assertEquals(START.plusDays(3), matches.get(0).getDate());
+        assertEquals(166, matches.get(0).getWeight());
+        assertEquals(START.plusDays(1), matches.get(3).getDate());
+        assertEquals(162, matches.get(3).getWeight());
+
+        // One past each bound drops the entry on it
+        assertEquals(2, query(new WeightLogFilter(START.plusDays(2), START.plusDays(2), null, null)).size());
+        assertEquals(0, query(new WeightLogFilter(null, null, 163, 163)).size());
+        assertEquals(1, query(new WeightLogFilter(null, null, 169, null)).size());
+        assertEquals(1, query(new WeightLogFilter(null, START, null, null)).size());
+    }
+
+    @Test
+    public void unsetBoundsMatchTheWholeLog() {
+        assertEquals(7, query(new WeightLogFilter(null, null, null, null)).size());
+        assertEquals(7, query(new WeightLogFilter(null, null, 0, null)).size());
+    }
+
+    @Test
+    public void sameDayMatchesAreNewestIdFirst() {
+        List<WeightEntry> matches = query(new WeightLogFilter(null, null, null, null));
+        for (int i = 1; i < matches.size(); i++) {
+            WeightEntry newer = matches.get(i - 1);
+            WeightEntry older = matches.get(i);
+            int byDate = newer.getDate().compareTo(older.getDate());
+            assertTrue("entry " + i, byDate > 0 || byDate == 0 && newer.getId() > older.getId());
+        }
+        assertEquals(matches.get(3).getDate(), matches.get(4).getDate());
+    }
+
+    @Test
+    public void monthNarrowsTheDateRange() {
+        YearMonth february = YearMonth.of(2024, 2);
+
+        WeightLogFilter whole = new WeightLogFilter(null, null, 150, null).inMonth(february);
+        assertEquals(LocalDate.of(2024, 2, 1), whole.getFromDate());
+        assertEquals(LocalDate.of(2024, 2, 29), whole.getToDate());
+        assertEquals(Integer.valueOf(150), whole.getMinWeight());
+        List<WeightEntry> matches = query(whole);
+        assertEquals(2, matches.size());
+        assertEquals(LocalDate.of(2024, 2, 2), matches.get(0).getDate());
+        assertEquals(LocalDate.of(2024, 2, 1), matches.get(1).getDate());
+
+        // A range inside the month is kept, one reaching outside it is cut to the month
+        WeightLogFilter inside = new WeightLogFilter(
+                LocalDate.of(2024, 2, 2), LocalDate.of(2024, 3, 5), null, null).inMonth(february);
+        assertEquals(LocalDate.of(2024, 2, 2), inside.getFromDate());
+        assertEquals(LocalDate.of(2024, 2, 29), inside.getToDate());
+        assertEquals(1, query(inside).size());
+
+        // A range outside the month matches nothing
+        WeightLogFilter outside = new WeightLogFilter(
+                LocalDate.of(2024, 3, 1), null, null, null).inMonth(february);
+        assertEquals(0, query(outside).size());
+    }
+
+    private List<WeightEntry> query(WeightLogFilter filter) {
+        return new ArrayList<>(wtDB.queryWeightEntries(EMAIL, filter, null));
+    }
+
+    private void add(LocalDate date, int weight) {
+        add(EMAIL, date, weight);
+    }
+
+    private void add(String email, LocalDate date, int weight) {
+        assertTrue(wtDB.addWeight(date.toString(), weight, email));
+    }
+}
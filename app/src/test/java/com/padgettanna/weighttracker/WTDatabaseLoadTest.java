@@ -0,0 +1,263 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Looper;
+
+import com.padgettanna.weighttracker.model.WeightLogFilter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Load suite for WTDatabaseHelper.
+ * - Fills the database with synthetic multi-user histories at several sizes
+ * - Measures p50/p95/p99 latency of the hot read/write paths and the dashboard refresh
+ * - Compares a burst of direct addWeight calls with the same burst through WeightWriteQueue
+ * - Times CohortAnalyticsJob over many users at increasing thread counts
+ * - Times the log filter at 50k rows: the indexed query, and the main-thread swap of its rows
+ * - Writes plain-text reports to build/reports/wt-load
+ * Opt-in because the 100k run takes a while: ./gradlew testDebugUnitTest -Pwt.load=true
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTDatabaseLoadTest {
+
+    private static final int USERS = 5;
+    private static final int ITERATIONS = 30;
+    // Entries per burst when comparing direct and queued writes
+    private static final int BURST = 100;
+    // Cohort scaling run: many short histories, as on a shared device
+    private static final int COHORT_USERS = 400;
+    private static final int COHORT_ENTRIES_PER_USER = 250;
+    // One long history for the log filter
+    private static final int FILTER_ROWS = 50_000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Load suite disabled; run with -Pwt.load=true", Boolean.getBoolean("wt.load"));
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.deleteDatabase("WeightTracker.db");
+        }
+    }
+
+    @Test
+    public void measureLatencyAtEachSize() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-10s %-20s %10s %10s %10s",
+                "rows", "operation", "p50 ms", "p95 ms", "p99 ms"));
+
+        for (int rows : parseSizes(System.getProperty("wt.load.sizes", "1000,10000,100000"))) {
+            context.deleteDatabase("WeightTracker.db");
+            WTDatabaseHelper wtDB = new WTDatabaseHelper(context);
+
+            List<String> emails = new SyntheticDataGenerator()
+                    .users(USERS)
+                    .entriesPerUser(rows / USERS)
+                    .generate(wtDB);
+            String email = emails.get(0);
+
+            lines.add(row(rows, "getWeightEntries", measure(() -> wtDB.getWeightEntries(email))));
+            lines.add(row(rows, "readCurrentWeight", measure(() -> {
+                Cursor cursor = wtDB.readCurrentWeight(email);
+                cursor.moveToFirst();
+                cursor.close();
+            })));
+            lines.add(row(rows, "addWeight", measure(() ->
+                    wtDB.addWeight(LocalDate.now().toString(), 150, email))));
+            lines.add(row(rows, "dashboardRefresh", measure(() -> refreshDashboard(wtDB, email))));
+            lines.add(row(rows, "addWeight x" + BURST, measure(() -> {
+                for (int i = 0; i < BURST; i++) {
+                    wtDB.addWeight(LocalDate.now().toString(), 150, email);
+                }
+            })));
+            WeightWriteQueue queue = new WeightWriteQueue(wtDB);
+            lines.add(row(rows, "queued x" + BURST, measure(() -> {
+                List<CompletableFuture<Boolean>> results = new ArrayList<>(BURST);
+                for (int i = 0; i < BURST; i++) {
+                    results.add(queue.addWeight(LocalDate.now().toString(), 150, email));
+                }
+                queue.flush();
+                CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+            })));
+            queue.shutdown();
+
+            assertFalse(wtDB.getWeightEntries(email).isEmpty());
+            wtDB.close();
+        }
+
+        writeReport("load-report.txt", lines);
+    }
+
+    @Test
+    public void measureCohortScaling() throws IOException {
+        context.deleteDatabase("WeightTracker.db");
+        WTDatabaseHelper wtDB = new WTDatabaseHelper(context);
+        new SyntheticDataGenerator()
+                .users(COHORT_USERS)
+                .entriesPerUser(COHORT_ENTRIES_PER_USER)
+                .generate(wtDB);
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-10s %10s %10s %10s %10s",
+                "threads", "p50 ms", "p95 ms", "p99 ms", "speedup"));
+        double baseline = 0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            CohortAnalyticsJob job = new CohortAnalyticsJob(wtDB, threads);
+            double[] timings = measure(job::run);
+            double p50 = percentile(timings, 50);
+            if (threads == 1) {
+                baseline = p50;
+            }
+            lines.add(String.format(Locale.US, "%-10d %10.2f %10.2f %10.2f %10.2f",
+                    threads, p50, percentile(timings, 95), percentile(timings, 99), baseline / p50));
+        }
+        wtDB.close();
+
+        writeReport("cohort-report.txt", lines);
+    }
+
+    @Test
+    public void measureFilterAtFiftyThousandRows() throws IOException, InterruptedException {
+        context.deleteDatabase("WeightTracker.db");
+        WTDatabaseHelper wtDB = new WTDatabaseHelper(context);
+        String email = new SyntheticDataGenerator()
+                .users(1)
+                .entriesPerUser(FILTER_ROWS)
+                .generate(wtDB)
+                .get(0);
+        // A narrow date range, and a weight band across the whole history
+        WeightLogFilter lastYear = new WeightLogFilter(LocalDate.now().minusYears(1), null, null, null);
+        WeightLogFilter band = new WeightLogFilter(null, null, 150, 190);
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-10s %-20s %10s %10s %10s",
+                "rows", "operation", "p50 ms", "p95 ms", "p99 ms"));
+        lines.add(row(FILTER_ROWS, "query lastYear", measure(() ->
+                wtDB.queryWeightEntries(email, lastYear, null))));
+        lines.add(row(FILTER_ROWS, "query band", measure(() ->
+                wtDB.queryWeightEntries(email, band, null))));
+
+        WeightLogViewModel viewModel = new WeightLogViewModel((Application) context, wtDB);
+        int[] shown = new int[1];
+        viewModel.getRows().observeForever(rows -> shown[0] = rows.size());
+        viewModel.start(email);
+        ShadowLooper mainLooper = shadowOf(Looper.getMainLooper());
+        while (viewModel.getRows().getValue() == null) {
+            mainLooper.idle();
+            Thread.sleep(1);
+        }
+        lines.add(row(FILTER_ROWS, "swap lastYear/band", measureSwaps(viewModel, lastYear, band)));
+        lines.add(String.format(Locale.US, "matches: lastYear %d, band %d",
+                wtDB.queryWeightEntries(email, lastYear, null).size(),
+                wtDB.queryWeightEntries(email, band, null).size()));
+        assertFalse(shown[0] == 0);
+        viewModel.onCleared();
+        wtDB.close();
+
+        writeReport("filter-report.txt", lines);
+    }
+
+    // The same queries and analysis MainActivity revalidates its dashboard with, starting cold
+    private static void refreshDashboard(WTDatabaseHelper wtDB, String email) {
+        DashboardLoader.load(wtDB, email, new UserWarmState(), 0);
+    }
+
+    // Runs the operation ITERATIONS times after one warm-up and returns sorted timings in ms
+    private static double[] measure(Runnable operation) {
+        operation.run();
+        double[] timings = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            timings[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        Arrays.sort(timings);
+        return timings;
+    }
+
+    // Alternates the two filters and times only the main-thread task that publishes the rows,
+    // after the query thread has posted it
+    private static double[] measureSwaps(WeightLogViewModel viewModel, WeightLogFilter first,
+                                         WeightLogFilter second) throws InterruptedException {
+        ShadowLooper mainLooper = shadowOf(Looper.getMainLooper());
+        double[] timings = new double[ITERATIONS];
+        // The first pass is a warm-up
+        for (int i = -1; i < ITERATIONS; i++) {
+            viewModel.setFilter(i % 2 == 0 ? first : second);
+            while (mainLooper.isIdle()) {
+                Thread.sleep(1);
+            }
+            long start = System.nanoTime();
+            mainLooper.idle();
+            if (i >= 0) {
+                timings[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+        }
+        Arrays.sort(timings);
+        return timings;
+    }
+
+    // Nearest-rank percentile over sorted timings
+    private static double percentile(double[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static String row(int rows, String operation, double[] timings) {
+        return String.format(Locale.US, "%-10d %-20s %10.2f %10.2f %10.2f",
+                rows, operation,
+                percentile(timings, 50), percentile(timings, 95), percentile(timings, 99));
+    }
+
+    private static List<Integer> parseSizes(String sizes) {
+        List<Integer> result = new ArrayList<>();
+        for (String size : sizes.split(",")) {
+            if (!size.trim().isEmpty()) {
+                result.add(Integer.parseInt(size.trim()));
+            }
+        }
+        return result;
+    }
+
+    private static void writeReport(String name, List<String> lines) throws IOException {
+        File dir = new File(System.getProperty("wt.load.reportDir", "build/reports/wt-load"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create report directory " + dir);
+        }
+        File report = new File(dir, name);
+        try (PrintWriter writer = new PrintWriter(new FileWriter(report))) {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        }
+    }
+}
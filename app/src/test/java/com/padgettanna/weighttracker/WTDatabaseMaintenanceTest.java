@@ -0,0 +1,147 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLog;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which steps WTDatabaseMaintenance picks: ANALYZE on first run and PRAGMA optimize
+ * afterwards, incremental vacuum once auto_vacuum is on and one full VACUUM before that,
+ * and that a stop request ends the run between steps.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTDatabaseMaintenanceTest {
+
+    private static final String EMAIL = "maintenance@test.com";
+    private static final int ENTRIES = 2000;
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+        List<WTDatabaseHelper.NewWeight> weights = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            weights.add(new WTDatabaseHelper.NewWeight(LocalDate.now().minusDays(i).toString(), 170, EMAIL));
+        }
+        wtDB.addWeights(weights);
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void analyzesFirstThenOptimizes() {
+        assertFalse(hasStatistics());
+
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> false));
+        assertTrue(hasStatistics());
+        assertReport("analyze(full)");
+
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> false));
+        assertReport("analyze(optimize)");
+    }
+
+    @Test
+    public void newDatabaseVacuumsIncrementally() {
+        assertEquals(2, pragma("auto_vacuum"));
+        deleteAllEntries();
+        assertTrue(pragma("freelist_count") > 0);
+
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> false));
+        assertReport("vacuum(incremental)");
+        assertEquals(0, pragma("freelist_count"));
+    }
+
+    @Test
+    public void olderDatabaseIsConvertedWithOneFullVacuum() {
+        SQLiteDatabase db = wtDB.getWritableDatabase();
+        // As created before auto_vacuum was enabled
+        db.execSQL("PRAGMA auto_vacuum = NONE");
+        db.execSQL("VACUUM");
+        assertEquals(0, pragma("auto_vacuum"));
+        deleteAllEntries();
+
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> false));
+        assertReport("vacuum(full)");
+        assertEquals(2, pragma("auto_vacuum"));
+        assertEquals(0, pragma("freelist_count"));
+
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> false));
+        assertReport("vacuum(incremental)");
+    }
+
+    @Test
+    public void stopsBetweenSteps() {
+        deleteAllEntries();
+        long free = pragma("freelist_count");
+
+        // Stopped after quick_check: nothing else runs and nothing is reported
+        assertTrue(WTDatabaseMaintenance.run(wtDB, () -> true));
+        assertFalse(hasStatistics());
+        assertEquals(free, pragma("freelist_count"));
+        assertNull(lastReport());
+    }
+
+    private void assertReport(String step) {
+        String report = lastReport();
+        assertTrue(report, report != null && report.contains(step));
+    }
+
+    private void deleteAllEntries() {
+        wtDB.getWritableDatabase().execSQL("DELETE FROM " + WTDatabaseHelper.TABLE_LOG);
+    }
+
+    private boolean hasStatistics() {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery(
+                "SELECT 1 FROM sqlite_master WHERE name = 'sqlite_stat1'", null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long pragma(String name) {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery("PRAGMA " + name, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // The latest maintenance summary; the tag is shared with other instrumentation
+    private String lastReport() {
+        String report = null;
+        for (ShadowLog.LogItem item : ShadowLog.getLogsForTag(WTDatabaseMaintenance.INSTRUMENTATION_TAG)) {
+            if (item.msg.startsWith("maintenance pages=")) {
+                report = item.msg;
+            }
+        }
+        return report;
+    }
+}
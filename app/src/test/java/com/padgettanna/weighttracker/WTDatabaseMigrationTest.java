@@ -0,0 +1,248 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Upgrades a database from every earlier DATABASE_VERSION and checks nothing is lost.
+ * - Versions 7 and later are built as they shipped; before 7 the layout is not on record, so
+ *   those versions use the same tables with an extra column and duplicate goal rows
+ * - The heavy user has more entries than one migration chunk, so copies span transactions
+ * - For pre-7 databases, an upgrade stopped after a few chunks must resume on the next
+ *   open without duplicating or dropping rows, and rows written between chunks must
+ *   survive the rest of the copy
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class WTDatabaseMigrationTest {
+
+    private static final String HEAVY = "heavy@test.com";
+    private static final String LIGHT = "light@test.com";
+    private static final String LATE = "late@test.com";
+    private static final int HEAVY_ENTRIES = 2 * WTMigrations.CHUNK_ROWS + 500;
+    private static final int LIGHT_ENTRIES = 3;
+    private static final int CURRENT_VERSION = 12;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "from version {0}")
+    public static Collection<Object[]> versions() {
+        List<Object[]> versions = new ArrayList<>();
+        for (int version = 1; version < CURRENT_VERSION; version++) {
+            versions.add(new Object[]{version});
+        }
+        return versions;
+    }
+
+    private final int version;
+    private Context context;
+    private WTDatabaseHelper wtDB;
+
+    public WTDatabaseMigrationTest(int version) {
+        this.version = version;
+    }
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        // Let the app's startup open finish before the database is replaced
+        ((WeightTrackerApp) context).getWriteQueue().open().join();
+        context.deleteDatabase("WeightTracker.db");
+        createFixture();
+    }
+
+    @After
+    public void tearDown() {
+        WTMigrations.maxChunksPerRun = Integer.MAX_VALUE;
+        if (wtDB != null) {
+            wtDB.close();
+        }
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void upgradeKeepsEveryRow() {
+        wtDB = new WTDatabaseHelper(context);
+        SQLiteDatabase db = wtDB.getWritableDatabase();
+
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertAllRowsPresent(db);
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE name LIKE 'legacy_%'"));
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM " + WTMigrations.TABLE_STATE + " WHERE done = 0"));
+        assertTrue(indexExists(db, "idx_weight_log_email_date"));
+        assertTrue(indexExists(db, "idx_goal_email"));
+
+        // The upgraded database takes new writes through the normal paths
+        assertTrue(wtDB.addWeight(LocalDate.now().toString(), 150, LIGHT));
+        assertTrue(wtDB.setGoalWeight(145, LIGHT));
+        assertEquals(LIGHT_ENTRIES + 1, wtDB.getWeightEntries(LIGHT).size());
+    }
+
+    @Test
+    public void interruptedCopyResumesOnNextOpen() {
+        assumeTrue("Only layouts before 7 are copied", version < 7);
+
+        // Users: one chunk plus the chunk that finds nothing left; then one chunk of entries
+        WTMigrations.maxChunksPerRun = 3;
+        wtDB = new WTDatabaseHelper(context);
+        SQLiteDatabase db = wtDB.getWritableDatabase();
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertEquals(WTMigrations.CHUNK_ROWS, queryInt(db, "SELECT COUNT(*) FROM weight_log"));
+        assertEquals(2, queryInt(db, "SELECT COUNT(*) FROM " + WTMigrations.TABLE_STATE + " WHERE done = 0"));
+        wtDB.close();
+
+        // As if the process had been killed and started again
+        WTMigrations.maxChunksPerRun = Integer.MAX_VALUE;
+        wtDB = new WTDatabaseHelper(context);
+        db = wtDB.getWritableDatabase();
+        assertAllRowsPresent(db);
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM " + WTMigrations.TABLE_STATE + " WHERE done = 0"));
+    }
+
+    @Test
+    public void writesBetweenChunksSurviveTheCopy() {
+        assumeTrue("Only layouts before 7 are copied", version < 7);
+        int legacyEntries = HEAVY_ENTRIES + LIGHT_ENTRIES;
+
+        // Stopped after the first chunk of users, before any entry or goal is copied
+        WTMigrations.maxChunksPerRun = 1;
+        wtDB = new WTDatabaseHelper(context);
+        SQLiteDatabase db = wtDB.getWritableDatabase();
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM weight_log"));
+
+        // Written as if a screen had not waited for the migration
+        wtDB.addUser("Late", LATE, "pw");
+        assertTrue(wtDB.addWeight(LocalDate.now().toString(), 140, LATE));
+        assertTrue(wtDB.setGoalWeight(150, HEAVY));
+
+        // Then part way through the entries
+        WTMigrations.maxChunksPerRun = 3;
+        wtDB.finishMigrations();
+        assertEquals(2 * WTMigrations.CHUNK_ROWS + 1, queryInt(db, "SELECT COUNT(*) FROM weight_log"));
+        assertTrue(wtDB.addWeight(LocalDate.now().toString(), 121, LIGHT));
+
+        WTMigrations.maxChunksPerRun = Integer.MAX_VALUE;
+        wtDB.finishMigrations();
+        assertEquals(0, queryInt(db, "SELECT COUNT(*) FROM " + WTMigrations.TABLE_STATE + " WHERE done = 0"));
+
+        // Every legacy row kept its id, and the new rows took ids after them
+        assertEquals(3, queryInt(db, "SELECT COUNT(*) FROM user_table"));
+        assertEquals(3, queryInt(db, "SELECT _id FROM user_table WHERE email = '" + LATE + "'"));
+        assertEquals(legacyEntries + 2, queryInt(db, "SELECT COUNT(*) FROM weight_log"));
+        assertEquals(legacyEntries, queryInt(db, "SELECT COUNT(*) FROM weight_log WHERE _id <= " + legacyEntries));
+        assertEquals(HEAVY_ENTRIES, wtDB.getWeightEntries(HEAVY).size());
+        assertEquals(LIGHT_ENTRIES + 1, wtDB.getWeightEntries(LIGHT).size());
+        assertEquals(1, wtDB.getWeightEntries(LATE).size());
+        // The goal set during the migration wins over the legacy one
+        assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM goal_table WHERE email = '" + HEAVY + "'"));
+        assertEquals(150, queryInt(db, "SELECT goal_weight FROM goal_table WHERE email = '" + HEAVY + "'"));
+    }
+
+    private void assertAllRowsPresent(SQLiteDatabase db) {
+        assertEquals(2, queryInt(db, "SELECT COUNT(*) FROM user_table"));
+        assertEquals(HEAVY_ENTRIES + LIGHT_ENTRIES, queryInt(db, "SELECT COUNT(*) FROM weight_log"));
+        // Entry ids survive, so sync keys and change log rows still point at the right entries
+        assertEquals(HEAVY_ENTRIES + LIGHT_ENTRIES, queryInt(db, "SELECT MAX(_id) FROM weight_log"));
+        assertEquals(HEAVY_ENTRIES, wtDB.getWeightEntries(HEAVY).size());
+        // Of duplicate goal rows, the newest is kept
+        assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM goal_table WHERE email = '" + HEAVY + "'"));
+        assertEquals(160, queryInt(db, "SELECT goal_weight FROM goal_table WHERE email = '" + HEAVY + "'"));
+        if (version >= 9) {
+            assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM change_log"));
+        }
+    }
+
+    // Writes the tables, indexes and rows a database of this version would have held
+    private void createFixture() {
+        File file = context.getDatabasePath("WeightTracker.db");
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.beginTransaction();
+            if (version < 7) {
+                db.execSQL("CREATE TABLE weight_log (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                        + " date TEXT, weight INTEGER, email TEXT, note TEXT)");
+            } else {
+                db.execSQL("CREATE TABLE weight_log (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                        + " date TEXT, weight INTEGER, email TEXT,"
+                        + " FOREIGN KEY(email) REFERENCES user_table(email))");
+            }
+            db.execSQL("CREATE TABLE user_table (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " name TEXT, email TEXT UNIQUE, password TEXT)");
+            db.execSQL("CREATE TABLE goal_table (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " goal_weight INTEGER, email TEXT)");
+            if (version >= 8) {
+                db.execSQL("CREATE INDEX idx_weight_log_email_date ON weight_log (email, date)");
+            }
+            if (version >= 9) {
+                db.execSQL("CREATE TABLE change_log (seq INTEGER PRIMARY KEY AUTOINCREMENT,"
+                        + " email TEXT, table_name TEXT, op TEXT, row_id INTEGER, changed_at INTEGER)");
+                db.execSQL("CREATE TABLE sync_key (_id INTEGER PRIMARY KEY, sync_key TEXT UNIQUE,"
+                        + " changed_at INTEGER)");
+                db.execSQL("CREATE TABLE sync_state (email TEXT PRIMARY KEY, pushed_seq INTEGER DEFAULT 0,"
+                        + " pull_cursor INTEGER DEFAULT 0, goal_changed_at INTEGER DEFAULT 0)");
+                db.execSQL("INSERT INTO change_log (email, table_name, op, row_id, changed_at)"
+                        + " VALUES ('" + HEAVY + "', 'weight_log', 'upsert', 1, 0)");
+            }
+
+            db.execSQL("INSERT INTO user_table (name, email, password) VALUES ('Heavy', '" + HEAVY + "', 'pw')");
+            db.execSQL("INSERT INTO user_table (name, email, password) VALUES ('Light', '" + LIGHT + "', 'pw')");
+            LocalDate today = LocalDate.now();
+            String insert = version < 7
+                    ? "INSERT INTO weight_log (date, weight, email, note) VALUES (?, ?, ?, 'old')"
+                    : "INSERT INTO weight_log (date, weight, email) VALUES (?, ?, ?)";
+            for (int i = 0; i < HEAVY_ENTRIES; i++) {
+                db.execSQL(insert, new Object[]{today.minusDays(i).toString(), 150 + i % 20, HEAVY});
+            }
+            for (int i = 0; i < LIGHT_ENTRIES; i++) {
+                db.execSQL(insert, new Object[]{today.minusDays(i).toString(), 120, LIGHT});
+            }
+            // Version 10 made goals unique per user; earlier versions could hold duplicates
+            if (version < 10) {
+                db.execSQL("INSERT INTO goal_table (goal_weight, email) VALUES (170, '" + HEAVY + "')");
+            }
+            db.execSQL("INSERT INTO goal_table (goal_weight, email) VALUES (160, '" + HEAVY + "')");
+            if (version >= 10) {
+                db.execSQL("CREATE UNIQUE INDEX idx_goal_email ON goal_table (email)");
+            }
+            if (version >= 11) {
+                WTMigrations.createStateTable(db);
+            }
+
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            db.close();
+        }
+    }
+
+    private static boolean indexExists(SQLiteDatabase db, String name) {
+        return queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = '"
+                + name + "'") == 1;
+    }
+
+    private static int queryInt(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
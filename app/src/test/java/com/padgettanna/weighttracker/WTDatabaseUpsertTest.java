@@ -0,0 +1,172 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that goal saves and one-entry-per-day weigh-ins never create duplicate rows,
+ * even when several threads write for the same user at once, and that the cached mode
+ * follows the database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WTDatabaseUpsertTest {
+
+    private static final String EMAIL = "upsert@test.com";
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 25;
+
+    private Context context;
+    private WTDatabaseHelper wtDB;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new WTDatabaseHelper(context);
+    }
+
+    @After
+    public void tearDown() {
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void parallelGoalSavesLeaveOneRow() throws Exception {
+        runInParallel(thread -> {
+            for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                assertTrue(wtDB.setGoalWeight(100 + thread * WRITES_PER_THREAD + i, EMAIL));
+            }
+        });
+
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM " + WTDatabaseHelper.TABLE_GOAL + " WHERE email = ?"));
+        int goal = queryInt("SELECT goal_weight FROM " + WTDatabaseHelper.TABLE_GOAL + " WHERE email = ?");
+        assertTrue(goal >= 100 && goal < 100 + THREADS * WRITES_PER_THREAD);
+    }
+
+    @Test
+    public void parallelSameDayWeighInsLeaveOneEntryInDailyMode() throws Exception {
+        wtDB.setOneEntryPerDay(true);
+        String today = LocalDate.now().toString();
+        String yesterday = LocalDate.now().minusDays(1).toString();
+
+        runInParallel(thread -> {
+            for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                assertTrue(wtDB.addWeight(i % 2 == 0 ? today : yesterday, 150 + thread, EMAIL));
+            }
+        });
+
+        List<WeightEntry> entries = wtDB.getWeightEntries(EMAIL);
+        assertEquals(2, entries.size());
+        assertEquals(1, queryInt("SELECT COUNT(*) FROM " + WTDatabaseHelper.TABLE_LOG
+                + " WHERE email = ? AND date = '" + today + "'"));
+    }
+
+    @Test
+    public void enablingDailyModeKeepsLatestEntryPerDay() {
+        String today = LocalDate.now().toString();
+        wtDB.addWeight(today, 170, EMAIL);
+        wtDB.addWeight(today, 168, EMAIL);
+        wtDB.addWeight(LocalDate.now().minusDays(1).toString(), 171, EMAIL);
+
+        wtDB.setOneEntryPerDay(true);
+        assertTrue(wtDB.isOneEntryPerDay());
+        assertEquals(2, wtDB.getWeightEntries(EMAIL).size());
+        assertEquals(168, queryInt("SELECT weight FROM " + WTDatabaseHelper.TABLE_LOG
+                + " WHERE email = ? AND date = '" + today + "'"));
+
+        // A second weigh-in replaces the day's entry instead of adding one
+        assertTrue(wtDB.addWeight(today, 166, EMAIL));
+        assertEquals(2, wtDB.getWeightEntries(EMAIL).size());
+
+        // Turning the mode off allows several entries per day again
+        wtDB.setOneEntryPerDay(false);
+        assertTrue(wtDB.addWeight(today, 165, EMAIL));
+        assertEquals(3, wtDB.getWeightEntries(EMAIL).size());
+    }
+
+    @Test
+    public void cachedModeIsSharedByHelperInstances() {
+        String today = LocalDate.now().toString();
+        assertFalse(wtDB.isOneEntryPerDay());
+
+        WTDatabaseHelper other = new WTDatabaseHelper(context);
+        other.setOneEntryPerDay(true);
+        other.close();
+        assertTrue(wtDB.addWeight(today, 170, EMAIL));
+        assertTrue(wtDB.addWeight(today, 168, EMAIL));
+        assertEquals(1, wtDB.getWeightEntries(EMAIL).size());
+    }
+
+    @Test
+    public void modeIsReadAgainWhenTheDatabaseIsRecreated() {
+        wtDB.setOneEntryPerDay(true);
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+
+        wtDB = new WTDatabaseHelper(context);
+        assertFalse(wtDB.isOneEntryPerDay());
+        String today = LocalDate.now().toString();
+        assertTrue(wtDB.addWeight(today, 170, EMAIL));
+        assertTrue(wtDB.addWeight(today, 168, EMAIL));
+        assertEquals(2, wtDB.getWeightEntries(EMAIL).size());
+    }
+
+    // Work done by one writer thread, identified by its index
+    private interface Writer {
+        void write(int thread) throws Exception;
+    }
+
+    // Starts every writer at the same moment and rethrows the first failure
+    private void runInParallel(Writer writer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    writer.write(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // First column of the query's first row, with EMAIL bound to its one parameter
+    private int queryInt(String sql) {
+        Cursor cursor = wtDB.getReadableDatabase().rawQuery(sql, new String[]{EMAIL});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
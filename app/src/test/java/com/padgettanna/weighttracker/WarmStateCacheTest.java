@@ -0,0 +1,133 @@
+package com.padgettanna.weighttracker;
+
+import android.content.ComponentCallbacks2;
+
+import com.padgettanna.weighttracker.model.DashboardState;
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks WarmStateCache's LRU order, memory-pressure trimming and when a cached
+ * dashboard or window of recent entries stops being current.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WarmStateCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        WarmStateCache cache = new WarmStateCache();
+        UserWarmState first = cache.get(email(0));
+        UserWarmState second = cache.get(email(1));
+        for (int i = 2; i < WarmStateCache.MAX_USERS; i++) {
+            cache.get(email(i));
+        }
+        // Touching the first account leaves the second as the least recently used
+        cache.get(email(0));
+
+        cache.get(email(WarmStateCache.MAX_USERS));
+
+        assertEquals(WarmStateCache.MAX_USERS, cache.size());
+        assertSame(first, cache.get(email(0)));
+        assertNotSame(second, cache.get(email(1)));
+    }
+
+    @Test
+    public void trimsUnderMemoryPressure() {
+        WarmStateCache cache = new WarmStateCache();
+        for (int i = 0; i < WarmStateCache.MAX_USERS; i++) {
+            cache.get(email(i));
+        }
+
+        cache.trim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(1, cache.size());
+
+        cache.trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, cache.size());
+
+        for (int i = 0; i < WarmStateCache.MAX_USERS; i++) {
+            cache.get(email(i));
+        }
+        cache.trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void dashboardIsCurrentUntilItsTablesChange() {
+        String email = "warm@test.com";
+        WarmStateCache cache = new WarmStateCache();
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        DashboardState state = new DashboardState("Warm", "150", "160", "160.0", "Stable →", "", 0);
+        cache.get(email).setDashboard(new UserWarmState.Dashboard(state,
+                tracker.getVersion(email, WTDatabaseHelper.TABLE_LOG),
+                tracker.getVersion(email, WTDatabaseHelper.TABLE_GOAL)));
+
+        assertTrue(cache.hasCurrentDashboard(email));
+        assertSame(state, cache.get(email).currentDashboard(email).state);
+
+        // A write to another user or table leaves it current
+        tracker.notifyWrite("other@test.com", WTDatabaseHelper.TABLE_LOG);
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_OUTBOX);
+        assertTrue(cache.hasCurrentDashboard(email));
+
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_GOAL);
+        assertFalse(cache.hasCurrentDashboard(email));
+    }
+
+    @Test
+    public void checkingAnUnknownUserCachesNothing() {
+        WarmStateCache cache = new WarmStateCache();
+        UserWarmState oldest = cache.get(email(0));
+        for (int i = 1; i < WarmStateCache.MAX_USERS; i++) {
+            cache.get(email(i));
+        }
+
+        assertFalse(cache.hasCurrentDashboard("unknown@test.com"));
+        // No empty state was inserted, so nothing was evicted to make room
+        assertEquals(WarmStateCache.MAX_USERS, cache.size());
+        assertSame(oldest, cache.get(email(0)));
+    }
+
+    @Test
+    public void recentEntriesAreCurrentUntilTheLogChanges() {
+        String email = "recent@test.com";
+        InvalidationTracker tracker = InvalidationTracker.getInstance();
+        List<WeightEntry> newestFirst = new ArrayList<>();
+        for (int i = 0; i < UserWarmState.RECENT_ENTRIES + 10; i++) {
+            newestFirst.add(new WeightEntry(1000 - i, LocalDate.of(2024, 6, 1).minusDays(i), 170));
+        }
+        // One outlier inside the window, one older than it
+        Set<Integer> outliers = Set.of(newestFirst.get(2).getId(), newestFirst.get(35).getId());
+        UserWarmState state = new UserWarmState();
+        state.setRecentEntries(new UserWarmState.RecentEntries(newestFirst, outliers,
+                tracker.getVersion(email, WTDatabaseHelper.TABLE_LOG)));
+
+        UserWarmState.RecentEntries recent = state.currentRecentEntries(email);
+        assertEquals(newestFirst.subList(0, UserWarmState.RECENT_ENTRIES), recent.entries);
+        assertEquals(Set.of(newestFirst.get(2).getId()), recent.outlierIds);
+
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_GOAL);
+        assertSame(recent, state.currentRecentEntries(email));
+
+        tracker.notifyWrite(email, WTDatabaseHelper.TABLE_LOG);
+        assertNull(state.currentRecentEntries(email));
+    }
+
+    private static String email(int index) {
+        return "user" + index + "@test.com";
+    }
+}
@@ -0,0 +1,126 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks WeeklySeasonality's weekday effects and deseasonalized weights on series with
+ * a known weekend bump, that a steady loss is not taken for a weekly pattern, and that
+ * LogSeasonality's appends agree with a rebuild.
+ */
+public class WeeklySeasonalityTest {
+
+    // A Monday
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    public void noEffectUntilEveryWeekdayHasEnoughWeighIns() {
+        WeeklySeasonality seasonality = new WeeklySeasonality();
+        List<WeightEntry> entries = weekendBump(7 * WeeklySeasonality.MIN_OBSERVATIONS_PER_DAY);
+        for (int i = 0; i < entries.size() - 1; i++) {
+            // Nothing is adjusted while a weekday is short of observations
+            assertEquals(entries.get(i).getWeight(), seasonality.add(entries.get(i)), 0.0);
+        }
+        assertEquals(0.0, seasonality.effect(DayOfWeek.SUNDAY), 0.0);
+
+        seasonality.add(entries.get(entries.size() - 1));
+        assertTrue(seasonality.effect(DayOfWeek.SUNDAY) > 1);
+    }
+
+    @Test
+    public void weekendBumpIsMeasuredAndRemoved() {
+        List<WeightEntry> entries = weekendBump(7 * 20);
+        WeeklySeasonality seasonality = WeeklySeasonality.build(entries);
+
+        // Two pounds on two days of seven: +2 - 4/7 on weekends, -4/7 on weekdays
+        double sum = 0;
+        for (DayOfWeek day : DayOfWeek.values()) {
+            double expected = (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY ? 2 : 0) - 4.0 / 7;
+            assertEquals(day.toString(), expected, seasonality.effect(day), 0.05);
+            sum += seasonality.effect(day);
+        }
+        assertEquals(0.0, sum, 1e-9);
+
+        double[] adjusted = seasonality.deseasonalize(entries);
+        assertEquals(entries.size(), adjusted.length);
+        for (double weight : adjusted) {
+            assertEquals(180 + 4.0 / 7, weight, 0.1);
+        }
+    }
+
+    @Test
+    public void steadyLossIsNotSeasonal() {
+        List<WeightEntry> entries = new ArrayList<>();
+        for (int day = 0; day < 7 * 20; day++) {
+            // A pound every five days, rounded to whole pounds like real weigh-ins
+            entries.add(new WeightEntry(day, START.plusDays(day), (int) Math.round(220 - day / 5.0)));
+        }
+        WeeklySeasonality seasonality = WeeklySeasonality.build(entries);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            assertEquals(day.toString(), 0.0, seasonality.effect(day), 0.25);
+        }
+    }
+
+    @Test
+    public void appendsMatchARebuild() {
+        // A typo every 17 days, which must stay out of the effects either way
+        List<WeightEntry> entries = new ArrayList<>();
+        for (WeightEntry entry : weekendBump(7 * 12)) {
+            int id = entry.getId();
+            entries.add(id % 17 == 16 ? new WeightEntry(id, entry.getDate(), entry.getWeight() + 40) : entry);
+        }
+
+        LogSeasonality appended = logSeasonality(entries.subList(0, 10));
+        for (WeightEntry entry : entries.subList(10, entries.size())) {
+            appended = appended.append(entry.getDate(), entry.getWeight());
+        }
+
+        List<WeightEntry> clean = clean(entries);
+        assertTrue(clean.size() < entries.size());
+        assertArrayEquals(new LogSeasonality(entries, clean).deseasonalize(clean),
+                appended.deseasonalize(clean), 1e-9);
+    }
+
+    @Test
+    public void backdatedAppendNeedsARebuild() {
+        List<WeightEntry> entries = weekendBump(7 * 5);
+        LogSeasonality seasonality = logSeasonality(entries);
+        double[] before = seasonality.deseasonalize(entries);
+
+        assertNull(seasonality.append(START.plusDays(3), 200));
+        // Appends return a copy and leave the state they started from as it was
+        seasonality.append(START.plusDays(7 * 5), 230);
+        assertArrayEquals(before, seasonality.deseasonalize(entries), 0.0);
+    }
+
+    private static LogSeasonality logSeasonality(List<WeightEntry> chronological) {
+        return new LogSeasonality(chronological, clean(chronological));
+    }
+
+    private static List<WeightEntry> clean(List<WeightEntry> chronological) {
+        return WeightAnalysisUtil.withoutOutliers(chronological,
+                WeightAnalysisUtil.detectOutliers(chronological, WeightAnalysisUtil.OUTLIER_WINDOW));
+    }
+
+    // Flat at 180 on weekdays and 182 on weekends
+    private static List<WeightEntry> weekendBump(int days) {
+        List<WeightEntry> entries = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            LocalDate date = START.plusDays(day);
+            boolean weekend = date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+            entries.add(new WeightEntry(day, date, weekend ? 182 : 180));
+        }
+        return entries;
+    }
+}
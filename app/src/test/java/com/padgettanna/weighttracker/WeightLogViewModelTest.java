@@ -0,0 +1,196 @@
+package com.padgettanna.weighttracker;
+
+import android.app.Application;
+import android.os.CancellationSignal;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+import com.padgettanna.weighttracker.model.WeightLogFilter;
+import com.padgettanna.weighttracker.model.WeightRow;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks WeightLogViewModel's filter: edits are debounced so only the last one queries,
+ * and a newer filter cancels the query in flight and drops whatever it returns late.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeightLogViewModelTest {
+
+    private static final String EMAIL = "viewmodel@test.com";
+    // Newest two of 160, 162 .. 168, and the oldest two
+    private static final WeightLogFilter HEAVY = new WeightLogFilter(null, null, 166, null);
+    private static final WeightLogFilter LIGHT = new WeightLogFilter(null, null, null, 162);
+
+    private Application application;
+    private RecordingHelper wtDB;
+    private WeightLogViewModel viewModel;
+    private final List<List<Integer>> published = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        wtDB = new RecordingHelper(application);
+        wtDB.addUser("ViewModel", EMAIL, "pw");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(wtDB.addWeight(LocalDate.now().minusDays(4 - i).toString(), 160 + 2 * i, EMAIL));
+        }
+        viewModel = new WeightLogViewModel(application, wtDB);
+        viewModel.getRows().observeForever(rows -> published.add(ids(rows)));
+        viewModel.start(EMAIL);
+        awaitMain(() -> viewModel.getRows().getValue() != null
+                && viewModel.getRows().getValue().size() == 5);
+    }
+
+    @After
+    public void tearDown() {
+        viewModel.onCleared();
+        wtDB.close();
+        application.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void onlyTheLastEditWithinTheDebounceQueries() throws InterruptedException {
+        viewModel.setFilterDebounced(HEAVY);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(100));
+        // The second edit restarts the timer
+        viewModel.setFilterDebounced(LIGHT);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(WeightLogViewModel.FILTER_DEBOUNCE_MS - 1));
+        assertFalse(wtDB.queried.await(100, TimeUnit.MILLISECONDS));
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+        awaitMain(() -> expectedIds(LIGHT).equals(currentIds()));
+        assertEquals(Collections.singletonList(LIGHT), wtDB.filters);
+    }
+
+    @Test
+    public void applyingAFilterDropsThePendingEdit() {
+        viewModel.setFilterDebounced(HEAVY);
+        viewModel.setFilter(LIGHT);
+        awaitMain(() -> expectedIds(LIGHT).equals(currentIds()));
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(WeightLogViewModel.FILTER_DEBOUNCE_MS));
+        assertEquals(Collections.singletonList(LIGHT), wtDB.filters);
+        assertEquals(expectedIds(LIGHT), currentIds());
+    }
+
+    @Test
+    public void newerFilterCancelsTheQueryInFlightAndDropsItsResult() throws InterruptedException {
+        wtDB.holdOn = HEAVY;
+        viewModel.setFilter(HEAVY);
+        assertTrue(wtDB.held.await(5, TimeUnit.SECONDS));
+
+        viewModel.setFilter(LIGHT);
+        assertTrue(wtDB.heldSignal.isCanceled());
+
+        // The held query ignores its cancellation and returns its matches anyway
+        wtDB.release.countDown();
+        awaitMain(() -> expectedIds(LIGHT).equals(currentIds()));
+        assertEquals(2, wtDB.filters.size());
+        List<Integer> stale = expectedIds(HEAVY);
+        assertNotEquals(expectedIds(LIGHT), stale);
+        for (List<Integer> rows : published) {
+            assertNotEquals(stale, rows);
+        }
+    }
+
+    private List<Integer> currentIds() {
+        return ids(viewModel.getRows().getValue());
+    }
+
+    private List<Integer> expectedIds(WeightLogFilter filter) {
+        List<Integer> ids = new ArrayList<>();
+        for (WeightEntry entry : wtDB.queryWeightEntriesDirect(filter)) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(List<WeightRow> rows) {
+        List<Integer> ids = new ArrayList<>();
+        if (rows != null) {
+            for (WeightRow row : rows) {
+                ids.add(row.getId());
+            }
+        }
+        return ids;
+    }
+
+    // Runs the main looper until the condition holds; background work posts back to it
+    private static void awaitMain(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting on the main looper", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    // Records every filter query, and can hold one up until the test releases it
+    private static class RecordingHelper extends WTDatabaseHelper {
+        final List<WeightLogFilter> filters = new CopyOnWriteArrayList<>();
+        final CountDownLatch queried = new CountDownLatch(1);
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile WeightLogFilter holdOn;
+        volatile CancellationSignal heldSignal;
+
+        RecordingHelper(Application application) {
+            super(application);
+        }
+
+        @Override
+        List<WeightEntry> queryWeightEntries(String userEmail, WeightLogFilter filter,
+                                             @Nullable CancellationSignal signal) {
+            filters.add(filter);
+            queried.countDown();
+            if (!filter.equals(holdOn)) {
+                return super.queryWeightEntries(userEmail, filter, signal);
+            }
+            heldSignal = signal;
+            held.countDown();
+            // The view model interrupts the query it cancels; finish regardless, as a
+            // query that was already returning would
+            long deadline = System.currentTimeMillis() + 5000;
+            while (release.getCount() > 0 && System.currentTimeMillis() < deadline) {
+                try {
+                    release.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ignored) {
+                    // Keep waiting for the test
+                }
+            }
+            return super.queryWeightEntries(userEmail, filter, null);
+        }
+
+        // The filter's matches, without recording a query
+        List<WeightEntry> queryWeightEntriesDirect(WeightLogFilter filter) {
+            return super.queryWeightEntries(EMAIL, filter, null);
+        }
+    }
+}
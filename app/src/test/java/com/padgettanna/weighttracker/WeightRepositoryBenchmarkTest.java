@@ -0,0 +1,127 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the SQLite and memory-mapped WeightRepository backends.
+ * - Append: time to add every entry of a user's history one call at a time
+ * - Full scan: p50/p95 of reading the whole history back
+ * - Writes a plain-text report to build/reports/wt-load
+ * Opt-in with the load suite: ./gradlew testDebugUnitTest -Pwt.load=true
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeightRepositoryBenchmarkTest {
+
+    private static final String EMAIL = "bench@test.com";
+    private static final int SCANS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Load suite disabled; run with -Pwt.load=true", Boolean.getBoolean("wt.load"));
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.deleteDatabase("WeightTracker.db");
+        }
+    }
+
+    @Test
+    public void compareAppendAndFullScan() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-10s %-8s %12s %12s %12s",
+                "rows", "backend", "append ms", "scan p50 ms", "scan p95 ms"));
+
+        for (int rows : parseSizes(System.getProperty("wt.load.sizes", "1000,10000,100000"))) {
+            context.deleteDatabase("WeightTracker.db");
+            WTDatabaseHelper wtDB = new WTDatabaseHelper(context);
+            lines.add(run(rows, "sqlite", new SQLiteWeightRepository(wtDB)));
+            wtDB.close();
+
+            MappedWeightRepository mapped = new MappedWeightRepository(folder.newFolder());
+            lines.add(run(rows, "mapped", mapped));
+            mapped.close();
+        }
+
+        writeReport(lines);
+    }
+
+    // Appends rows entries, one per day back from today, then times full scans
+    private static String run(int rows, String backend, WeightRepository repository) {
+        LocalDate today = LocalDate.now();
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            repository.addWeight(today.minusDays(i % 20_000).toString(), 150 + i % 40, EMAIL);
+        }
+        double appendMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        double[] scans = new double[SCANS];
+        for (int i = 0; i < SCANS; i++) {
+            long scanStart = System.nanoTime();
+            assertEquals(rows, repository.getWeightEntries(EMAIL).size());
+            scans[i] = (System.nanoTime() - scanStart) / 1_000_000.0;
+        }
+        Arrays.sort(scans);
+
+        return String.format(Locale.US, "%-10d %-8s %12.1f %12.2f %12.2f",
+                rows, backend, appendMs, percentile(scans, 50), percentile(scans, 95));
+    }
+
+    // Nearest-rank percentile over sorted timings
+    private static double percentile(double[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static List<Integer> parseSizes(String sizes) {
+        List<Integer> result = new ArrayList<>();
+        for (String size : sizes.split(",")) {
+            if (!size.trim().isEmpty()) {
+                result.add(Integer.parseInt(size.trim()));
+            }
+        }
+        return result;
+    }
+
+    private static void writeReport(List<String> lines) throws IOException {
+        File dir = new File(System.getProperty("wt.load.reportDir", "build/reports/wt-load"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create report directory " + dir);
+        }
+        File report = new File(dir, "repository-report.txt");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(report))) {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.padgettanna.weighttracker;
+
+import com.padgettanna.weighttracker.model.WeightEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behaviour every WeightRepository must share.
+ * Subclasses supply a fresh, empty repository per test and clean it up afterwards.
+ */
+public abstract class WeightRepositoryContractTest {
+
+    private static final String EMAIL = "contract@test.com";
+    private static final String OTHER_EMAIL = "other@test.com";
+
+    protected WeightRepository repository;
+    private final LocalDate today = LocalDate.now();
+
+    protected abstract WeightRepository createRepository() throws Exception;
+
+    protected abstract void destroyRepository() throws Exception;
+
+    @Before
+    public void setUpRepository() throws Exception {
+        repository = createRepository();
+    }
+
+    @After
+    public void tearDownRepository() throws Exception {
+        destroyRepository();
+    }
+
+    @Test
+    public void addedEntriesAreListed() {
+        assertTrue(repository.addWeight(today.minusDays(1).toString(), 171, EMAIL));
+        assertTrue(repository.addWeight(today.toString(), 170, EMAIL));
+
+        List<WeightEntry> entries = repository.getWeightEntries(EMAIL);
+        assertEquals(2, entries.size());
+        assertEquals(171 + 170, entries.get(0).getWeight() + entries.get(1).getWeight());
+    }
+
+    @Test
+    public void invalidEntriesAreRejected() {
+        assertFalse(repository.addWeight(today.toString(), 49, EMAIL));
+        assertFalse(repository.addWeight(today.toString(), 1000, EMAIL));
+        assertFalse(repository.addWeight(today.plusDays(1).toString(), 170, EMAIL));
+        assertFalse(repository.addWeight("not a date", 170, EMAIL));
+        assertTrue(repository.getWeightEntries(EMAIL).isEmpty());
+    }
+
+    @Test
+    public void updateReplacesDateAndWeight() {
+        repository.addWeight(today.toString(), 170, EMAIL);
+        int id = repository.getWeightEntries(EMAIL).get(0).getId();
+
+        assertTrue(repository.updateWeightEntry(id, today.minusDays(3).toString(), 165, EMAIL));
+        WeightEntry entry = repository.getWeightEntries(EMAIL).get(0);
+        assertEquals(id, entry.getId());
+        assertEquals(today.minusDays(3), entry.getDate());
+        assertEquals(165, entry.getWeight());
+
+        assertFalse(repository.updateWeightEntry(id, today.toString(), 20, EMAIL));
+        assertFalse(repository.updateWeightEntry(id + 1000, today.toString(), 165, EMAIL));
+        assertFalse(repository.updateWeightEntry(id, today.toString(), 165, OTHER_EMAIL));
+    }
+
+    @Test
+    public void deleteRemovesOnlyThatEntry() {
+        repository.addWeight(today.minusDays(1).toString(), 171, EMAIL);
+        repository.addWeight(today.toString(), 170, EMAIL);
+        int id = repository.getLatestEntry(EMAIL).getId();
+
+        assertFalse(repository.deleteWeightEntry(id, OTHER_EMAIL));
+        assertTrue(repository.deleteWeightEntry(id, EMAIL));
+        assertFalse(repository.deleteWeightEntry(id, EMAIL));
+
+        List<WeightEntry> entries = repository.getWeightEntries(EMAIL);
+        assertEquals(1, entries.size());
+        assertEquals(171, entries.get(0).getWeight());
+    }
+
+    @Test
+    public void latestIsMostRecentDateThenNewestId() {
+        assertNull(repository.getLatestEntry(EMAIL));
+
+        repository.addWeight(today.toString(), 170, EMAIL);
+        repository.addWeight(today.minusDays(5).toString(), 175, EMAIL);
+        assertEquals(170, repository.getLatestEntry(EMAIL).getWeight());
+
+        repository.addWeight(today.toString(), 169, EMAIL);
+        assertEquals(169, repository.getLatestEntry(EMAIL).getWeight());
+
+        // Moving the latest entry back in time hands "latest" to the next one
+        WeightEntry latest = repository.getLatestEntry(EMAIL);
+        repository.updateWeightEntry(latest.getId(), today.minusDays(10).toString(), 169, EMAIL);
+        assertEquals(170, repository.getLatestEntry(EMAIL).getWeight());
+    }
+
+    @Test
+    public void goalIsSetAndOverwritten() {
+        assertNull(repository.getGoalWeight(EMAIL));
+        assertTrue(repository.setGoalWeight(150, EMAIL));
+        assertTrue(repository.setGoalWeight(145, EMAIL));
+        assertEquals(Integer.valueOf(145), repository.getGoalWeight(EMAIL));
+        assertFalse(repository.setGoalWeight(10, EMAIL));
+        assertEquals(Integer.valueOf(145), repository.getGoalWeight(EMAIL));
+    }
+
+    @Test
+    public void usersAreIsolated() {
+        repository.addWeight(today.toString(), 170, EMAIL);
+        repository.setGoalWeight(150, EMAIL);
+
+        assertTrue(repository.getWeightEntries(OTHER_EMAIL).isEmpty());
+        assertNull(repository.getLatestEntry(OTHER_EMAIL));
+        assertNull(repository.getGoalWeight(OTHER_EMAIL));
+    }
+}
@@ -0,0 +1,160 @@
+package com.padgettanna.weighttracker;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that WeightWriteQueue commits bursts as single batches, commits early when a batch
+ * is full or flushed, and reports each entry's result or its batch's failure.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeightWriteQueueTest {
+
+    private static final String EMAIL = "queue@test.com";
+    // Long enough that nothing in a test commits by the window by accident
+    private static final long LONG_WINDOW_MS = 60_000;
+
+    private Context context;
+    private RecordingHelper wtDB;
+    private WeightWriteQueue queue;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        wtDB = new RecordingHelper(context);
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        wtDB.close();
+        context.deleteDatabase("WeightTracker.db");
+    }
+
+    @Test
+    public void burstCommitsAsOneBatch() throws Exception {
+        queue = new WeightWriteQueue(wtDB, 100, WeightWriteQueue.DEFAULT_MAX_BATCH);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(queue.addWeight(LocalDate.now().minusDays(i).toString(), 170 + i, EMAIL));
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Collections.singletonList(5), wtDB.batchSizes);
+        assertEquals(5, wtDB.getWeightEntries(EMAIL).size());
+    }
+
+    @Test
+    public void fullBatchCommitsWithoutWaitingForTheWindow() throws Exception {
+        queue = new WeightWriteQueue(wtDB, LONG_WINDOW_MS, 3);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(queue.addWeight(LocalDate.now().minusDays(i).toString(), 170, EMAIL));
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+
+        // The next entry waits for the window, or for a flush
+        CompletableFuture<Boolean> fourth = queue.addWeight(LocalDate.now().minusDays(3).toString(), 170, EMAIL);
+        assertFalse(fourth.isDone());
+        queue.flush().get(5, TimeUnit.SECONDS);
+        assertTrue(fourth.get(0, TimeUnit.SECONDS));
+        assertEquals(List.of(3, 1), wtDB.batchSizes);
+    }
+
+    @Test
+    public void invalidEntriesAreRejectedWithoutQueueing() throws Exception {
+        queue = new WeightWriteQueue(wtDB, LONG_WINDOW_MS, WeightWriteQueue.DEFAULT_MAX_BATCH);
+        assertFalse(queue.addWeight(LocalDate.now().toString(), 20, EMAIL).get(0, TimeUnit.SECONDS));
+        assertFalse(queue.addWeight(LocalDate.now().plusDays(1).toString(), 170, EMAIL).get(0, TimeUnit.SECONDS));
+        queue.flush().get(5, TimeUnit.SECONDS);
+        assertTrue(wtDB.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void failedBatchFailsEveryEntryInIt() throws Exception {
+        queue = new WeightWriteQueue(wtDB, LONG_WINDOW_MS, WeightWriteQueue.DEFAULT_MAX_BATCH);
+        wtDB.failNext = true;
+        CompletableFuture<Boolean> first = queue.addWeight(LocalDate.now().toString(), 170, EMAIL);
+        CompletableFuture<Boolean> second = queue.addWeight(LocalDate.now().minusDays(1).toString(), 171, EMAIL);
+        queue.flush().get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Boolean> result : List.of(first, second)) {
+            try {
+                result.get(0, TimeUnit.SECONDS);
+                fail("A failed batch reported success");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof SQLiteException);
+            }
+        }
+
+        // The queue keeps working after a failure
+        CompletableFuture<Boolean> next = queue.addWeight(LocalDate.now().toString(), 172, EMAIL);
+        queue.flush().get(5, TimeUnit.SECONDS);
+        assertTrue(next.get(0, TimeUnit.SECONDS));
+        assertEquals(1, wtDB.getWeightEntries(EMAIL).size());
+    }
+
+    @Test
+    public void submitRunsAfterQueuedEntries() throws Exception {
+        queue = new WeightWriteQueue(wtDB, LONG_WINDOW_MS, WeightWriteQueue.DEFAULT_MAX_BATCH);
+        CompletableFuture<Boolean> queued = queue.addWeight(LocalDate.now().toString(), 170, EMAIL);
+
+        int seen = queue.submit(() -> wtDB.getWeightEntries(EMAIL).size()).get(5, TimeUnit.SECONDS);
+        assertEquals(1, seen);
+        assertTrue(queued.isDone());
+
+        CompletableFuture<Object> failed = queue.submit(() -> {
+            throw new IllegalStateException("task failed");
+        });
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            fail("A failing task reported success");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    // Records each batch it commits, and can fail the next one
+    private static final class RecordingHelper extends WTDatabaseHelper {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean failNext;
+
+        RecordingHelper(Context context) {
+            super(context);
+        }
+
+        @Override
+        boolean[] addWeights(List<NewWeight> weights) {
+            if (failNext) {
+                failNext = false;
+                throw new SQLiteException("disk I/O error");
+            }
+            batchSizes.add(weights.size());
+            return super.addWeights(weights);
+        }
+    }
+}